@@ -26,12 +26,13 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
@@ -43,6 +44,11 @@ import org.apache.commons.logging.LogFactory;
  * <p>
  * Cache entries that are old enough and whose size makes the cache bigger than its maximum size are deleted.
  * <p>
+ * The entries are tracked by an in-memory index ordered by last access, along with their total size. The index is
+ * built once from the directory content on first use, taking the file modification times as initial access times.
+ * After that the filesystem is only used to store, rename and delete the cached files, so eviction costs are
+ * proportional to the number of evicted entries.
+ * <p>
  * The cache keys are restricted to a subset of ASCII: letters, digits and dashes. Usually a MD5 or SHA1 hash is used.
  */
 public class LRUFileCache implements FileCache {
@@ -56,7 +62,10 @@ public class LRUFileCache implements FileCache {
 
     private static final String TMP_SUFFIX = ".tmp";
 
-    // not final for tests
+    /**
+     * @deprecated since 8.3, old entries are now cleared each time a file is put in the cache
+     */
+    @Deprecated
     public static long CLEAR_OLD_ENTRIES_INTERVAL_MILLIS = 5000; // 5 s
 
     protected static class PathInfo implements Comparable<PathInfo> {
@@ -79,6 +88,24 @@ public class LRUFileCache implements FileCache {
         }
     }
 
+    /**
+     * An entry of the index.
+     *
+     * @since 8.3
+     */
+    protected static class CacheEntry {
+
+        protected final long size;
+
+        /** Last access time. */
+        protected long time;
+
+        public CacheEntry(long size, long time) {
+            this.size = size;
+            this.time = time;
+        }
+    }
+
     protected final Path dir;
 
     protected final long maxSize;
@@ -87,9 +114,25 @@ public class LRUFileCache implements FileCache {
 
     protected final long minAgeMillis;
 
-    protected Lock clearOldEntriesLock = new ReentrantLock();
+    /**
+     * The index of the cached files, least recently accessed first. All accesses to the index, to {@link #size} and
+     * {@link #loaded}, and all file moves and deletions in the cache directory are done while holding its lock.
+     *
+     * @since 8.3
+     */
+    protected final LinkedHashMap<String, CacheEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of the indexed files. */
+    protected long size;
+
+    /** Whether the index has been built from the directory content. */
+    protected boolean loaded;
+
+    protected final AtomicLong hits = new AtomicLong();
+
+    protected final AtomicLong misses = new AtomicLong();
 
-    protected long clearOldEntriesLast;
+    protected final AtomicLong evictions = new AtomicLong();
 
     /**
      * Constructs a cache in the given directory with the given maximum size (in bytes).
@@ -126,99 +169,123 @@ public class LRUFileCache implements FileCache {
         }
     }
 
-    @Override
-    public long getSize() {
-        long size = 0;
+    /**
+     * Builds the index from the directory content if not already done. Must be called while holding the index lock.
+     *
+     * @since 8.3
+     */
+    protected void loadIndex() {
+        if (loaded) {
+            return;
+        }
+        List<PathInfo> files = new ArrayList<>();
         try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
             for (Path path : ds) {
-                size += Files.size(path);
+                try {
+                    files.add(new PathInfo(path));
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
             }
         } catch (IOException e) {
             log.error(e, e);
         }
-        return size;
+        Collections.sort(files, Collections.reverseOrder()); // least recent first
+        for (PathInfo pi : files) {
+            CacheEntry old = index.put(pi.path.getFileName().toString(), new CacheEntry(pi.size, pi.time));
+            size += pi.size - (old == null ? 0 : old.size);
+        }
+        loaded = true;
     }
 
     @Override
-    public int getNumberOfItems() {
-        int count = 0;
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
-            for (Path path : ds) {
-                count++;
-            }
-        } catch (IOException e) {
-            log.error(e, e);
+    public long getSize() {
+        synchronized (index) {
+            loadIndex();
+            return size;
         }
-        return count;
     }
 
     @Override
-    public void clear() {
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
-            for (Path path : ds) {
-                try {
-                    Files.delete(path);
-                } catch (IOException e) {
-                    log.error(e, e);
-                }
-            }
-        } catch (IOException e) {
-            log.error(e, e);
+    public int getNumberOfItems() {
+        synchronized (index) {
+            loadIndex();
+            return index.size();
         }
     }
 
     /**
-     * Clears cache entries if they are old enough and their size makes the cache bigger than its maximum size.
+     * Gets the number of lookups that found the file in the cache.
+     *
+     * @since 8.3
      */
-    protected void clearOldEntries() {
-        if (clearOldEntriesLock.tryLock()) {
-            try {
-                if (System.currentTimeMillis() > clearOldEntriesLast + CLEAR_OLD_ENTRIES_INTERVAL_MILLIS) {
-                    doClearOldEntries();
-                    clearOldEntriesLast = System.currentTimeMillis();
-                    return;
-                }
-            } finally {
-                clearOldEntriesLock.unlock();
-            }
-        }
-        // else don't do anything, another thread is already clearing old entries
+    public long getHits() {
+        return hits.get();
     }
 
-    protected void doClearOldEntries() {
-        List<PathInfo> files = new ArrayList<>();
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
-            for (Path path : ds) {
-                try {
-                    files.add(new PathInfo(path));
-                } catch (IOException e) {
-                    log.error(e, e);
-                }
-            }
-        } catch (IOException e) {
-            log.error(e, e);
-        }
-        Collections.sort(files); // sort by most recent first
+    /**
+     * Gets the number of lookups that didn't find the file in the cache.
+     *
+     * @since 8.3
+     */
+    public long getMisses() {
+        return misses.get();
+    }
 
-        long size = 0;
-        long count = 0;
-        long threshold = System.currentTimeMillis() - minAgeMillis;
-        for (PathInfo pi : files) {
-            size += pi.size;
-            count++;
-            if (pi.time < threshold) {
-                // old enough to be candidate
-                if (size > maxSize || count > maxCount) {
-                    // delete file
+    /**
+     * Gets the number of files evicted from the cache.
+     *
+     * @since 8.3
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (index) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
+                for (Path path : ds) {
                     try {
-                        Files.delete(pi.path);
-                        size -= pi.size;
-                        count--;
+                        Files.delete(path);
                     } catch (IOException e) {
                         log.error(e, e);
                     }
                 }
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+            // files that couldn't be deleted will be found again
+            index.clear();
+            size = 0;
+            loaded = false;
+        }
+    }
+
+    /**
+     * Clears cache entries if they are old enough and their size makes the cache bigger than its maximum size.
+     * <p>
+     * Must be called while holding the index lock.
+     */
+    protected void clearOldEntries() {
+        long threshold = System.currentTimeMillis() - minAgeMillis;
+        Iterator<Map.Entry<String, CacheEntry>> it = index.entrySet().iterator();
+        while ((size > maxSize || index.size() > maxCount) && it.hasNext()) {
+            Map.Entry<String, CacheEntry> en = it.next();
+            CacheEntry entry = en.getValue();
+            if (entry.time >= threshold) {
+                // this entry and the following ones are too recent
+                break;
+            }
+            try {
+                Files.deleteIfExists(dir.resolve(en.getKey()));
+            } catch (IOException e) {
+                log.error(e, e);
+                continue;
             }
+            it.remove();
+            size -= entry.size;
+            evictions.incrementAndGet();
         }
     }
 
@@ -244,10 +311,8 @@ public class LRUFileCache implements FileCache {
         try {
             // check the cache
             checkKey(key);
-            Path path = dir.resolve(key);
-            if (Files.exists(path)) {
-                recordAccess(path);
-                return path.toFile();
+            if (recordAccess(key)) {
+                return dir.resolve(key).toFile();
             }
 
             // store the stream in a temporary file
@@ -273,41 +338,78 @@ public class LRUFileCache implements FileCache {
         // put file in cache
         checkKey(key);
         Path path = dir.resolve(key);
-        try {
-            Files.move(source, path);
-            recordAccess(path);
-            clearOldEntries();
-        } catch (FileAlreadyExistsException faee) {
-            // already something there
-            recordAccess(path);
-            // remove unused tmp file
+        long length = Files.size(source);
+        synchronized (index) {
+            loadIndex();
             try {
-                Files.delete(source);
-            } catch (IOException e) {
-                log.error(e, e);
+                Files.move(source, path);
+                CacheEntry old = index.put(key, new CacheEntry(length, System.currentTimeMillis()));
+                size += length - (old == null ? 0 : old.size);
+                clearOldEntries();
+                return path.toFile();
+            } catch (FileAlreadyExistsException faee) {
+                // already something there
+                CacheEntry entry = index.get(key);
+                if (entry != null) {
+                    entry.time = System.currentTimeMillis();
+                } else {
+                    // not indexed, put there behind our back
+                    long existing = Files.size(path);
+                    index.put(key, new CacheEntry(existing, System.currentTimeMillis()));
+                    size += existing;
+                }
             }
         }
+        // remove unused tmp file
+        try {
+            Files.delete(source);
+        } catch (IOException e) {
+            log.error(e, e);
+        }
         return path.toFile();
     }
 
     @Override
     public File getFile(String key) {
         checkKey(key);
-        Path path = dir.resolve(key);
-        if (!Files.exists(path)) {
+        if (!recordAccess(key)) {
+            misses.incrementAndGet();
             return null;
         }
-        recordAccess(path);
-        return path.toFile();
+        hits.incrementAndGet();
+        return dir.resolve(key).toFile();
     }
 
-    /** Records access to a file by changing its modification time. */
-    protected void recordAccess(Path path) {
-        try {
-            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
-        } catch (IOException e) {
-            log.error(e, e);
+    /**
+     * Records access to a cached file, making it the most recently used.
+     * <p>
+     * An indexed file that was deleted behind our back is removed from the index. Its existence is checked without
+     * holding the index lock.
+     *
+     * @return {@code true} if the file is in the cache, {@code false} otherwise
+     * @since 8.3
+     */
+    protected boolean recordAccess(String key) {
+        CacheEntry entry;
+        synchronized (index) {
+            loadIndex();
+            entry = index.get(key);
+            if (entry == null) {
+                return false;
+            }
+            entry.time = System.currentTimeMillis();
+        }
+        if (Files.exists(dir.resolve(key))) {
+            return true;
+        }
+        synchronized (index) {
+            // unless it was evicted or replaced meanwhile
+            if (index.get(key) == entry) {
+                index.remove(key);
+                size -= entry.size;
+            }
         }
+        return false;
     }
 
 }
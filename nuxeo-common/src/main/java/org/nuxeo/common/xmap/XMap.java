@@ -99,6 +99,17 @@ public class XMap {
 
     private static DocumentBuilderFactory factory = initFactory();
 
+    /**
+     * Creates a document builder from the shared factory, which is not guaranteed to be thread-safe.
+     *
+     * @since 8.3
+     */
+    public static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
     // top level objects
     private final Map<String, XAnnotatedObject> roots;
 
@@ -259,8 +270,7 @@ public class XMap {
      */
     public Object load(Context ctx, InputStream in) throws IOException {
         try {
-            DocumentBuilderFactory factory = getFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = newDocumentBuilder();
             Document document = builder.parse(in);
             return load(ctx, document.getDocumentElement());
         } catch (ParserConfigurationException e) {
@@ -334,8 +344,7 @@ public class XMap {
      */
     public Object[] loadAll(Context ctx, InputStream in) throws IOException {
         try {
-            DocumentBuilderFactory factory = getFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = newDocumentBuilder();
             Document document = builder.parse(in);
             return loadAll(ctx, document.getDocumentElement());
         } catch (ParserConfigurationException e) {
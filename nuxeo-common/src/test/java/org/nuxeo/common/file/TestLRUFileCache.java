@@ -20,6 +20,7 @@ package org.nuxeo.common.file;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -39,7 +40,6 @@ public class TestLRUFileCache {
         dir = File.createTempFile("nxtestlrufilecache.", "", new File(System.getProperty("java.io.tmpdir")));
         dir.delete();
         dir.mkdir();
-        LRUFileCache.CLEAR_OLD_ENTRIES_INTERVAL_MILLIS = 0; // clear immediately
     }
 
     @After
@@ -154,4 +154,80 @@ public class TestLRUFileCache {
         assertEquals(0, cache.getNumberOfItems());
     }
 
+    protected void createFile(String name, int length, long lastModified) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeByteArrayToFile(file, new byte[length]);
+        file.setLastModified(lastModified);
+    }
+
+    @Test
+    public void testLRUFileCacheLoadsExistingFiles() throws Exception {
+        long now = System.currentTimeMillis();
+        createFile("old", 30, now - 30000);
+        createFile("older", 30, now - 60000);
+        createFile("recent", 30, now - 10000);
+        LRUFileCache cache = new LRUFileCache(dir, 50, 9999, 1);
+        assertEquals(3, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+
+        // least recently modified files are evicted first
+        cache.putFile("new", new ByteArrayInputStream(new byte[10]));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(40, cache.getSize());
+        assertFalse(new File(dir, "older").exists());
+        assertFalse(new File(dir, "old").exists());
+        assertTrue(new File(dir, "recent").exists());
+        assertTrue(new File(dir, "new").exists());
+    }
+
+    @Test
+    public void testLRUFileCacheEvictsLeastRecentlyAccessed() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 10000, 2, 0); // 2 files max
+        byte[] buf = new byte[30];
+
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        // access 1, making 2 the least recently used
+        assertNotNull(cache.getFile("1"));
+        Thread.sleep(10);
+        cache.putFile("3", new ByteArrayInputStream(buf));
+        assertEquals(2, cache.getNumberOfItems());
+        assertTrue(new File(dir, "1").exists());
+        assertFalse(new File(dir, "2").exists());
+        assertTrue(new File(dir, "3").exists());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testLRUFileCacheHitsAndMisses() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 10000, 9999, 1);
+        assertNull(cache.getFile("1"));
+        cache.putFile("1", new ByteArrayInputStream(new byte[30]));
+        assertNotNull(cache.getFile("1"));
+        assertNotNull(cache.getFile("1"));
+        assertNull(cache.getFile("2"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testLRUFileCacheFileDeletedBehindOurBack() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 10000, 9999, 1);
+        cache.putFile("1", new ByteArrayInputStream(new byte[30]));
+        assertNotNull(cache.getFile("1"));
+        assertTrue(new File(dir, "1").delete());
+        // the missing file is a miss and is dropped from the index
+        assertNull(cache.getFile("1"));
+        assertEquals(0, cache.getNumberOfItems());
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getMisses());
+        // and can be cached again
+        File file = cache.putFile("1", new ByteArrayInputStream(new byte[20]));
+        assertTrue(file.exists());
+        assertEquals(20, cache.getSize());
+    }
+
 }
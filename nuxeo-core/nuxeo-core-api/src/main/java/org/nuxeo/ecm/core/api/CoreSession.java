@@ -1074,6 +1074,20 @@ public interface CoreSession extends AutoCloseable {
      */
     IterableQueryResult queryAndFetch(String query, String queryType, boolean distinctDocuments, Object... params);
 
+    /**
+     * Executes the given NXQL query and returns a page of maps containing the requested properties.
+     * <p>
+     * Unlike {@link #queryAndFetch}, the limit and offset are applied by the repository, so only the rows of the page
+     * are read, and no document is loaded.
+     *
+     * @param query the NXQL query to execute
+     * @param limit the maximum number of rows to retrieve, or 0 for all of them
+     * @param offset the offset (starting at 0) into the list of rows
+     * @return the rows of the page, without total size
+     * @since 8.3
+     */
+    PartialList<Map<String, Serializable>> queryProjection(String query, long limit, long offset);
+
     /** -------------------------- Security API --------------------------- * */
 
     /**
@@ -35,7 +35,8 @@ import org.nuxeo.ecm.core.convert.api.ConversionService;
  */
 public class ConversionCacheEntry {
 
-    protected Date lastAccessTime;
+    /** Updated by concurrent readers of the cache. */
+    protected volatile long lastAccessTime;
 
     protected BlobHolder bh;
 
@@ -51,7 +52,7 @@ public class ConversionCacheEntry {
     }
 
     protected void updateAccessTime() {
-        lastAccessTime = new Date();
+        lastAccessTime = System.currentTimeMillis();
     }
 
     public boolean persist(String basePath) throws IOException {
@@ -93,6 +94,13 @@ public class ConversionCacheEntry {
     }
 
     public Date getLastAccessedTime() {
+        return new Date(lastAccessTime);
+    }
+
+    /**
+     * @since 8.3
+     */
+    public long getLastAccessedTimeMillis() {
         return lastAccessTime;
     }
 
@@ -21,14 +21,10 @@
  */
 package org.nuxeo.ecm.core.convert.cache;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -68,16 +64,7 @@ public class ConversionCacheGCManager {
     }
 
     public static long getCacheSizeInKB() {
-        long totalSize = 0;
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            if (cacheEntry != null) {
-                totalSize += cacheEntry.getDiskSpaceUsageInKB();
-            }
-        }
-        return totalSize;
+        return ConversionCacheHolder.getCacheSizeInKB();
     }
 
     public static boolean gcIfNeeded() {
@@ -105,31 +92,20 @@ public class ConversionCacheGCManager {
         return true;
     }
 
+    /**
+     * Evicts the least recently used entries until at least the given disk space is freed.
+     */
     public static void doGC(long deltaInKB) {
-
-        Set<String> cacheKeys = ConversionCacheHolder.getCacheKeys();
-
-        Map<Date, String> sortingMap = new HashMap<Date, String>();
-
-        for (String key : cacheKeys) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(key);
-            Objects.requireNonNull(cacheEntry, key);
-            sortingMap.put(cacheEntry.getLastAccessedTime(), key);
+        // snapshot access times, as they are concurrently updated
+        List<Entry<String, Long>> entries = new ArrayList<>();
+        for (Entry<String, ConversionCacheEntry> entry : ConversionCacheHolder.getCacheEntries()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().getLastAccessedTimeMillis()));
         }
-
-        List<Date> accessTimeList = new ArrayList<Date>();
-        accessTimeList.addAll(sortingMap.keySet());
-        Collections.sort(accessTimeList);
+        entries.sort(Entry.comparingByValue());
 
         long deletedVolume = 0;
-        for (Date accessDate : accessTimeList) {
-            ConversionCacheEntry cacheEntry = ConversionCacheHolder.getCacheEntry(sortingMap.get(accessDate));
-
-            long deletePotential = cacheEntry.getDiskSpaceUsageInKB();
-
-            deletedVolume += deletePotential;
-            ConversionCacheHolder.removeFromCache(sortingMap.get(accessDate));
-
+        for (Entry<String, Long> entry : entries) {
+            deletedVolume += ConversionCacheHolder.evictFromCache(entry.getKey());
             if (deletedVolume > deltaInKB) {
                 break;
             }
@@ -22,13 +22,16 @@ package org.nuxeo.ecm.core.convert.cache;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.logging.Log;
@@ -37,17 +40,44 @@ import org.nuxeo.common.utils.Path;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * Manager for the cache system of the {@link ConversionService}.
+ * <p>
+ * Entries are kept in a concurrent map, writes for a given key are serialized using a striped lock, and the total disk
+ * usage is maintained incrementally so that the GC does not need to scan the whole cache to check the limit.
+ * <p>
+ * Identical conversions running concurrently are computed only once, see {@link #getOrConvert}.
  *
  * @author tiry
  */
 public class ConversionCacheHolder {
 
-    protected static final Map<String, ConversionCacheEntry> cache = new HashMap<>();
+    protected static final ConcurrentMap<String, ConversionCacheEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Conversions in progress, for single-flight.
+     *
+     * @since 8.3
+     */
+    protected static final ConcurrentMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    /** @since 8.3 */
+    protected static final int LOCK_STRIPES = 64;
 
-    protected static final ReentrantReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    /** @since 8.3 */
+    protected static final Object[] locks = new Object[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
 
     private static final Log log = LogFactory.getLog(ConversionCacheHolder.class);
 
@@ -55,18 +85,83 @@ public class ConversionCacheHolder {
 
     public static int subPathPartSize = 2;
 
+    /**
+     * @deprecated since 8.3, use {@link #getCacheHits} instead, this field is only a copy of the hits counter
+     */
+    @Deprecated
     public static long cacheHits = 0;
 
+    /** @since 8.3 */
+    protected static final AtomicLong cacheHitCount = new AtomicLong();
+
+    /** @since 8.3 */
+    protected static final AtomicLong cacheMisses = new AtomicLong();
+
+    /** @since 8.3 */
+    protected static final AtomicLong cacheEvictions = new AtomicLong();
+
+    /** @since 8.3 */
+    protected static final AtomicLong cacheSizeInKB = new AtomicLong();
+
+    static {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        registerGauge(registry, "hits", cacheHitCount::get);
+        registerGauge(registry, "misses", cacheMisses::get);
+        registerGauge(registry, "evictions", cacheEvictions::get);
+        registerGauge(registry, "size-kb", cacheSizeInKB::get);
+        registerGauge(registry, "entries", () -> Long.valueOf(cache.size()));
+    }
+
+    protected static void registerGauge(MetricRegistry registry, String name, Gauge<Long> gauge) {
+        String fullName = MetricRegistry.name("nuxeo", "conversion", "cache", name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
     // Utility class.
     private ConversionCacheHolder() {
     }
 
     public static long getCacheHits() {
-        return cacheHits;
+        return cacheHitCount.get();
+    }
+
+    /**
+     * @since 8.3
+     */
+    protected static void recordHit() {
+        cacheHits = cacheHitCount.incrementAndGet();
+    }
+
+    /**
+     * @since 8.3
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @since 8.3
+     */
+    public static long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    /**
+     * Gets the disk space used by the cache, maintained incrementally.
+     *
+     * @since 8.3
+     */
+    public static long getCacheSizeInKB() {
+        return cacheSizeInKB.get();
     }
 
     public static int getNbCacheEntries() {
-        return cache.keySet().size();
+        return cache.size();
+    }
+
+    protected static Object getLock(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
     }
 
     protected static List<String> getSubPathFromKey(String key) {
@@ -107,11 +202,8 @@ public class ConversionCacheHolder {
 
     public static void addToCache(String key, BlobHolder result) {
         Objects.requireNonNull(key);
-        cacheLock.writeLock().lock();
-        try {
+        synchronized (getLock(key)) {
             doAddToCache(key, result);
-        } finally {
-            cacheLock.writeLock().unlock();
         }
     }
 
@@ -126,82 +218,142 @@ public class ConversionCacheHolder {
         }
 
         if (persisted) {
-            cache.put(key, cce);
+            ConversionCacheEntry old = cache.put(key, cce);
+            if (old != null) {
+                cacheSizeInKB.addAndGet(-old.getDiskSpaceUsageInKB());
+            }
+            cacheSizeInKB.addAndGet(cce.getDiskSpaceUsageInKB());
         }
     }
 
     public static void removeFromCache(String key) {
-        cacheLock.writeLock().lock();
-        try {
+        synchronized (getLock(key)) {
             doRemoveFromCache(key);
-        } finally {
-            cacheLock.writeLock().unlock();
         }
-
     }
 
-    protected static void doRemoveFromCache(String key) {
-        if (cache.containsKey(key)) {
-            ConversionCacheEntry cce = cache.get(key);
+    protected static ConversionCacheEntry doRemoveFromCache(String key) {
+        ConversionCacheEntry cce = cache.remove(key);
+        if (cce != null) {
             cce.remove();
-            cache.remove(key);
+            cacheSizeInKB.addAndGet(-cce.getDiskSpaceUsageInKB());
         }
+        return cce;
     }
 
-    public static ConversionCacheEntry getCacheEntry(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetCacheEntry(key);
-        } finally {
-            cacheLock.readLock().unlock();
+    /**
+     * Evicts an entry from the cache to free disk space.
+     *
+     * @return the disk space freed, in KB
+     * @since 8.3
+     */
+    public static long evictFromCache(String key) {
+        ConversionCacheEntry cce;
+        synchronized (getLock(key)) {
+            cce = doRemoveFromCache(key);
+        }
+        if (cce == null) {
+            return 0;
         }
+        cacheEvictions.incrementAndGet();
+        return cce.getDiskSpaceUsageInKB();
     }
 
-    protected static ConversionCacheEntry doGetCacheEntry(String key) {
+    public static ConversionCacheEntry getCacheEntry(String key) {
         return cache.get(key);
     }
 
-    public static BlobHolder getFromCache(String key) {
-        cacheLock.readLock().lock();
-        try {
-            return doGetFromCache(key);
-        } finally {
-            cacheLock.readLock().unlock();
-        }
+    /**
+     * Gets a snapshot of the cache entries.
+     *
+     * @since 8.3
+     */
+    public static List<Map.Entry<String, ConversionCacheEntry>> getCacheEntries() {
+        return new ArrayList<>(cache.entrySet());
     }
 
-    protected static BlobHolder doGetFromCache(String key) {
+    public static BlobHolder getFromCache(String key) {
         ConversionCacheEntry cacheEntry = cache.get(key);
         if (cacheEntry != null) {
-            if (cacheHits == Long.MAX_VALUE) {
-                cacheHits = 0;
-            } else {
-                cacheHits += 1;
+            BlobHolder result = cacheEntry.restore();
+            if (result != null) {
+                recordHit();
+                return result;
             }
-            return cacheEntry.restore();
         }
+        cacheMisses.incrementAndGet();
         return null;
     }
 
-    public static Set<String> getCacheKeys() {
-        cacheLock.readLock().lock();
+    /**
+     * Gets a conversion result from the cache, or computes it and adds it to the cache.
+     * <p>
+     * If the same conversion is already in progress in another thread, waits for it to finish and uses its cached
+     * result instead of converting again. If that result could not be cached, converts anyway.
+     *
+     * @param key the cache key
+     * @param converter the conversion to run on a cache miss
+     * @return the conversion result
+     * @since 8.3
+     */
+    public static BlobHolder getOrConvert(String key, Supplier<BlobHolder> converter) {
+        Objects.requireNonNull(key);
+        BlobHolder result = getFromCache(key);
+        if (result != null) {
+            return result;
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            // same conversion in progress, wait for it
+            try {
+                running.join();
+            } catch (RuntimeException e) {
+                // failed in the other thread, try on our own
+                log.debug("Concurrent conversion failed for key: " + key, e);
+            }
+            ConversionCacheEntry cacheEntry = cache.get(key);
+            if (cacheEntry != null) {
+                result = cacheEntry.restore();
+                if (result != null) {
+                    recordHit();
+                    return result;
+                }
+            }
+            result = converter.get();
+            addToCache(key, result);
+            return result;
+        }
         try {
-            return new HashSet<>(cache.keySet());
+            // check again, a conversion may have completed since our first check
+            ConversionCacheEntry cacheEntry = cache.get(key);
+            if (cacheEntry != null) {
+                result = cacheEntry.restore();
+            }
+            if (result == null) {
+                result = converter.get();
+                addToCache(key, result);
+            }
+            future.complete(null);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
         } finally {
-            cacheLock.readLock().unlock();
+            inFlight.remove(key, future);
         }
     }
 
+    public static Set<String> getCacheKeys() {
+        return new HashSet<>(cache.keySet());
+    }
+
     /**
      * @since 6.0
      */
     public static void deleteCache() {
-        cacheLock.writeLock().lock();
-        try {
-            cache.clear();
-            new File(ConversionServiceImpl.getCacheBasePath()).delete();
-        } finally {
-            cacheLock.writeLock().unlock();
-        }
+        cache.clear();
+        cacheSizeInKB.set(0);
+        new File(ConversionServiceImpl.getCacheBasePath()).delete();
     }
 }
@@ -198,14 +198,16 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
         String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
 
-        BlobHolder result = ConversionCacheHolder.getFromCache(cacheKey);
-
-        if (result == null) {
-            Converter converter = desc.getConverterInstance();
-            result = converter.convert(blobHolder, parameters);
-
-            if (config.isCacheEnabled()) {
-                ConversionCacheHolder.addToCache(cacheKey, result);
+        Converter converter = desc.getConverterInstance();
+        Map<String, Serializable> params = parameters;
+        BlobHolder result;
+        if (config.isCacheEnabled()) {
+            // identical concurrent conversions are only run once
+            result = ConversionCacheHolder.getOrConvert(cacheKey, () -> converter.convert(blobHolder, params));
+        } else {
+            result = ConversionCacheHolder.getFromCache(cacheKey);
+            if (result == null) {
+                result = converter.convert(blobHolder, parameters);
             }
         }
 
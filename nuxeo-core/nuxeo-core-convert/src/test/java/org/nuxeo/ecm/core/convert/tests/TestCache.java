@@ -25,6 +25,14 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,6 +44,7 @@ import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
 import org.nuxeo.ecm.core.convert.api.ConversionService;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheGCManager;
 import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
+import org.nuxeo.ecm.core.convert.cache.SimpleCachableBlobHolder;
 import org.nuxeo.ecm.core.convert.extension.Converter;
 import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
 import org.nuxeo.runtime.api.Framework;
@@ -88,10 +97,56 @@ public class TestCache {
         assertEquals(1, cacheHits2 - cacheHits1);
 
         // force GC
+        long evictions = ConversionCacheHolder.getCacheEvictions();
         ConversionCacheGCManager.doGC(file.length() / 1024);
 
         int cacheSize3 = ConversionCacheHolder.getNbCacheEntries();
         assertEquals(0, cacheSize1 - cacheSize3);
+        assertTrue(ConversionCacheHolder.getCacheEvictions() > evictions);
+    }
+
+    @Test
+    public void testConcurrentIdenticalConversions() throws Exception {
+        File file = FileUtils.getResourceFileFromContext("test-data/hello.doc");
+        Blob blob = Blobs.createBlob(file, "application/msword", null, "hello.doc");
+        String key = "testConcurrentIdenticalConversions";
+        AtomicInteger conversions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        int nbThreads = 4;
+        CountDownLatch arrived = new CountDownLatch(nbThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<BlobHolder>> futures = new ArrayList<>();
+            for (int i = 0; i < nbThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    arrived.countDown();
+                    return ConversionCacheHolder.getOrConvert(key, () -> {
+                        conversions.incrementAndGet();
+                        started.countDown();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new SimpleCachableBlobHolder(blob);
+                    });
+                }));
+            }
+            // all threads are asking for the conversion while it's in progress
+            assertTrue(arrived.await(10, TimeUnit.SECONDS));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            release.countDown();
+            for (Future<BlobHolder> future : futures) {
+                assertNotNull(future.get(10, TimeUnit.SECONDS).getBlob());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, conversions.get());
+        assertNotNull(ConversionCacheHolder.getCacheEntry(key));
+        ConversionCacheHolder.removeFromCache(key);
     }
 
 }
@@ -118,6 +118,8 @@ public class AsyncEventExecutor {
 
         protected int retryCount;
 
+        protected boolean batchable;
+
         protected transient EventListenerDescriptor listener;
 
         public ListenerWork(EventListenerDescriptor listener, EventBundle bundle) {
@@ -153,6 +155,7 @@ public class AsyncEventExecutor {
             if (retryCount < 0) {
                 retryCount = DEFAULT_RETRY_COUNT;
             }
+            batchable = listener.isBatchable();
         }
 
         @Override
@@ -170,6 +173,12 @@ public class AsyncEventExecutor {
             return retryCount;
         }
 
+        @Override
+        public boolean isBatchable() {
+            // opt-in per listener, only idempotent listeners can be run again after a batch failure
+            return batchable;
+        }
+
         @Override
         public void work() {
             EventService eventService = Framework.getLocalService(EventService.class);
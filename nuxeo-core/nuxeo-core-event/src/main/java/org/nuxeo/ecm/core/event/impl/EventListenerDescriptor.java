@@ -93,6 +93,16 @@ public class EventListenerDescriptor {
     @XNode("@singlethread")
     protected boolean singleThreaded = false;
 
+    /**
+     * Applies only for async listeners. Whether the listener can be run in a batch with other executions of the same
+     * listener, sharing their transaction. Only idempotent listeners may be batched, as a failure of the batch runs
+     * each execution again on its own.
+     *
+     * @since 8.3
+     */
+    @XNode("@batchable")
+    protected Boolean batchable;
+
     protected Set<String> events;
 
     protected RuntimeContext rc;
@@ -234,6 +244,10 @@ public class EventListenerDescriptor {
         if (other.retryCount != null) {
             this.retryCount = other.retryCount;
         }
+
+        if (other.batchable != null) {
+            this.batchable = other.batchable;
+        }
     }
 
     public final boolean acceptEvent(String eventName) {
@@ -252,6 +266,13 @@ public class EventListenerDescriptor {
         return singleThreaded;
     }
 
+    /**
+     * @since 8.3
+     */
+    public boolean isBatchable() {
+        return batchable == null ? false : batchable.booleanValue();
+    }
+
     /**
      * Filters the event bundle to only keep events of interest to this listener.
      *
@@ -23,6 +23,7 @@ import static org.nuxeo.ecm.core.work.api.Work.Progress.PROGRESS_INDETERMINATE;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 
 import javax.security.auth.login.LoginContext;
@@ -122,6 +123,13 @@ public abstract class AbstractWork implements Work {
 
     protected transient LoginContext loginContext;
 
+    /**
+     * The {@link WorkBatch} running this work, whose system session is reused, if any.
+     *
+     * @since 8.3
+     */
+    protected transient WorkBatch batch;
+
     protected WorkSchedulePath schedulePath;
 
     protected String callerThread;
@@ -267,6 +275,11 @@ public abstract class AbstractWork implements Work {
      * @since 8.1
      */
     public void openSystemSession() {
+        if (batch != null) {
+            // reuse the session of the batch
+            session = batch.getBatchSession();
+            return;
+        }
         session = CoreInstance.openCoreSessionSystem(repositoryName, originatingUsername);
     }
 
@@ -311,6 +324,12 @@ public abstract class AbstractWork implements Work {
      * @since 5.8
      */
     public void closeSession() {
+        if (batch != null) {
+            // closed by the batch
+            batch = null;
+            session = null;
+            return;
+        }
         if (session != null) {
             session.close();
             session = null;
@@ -446,6 +465,51 @@ public abstract class AbstractWork implements Work {
     @Override
     public abstract void work();
 
+    /**
+     * Checks if this work can be run in a {@link WorkBatch} together with other works of the same category, repository
+     * and originating user, sharing their transaction and system session.
+     * <p>
+     * Batching only happens in queues configured for it. Works that do their own transaction management, or that are
+     * not idempotent, must not be batchable, as a failure of the batch causes each work to be run again on its own.
+     *
+     * @return {@code true} if the work can be batched
+     * @since 8.3
+     */
+    public boolean isBatchable() {
+        return false;
+    }
+
+    /**
+     * Checks if this work can be run in the same {@link WorkBatch} as another work.
+     *
+     * @since 8.3
+     */
+    public boolean isBatchableWith(AbstractWork other) {
+        return isBatchable() && other.isBatchable() //
+                && getClass() == other.getClass() //
+                && getCategory().equals(other.getCategory()) //
+                && Objects.equals(repositoryName, other.repositoryName) //
+                && Objects.equals(originatingUsername, other.originatingUsername);
+    }
+
+    /**
+     * Does the work as part of a {@link WorkBatch}, in the batch transaction. {@link #openSystemSession} reuses the
+     * session of the batch, opened on first use.
+     * <p>
+     * {@link #cleanUp} is not called, the batch calls it once its transaction is done.
+     *
+     * @since 8.3
+     */
+    protected void workInBatch(WorkBatch batch) {
+        this.batch = batch;
+        setStartTime();
+        try {
+            work();
+        } finally {
+            setCompletionTime();
+        }
+    }
+
     /**
      * Gets the number of times that this Work instance can be retried in case of concurrent update exceptions.
      *
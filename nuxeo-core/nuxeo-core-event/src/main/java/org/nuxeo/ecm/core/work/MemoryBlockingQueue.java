@@ -19,7 +19,9 @@
  */
 package org.nuxeo.ecm.core.work;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,9 +29,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import org.nuxeo.ecm.core.work.api.Work;
@@ -44,72 +47,283 @@ import org.nuxeo.ecm.core.work.api.WorkQueueMetrics;
 public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     /**
-     * A {@link LinkedBlockingQueue} that blocks on {@link #offer} and prevents starvation deadlocks on reentrant calls.
+     * A bounded FIFO queue whose producers wait on a condition until there is room, and that prevents starvation
+     * deadlocks on reentrant calls.
+     * <p>
+     * Work threads may schedule new work from inside a running work: they can use an additional quota of the same size
+     * as the capacity, so that they don't wait for themselves. Space is reserved with {@link #reserve} before the
+     * element is added with {@link #putReserved}, so that the wait can happen outside of any other lock.
+     * <p>
+     * The lock is fair, and waiting producers are woken up one at a time in arrival order, reentrant ones first.
+     *
+     * @since 8.3
      */
-    private static class ReentrantLinkedBlockingQueue<T> extends LinkedBlockingQueue<T> {
+    protected static class BoundedReentrantQueue<T> {
+
+        protected final ReentrantLock lock = new ReentrantLock(true);
+
+        protected final Condition notEmpty = lock.newCondition();
+
+        /**
+         * Signaled to all waiters when an element is added, for consumers waiting for a matching element. They don't
+         * wait on {@link #notEmpty}, so that they never consume a signal meant for a regular consumer.
+         */
+        protected final Condition added = lock.newCondition();
+
+        /** Signaled when there is room for a non-reentrant producer. */
+        protected final Condition notFull = lock.newCondition();
 
-        private static final long serialVersionUID = 1L;
+        /** Signaled when there is room for a reentrant producer. */
+        protected final Condition notFullReentrant = lock.newCondition();
 
-        private final ReentrantLock limitedPutLock = new ReentrantLock();
+        protected final Deque<T> items = new ArrayDeque<>();
 
-        private final int limitedCapacity;
+        protected final int capacity;
+
+        /** Number of elements plus reserved slots. */
+        protected int count;
 
         /**
-         * Creates a {@link LinkedBlockingQueue} with a maximum capacity.
+         * Creates a queue with a maximum capacity.
          * <p>
-         * If the capacity is -1 then this is treated as a regular unbounded {@link LinkedBlockingQueue}.
+         * If the capacity is -1 then the queue is unbounded.
          *
          * @param capacity the capacity, or -1 for unbounded
          */
-        public ReentrantLinkedBlockingQueue(int capacity) {
-            // Allocate more space to prevent starvation dead lock
-            // because a worker can add a new job to the queue.
-            super(capacity < 0 ? Integer.MAX_VALUE : (2 * capacity));
-            limitedCapacity = capacity;
+        public BoundedReentrantQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        protected int limit(boolean reentrant) {
+            if (capacity < 0) {
+                return Integer.MAX_VALUE;
+            }
+            return reentrant ? 2 * capacity : capacity;
         }
 
         /**
-         * Block until there are enough remaining capacity to put the entry.
+         * Waits until there is room for a new element and reserves it.
+         *
+         * @param reentrant {@code true} if called from a work thread, which can use the reserved reentrant quota
          */
-        public void limitedPut(T e) throws InterruptedException {
-            limitedPutLock.lockInterruptibly();
+        public void reserve(boolean reentrant) throws InterruptedException {
+            int limit = limit(reentrant);
+            Condition condition = reentrant ? notFullReentrant : notFull;
+            lock.lockInterruptibly();
             try {
-                while (remainingCapacity() < limitedCapacity) {
-                    // TODO replace by wakeup when an element is removed
-                    Thread.sleep(100);
+                while (count >= limit) {
+                    try {
+                        condition.await();
+                    } catch (InterruptedException e) {
+                        // pass a signal we may have consumed to another producer
+                        signalNotFull();
+                        throw e;
+                    }
                 }
-                put(e);
+                count++;
             } finally {
-                limitedPutLock.unlock();
+                lock.unlock();
             }
         }
 
-        @Override
-        public boolean offer(T e) {
-            if (limitedCapacity < 0) {
-                return super.offer(e);
-            }
-            // turn non-blocking offer into a blocking put
+        /**
+         * Waits up to the specified time for room for a new element and reserves it.
+         *
+         * @param reentrant {@code true} if called from a work thread, which can use the reserved reentrant quota
+         * @return {@code true} if a slot was reserved, {@code false} if the time elapsed first
+         */
+        public boolean reserve(boolean reentrant, long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            int limit = limit(reentrant);
+            Condition condition = reentrant ? notFullReentrant : notFull;
+            lock.lockInterruptibly();
             try {
-                if (Thread.currentThread()
-                        .getName()
-                        .startsWith(WorkManagerImpl.THREAD_PREFIX)) {
-                    // use the full queue capacity for reentrant call
-                    put(e);
-                } else {
-                    // put only if there are enough remaining capacity
-                    limitedPut(e);
+                while (count >= limit) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    try {
+                        nanos = condition.awaitNanos(nanos);
+                    } catch (InterruptedException e) {
+                        // pass a signal we may have consumed to another producer
+                        signalNotFull();
+                        throw e;
+                    }
                 }
+                count++;
                 return true;
-            } catch (InterruptedException ie) {
-                Thread.currentThread()
-                        .interrupt();
-                throw new RuntimeException("interrupted", ie);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Releases a slot obtained by {@link #reserve} without adding an element.
+         */
+        public void cancelReservation() {
+            lock.lock();
+            try {
+                count--;
+                signalNotFull();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Adds an element in a slot obtained by {@link #reserve}. Never blocks.
+         */
+        public void putReserved(T e) {
+            lock.lock();
+            try {
+                items.addLast(e);
+                notEmpty.signal();
+                added.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void put(T e, boolean reentrant) throws InterruptedException {
+            reserve(reentrant);
+            putReserved(e);
+        }
+
+        /**
+         * Adds an element, waiting up to the specified time for room.
+         *
+         * @return {@code true} if the element was added, {@code false} if the time elapsed first
+         */
+        public boolean offer(T e, boolean reentrant, long timeout, TimeUnit unit) throws InterruptedException {
+            if (!reserve(reentrant, timeout, unit)) {
+                return false;
+            }
+            putReserved(e);
+            return true;
+        }
+
+        public T poll() {
+            lock.lock();
+            try {
+                return dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while (items.isEmpty()) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public T take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (items.isEmpty()) {
+                    notEmpty.await();
+                }
+                return dequeue();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Retrieves and removes the first element matching the predicate, waiting up to the specified time for one to
+         * become available.
+         *
+         * @return the element, or {@code null} if none was available in time
+         */
+        public T pollMatching(Predicate<? super T> predicate, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                for (;;) {
+                    for (Iterator<T> it = items.iterator(); it.hasNext();) {
+                        T e = it.next();
+                        if (predicate.test(e)) {
+                            it.remove();
+                            count--;
+                            signalNotFull();
+                            return e;
+                        }
+                    }
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = added.awaitNanos(nanos);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Removes the first element matching the predicate.
+         *
+         * @return {@code true} if an element was removed
+         */
+        public boolean removeFirst(Predicate<? super T> predicate) {
+            lock.lock();
+            try {
+                for (Iterator<T> it = items.iterator(); it.hasNext();) {
+                    if (predicate.test(it.next())) {
+                        it.remove();
+                        count--;
+                        signalNotFull();
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int size() {
+            lock.lock();
+            try {
+                return items.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        protected T dequeue() {
+            T e = items.pollFirst();
+            if (e != null) {
+                count--;
+                signalNotFull();
+                if (!items.isEmpty()) {
+                    notEmpty.signal();
+                }
+            }
+            return e;
+        }
+
+        protected void signalNotFull() {
+            if (count < limit(true)) {
+                notFullReentrant.signal();
+            }
+            if (count < limit(false)) {
+                notFull.signal();
             }
         }
     }
 
-    protected final BlockingQueue<Runnable> queue;
+    protected final BoundedReentrantQueue<Runnable> queue;
 
     protected final Map<String, Work> works = new HashMap<>();
 
@@ -117,6 +331,11 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     protected final Set<String> runningWorks = new HashSet<>();
 
+    /** Maximum number of works run in a {@link WorkBatch}, 1 for no batching. */
+    protected int batchMaxSize = 1;
+
+    protected long batchMaxDelay;
+
     long scheduledCount;
     long runningCount;
     long completedCount;
@@ -125,13 +344,32 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
     /**
      * Creates a {@link BlockingQueue} with a maximum capacity.
      * <p>
-     * If the capacity is -1 then this is treated as a regular unbounded {@link LinkedBlockingQueue}.
+     * If the capacity is -1 then the queue is unbounded.
      *
      * @param capacity the capacity, or -1 for unbounded
      */
     public MemoryBlockingQueue(String id, MemoryWorkQueuing queuing, int capacity) {
         super(id, queuing);
-        queue = new ReentrantLinkedBlockingQueue<>(capacity);
+        queue = new BoundedReentrantQueue<>(capacity);
+    }
+
+    /**
+     * Enables batching of the batchable works taken from this queue.
+     *
+     * @param maxSize the maximum number of works in a batch
+     * @param maxDelay the maximum time to wait for more compatible works, in milliseconds
+     * @since 8.3
+     */
+    public void setBatching(int maxSize, long maxDelay) {
+        batchMaxSize = maxSize;
+        batchMaxDelay = maxDelay;
+    }
+
+    /**
+     * Checks if the caller is a work thread, scheduling new work from inside a running work.
+     */
+    protected static boolean isReentrant() {
+        return Thread.currentThread() instanceof WorkManagerImpl.WorkThread;
     }
 
     @Override
@@ -146,7 +384,21 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     @Override
     public void putElement(Runnable r) throws InterruptedException {
-        queue.put(r);
+        queue.put(r, isReentrant());
+    }
+
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.offer(r, isReentrant(), timeout, unit);
+    }
+
+    /**
+     * Adds an element in a slot previously reserved in the queue.
+     *
+     * @since 8.3
+     */
+    protected void putReservedElement(Runnable r) {
+        queue.putReserved(r);
     }
 
     @Override
@@ -158,7 +410,7 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
     @Override
     public Runnable take() throws InterruptedException {
         Runnable r = queue.take();
-        return r;
+        return coalesce(r);
     }
 
     @Override
@@ -168,21 +420,84 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         if (nanos <= 0) {
             return null;
         }
-        return queue.poll(nanos, TimeUnit.NANOSECONDS);
+        return coalesce(queue.poll(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Gathers the scheduled works compatible with the given one into a {@link WorkBatch}, if batching is enabled.
+     *
+     * @since 8.3
+     */
+    protected Runnable coalesce(Runnable r) {
+        if (batchMaxSize <= 1 || r == null) {
+            return r;
+        }
+        Work work = WorkHolder.getWork(r);
+        if (!(work instanceof AbstractWork) || !((AbstractWork) work).isBatchable()) {
+            return r;
+        }
+        AbstractWork first = (AbstractWork) work;
+        List<AbstractWork> batch = new ArrayList<>(batchMaxSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchMaxDelay);
+        while (batch.size() < batchMaxSize) {
+            Runnable next;
+            try {
+                next = queue.pollMatching(e -> isBatchableWith(first, e), deadline - System.nanoTime(),
+                        TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // don't lose the works already taken
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next == null) {
+                break;
+            }
+            batch.add((AbstractWork) WorkHolder.getWork(next));
+        }
+        if (batch.size() == 1) {
+            return r;
+        }
+        return new WorkHolder(new WorkBatch(batch));
     }
 
-    synchronized WorkQueueMetrics workSchedule(Work work) {
+    protected static boolean isBatchableWith(AbstractWork first, Runnable r) {
+        Work work = WorkHolder.getWork(r);
+        return work instanceof AbstractWork && first.isBatchableWith((AbstractWork) work);
+    }
+
+    WorkQueueMetrics workSchedule(Work work) {
         String id = work.getId();
-        if (scheduledWorks.contains(id)) {
-            return metrics();
+        synchronized (this) {
+            // an already scheduled work must neither wait for room nor take any
+            if (scheduledWorks.contains(id)) {
+                return metrics();
+            }
+        }
+        // wait for room outside of the monitor, so that running works can still update their state
+        try {
+            queue.reserve(isReentrant());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // restore interrupt status
+            throw new RuntimeException("interrupted", e);
         }
-        if (!offer(new WorkHolder(work))) {
+        synchronized (this) {
+            // scheduled concurrently while waiting
+            if (scheduledWorks.contains(id)) {
+                queue.cancelReservation();
+                return metrics();
+            }
+            try {
+                putReservedElement(new WorkHolder(work));
+            } catch (RuntimeException e) {
+                queue.cancelReservation();
+                throw e;
+            }
+            works.put(id, work);
+            scheduledWorks.add(id);
+            scheduledCount += 1;
             return metrics();
         }
-        works.put(id, work);
-        scheduledWorks.add(id);
-        scheduledCount += 1;
-        return metrics();
     }
 
     synchronized WorkQueueMetrics workRunning(Work work) {
@@ -197,16 +512,11 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
 
     synchronized WorkQueueMetrics workCanceled(Work work) {
         String id = work.getId();
-        for (Iterator<Runnable> it = queue.iterator(); it.hasNext();) {
-            if (id.equals(WorkHolder.getWork(it.next())
-                    .getId())) {
-                it.remove();
-                scheduledWorks.remove(id);
-                works.remove(id);
-                scheduledCount -= 1;
-                cancelledCount +=1 ;
-                break;
-            }
+        if (queue.removeFirst(r -> id.equals(WorkHolder.getWork(r).getId()))) {
+            scheduledWorks.remove(id);
+            works.remove(id);
+            scheduledCount -= 1;
+            cancelledCount += 1;
         }
         return metrics();
     }
@@ -221,13 +531,15 @@ public class MemoryBlockingQueue extends NuxeoBlockingQueue {
         return metrics();
     }
 
-    synchronized WorkQueueMetrics workRescheduleRunning(Work work) {
-        String id = work.getId();
-        if (!runningWorks.remove(id)) {
-            return metrics();
+    WorkQueueMetrics workRescheduleRunning(Work work) {
+        synchronized (this) {
+            String id = work.getId();
+            if (!runningWorks.remove(id)) {
+                return metrics();
+            }
+            works.remove(id);
+            runningCount -= 1;
         }
-        works.remove(id);
-        runningCount -= 1;
         return workSchedule(work);
     }
 
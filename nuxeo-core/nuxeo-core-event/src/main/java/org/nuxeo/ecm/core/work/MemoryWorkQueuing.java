@@ -52,6 +52,9 @@ public class MemoryWorkQueuing implements WorkQueuing {
             capacity = -1; // unbounded
         }
         MemoryBlockingQueue queue = new MemoryBlockingQueue(config.id, this, capacity);
+        if (config.isBatchingEnabled()) {
+            queue.setBatching(config.getBatchMaxSize(), config.getBatchMaxDelay());
+        }
         allQueued.put(queue.queueId, queue);
         return queue;
     }
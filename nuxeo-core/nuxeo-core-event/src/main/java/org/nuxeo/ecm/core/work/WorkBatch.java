@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.work.api.Work;
+
+/**
+ * A {@link Work} running several {@link AbstractWork#isBatchable batchable} works in a single transaction, with a
+ * single system session opened when first needed, to amortize their setup.
+ * <p>
+ * Batches are built by the queues configured for batching when a worker takes a work, and are never persisted. If the
+ * batch fails (after retries), its transaction is rolled back and each work is run again on its own, so that a failing
+ * work does not fail the others. As for retries, the works that already ran in the failed batch run again, which is why
+ * batchable works must be idempotent.
+ *
+ * @since 8.3
+ */
+public class WorkBatch extends AbstractWork {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(WorkBatch.class);
+
+    protected final List<AbstractWork> works;
+
+    protected final String category;
+
+    public WorkBatch(List<AbstractWork> works) {
+        super(); // random id
+        this.works = works;
+        AbstractWork first = works.get(0);
+        repositoryName = first.repositoryName;
+        originatingUsername = first.originatingUsername;
+        category = first.getCategory();
+    }
+
+    /**
+     * Gets the works of the batch.
+     */
+    public List<AbstractWork> getWorks() {
+        return Collections.unmodifiableList(works);
+    }
+
+    /**
+     * Gets the works run by the given work, which is either a batch or a single work.
+     */
+    public static List<? extends Work> getWorks(Work work) {
+        if (work instanceof WorkBatch) {
+            return ((WorkBatch) work).getWorks();
+        }
+        return Collections.singletonList(work);
+    }
+
+    @Override
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public String getTitle() {
+        return "Batch of " + works.size() + " " + category;
+    }
+
+    @Override
+    public int getRetryCount() {
+        int retryCount = Integer.MAX_VALUE;
+        for (AbstractWork work : works) {
+            retryCount = Math.min(retryCount, work.getRetryCount());
+        }
+        return retryCount;
+    }
+
+    @Override
+    public void setWorkInstanceSuspending() {
+        super.setWorkInstanceSuspending();
+        for (AbstractWork work : works) {
+            work.setWorkInstanceSuspending();
+        }
+    }
+
+    @Override
+    public boolean isSuspending() {
+        if (super.isSuspending()) {
+            return true;
+        }
+        for (AbstractWork work : works) {
+            if (work.isSuspending()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setWorkInstanceState(State state) {
+        super.setWorkInstanceState(state);
+        for (AbstractWork work : works) {
+            work.setWorkInstanceState(state);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            super.run();
+        } catch (RuntimeException e) {
+            if (isSuspending()) {
+                throw e;
+            }
+            log.warn("Batch failed, running its " + works.size() + " works separately: " + this, e);
+            // nothing was committed, so all the works must run again, including those that had already run
+            for (AbstractWork work : works) {
+                try {
+                    work.run();
+                } catch (RuntimeException ee) {
+                    // already logged by the work
+                    log.debug("Work failed: " + work, ee);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the system session shared by the works of the batch, opening it on first use so that batches of works not
+     * needing a session don't open one.
+     */
+    protected CoreSession getBatchSession() {
+        if (session == null) {
+            openSystemSession();
+        }
+        return session;
+    }
+
+    @Override
+    public void work() {
+        for (AbstractWork work : works) {
+            work.workInBatch(this);
+        }
+    }
+
+    @Override
+    public void cleanUp(boolean ok, Exception e) {
+        try {
+            for (AbstractWork work : works) {
+                // full clean up (session, login, event bundle...) also on failure, a work run again on its own
+                // after a batch failure sets up again what it needs
+                try {
+                    work.cleanUp(ok, e);
+                } catch (RuntimeException ee) {
+                    log.error("Failed to clean up work: " + work, ee);
+                }
+            }
+        } finally {
+            super.cleanUp(ok, e);
+        }
+    }
+
+}
@@ -63,6 +63,7 @@ import org.nuxeo.runtime.model.DefaultComponent;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
@@ -471,6 +472,18 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         }
     }
 
+    /**
+     * A thread running works, recognized by the queues to let reentrant scheduling use their reserved quota.
+     *
+     * @since 8.3
+     */
+    static class WorkThread extends Thread {
+
+        WorkThread(ThreadGroup group, Runnable target, String name) {
+            super(group, target, name);
+        }
+    }
+
     /**
      * Creates non-daemon threads at normal priority.
      */
@@ -492,7 +505,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         @Override
         public Thread newThread(Runnable r) {
             String name = prefix + threadNumber.incrementAndGet();
-            Thread thread = new Thread(group, r, name);
+            Thread thread = new WorkThread(group, r, name);
             // do not set daemon
             thread.setPriority(Thread.NORM_PRIORITY);
             thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
@@ -539,6 +552,11 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        // Number of works run in each batch
+        protected final Histogram batchSize;
+
+        // Time per work run in a batch
+        protected final Timer batchItemTimer;
 
         protected WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime,
                 TimeUnit unit, NuxeoBlockingQueue queue, ThreadFactory threadFactory) {
@@ -550,6 +568,8 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             runningCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "running"));
             completedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "completed"));
             workTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "total"));
+            batchSize = registry.histogram(MetricRegistry.name("nuxeo", "works", queueId, "batch", "size"));
+            batchItemTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "batch", "item"));
         }
 
         public int getScheduledOrRunningSize() {
@@ -590,31 +610,48 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         @Override
         protected void beforeExecute(Thread t, Runnable r) {
             Work work = WorkHolder.getWork(r);
+            List<? extends Work> works = WorkBatch.getWorks(work);
             if (started == false || shutdownInProgress == true) {
-                work.setWorkInstanceState(State.SCHEDULED);
-                queuing.workSchedule(queueId, work);
+                for (Work w : works) {
+                    w.setWorkInstanceState(State.SCHEDULED);
+                    queuing.workSchedule(queueId, w);
+                }
                 return;
             }
             work.setWorkInstanceState(State.RUNNING);
-            queuing.workRunning(queueId, work);
-            running.add(work);
-            runningCount.inc();
+            for (Work w : works) {
+                w.setWorkInstanceState(State.RUNNING);
+                queuing.workRunning(queueId, w);
+                running.add(w);
+                runningCount.inc();
+            }
         }
 
         @Override
         protected void afterExecute(Runnable r, Throwable t) {
             Work work = WorkHolder.getWork(r);
+            List<? extends Work> works = WorkBatch.getWorks(work);
             try {
                 if (work.isSuspending()) {
                     return;
                 }
-                work.setWorkInstanceState(State.UNKNOWN);
-                queuing.workCompleted(queueId, work);
+                for (Work w : works) {
+                    w.setWorkInstanceState(State.UNKNOWN);
+                    queuing.workCompleted(queueId, w);
+                }
             } finally {
-                running.remove(work);
-                runningCount.dec();
-                completedCount.inc();
-                workTimer.update(work.getCompletionTime() - work.getStartTime(), TimeUnit.MILLISECONDS);
+                for (Work w : works) {
+                    running.remove(w);
+                    runningCount.dec();
+                    completedCount.inc();
+                    workTimer.update(w.getCompletionTime() - w.getStartTime(), TimeUnit.MILLISECONDS);
+                }
+                if (work instanceof WorkBatch) {
+                    // amortized cost of each work, including the batch transaction and session
+                    batchSize.update(works.size());
+                    batchItemTimer.update((work.getCompletionTime() - work.getStartTime()) / works.size(),
+                            TimeUnit.MILLISECONDS);
+                }
                 completionSynchronizer.signalCompletedWork();
             }
         }
@@ -42,6 +42,10 @@ public class WorkQueueDescriptor {
 
     public static final int DEFAULT_CAPACITY = -1;
 
+    public static final int DEFAULT_BATCH_MAX_SIZE = 1;
+
+    public static final int DEFAULT_BATCH_MAX_DELAY = 0;
+
     @XNode("@id")
     public String id;
 
@@ -91,6 +95,40 @@ public class WorkQueueDescriptor {
         return capacity == null ? DEFAULT_CAPACITY : capacity.intValue();
     }
 
+    /**
+     * When greater than 1, compatible batchable works of this queue (same category, repository and user) are run
+     * together in a single transaction, up to this number of works.
+     *
+     * @since 8.3
+     */
+    @XNode("batching@maxSize")
+    public Integer batchMaxSize;
+
+    public int getBatchMaxSize() {
+        return batchMaxSize == null ? DEFAULT_BATCH_MAX_SIZE : batchMaxSize.intValue();
+    }
+
+    /**
+     * The maximum time in milliseconds to wait for more compatible works before running a batch.
+     *
+     * @since 8.3
+     */
+    @XNode("batching@maxDelay")
+    public Integer batchMaxDelay;
+
+    public int getBatchMaxDelay() {
+        return batchMaxDelay == null ? DEFAULT_BATCH_MAX_DELAY : batchMaxDelay.intValue();
+    }
+
+    /**
+     * Whether works of this queue may be run in batches.
+     *
+     * @since 8.3
+     */
+    public boolean isBatchingEnabled() {
+        return getBatchMaxSize() > 1;
+    }
+
     @Override
     public WorkQueueDescriptor clone() {
         WorkQueueDescriptor o = new WorkQueueDescriptor();
@@ -100,6 +138,8 @@ public class WorkQueueDescriptor {
         o.name = name;
         o.maxThreads = maxThreads;
         o.capacity = capacity;
+        o.batchMaxSize = batchMaxSize;
+        o.batchMaxDelay = batchMaxDelay;
         o.categories = new HashSet<String>(categories);
         return o;
     }
@@ -120,6 +160,12 @@ public class WorkQueueDescriptor {
         if (other.capacity != null) {
             capacity = other.capacity;
         }
+        if (other.batchMaxSize != null) {
+            batchMaxSize = other.batchMaxSize;
+        }
+        if (other.batchMaxDelay != null) {
+            batchMaxDelay = other.batchMaxDelay;
+        }
         categories.addAll(other.categories);
     }
 
@@ -146,6 +192,14 @@ public class WorkQueueDescriptor {
             buf.append(" capacity=");
             buf.append(capacity);
         }
+        if (batchMaxSize != null) {
+            buf.append(" batchMaxSize=");
+            buf.append(batchMaxSize);
+        }
+        if (batchMaxDelay != null) {
+            buf.append(" batchMaxDelay=");
+            buf.append(batchMaxDelay);
+        }
         buf.append("]");
         return buf.toString();
     }
@@ -164,6 +218,10 @@ public class WorkQueueDescriptor {
         buf.append(getMaxThreads());
         buf.append(" capacity=");
         buf.append(getCapacity());
+        buf.append(" batchMaxSize=");
+        buf.append(getBatchMaxSize());
+        buf.append(" batchMaxDelay=");
+        buf.append(getBatchMaxDelay());
         buf.append(" clearCompletedAfterSeconds=");
         buf.append(")");
         return buf.toString();
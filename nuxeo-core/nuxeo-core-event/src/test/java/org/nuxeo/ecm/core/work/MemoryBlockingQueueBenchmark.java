@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the schedule throughput and enqueue latency (use the sample time mode percentiles) of the signal-based
+ * bounded queue used by {@link MemoryBlockingQueue} with the previous sleep-polling implementation.
+ * <p>
+ * Producers are the benchmark threads, a fixed number of background consumers drain the queue and simulate a short
+ * work.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.work.MemoryBlockingQueueBenchmark}.
+ *
+ * @since 8.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class MemoryBlockingQueueBenchmark {
+
+    protected interface TestQueue {
+
+        void put(Runnable r) throws InterruptedException;
+
+        Runnable poll(long timeout, TimeUnit unit) throws InterruptedException;
+    }
+
+    /**
+     * The previous implementation, polling every 100ms for free capacity.
+     */
+    protected static class SleepPollingQueue extends LinkedBlockingQueue<Runnable> implements TestQueue {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReentrantLock limitedPutLock = new ReentrantLock();
+
+        private final int limitedCapacity;
+
+        public SleepPollingQueue(int capacity) {
+            super(2 * capacity);
+            limitedCapacity = capacity;
+        }
+
+        @Override
+        public void put(Runnable r) throws InterruptedException {
+            limitedPutLock.lockInterruptibly();
+            try {
+                while (remainingCapacity() < limitedCapacity) {
+                    Thread.sleep(100);
+                }
+                super.put(r);
+            } finally {
+                limitedPutLock.unlock();
+            }
+        }
+    }
+
+    protected static class SignalQueue extends MemoryBlockingQueue.BoundedReentrantQueue<Runnable> implements
+            TestQueue {
+
+        public SignalQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public void put(Runnable r) throws InterruptedException {
+            put(r, false);
+        }
+    }
+
+    protected static final Runnable WORK = () -> {
+    };
+
+    @Param({ "signal", "sleep" })
+    public String impl;
+
+    @Param({ "100" })
+    public int capacity;
+
+    @Param({ "4" })
+    public int consumers;
+
+    /** Simulated work duration, in microseconds. */
+    @Param({ "50" })
+    public int workMicros;
+
+    protected TestQueue queue;
+
+    protected Thread[] consumerThreads;
+
+    protected volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        queue = "sleep".equals(impl) ? new SleepPollingQueue(capacity) : new SignalQueue(capacity);
+        running = true;
+        consumerThreads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            consumerThreads[i] = new Thread(this::consume, "consumer-" + i);
+            consumerThreads[i].setDaemon(true);
+            consumerThreads[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread thread : consumerThreads) {
+            thread.join();
+        }
+    }
+
+    protected void consume() {
+        try {
+            while (running) {
+                Runnable r = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (r != null) {
+                    r.run();
+                    long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(workMicros);
+                    while (System.nanoTime() < end) {
+                        // busy work
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Benchmark
+    public void schedule() throws InterruptedException {
+        queue.put(WORK);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MemoryBlockingQueueBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.MemoryBlockingQueue.BoundedReentrantQueue;
+import org.nuxeo.ecm.core.work.api.Work;
+
+public class TestMemoryBlockingQueue {
+
+    protected ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    protected static void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            fail("should be blocked");
+        } catch (TimeoutException e) {
+            // ok
+        }
+    }
+
+    protected static boolean offerNow(MemoryBlockingQueue queue) throws InterruptedException {
+        return queue.offer(new WorkHolder(new SleepWork(0)), 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task in a work thread, as if scheduled from inside a running work.
+     */
+    protected static <T> T callFromWorkThread(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        new WorkManagerImpl.WorkThread(null, task, "test-work-thread").start();
+        return task.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPutBlocksWhenFullAndWakesOnTake() throws Exception {
+        BoundedReentrantQueue<String> queue = new BoundedReentrantQueue<>(2);
+        queue.put("a", false);
+        queue.put("b", false);
+
+        Future<?> put = executor.submit(() -> {
+            queue.put("c", false);
+            return null;
+        });
+        assertBlocked(put);
+        assertEquals(2, queue.size());
+
+        assertEquals("a", queue.take());
+        put.get(5, TimeUnit.SECONDS);
+        assertEquals(2, queue.size());
+        assertEquals("b", queue.take());
+        assertEquals("c", queue.take());
+    }
+
+    @Test
+    public void testOfferWithTimeout() throws Exception {
+        BoundedReentrantQueue<String> queue = new BoundedReentrantQueue<>(1);
+        assertTrue(queue.offer("a", false, 0, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer("b", false, 100, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.size());
+
+        Future<Boolean> offer = executor.submit(() -> queue.offer("c", false, 5, TimeUnit.SECONDS));
+        assertBlocked(offer);
+        assertEquals("a", queue.take());
+        assertTrue(offer.get(5, TimeUnit.SECONDS).booleanValue());
+        assertEquals("c", queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReentrantQuota() throws Exception {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("test", null, 1);
+        queue.workSchedule(new SleepWork(0));
+        // full for regular producers
+        assertFalse(offerNow(queue));
+
+        // a work thread can still schedule in its own quota, without waiting for itself
+        callFromWorkThread(() -> queue.workSchedule(new SleepWork(0)));
+        assertEquals(2, queue.getQueueSize());
+        assertEquals(2, queue.metrics().getScheduled().intValue());
+
+        // until the reentrant quota is exhausted too
+        assertFalse(callFromWorkThread(() -> offerNow(queue)));
+        queue.take();
+        assertFalse(offerNow(queue));
+        assertTrue(callFromWorkThread(() -> offerNow(queue)));
+    }
+
+    @Test
+    public void testAlreadyScheduledWorkDoesNotReserveRoom() throws Exception {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("test", null, 1);
+        Work work = new SleepWork(0, false, "work1");
+        queue.workSchedule(work);
+
+        // the queue is full, but scheduling the same work again must neither block nor take room
+        Future<?> schedule = executor.submit(() -> queue.workSchedule(work));
+        schedule.get(5, TimeUnit.SECONDS);
+        assertEquals(1, queue.getQueueSize());
+        assertEquals(1, queue.metrics().getScheduled().intValue());
+        assertEquals(Collections.singletonList("work1"), queue.scheduledKeys());
+
+        // exactly one slot is used
+        assertEquals("work1", WorkHolder.getWork(queue.take()).getId());
+        assertTrue(offerNow(queue));
+        assertFalse(offerNow(queue));
+    }
+
+}
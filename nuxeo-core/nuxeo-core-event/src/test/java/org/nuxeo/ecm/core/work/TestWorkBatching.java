@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.Work;
+
+public class TestWorkBatching {
+
+    protected static class BatchableWork extends SleepWork {
+
+        private static final long serialVersionUID = 1L;
+
+        public BatchableWork(String category) {
+            super(0, category, false);
+        }
+
+        @Override
+        public boolean isBatchable() {
+            return true;
+        }
+    }
+
+    protected static MemoryBlockingQueue newQueue(int batchMaxSize) {
+        MemoryBlockingQueue queue = new MemoryBlockingQueue("test", null, -1);
+        queue.setBatching(batchMaxSize, 0);
+        return queue;
+    }
+
+    @Test
+    public void testCoalesceCompatibleWorks() throws Exception {
+        MemoryBlockingQueue queue = newQueue(3);
+        queue.workSchedule(new BatchableWork("a"));
+        queue.workSchedule(new BatchableWork("b"));
+        queue.workSchedule(new BatchableWork("a"));
+        queue.workSchedule(new BatchableWork("a"));
+        queue.workSchedule(new BatchableWork("a"));
+
+        Work work = WorkHolder.getWork(queue.take());
+        assertTrue(work instanceof WorkBatch);
+        assertEquals(3, ((WorkBatch) work).getWorks().size());
+        assertEquals("a", work.getCategory());
+        // incompatible work keeps its place
+        work = WorkHolder.getWork(queue.take());
+        assertEquals("b", work.getCategory());
+        assertFalse(work instanceof WorkBatch);
+        // remaining compatible one, alone
+        work = WorkHolder.getWork(queue.poll(1, TimeUnit.SECONDS));
+        assertFalse(work instanceof WorkBatch);
+        assertEquals(0, queue.getQueueSize());
+    }
+
+    @Test
+    public void testNoBatchingForRegularWorks() throws Exception {
+        MemoryBlockingQueue queue = newQueue(10);
+        queue.workSchedule(new SleepWork(0));
+        queue.workSchedule(new SleepWork(0));
+        assertFalse(WorkHolder.getWork(queue.take()) instanceof WorkBatch);
+        assertEquals(1, queue.getQueueSize());
+    }
+
+    @Test
+    public void testNoSessionForWorksNotUsingIt() throws Exception {
+        BatchableWork work1 = new BatchableWork("a");
+        work1.setDocument("test", "doc1");
+        BatchableWork work2 = new BatchableWork("a");
+        work2.setDocument("test", "doc2");
+        WorkBatch batch = new WorkBatch(Arrays.<AbstractWork> asList(work1, work2));
+        // no runtime here, opening a session would fail
+        batch.work();
+        assertNull(batch.session);
+    }
+
+}
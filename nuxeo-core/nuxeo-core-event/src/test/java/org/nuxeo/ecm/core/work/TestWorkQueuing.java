@@ -36,6 +36,11 @@ public class TestWorkQueuing extends MemoryWorkQueuing {
                 super.putElement(clone(r));
             }
 
+            @Override
+            protected void putReservedElement(Runnable r) {
+                super.putReservedElement(clone(r));
+            }
+
             Runnable clone(Runnable r) {
                 Work original = WorkHolder.getWork(r);
                 try {
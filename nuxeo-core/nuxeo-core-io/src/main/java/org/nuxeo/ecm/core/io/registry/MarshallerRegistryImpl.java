@@ -20,9 +20,13 @@
 package org.nuxeo.ecm.core.io.registry;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -44,6 +48,11 @@ import org.nuxeo.runtime.model.DefaultComponent;
  * This implementation is based on {@link MarshallerInspector} class which is able to create marshaller instance and
  * inject properties. This class also manage marshaller's priorities.
  * </p>
+ * <p>
+ * The marshallers whose managed class and generic type are compatible with a given class, generic type and media type
+ * are resolved once and cached until the registered marshallers change. Only the context dependent
+ * {@link Marshaller#accept(Class, Type, MediaType)} check is done for each lookup.
+ * </p>
  *
  * @since 7.2
  */
@@ -76,6 +85,63 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
      */
     private static final Map<Class<?>, MarshallerInspector> marshallersByType = new ConcurrentHashMap<Class<?>, MarshallerInspector>();
 
+    /**
+     * Key of the resolved candidates caches: a marshalled class, generic type and media type.
+     *
+     * @since 8.3
+     */
+    private static final class ResolutionKey {
+
+        private final Class<?> clazz;
+
+        private final Type genericType;
+
+        private final MediaType mediatype;
+
+        private final int hashCode;
+
+        private ResolutionKey(Class<?> clazz, Type genericType, MediaType mediatype) {
+            this.clazz = clazz;
+            this.genericType = genericType;
+            this.mediatype = mediatype;
+            hashCode = Objects.hash(clazz, genericType, mediatype);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey other = (ResolutionKey) obj;
+            return clazz == other.clazz && Objects.equals(genericType, other.genericType)
+                    && Objects.equals(mediatype, other.mediatype);
+        }
+    }
+
+    /**
+     * {@link Writer}'s {@link MarshallerInspector} whose managed class and generic type are compatible with a request,
+     * in lookup order. Replaced by an empty map each time the registered marshallers change.
+     *
+     * @since 8.3
+     */
+    private static volatile Map<ResolutionKey, List<MarshallerInspector>> resolvedWriters = new ConcurrentHashMap<>();
+
+    /**
+     * {@link Reader}'s {@link MarshallerInspector} whose managed class and generic type are compatible with a request,
+     * in lookup order. Replaced by an empty map each time the registered marshallers change.
+     *
+     * @since 8.3
+     */
+    private static volatile Map<ResolutionKey, List<MarshallerInspector>> resolvedReaders = new ConcurrentHashMap<>();
+
     @Override
     public void activate(ComponentContext context) {
         super.activate(context);
@@ -129,6 +195,14 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
         } else {
             marshallersByType.put(marshaller, inspector);
         }
+        try {
+            addInspector(inspector);
+        } finally {
+            clearResolutions();
+        }
+    }
+
+    private void addInspector(MarshallerInspector inspector) {
         if (inspector.isWriter()) {
             writers.add(inspector);
             for (MediaType mediaType : inspector.getSupports()) {
@@ -166,6 +240,14 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
                             + Writer.class.getName() + " or " + Reader.class.getName());
         }
         marshallersByType.remove(marshaller);
+        try {
+            removeInspector(inspector);
+        } finally {
+            clearResolutions();
+        }
+    }
+
+    private void removeInspector(MarshallerInspector inspector) {
         if (inspector.isWriter()) {
             writers.remove(inspector);
             for (MediaType mediaType : inspector.getSupports()) {
@@ -186,26 +268,145 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
         }
     }
 
+    /**
+     * Forgets the resolved candidates, to be called each time the registered marshallers change.
+     *
+     * @since 8.3
+     */
+    private static void clearResolutions() {
+        resolvedWriters = new ConcurrentHashMap<>();
+        resolvedReaders = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the writers compatible with a request, resolving them if it's not already done.
+     *
+     * @since 8.3
+     */
+    private List<MarshallerInspector> getWriterCandidates(Class<?> marshalledClazz, Type genericType,
+            MediaType mediatype) {
+        Map<ResolutionKey, List<MarshallerInspector>> resolved = resolvedWriters;
+        ResolutionKey key = new ResolutionKey(marshalledClazz, genericType, mediatype);
+        List<MarshallerInspector> candidates = resolved.get(key);
+        if (candidates == null) {
+            candidates = searchCompatibles(marshalledClazz, genericType, writersByMediaType.get(mediatype), writers);
+            resolved.put(key, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Gets the readers compatible with a request, resolving them if it's not already done.
+     *
+     * @since 8.3
+     */
+    private List<MarshallerInspector> getReaderCandidates(Class<?> marshalledClazz, Type genericType,
+            MediaType mediatype) {
+        Map<ResolutionKey, List<MarshallerInspector>> resolved = resolvedReaders;
+        ResolutionKey key = new ResolutionKey(marshalledClazz, genericType, mediatype);
+        List<MarshallerInspector> candidates = resolved.get(key);
+        if (candidates == null) {
+            candidates = searchCompatibles(marshalledClazz, genericType, readersByMediaType.get(mediatype), readers);
+            resolved.put(key, candidates);
+        }
+        return candidates;
+    }
+
+    /**
+     * Searches the marshallers whose managed class and generic type are compatible with the given ones, specific media
+     * type marshallers first.
+     *
+     * @since 8.3
+     */
+    private List<MarshallerInspector> searchCompatibles(Class<?> marshalledClazz, Type genericType,
+            Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards) {
+        Set<MarshallerInspector> result = new LinkedHashSet<MarshallerInspector>();
+        if (customs != null) {
+            for (MarshallerInspector inspector : customs) {
+                if (isCompatible(inspector, marshalledClazz, genericType)) {
+                    result.add(inspector);
+                }
+            }
+        }
+        for (MarshallerInspector inspector : wildcards) {
+            if (isCompatible(inspector, marshalledClazz, genericType)) {
+                result.add(inspector);
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<MarshallerInspector>(result));
+    }
+
+    private static boolean isCompatible(MarshallerInspector inspector, Class<?> marshalledClazz, Type genericType) {
+        // checks the managed class is compatible
+        if (!inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
+            return false;
+        }
+        // checks the generic type is compatible
+        return genericType == null || marshalledClazz.equals(inspector.getGenericType())
+                || TypeUtils.isAssignable(genericType, inspector.getGenericType());
+    }
+
+    /**
+     * Gets the first of the given compatible marshallers which accepts the request.
+     *
+     * @since 8.3
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Marshaller<T> getAccepting(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
+            MediaType mediatype, List<MarshallerInspector> candidates, boolean forceInstantiation) {
+        for (MarshallerInspector inspector : candidates) {
+            Marshaller<T> marshaller;
+            if (forceInstantiation) {
+                marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
+            } else {
+                marshaller = inspector.getInstance(ctx);
+            }
+            // checks the marshaller accepts the request
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                return marshaller;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all the given compatible marshallers which accept the request.
+     *
+     * @since 8.3
+     */
+    private <T> Collection<Marshaller<T>> getAllAccepting(RenderingContext ctx, Class<T> marshalledClazz,
+            Type genericType, MediaType mediatype, List<MarshallerInspector> candidates) {
+        List<Marshaller<T>> result = new ArrayList<Marshaller<T>>();
+        for (MarshallerInspector inspector : candidates) {
+            Marshaller<T> marshaller = inspector.getInstance(ctx);
+            if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
+                result.add(marshaller);
+            }
+        }
+        return result;
+    }
+
     @Override
+    @SuppressWarnings("unchecked")
     public <T> Writer<T> getWriter(RenderingContext ctx, Class<T> marshalledClazz, Type genericType, MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        return (Writer<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, writers, false);
+        List<MarshallerInspector> candidates = getWriterCandidates(marshalledClazz, genericType, mediatype);
+        return (Writer<T>) getAccepting(ctx, marshalledClazz, genericType, mediatype, candidates, false);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> Writer<T> getUniqueWriter(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        return (Writer<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, writers, true);
+        List<MarshallerInspector> candidates = getWriterCandidates(marshalledClazz, genericType, mediatype);
+        return (Writer<T>) getAccepting(ctx, marshalledClazz, genericType, mediatype, candidates, true);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Collection<Writer<T>> getAllWriters(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = writersByMediaType.get(mediatype);
-        Collection<Marshaller<T>> founds = getAllMarshallers(ctx, marshalledClazz, genericType, mediatype, candidates,
-                writers);
+        List<MarshallerInspector> candidates = getWriterCandidates(marshalledClazz, genericType, mediatype);
+        Collection<Marshaller<T>> founds = getAllAccepting(ctx, marshalledClazz, genericType, mediatype, candidates);
         return (Collection<Writer<T>>) (Collection<?>) founds;
     }
 
@@ -215,25 +416,26 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> Reader<T> getReader(RenderingContext ctx, Class<T> marshalledClazz, Type genericType, MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        return (Reader<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, readers, false);
+        List<MarshallerInspector> candidates = getReaderCandidates(marshalledClazz, genericType, mediatype);
+        return (Reader<T>) getAccepting(ctx, marshalledClazz, genericType, mediatype, candidates, false);
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> Reader<T> getUniqueReader(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        return (Reader<T>) getMarshaller(ctx, marshalledClazz, genericType, mediatype, candidates, readers, true);
+        List<MarshallerInspector> candidates = getReaderCandidates(marshalledClazz, genericType, mediatype);
+        return (Reader<T>) getAccepting(ctx, marshalledClazz, genericType, mediatype, candidates, true);
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> Collection<Reader<T>> getAllReaders(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype) {
-        Set<MarshallerInspector> candidates = readersByMediaType.get(mediatype);
-        Collection<Marshaller<T>> founds = getAllMarshallers(ctx, marshalledClazz, genericType, mediatype, candidates,
-                readers);
+        List<MarshallerInspector> candidates = getReaderCandidates(marshalledClazz, genericType, mediatype);
+        Collection<Marshaller<T>> founds = getAllAccepting(ctx, marshalledClazz, genericType, mediatype, candidates);
         return (Collection<Reader<T>>) (Collection<?>) founds;
     }
 
@@ -245,69 +447,14 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
     public <T> Marshaller<T> getMarshaller(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
             MediaType mediatype, Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards,
             boolean forceInstantiation) {
-        if (customs != null) {
-            Marshaller<T> found = searchCandidate(ctx, marshalledClazz, genericType, mediatype, customs,
-                    forceInstantiation);
-            if (found != null) {
-                return found;
-            }
-        }
-        return searchCandidate(ctx, marshalledClazz, genericType, mediatype, wildcards, forceInstantiation);
+        List<MarshallerInspector> candidates = searchCompatibles(marshalledClazz, genericType, customs, wildcards);
+        return getAccepting(ctx, marshalledClazz, genericType, mediatype, candidates, forceInstantiation);
     }
 
     public <T> Collection<Marshaller<T>> getAllMarshallers(RenderingContext ctx, Class<T> marshalledClazz,
             Type genericType, MediaType mediatype, Set<MarshallerInspector> customs, Set<MarshallerInspector> wildcards) {
-        Map<MarshallerInspector, Marshaller<T>> result = new HashMap<MarshallerInspector, Marshaller<T>>();
-        if (customs != null) {
-            result.putAll(searchAllCandidates(ctx, marshalledClazz, genericType, mediatype, customs));
-        }
-        result.putAll(searchAllCandidates(ctx, marshalledClazz, genericType, mediatype, wildcards));
-        return result.values();
-    }
-
-    @SuppressWarnings("unchecked")
-    private <T> Marshaller<T> searchCandidate(RenderingContext ctx, Class<T> marshalledClazz, Type genericType,
-            MediaType mediatype, Set<MarshallerInspector> candidates, boolean forceInstantiation) {
-        for (MarshallerInspector inspector : candidates) {
-            // checks the managed class is compatible
-            if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
-                // checks the generic type is compatible
-                if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
-                        || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    Marshaller<T> marshaller = null;
-                    if (forceInstantiation) {
-                        marshaller = (Marshaller<T>) inspector.getNewInstance(ctx, false);
-                    } else {
-                        marshaller = inspector.getInstance(ctx);
-                    }
-                    // checks the marshaller accepts the request
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        return marshaller;
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    private <T> Map<MarshallerInspector, Marshaller<T>> searchAllCandidates(RenderingContext ctx,
-            Class<T> marshalledClazz, Type genericType, MediaType mediatype, Set<MarshallerInspector> candidates) {
-        Map<MarshallerInspector, Marshaller<T>> result = new HashMap<MarshallerInspector, Marshaller<T>>();
-        for (MarshallerInspector inspector : candidates) {
-            // checks the managed class is compatible
-            if (inspector.getMarshalledType().isAssignableFrom(marshalledClazz)) {
-                // checks the generic type is compatible
-                if (genericType == null || marshalledClazz.equals(inspector.getGenericType())
-                        || TypeUtils.isAssignable(genericType, inspector.getGenericType())) {
-                    // checks the marshaller accepts the request
-                    Marshaller<T> marshaller = inspector.getInstance(ctx);
-                    if (marshaller.accept(marshalledClazz, genericType, mediatype)) {
-                        result.put(inspector, marshaller);
-                    }
-                }
-            }
-        }
-        return result;
+        List<MarshallerInspector> candidates = searchCompatibles(marshalledClazz, genericType, customs, wildcards);
+        return getAllAccepting(ctx, marshalledClazz, genericType, mediatype, candidates);
     }
 
     @Override
@@ -337,6 +484,7 @@ public class MarshallerRegistryImpl extends DefaultComponent implements Marshall
         writers.clear();
         readersByMediaType.clear();
         readers.clear();
+        clearResolutions();
     }
 
 }
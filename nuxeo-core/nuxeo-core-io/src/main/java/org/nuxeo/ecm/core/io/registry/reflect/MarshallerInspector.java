@@ -88,9 +88,9 @@ public class MarshallerInspector implements Comparable<MarshallerInspector> {
 
     private List<Field> contextFields = new ArrayList<Field>();
 
-    private Object singleton;
+    private volatile Object singleton;
 
-    private ThreadLocal<Object> threadInstance;
+    private final ThreadLocal<Object> threadInstance = new ThreadLocal<Object>();
 
     private Class<?> marshalledType;
 
@@ -303,21 +303,29 @@ public class MarshallerInspector implements Comparable<MarshallerInspector> {
      * @since 7.2
      */
     private Object getSingletonInstance(RenderingContext ctx) {
-        if (singleton == null) {
-            singleton = getNewInstance(ctx, true);
-        } else {
-            for (Field contextField : contextFields) {
-                ThreadSafeRenderingContext value;
-                try {
-                    value = (ThreadSafeRenderingContext) contextField.get(singleton);
-                } catch (IllegalArgumentException | IllegalAccessException e) {
-                    log.error("unable to create a marshaller instance for clazz " + clazz.getName(), e);
-                    return null;
+        Object instance = singleton;
+        if (instance == null) {
+            synchronized (this) {
+                instance = singleton;
+                if (instance == null) {
+                    // only one instance is created, even on concurrent first uses
+                    instance = getNewInstance(ctx, true);
+                    singleton = instance;
+                    return instance;
                 }
-                value.configureThread(ctx);
             }
         }
-        return singleton;
+        for (Field contextField : contextFields) {
+            ThreadSafeRenderingContext value;
+            try {
+                value = (ThreadSafeRenderingContext) contextField.get(instance);
+            } catch (IllegalArgumentException | IllegalAccessException e) {
+                log.error("unable to create a marshaller instance for clazz " + clazz.getName(), e);
+                return null;
+            }
+            value.configureThread(ctx);
+        }
+        return instance;
     }
 
     /**
@@ -328,9 +336,6 @@ public class MarshallerInspector implements Comparable<MarshallerInspector> {
      * @since 7.2
      */
     private Object getThreadInstance(RenderingContext ctx) {
-        if (threadInstance == null) {
-            threadInstance = new ThreadLocal<Object>();
-        }
         Object instance = threadInstance.get();
         if (instance == null) {
             instance = getNewInstance(ctx, false);
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.io.marshallers.json.document;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.reflect.TypeUtils;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.io.registry.MarshallerRegistry;
+import org.nuxeo.ecm.core.io.registry.Writer;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext.CtxBuilder;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of {@link DocumentModelListJsonWriter} on lists of documents, each list being written by a
+ * writer got from the {@link MarshallerRegistry} as done by the REST layer, and the cost of the writer lookup alone.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.io.marshallers.json.document.DocumentModelListJsonWriterBenchmark}.
+ *
+ * @since 8.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentModelListJsonWriterBenchmark {
+
+    protected static final Type DOCUMENT_LIST_TYPE = TypeUtils.parameterize(List.class, DocumentModel.class);
+
+    @Param({ "1", "50" })
+    public int size;
+
+    protected NXRuntimeTestCase harness;
+
+    protected MarshallerRegistry registry;
+
+    protected RenderingContext ctx;
+
+    protected List<DocumentModel> docs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        harness = new NXRuntimeTestCase();
+        harness.setUp();
+        harness.deployBundle("org.nuxeo.ecm.core.schema");
+        harness.deployBundle("org.nuxeo.ecm.core.api");
+        harness.deployBundle("org.nuxeo.ecm.core");
+        harness.deployBundle("org.nuxeo.ecm.core.io");
+        harness.deployContrib("org.nuxeo.ecm.core.io", "OSGI-INF/doc-type-contrib.xml");
+        harness.fireFrameworkStarted();
+        registry = Framework.getService(MarshallerRegistry.class);
+        ctx = CtxBuilder.properties("dublincore").get();
+        docs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            DocumentModel doc = new DocumentModelImpl("/", "doc" + i, "RefDoc");
+            doc.setPropertyValue("dc:title", "Document " + i);
+            doc.setPropertyValue("dc:description", "Description of document " + i);
+            docs.add(doc);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        harness.tearDown();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected Writer<List<DocumentModel>> getWriter() {
+        return (Writer) registry.getWriter(ctx, List.class, DOCUMENT_LIST_TYPE, APPLICATION_JSON_TYPE);
+    }
+
+    @Benchmark
+    public Writer<List<DocumentModel>> lookup() {
+        return getWriter();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        getWriter().write(docs, List.class, DOCUMENT_LIST_TYPE, APPLICATION_JSON_TYPE,
+                NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void writeContended() throws IOException {
+        getWriter().write(docs, List.class, DOCUMENT_LIST_TYPE, APPLICATION_JSON_TYPE,
+                NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(DocumentModelListJsonWriterBenchmark.class.getSimpleName())
+                                              .build();
+        new Runner(options).run();
+    }
+
+}
@@ -388,7 +388,7 @@ public class DBSDocument extends BaseDocument<State> {
 
     @Override
     protected State getChildForWrite(State state, String name, Type type) throws PropertyException {
-        State child = getChild(state, name, type);
+        State child = (State) getValueForWrite(state, name);
         if (child == null) {
             state.put(name, child = new State());
         }
@@ -405,6 +405,37 @@ public class DBSDocument extends BaseDocument<State> {
         return list;
     }
 
+    @Override
+    protected List<State> getChildAsListForWrite(State state, String name) {
+        @SuppressWarnings("unchecked")
+        List<State> list = (List<State>) getValueForWrite(state, name);
+        if (list == null) {
+            list = new ArrayList<>();
+        }
+        return list;
+    }
+
+    /**
+     * Gets a child value which is going to be modified in place.
+     * <p>
+     * The sub-trees of the top-level state of a document may be shared, see {@link DBSDocumentState#getForWrite}.
+     *
+     * @since 8.3
+     */
+    protected Serializable getValueForWrite(State state, String name) {
+        if (state == docState.getState()) {
+            return docState.getForWrite(name);
+        }
+        if (isProxy()) {
+            DBSDocument target = getTargetDocument();
+            if (target != null && state == target.docState.getState()) {
+                return target.docState.getForWrite(name);
+            }
+        }
+        // sub-state, already copied when its top-level ancestor was got for write
+        return state.get(name);
+    }
+
     @Override
     protected void updateList(State state, String name, List<Object> values, Field field) {
         List<State> childStates = new ArrayList<>(values.size());
@@ -421,7 +452,7 @@ public class DBSDocument extends BaseDocument<State> {
         Collection<Property> properties = property.getChildren();
         int newSize = properties.size();
         @SuppressWarnings("unchecked")
-        List<State> childStates = (List<State>) state.get(name);
+        List<State> childStates = (List<State>) getValueForWrite(state, name);
         if (childStates == null) {
             childStates = new ArrayList<>(newSize);
             state.put(name, (Serializable) childStates);
@@ -466,6 +497,23 @@ public class DBSDocument extends BaseDocument<State> {
         visitBlobs(docState.getState(), blobVisitor, markDirty);
     }
 
+    @Override
+    protected State getBlobStateForWrite(List<String> path, State state) {
+        if (path.isEmpty()) {
+            return state;
+        }
+        // the visited sub-state may be shared, find it again in the private copy of its top-level ancestor
+        Serializable value = getValueForWrite(docState.getState(), path.get(0));
+        for (String name : path.subList(1, path.size())) {
+            if (value instanceof List) {
+                value = (Serializable) ((List<?>) value).get(Integer.parseInt(name));
+            } else {
+                value = ((State) value).get(name);
+            }
+        }
+        return (State) value;
+    }
+
     @Override
     public Document checkIn(String label, String checkinComment) {
         if (isProxy()) {
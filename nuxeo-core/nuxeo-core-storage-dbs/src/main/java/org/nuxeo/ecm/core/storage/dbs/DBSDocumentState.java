@@ -25,6 +25,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 
 import java.io.Serializable;
+import java.util.List;
 
 import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
@@ -35,6 +36,10 @@ import org.nuxeo.ecm.core.storage.State;
  * Implementation of a {@link Document} state for Document-Based Storage.
  * <p>
  * It wraps a {@link State}, together with a dirty flag.
+ * <p>
+ * Copies are done lazily: the state initially shares its sub-states and lists with the base state it was constructed
+ * from, and the original state saved when it becomes dirty shares them with the current state. A sub-tree is only
+ * copied when it's about to be modified in place, see {@link #getForWrite}.
  *
  * @since 5.9.4
  */
@@ -50,6 +55,17 @@ public class DBSDocumentState {
      */
     protected State originalState;
 
+    /**
+     * When non-null, a snapshot of the top-level of the base state from which this was constructed, whose sub-trees
+     * may be shared.
+     * <p>
+     * It's a copy because the repository may replace the sub-trees of the base state when other transactions commit,
+     * while they're still shared with this state.
+     *
+     * @since 8.3
+     */
+    protected State baseState;
+
     /**
      * Constructs an empty state.
      */
@@ -60,19 +76,55 @@ public class DBSDocumentState {
 
     /**
      * Constructs a document state from the copy of an existing base state.
+     * <p>
+     * The base state will not be modified, but it must not be modified by the caller either, as unmodified sub-trees
+     * are shared with it.
      */
     public DBSDocumentState(State base) {
-        state = StateHelper.deepCopy(base);
+        state = StateHelper.shallowCopy(base);
+        baseState = StateHelper.shallowCopy(base);
         originalState = null;
     }
 
     /**
      * This must be called if we're about to directly change the internal state.
+     * <p>
+     * Sub-trees must then be modified in place only after getting them from {@link #getForWrite}.
      */
     public void markDirty() {
         if (originalState == null) {
-            originalState = StateHelper.deepCopy(state);
+            originalState = StateHelper.shallowCopy(state);
+        }
+    }
+
+    /**
+     * Checks if a value of the state is a sub-tree shared with the base state or the original state.
+     *
+     * @since 8.3
+     */
+    protected boolean isShared(String key, Serializable value) {
+        if (!(value instanceof State || value instanceof List)) {
+            // scalars and arrays of scalars are never modified in place
+            return false;
+        }
+        return baseState != null && baseState.get(key) == value
+                || originalState != null && originalState.get(key) == value;
+    }
+
+    /**
+     * Gets a value of the state that is going to be modified in place.
+     * <p>
+     * If it's a sub-tree shared with the base state or the original state, it's replaced by a copy first.
+     *
+     * @since 8.3
+     */
+    public Serializable getForWrite(String key) {
+        Serializable value = state.get(key);
+        if (isShared(key, value)) {
+            value = StateHelper.deepCopy(value);
+            state.put(key, value);
         }
+        return value;
     }
 
     /**
@@ -90,6 +142,8 @@ public class DBSDocumentState {
     /**
      * Gets the state. If the caller changes the state, it must also call {@link #dirty} to inform this object that the
      * state is dirtied.
+     * <p>
+     * Its sub-trees must not be modified in place, see {@link #getForWrite}.
      */
     public State getState() {
         return state;
@@ -23,6 +23,7 @@ import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_MIXIN_TYPES;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
@@ -51,11 +52,13 @@ import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.query.sql.model.Expression;
 import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
 import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.query.sql.model.OrderByExpr;
 import org.nuxeo.ecm.core.query.sql.model.Reference;
 import org.nuxeo.ecm.core.query.sql.model.SelectClause;
 import org.nuxeo.ecm.core.query.sql.model.SelectList;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.schema.types.ComplexType;
@@ -316,6 +319,130 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         return schemaManager.getNoPerDocumentQueryFacets().contains(mixin);
     }
 
+    /**
+     * Index lookup used to restrict the documents to evaluate.
+     *
+     * @since 8.3
+     */
+    public interface IndexLookup {
+
+        /**
+         * Gets the ids of the documents having the given value for a key, or containing it if the key holds an array.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the ids, or {@code null} if the key is not indexed
+         */
+        Set<String> getIds(String key, Object value);
+    }
+
+    /**
+     * Gets the ids of the documents that may match the expression, using indexes.
+     * <p>
+     * All the documents matching the expression and the security check are in the returned set, but the set may also
+     * contain non-matching documents, so each candidate must still be evaluated with {@link #matches}. The smallest
+     * candidate set is chosen among the indexed top-level conditions ({@code ecm:uuid}, {@code ecm:parentId},
+     * {@code ecm:ancestorId} and {@code ecm:path STARTSWITH}) and the read ACLs of the principals.
+     *
+     * @param lookup the index lookup
+     * @return the candidate ids, or {@code null} if all the documents must be evaluated
+     * @since 8.3
+     */
+    public Set<String> getCandidateIds(IndexLookup lookup) {
+        Set<String> best = null;
+        List<Expression> conjuncts = new ArrayList<>();
+        collectConjuncts(expression, conjuncts);
+        for (Expression expr : conjuncts) {
+            Set<String> ids = getCandidateIds(expr, lookup);
+            if (ids != null && (best == null || ids.size() < best.size())) {
+                best = ids;
+            }
+        }
+        if (principals != null) {
+            Set<String> ids = getReadAclCandidateIds(lookup, best == null ? Integer.MAX_VALUE : best.size());
+            if (ids != null) {
+                best = ids;
+            }
+        }
+        return best;
+    }
+
+    protected static void collectConjuncts(Operand operand, List<Expression> conjuncts) {
+        if (operand instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) operand;
+            if (multi.operator == Operator.AND) {
+                for (Operand op : multi.values) {
+                    collectConjuncts(op, conjuncts);
+                }
+            }
+        } else if (operand instanceof Expression) {
+            Expression expr = (Expression) operand;
+            if (expr.operator == Operator.AND) {
+                collectConjuncts(expr.lvalue, conjuncts);
+                collectConjuncts(expr.rvalue, conjuncts);
+            } else {
+                conjuncts.add(expr);
+            }
+        }
+    }
+
+    protected Set<String> getCandidateIds(Expression expr, IndexLookup lookup) {
+        if (!(expr.lvalue instanceof Reference) || !(expr.rvalue instanceof StringLiteral)) {
+            return null;
+        }
+        String name = ((Reference) expr.lvalue).name;
+        String value = ((StringLiteral) expr.rvalue).value;
+        if (expr.operator == Operator.EQ) {
+            switch (name) {
+            case NXQL.ECM_UUID:
+                return Collections.singleton(value);
+            case NXQL.ECM_PARENTID:
+                return lookup.getIds(KEY_PARENT_ID, value);
+            case NXQL.ECM_ANCESTORID:
+                return lookup.getIds(KEY_ANCESTOR_IDS, value);
+            default:
+                return null;
+            }
+        } else if (expr.operator == Operator.STARTSWITH && NXQL.ECM_PATH.equals(name)) {
+            // same path resolution as walkStartsWithPath
+            String path = value;
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            String ancestorId = pathResolver.getIdForPath(path);
+            if (ancestorId == null) {
+                return Collections.emptySet();
+            }
+            return lookup.getIds(KEY_ANCESTOR_IDS, ancestorId);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the ids of the documents readable by the principals, or {@code null} if there would be more than the given
+     * maximum or if the read ACLs are not indexed.
+     */
+    protected Set<String> getReadAclCandidateIds(IndexLookup lookup, int max) {
+        List<Set<String>> sets = new ArrayList<>(principals.size());
+        long size = 0;
+        for (String principal : principals) {
+            Set<String> ids = lookup.getIds(KEY_READ_ACL, principal);
+            if (ids == null) {
+                return null;
+            }
+            sets.add(ids);
+            size += ids.size();
+            if (size >= max) {
+                return null;
+            }
+        }
+        Set<String> union = new HashSet<>((int) size);
+        for (Set<String> ids : sets) {
+            union.addAll(ids);
+        }
+        return union;
+    }
+
     /**
      * Initializes parsing datastructures.
      */
@@ -26,9 +26,11 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -64,6 +66,7 @@ import org.nuxeo.ecm.core.schema.types.Schema;
 import org.nuxeo.ecm.core.schema.types.Type;
 import org.nuxeo.ecm.core.storage.FulltextConfiguration;
 import org.nuxeo.ecm.core.storage.FulltextDescriptor;
+import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.lock.LockManagerService;
 import org.nuxeo.ecm.core.storage.sql.ra.ConnectionFactoryImpl;
 import org.nuxeo.runtime.api.Framework;
@@ -113,6 +116,7 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         this.cm = cm;
         blobManager = Framework.getService(BlobManager.class);
         initBlobsPaths();
+        initStateKeys();
         initLockManager();
     }
 
@@ -169,6 +173,38 @@ public abstract class DBSRepositoryBase implements DBSRepository {
 
     protected abstract void initBlobsPaths();
 
+    /**
+     * Registers the names of all the schema fields as {@link State} keys, so that the states read from the database get
+     * canonical keys without going through the JVM string table.
+     *
+     * @since 8.3
+     */
+    protected void initStateKeys() {
+        SchemaManager schemaManager = Framework.getService(SchemaManager.class);
+        Set<String> keys = new HashSet<>();
+        Set<ComplexType> done = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Schema schema : schemaManager.getSchemas()) {
+            collectStateKeys(schema, keys, done);
+        }
+        State.registerKeys(keys);
+    }
+
+    protected void collectStateKeys(ComplexType complexType, Set<String> keys, Set<ComplexType> done) {
+        if (!done.add(complexType)) {
+            return;
+        }
+        for (Field field : complexType.getFields()) {
+            keys.add(field.getName().getPrefixedName());
+            Type type = field.getType();
+            if (type.isListType()) {
+                type = ((ListType) type).getFieldType();
+            }
+            if (type.isComplexType()) {
+                collectStateKeys((ComplexType) type, keys, done);
+            }
+        }
+    }
+
     /** Finds the paths for all blobs in all document types. */
     protected static abstract class BlobFinder {
 
@@ -139,7 +139,7 @@ public class DBSTransactionState {
         if (transientStates.containsKey(id)) {
             throw new IllegalStateException("Already transient: " + id);
         }
-        DBSDocumentState docState = new DBSDocumentState(state); // copy
+        DBSDocumentState docState = new DBSDocumentState(state); // copy-on-write
         transientStates.put(id, docState);
         return docState;
     }
@@ -342,7 +342,8 @@ public class DBSTransactionState {
      * The copy is automatically saved.
      */
     public DBSDocumentState copy(String id) {
-        DBSDocumentState copyState = new DBSDocumentState(getStateForRead(id));
+        // the state read may be a transient one, whose sub-trees are modified in place
+        DBSDocumentState copyState = new DBSDocumentState(StateHelper.deepCopy(getStateForRead(id)));
         String copyId = repository.generateNewId();
         copyState.put(KEY_ID, copyId);
         copyState.put(KEY_PROXY_IDS, null); // no proxies to this new doc
@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+public class TestDBSDocumentState {
+
+    protected static State newBase() {
+        State base = new State();
+        base.put("ecm:id", "id1");
+        base.put("dc:title", "title");
+        State blob = new State();
+        blob.put("name", "file.txt");
+        base.put("file:content", blob);
+        ArrayList<Serializable> list = new ArrayList<>();
+        State item = new State();
+        item.put("value", "v1");
+        list.add(item);
+        base.put("my:list", list);
+        return base;
+    }
+
+    @Test
+    public void testSharedUntilWrite() {
+        State base = newBase();
+        DBSDocumentState docState = new DBSDocumentState(base);
+        State state = docState.getState();
+        assertNotSame(base, state);
+        assertSame(base.get("file:content"), state.get("file:content"));
+        assertSame(base.get("my:list"), state.get("my:list"));
+
+        // top-level change doesn't copy sub-trees
+        docState.put("dc:title", "new title");
+        assertSame(base.get("file:content"), state.get("file:content"));
+        assertSame(docState.getOriginalState().get("file:content"), state.get("file:content"));
+        assertEquals("title", base.get("dc:title"));
+        StateDiff diff = docState.getStateChange();
+        assertEquals(1, diff.size());
+        assertEquals("new title", diff.get("dc:title"));
+
+        // sub-tree change copies only that sub-tree
+        State blob = (State) docState.getForWrite("file:content");
+        assertNotSame(base.get("file:content"), blob);
+        assertSame(blob, docState.getForWrite("file:content"));
+        blob.put("name", "other.txt");
+        assertEquals("file.txt", ((State) base.get("file:content")).get("name"));
+        assertEquals("file.txt", ((State) docState.getOriginalState().get("file:content")).get("name"));
+        assertSame(base.get("my:list"), state.get("my:list"));
+        diff = docState.getStateChange();
+        assertEquals(2, diff.size());
+        assertEquals("other.txt", ((State) diff.get("file:content")).get("name"));
+    }
+
+    @Test
+    public void testWriteAfterSave() {
+        DBSDocumentState docState = new DBSDocumentState(newBase());
+        docState.markDirty();
+        State blob = (State) docState.getForWrite("file:content");
+        blob.put("name", "other.txt");
+        docState.setNotDirty();
+        assertNull(docState.getStateChange());
+
+        // after save, the written sub-tree is shared with the new original state
+        docState.markDirty();
+        State blob2 = (State) docState.getForWrite("file:content");
+        assertNotSame(blob, blob2);
+        blob2.put("name", "third.txt");
+        assertEquals("other.txt", blob.get("name"));
+        StateDiff diff = docState.getStateChange();
+        assertEquals("third.txt", ((State) diff.get("file:content")).get("name"));
+    }
+
+    @Test
+    public void testBaseChangedAfterRead() {
+        State base = newBase();
+        State blob = (State) base.get("file:content");
+        DBSDocumentState docState1 = new DBSDocumentState(base);
+        DBSDocumentState docState2 = new DBSDocumentState(base);
+        // the repository replaces the sub-tree when another transaction commits
+        base.put("file:content", new State());
+        // it's still shared between the two states, the write must not go to it
+        docState1.markDirty();
+        ((State) docState1.getForWrite("file:content")).put("name", "other.txt");
+        assertEquals("file.txt", blob.get("name"));
+        assertSame(blob, docState2.getState().get("file:content"));
+    }
+
+}
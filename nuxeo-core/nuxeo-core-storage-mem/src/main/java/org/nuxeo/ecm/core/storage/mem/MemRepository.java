@@ -20,6 +20,7 @@ package org.nuxeo.ecm.core.storage.mem;
 
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
@@ -29,13 +30,16 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -74,6 +78,9 @@ import org.nuxeo.runtime.api.Framework;
  * <p>
  * Internally, the repository is a map from id to document object.
  * <p>
+ * Hash indexes are maintained on the parent id and name, the ancestor ids and the read ACLs, to avoid scanning all the
+ * documents for child lookups and for queries restricted to a folder, a subtree or the documents readable by a user.
+ * <p>
  * A document object is a JSON-like document stored as a Map recursively containing the data, see {@link DBSDocument}
  * for the description of the document.
  *
@@ -91,6 +98,27 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * The indexed keys. The index for an array key contains each of its elements.
+     *
+     * @since 8.3
+     */
+    protected static final List<String> INDEXED_KEYS = Arrays.asList(KEY_PARENT_ID, KEY_ANCESTOR_IDS, KEY_READ_ACL);
+
+    /**
+     * The indexes, a map of key -> value -> document ids.
+     *
+     * @since 8.3
+     */
+    protected Map<String, Map<Object, Set<String>>> indexes;
+
+    /**
+     * The index of children, a map of parent id + name -> document ids.
+     *
+     * @since 8.3
+     */
+    protected Map<String, Set<String>> childIndex;
+
     public MemRepository(ConnectionManager cm, MemRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor.getFulltextDescriptor());
         initRepository();
@@ -100,13 +128,141 @@ public class MemRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         states = null;
+        indexes = null;
+        childIndex = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        indexes = new HashMap<>();
+        for (String key : INDEXED_KEYS) {
+            indexes.put(key, new ConcurrentHashMap<>());
+        }
+        childIndex = new ConcurrentHashMap<>();
         initRoot();
     }
 
+    protected static String childKey(Object parentId, Object name) {
+        return parentId + "/" + name;
+    }
+
+    /**
+     * Gets the values of a state for an index.
+     */
+    protected static Collection<Object> getIndexedValues(State state, String key) {
+        Object value = state.get(key);
+        if (value == null) {
+            return Collections.emptyList();
+        } else if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        } else {
+            return Collections.singletonList(value);
+        }
+    }
+
+    protected static void addToIndex(Map<? super String, Set<String>> index, String value, String id) {
+        index.compute(value, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    protected static void removeFromIndex(Map<? super String, Set<String>> index, String value, String id) {
+        index.computeIfPresent(value, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Gets the values of a state for all the indexes.
+     */
+    protected static Map<String, Collection<Object>> getIndexedValues(State state) {
+        Map<String, Collection<Object>> values = new HashMap<>();
+        for (String key : INDEXED_KEYS) {
+            values.put(key, getIndexedValues(state, key));
+        }
+        Object parentId = state.get(KEY_PARENT_ID);
+        values.put(KEY_NAME, parentId == null ? Collections.emptyList()
+                : Collections.singletonList(childKey(parentId, state.get(KEY_NAME))));
+        return values;
+    }
+
+    /**
+     * Updates the indexes for a document, given its previous and new indexed values.
+     * <p>
+     * Must be called while holding the lock on the state.
+     */
+    protected void reindex(String id, Map<String, Collection<Object>> oldValues,
+            Map<String, Collection<Object>> newValues) {
+        for (Entry<String, Collection<Object>> en : newValues.entrySet()) {
+            String key = en.getKey();
+            Map<? super String, Set<String>> index = key.equals(KEY_NAME) ? childIndex : indexes.get(key);
+            Collection<Object> oldVals = oldValues == null ? Collections.emptyList() : oldValues.get(key);
+            Collection<Object> newVals = en.getValue();
+            for (Object value : oldVals) {
+                if (!newVals.contains(value)) {
+                    removeFromIndex(index, value.toString(), id);
+                }
+            }
+            for (Object value : newVals) {
+                if (!oldVals.contains(value)) {
+                    addToIndex(index, value.toString(), id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if a diff may change indexed values.
+     */
+    protected static boolean isIndexedDiff(StateDiff diff) {
+        return diff.containsKey(KEY_NAME) || INDEXED_KEYS.stream().anyMatch(diff::containsKey);
+    }
+
+    /**
+     * Gets the ids of the documents having the given value for an indexed key, or {@code null} if the key is not
+     * indexed.
+     *
+     * @since 8.3
+     */
+    protected Set<String> getIndexedIds(String key, Object value) {
+        Map<Object, Set<String>> index = indexes.get(key);
+        if (index == null) {
+            return null;
+        }
+        Set<String> ids = index.get(value);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    /**
+     * Gets the states for the given ids, skipping missing ones.
+     */
+    protected List<State> getStates(Set<String> ids) {
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets the states that may have the given value for a key: uses the index for the parent id, otherwise returns all
+     * the states.
+     */
+    protected Collection<State> getCandidateStates(String key, Object value) {
+        if (KEY_PARENT_ID.equals(key)) {
+            return getStates(getIndexedIds(key, value));
+        }
+        return states.values();
+    }
+
     @Override
     public String generateNewId() {
         if (DEBUG_UUIDS) {
@@ -147,7 +303,10 @@ public class MemRepository extends DBSRepositoryBase {
         }
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
-        states.put(id, state);
+        synchronized (state) {
+            states.put(id, state);
+            reindex(id, null, getIndexedValues(state));
+        }
     }
 
     @Override
@@ -159,7 +318,15 @@ public class MemRepository extends DBSRepositoryBase {
         if (state == null) {
             throw new ConcurrentUpdateException("Missing: " + id);
         }
-        applyDiff(state, diff);
+        if (isIndexedDiff(diff)) {
+            synchronized (state) {
+                Map<String, Collection<Object>> oldValues = getIndexedValues(state);
+                applyDiff(state, diff);
+                reindex(id, oldValues, getIndexedValues(state));
+            }
+        } else {
+            applyDiff(state, diff);
+        }
     }
 
     @Override
@@ -168,17 +335,34 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: REMOVE " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
+            State state = states.remove(id);
+            if (state == null) {
                 log.debug("Missing on remove: " + id);
+                continue;
+            }
+            synchronized (state) {
+                Map<String, Collection<Object>> oldValues = getIndexedValues(state);
+                Map<String, Collection<Object>> newValues = new HashMap<>();
+                for (String key : oldValues.keySet()) {
+                    newValues.put(key, Collections.emptyList());
+                }
+                reindex(id, oldValues, newValues);
             }
         }
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
-            if (ignored.contains(state.get(KEY_ID))) {
+        Set<String> ids = childIndex.get(childKey(parentId, name));
+        if (ids == null) {
+            return null;
+        }
+        for (String id : ids) {
+            if (ignored.contains(id)) {
+                continue;
+            }
+            State state = states.get(id);
+            if (state == null) {
                 continue;
             }
             if (!parentId.equals(state.get(KEY_PARENT_ID))) {
@@ -203,7 +387,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -224,8 +408,12 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key1 + " = " + value1 + " AND " + key2 + " = " + value2);
         }
+        Collection<State> candidates = getCandidateStates(key1, value1);
+        if (candidates == states.values()) {
+            candidates = getCandidateStates(key2, value2);
+        }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : candidates) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -247,7 +435,9 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        STATE: for (State state : states.values()) {
+        Set<String> indexedIds = getIndexedIds(key, value);
+        Collection<State> candidates = indexedIds == null ? states.values() : getStates(indexedIds);
+        STATE: for (State state : candidates) {
             Object[] array = (Object[]) state.get(key);
             String id = (String) state.get(KEY_ID);
             if (array != null) {
@@ -279,7 +469,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -304,8 +494,13 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + evaluator + " OFFSET " + offset + " LIMIT " + limit);
         }
         evaluator.parse();
+        Set<String> candidateIds = evaluator.getCandidateIds(this::getIndexedIds);
+        Collection<State> candidates = candidateIds == null ? states.values() : getStates(candidateIds);
+        if (log.isTraceEnabled() && candidateIds != null) {
+            log.trace("Mem:    candidates: " + candidateIds.size());
+        }
         List<Map<String, Serializable>> projections = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : candidates) {
             List<Map<String, Serializable>> matches = evaluator.matches(state);
             if (!matches.isEmpty()) {
                 if (distinctDocuments) {
@@ -352,6 +547,10 @@ public class MemRepository extends DBSRepositoryBase {
     /**
      * Applies a {@link StateDiff} in-place onto a base {@link State}.
      * <p>
+     * Sub-states and lists are never modified in place, they are replaced by modified copies: the states returned by
+     * {@link #readState} share them with the transient states of the sessions, which must not see the changes made
+     * by other transactions.
+     * <p>
      * Uses thread-safe datastructures.
      */
     public static void applyDiff(State state, StateDiff stateDiff) {
@@ -360,15 +559,16 @@ public class MemRepository extends DBSRepositoryBase {
             Serializable diffElem = en.getValue();
             if (diffElem instanceof StateDiff) {
                 Serializable old = state.get(key);
+                State copy;
                 if (old == null) {
-                    old = new State(true); // thread-safe
-                    state.put(key, old);
-                    // enter the next if
-                }
-                if (!(old instanceof State)) {
+                    copy = new State(true); // thread-safe
+                } else if (old instanceof State) {
+                    copy = copyState((State) old);
+                } else {
                     throw new UnsupportedOperationException("Cannot apply StateDiff on non-State: " + old);
                 }
-                applyDiff((State) old, (StateDiff) diffElem);
+                applyDiff(copy, (StateDiff) diffElem);
+                state.put(key, copy);
             } else if (diffElem instanceof ListDiff) {
                 state.put(key, applyDiff(state.get(key), (ListDiff) diffElem));
             } else if (diffElem instanceof Delta) {
@@ -390,6 +590,8 @@ public class MemRepository extends DBSRepositoryBase {
     /**
      * Applies a {@link ListDiff} onto an array or {@link List}, and returns the resulting value.
      * <p>
+     * The passed value is not modified, the result is a modified copy.
+     * <p>
      * Uses thread-safe datastructures.
      */
     public static Serializable applyDiff(Serializable value, ListDiff listDiff) {
@@ -402,6 +604,9 @@ public class MemRepository extends DBSRepositoryBase {
             }
             arrayComponentType = ((Object[]) value).getClass().getComponentType();
             value = new CopyOnWriteArrayList<>(Arrays.asList((Object[]) value));
+        } else if (value instanceof List) {
+            // copy, the list may be shared with readers
+            value = new CopyOnWriteArrayList<>((List<?>) value);
         }
         if (value == null) {
             value = new CopyOnWriteArrayList<>();
@@ -419,7 +624,9 @@ public class MemRepository extends DBSRepositoryBase {
                     break;
                 }
                 if (diffElem instanceof StateDiff) {
-                    applyDiff((State) list.get(i), (StateDiff) diffElem);
+                    State copy = copyState((State) list.get(i));
+                    applyDiff(copy, (StateDiff) diffElem);
+                    list.set(i, copy);
                 } else if (diffElem != NOP) {
                     list.set(i, StateHelper.deepCopy(diffElem, true)); // thread-safe
                 }
@@ -443,6 +650,19 @@ public class MemRepository extends DBSRepositoryBase {
         }
     }
 
+    /**
+     * Makes a thread-safe shallow copy of a {@link State}, whose sub-states and lists are shared.
+     *
+     * @since 8.3
+     */
+    protected static State copyState(State state) {
+        State copy = new State(state.size(), true); // thread-safe
+        for (Entry<String, Serializable> en : state.entrySet()) {
+            copy.put(en.getKey(), en.getValue());
+        }
+        return copy;
+    }
+
     /* synchronized */
     @Override
     public synchronized Lock getLock(String id) {
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.nuxeo.ecm.core.storage.mem.StandaloneMemRepository.document;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.storage.State;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency of child lookups and of NXQL queries on the in-memory repository for various repository sizes.
+ * <p>
+ * The repository has folders of {@value #CHILDREN} documents under the root, each folder being readable by one of
+ * {@value #GROUPS} groups.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.storage.mem.MemRepositoryBenchmark}.
+ *
+ * @since 8.3
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemRepositoryBenchmark {
+
+    protected static final int CHILDREN = 100;
+
+    protected static final int GROUPS = 10;
+
+    @Param({ "1000", "10000", "100000" })
+    public int size;
+
+    protected StandaloneMemRepository repository;
+
+    protected String folderId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = StandaloneMemRepository.create();
+        repository.createState(document("root", null, "", new String[0], "Administrator"));
+        int folders = size / CHILDREN;
+        for (int f = 0; f < folders; f++) {
+            String folder = "folder" + f;
+            String group = "group" + (f % GROUPS);
+            repository.createState(document(folder, "root", folder, new String[] { "root" }, "Administrator", group));
+            for (int i = 0; i < CHILDREN - 1; i++) {
+                repository.createState(document(folder + "-doc" + i, folder, "doc" + i,
+                        new String[] { "root", folder }, "Administrator", group));
+            }
+        }
+        folderId = "folder" + (folders / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        StandaloneMemRepository.dispose();
+    }
+
+    @Benchmark
+    public State readChildState() {
+        return repository.readChildState(folderId, "doc42", Collections.emptySet());
+    }
+
+    @Benchmark
+    public PartialList<Map<String, Serializable>> queryChildren() {
+        return repository.query("ecm:parentId = '" + folderId + "'");
+    }
+
+    @Benchmark
+    public PartialList<Map<String, Serializable>> querySubtreeWithSecurity() {
+        return repository.query("ecm:ancestorId = '" + folderId + "'", "bob", "group0");
+    }
+
+    @Benchmark
+    public PartialList<Map<String, Serializable>> queryReadable() {
+        return repository.query("ecm:ancestorId = 'root'", "bob", "group0");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MemRepositoryBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
+import org.nuxeo.runtime.api.DefaultServiceProvider;
+
+/**
+ * Memory repository usable without a runtime: no root, blob paths or lock manager, services from an empty
+ * {@link DefaultServiceProvider}.
+ */
+public class StandaloneMemRepository extends MemRepository {
+
+    public static StandaloneMemRepository create() {
+        DefaultServiceProvider.setProvider(new DefaultServiceProvider());
+        MemRepositoryDescriptor descriptor = new MemRepositoryDescriptor();
+        descriptor.name = "test";
+        descriptor.setFulltextDisabled(true);
+        return new StandaloneMemRepository(descriptor);
+    }
+
+    public static void dispose() {
+        DefaultServiceProvider.setProvider(null);
+    }
+
+    protected StandaloneMemRepository(MemRepositoryDescriptor descriptor) {
+        super(null, descriptor);
+    }
+
+    @Override
+    public void initRoot() {
+    }
+
+    @Override
+    protected void initBlobsPaths() {
+    }
+
+    @Override
+    protected void initLockManager() {
+    }
+
+    public static State document(String id, String parentId, String name, String[] ancestorIds, String... racl) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_NAME, name);
+        state.put(KEY_ANCESTOR_IDS, ancestorIds);
+        state.put(KEY_READ_ACL, racl);
+        return state;
+    }
+
+    /**
+     * Runs a query on ecm: properties, without query optimization.
+     */
+    public PartialList<Map<String, Serializable>> query(String where, String... principals) {
+        SQLQuery sqlQuery = SQLQueryParser.parse("SELECT ecm:uuid FROM Document WHERE " + where);
+        MultiExpression expression = new MultiExpression(Operator.AND,
+                Collections.<Operand> singletonList(sqlQuery.where.predicate));
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, sqlQuery.select, expression, null,
+                principals.length == 0 ? null : principals, true);
+        return queryAndFetch(evaluator, null, true, 0, 0, -1);
+    }
+
+    public Set<String> queryIds(String where, String... principals) {
+        Set<String> ids = new HashSet<>();
+        for (Map<String, Serializable> projection : query(where, principals).list) {
+            ids.add((String) projection.get("ecm:uuid"));
+        }
+        return ids;
+    }
+
+}
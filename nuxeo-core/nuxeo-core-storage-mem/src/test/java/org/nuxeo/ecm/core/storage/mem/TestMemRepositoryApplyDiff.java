@@ -108,9 +108,8 @@ public class TestMemRepositoryApplyDiff {
 
     @Test
     public void testCopiesListDiffDiff() {
-        ArrayList<Object> list = list(list("L1"));
         ArrayList<Object> list1 = list("L2");
-        MemRepository.applyDiff(list, listDiff(list(list1), null)); // diff
+        List<?> list = (List<?>) MemRepository.applyDiff(list(list("L1")), listDiff(list(list1), null)); // diff
         // make sure we don't end up with the actual list1 in the new list, but with a copy
         Serializable list2 = (Serializable) list.get(0);
         assertEqualsStrict("Should be equal", list1, list2);
@@ -119,13 +118,25 @@ public class TestMemRepositoryApplyDiff {
 
     @Test
     public void testCopiesListDiffRpush() {
-        ArrayList<Object> list = list();
         ArrayList<Object> list1 = list("L1");
-        MemRepository.applyDiff(list, listDiff(null, list(list1))); // rpush
+        List<?> list = (List<?>) MemRepository.applyDiff(list(), listDiff(null, list(list1))); // rpush
         // make sure we don't end up with the actual list1 in the new list, but with a copy
         Serializable list2 = (Serializable) list.get(0);
         assertEqualsStrict("Should be equal", list1, list2);
         assertNotSame(list1, list2);
     }
 
+    @Test
+    public void testDoesNotModifySubTreesInPlace() {
+        State sub = state("B", "C");
+        ArrayList<Object> list = list(state("D", "E"));
+        State state = state("A", sub, "L", list);
+        assertApplyDiff(state("A", state("B", "X"), "L", list(state("D", "Y"))), //
+                state, //
+                stateDiff("A", stateDiff("B", "X"), "L", listDiff(list(stateDiff("D", "Y")), null)));
+        // readers holding the previous sub-trees don't see the change
+        assertEqualsStrict("Should be unchanged", state("B", "C"), sub);
+        assertEqualsStrict("Should be unchanged", list(state("D", "E")), list);
+    }
+
 }
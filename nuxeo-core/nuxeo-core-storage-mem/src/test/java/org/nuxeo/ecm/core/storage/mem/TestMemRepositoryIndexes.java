@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.mem.StandaloneMemRepository.document;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+public class TestMemRepositoryIndexes {
+
+    protected StandaloneMemRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = StandaloneMemRepository.create();
+        // root
+        // + folder (bob)
+        // | + doc1 (bob)
+        // | + doc2 (alice)
+        // + other (alice)
+        repository.createState(document("root", null, "", new String[0], "bob", "alice"));
+        repository.createState(document("folder", "root", "folder", ids("root"), "bob"));
+        repository.createState(document("doc1", "folder", "doc1", ids("root", "folder"), "bob"));
+        repository.createState(document("doc2", "folder", "doc2", ids("root", "folder"), "alice"));
+        repository.createState(document("other", "root", "other", ids("root"), "alice"));
+    }
+
+    @After
+    public void tearDown() {
+        StandaloneMemRepository.dispose();
+    }
+
+    protected static String[] ids(String... ids) {
+        return ids;
+    }
+
+    protected static Set<String> set(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    protected static Set<String> none() {
+        return Collections.emptySet();
+    }
+
+    protected Set<String> descendants(String id) {
+        Set<String> ids = new HashSet<>();
+        repository.queryKeyValueArray(KEY_ANCESTOR_IDS, id, ids, null, null);
+        return ids;
+    }
+
+    @Test
+    public void testChildLookup() {
+        assertEquals("doc1", repository.readChildState("folder", "doc1", none()).get("ecm:id"));
+        assertNull(repository.readChildState("root", "doc1", none()));
+        assertNull(repository.readChildState("folder", "doc1", set("doc1")));
+        assertTrue(repository.hasChild("root", "other", none()));
+        assertEquals(2, repository.queryKeyValue(KEY_PARENT_ID, "folder", none()).size());
+        assertEquals(1, repository.queryKeyValue(KEY_PARENT_ID, "folder", KEY_NAME, "doc2", none()).size());
+        assertTrue(repository.queryKeyValuePresence(KEY_PARENT_ID, "root", set("folder")));
+        assertFalse(repository.queryKeyValuePresence(KEY_PARENT_ID, "doc1", none()));
+    }
+
+    @Test
+    public void testIndexesFollowUpdates() {
+        // rename and move doc1 under other
+        StateDiff diff = new StateDiff();
+        diff.put(KEY_NAME, "renamed");
+        diff.put(KEY_PARENT_ID, "other");
+        diff.put(KEY_ANCESTOR_IDS, ids("root", "other"));
+        diff.put(KEY_READ_ACL, ids("alice"));
+        repository.updateState("doc1", diff);
+        assertNull(repository.readChildState("folder", "doc1", none()));
+        assertEquals("doc1", repository.readChildState("other", "renamed", none()).get("ecm:id"));
+        assertEquals(1, repository.queryKeyValue(KEY_PARENT_ID, "folder", none()).size());
+        assertEquals(set("doc1"), descendants("other"));
+        assertEquals(set("root", "doc2", "other", "doc1"), repository.indexes.get(KEY_READ_ACL).get("alice"));
+
+        // non-indexed change
+        diff = new StateDiff();
+        diff.put("dc:title", "foo");
+        repository.updateState("doc1", diff);
+        assertEquals("doc1", repository.readChildState("other", "renamed", none()).get("ecm:id"));
+
+        repository.deleteStates(set("doc1"));
+        assertNull(repository.readChildState("other", "renamed", none()));
+        assertEquals(none(), descendants("other"));
+        assertNull(repository.indexes.get(KEY_PARENT_ID).get("other"));
+        assertEquals(set("root", "doc2", "other"), repository.indexes.get(KEY_READ_ACL).get("alice"));
+    }
+
+    @Test
+    public void testQueryUsesCandidates() {
+        assertEquals(set("doc1", "doc2"), repository.queryIds("ecm:parentId = 'folder'"));
+        assertEquals(set("folder", "doc1", "doc2", "other"), repository.queryIds("ecm:ancestorId = 'root'"));
+        assertEquals(set("doc2"), repository.queryIds("ecm:ancestorId = 'root' AND ecm:parentId = 'folder'", "alice"));
+        assertEquals(set("doc2", "other"), repository.queryIds("ecm:ancestorId = 'root'", "alice"));
+        assertEquals(set("doc1"), repository.queryIds("ecm:uuid = 'doc1'"));
+        assertEquals(none(), repository.queryIds("ecm:uuid = 'doc1'", "alice"));
+        // not indexed, scans everything
+        assertEquals(set("folder", "other"), repository.queryIds("ecm:parentId = 'root' OR ecm:uuid = 'doc9'"));
+    }
+
+    @Test
+    public void testCandidateSelection() {
+        Set<String> ids = repository.getIndexedIds(KEY_PARENT_ID, "folder");
+        assertEquals(set("doc1", "doc2"), ids);
+        assertEquals(none(), repository.getIndexedIds(KEY_PARENT_ID, "nosuchfolder"));
+        assertNull(repository.getIndexedIds("dc:title", "foo"));
+        State state = repository.readState("doc1");
+        assertEquals("bob", ((Object[]) state.get(KEY_READ_ACL))[0]);
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.ecm.core.storage.mem.StandaloneMemRepository.document;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSDocumentState;
+
+/**
+ * Transient states of two transactions over the same stored state.
+ */
+public class TestMemRepositoryTransientStates {
+
+    protected StandaloneMemRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = StandaloneMemRepository.create();
+        State doc = document("doc1", null, "doc1", new String[0], "bob");
+        State blob = new State();
+        blob.put("name", "file.txt");
+        doc.put("file:content", blob);
+        ArrayList<Serializable> list = new ArrayList<>();
+        State item = new State();
+        item.put("value", "v1");
+        list.add(item);
+        doc.put("my:list", list);
+        repository.createState(doc);
+    }
+
+    @After
+    public void tearDown() {
+        StandaloneMemRepository.dispose();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected static State listItem(State state) {
+        return ((List<State>) state.get("my:list")).get(0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCommitNotSeenByOtherTransaction() {
+        DBSDocumentState docState1 = new DBSDocumentState(repository.readState("doc1"));
+        DBSDocumentState docState2 = new DBSDocumentState(repository.readState("doc1"));
+
+        // first transaction changes a sub-state and a list item, and commits
+        docState1.markDirty();
+        ((State) docState1.getForWrite("file:content")).put("name", "other.txt");
+        ((List<State>) docState1.getForWrite("my:list")).get(0).put("value", "v2");
+        repository.updateState("doc1", docState1.getStateChange());
+        docState1.setNotDirty();
+
+        State stored = repository.readState("doc1");
+        assertEquals("other.txt", ((State) stored.get("file:content")).get("name"));
+        assertEquals("v2", listItem(stored).get("value"));
+
+        // second transaction still sees what it read
+        State state2 = docState2.getState();
+        assertEquals("file.txt", ((State) state2.get("file:content")).get("name"));
+        assertEquals("v1", listItem(state2).get("value"));
+
+        // and its diff is computed against what it read
+        docState2.markDirty();
+        ((State) docState2.getForWrite("file:content")).put("length", Long.valueOf(10));
+        StateDiff diff = docState2.getStateChange();
+        assertEquals(1, diff.size());
+        StateDiff blobDiff = (StateDiff) diff.get("file:content");
+        assertEquals(1, blobDiff.size());
+        assertEquals(Long.valueOf(10), blobDiff.get("length"));
+
+        // committing it keeps the changes of the first transaction
+        repository.updateState("doc1", diff);
+        stored = repository.readState("doc1");
+        State storedBlob = (State) stored.get("file:content");
+        assertEquals("other.txt", storedBlob.get("name"));
+        assertEquals(Long.valueOf(10), storedBlob.get("length"));
+        assertEquals("v2", listItem(stored).get("value"));
+    }
+
+}
@@ -93,10 +93,15 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapperConnector;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.test.runner.ConditionalIgnoreRule;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 import org.nuxeo.runtime.transaction.TransactionRuntimeException;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 public class TestSQLBackend extends SQLBackendTestCase {
 
     private static final Log log = LogFactory.getLog(TestSQLBackend.class);
@@ -848,6 +853,49 @@ public class TestSQLBackend extends SQLBackendTestCase {
         session.close();
     }
 
+    @Test
+    public void testQueryPlanCacheRebinding() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        root.getCollectionProperty(Model.ACL_PROP).setValue(new ACLRow[0]);
+        Node foo = session.addChildNode(root, "foo", null, "TestDoc", false);
+        foo.setSimpleProperty("tst:title", "foo title");
+        foo.getCollectionProperty(Model.ACL_PROP).setValue(
+                new ACLRow[] { new ACLRow(0, "test", true, "Read", "bob", null) });
+        Node bar = session.addChildNode(root, "bar", null, "TestDoc", false);
+        bar.setSimpleProperty("tst:title", "bar title");
+        bar.getCollectionProperty(Model.ACL_PROP).setValue(
+                new ACLRow[] { new ACLRow(0, "test", true, "Read", "pete", null) });
+        session.save();
+        session.updateReadAcls();
+
+        Counter hits = SharedMetricRegistries.getOrCreate(MetricsService.class.getName()).counter(
+                MetricRegistry.name("nuxeo", "repositories", repository.getName(), "caches", "queryplan", "hits"));
+        long hitCount = hits.getCount();
+        PartialList<Serializable> res;
+
+        // same query with different literals
+        res = session.query("SELECT * FROM TestDoc WHERE tst:title = 'foo title'", QueryFilter.EMPTY, false);
+        assertEquals(Collections.singletonList(foo.getId()), res.list);
+        res = session.query("SELECT * FROM TestDoc WHERE tst:title = 'bar title'", QueryFilter.EMPTY, false);
+        assertEquals(Collections.singletonList(bar.getId()), res.list);
+        assertEquals(hitCount + 1, hits.getCount());
+
+        // same query with different principals
+        String query = "SELECT * FROM TestDoc WHERE tst:title LIKE '% title'";
+        QueryFilter qf = new QueryFilter(null, new String[] { "bob" }, new String[] { "Read" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        res = session.query(query, qf, false);
+        assertEquals(Collections.singletonList(foo.getId()), res.list);
+        qf = new QueryFilter(null, new String[] { "pete" }, new String[] { "Read" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        res = session.query(query, qf, false);
+        assertEquals(Collections.singletonList(bar.getId()), res.list);
+        assertEquals(hitCount + 2, hits.getCount());
+
+        session.close();
+    }
+
     @Test
     public void testUpdateReadAclsDeadlock() throws Exception {
         repository.getConnection().close(); // create repo
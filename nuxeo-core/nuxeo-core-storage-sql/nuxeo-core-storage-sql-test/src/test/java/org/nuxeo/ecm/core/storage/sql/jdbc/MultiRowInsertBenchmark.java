@@ -0,0 +1,214 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.storage.sql.ColumnType;
+import org.nuxeo.ecm.core.storage.sql.DatabaseHelper;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Insert;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.TableImpl;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.DialectH2;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.DialectPostgreSQL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the rows inserted per second by {@link JDBCRowMapper#insertMultiRows}, with one JDBC-batched statement per
+ * row, or with multi-row {@code INSERT} statements.
+ * <p>
+ * The table has the same kind of columns as a typical schema fragment. H2 runs in memory, PostgreSQL uses the usual
+ * {@code nuxeo.test.vcs.*} system properties for the server, port, database, user and password.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.storage.sql.jdbc.MultiRowInsertBenchmark}.
+ *
+ * @since 8.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiRowInsertBenchmark {
+
+    protected static final int ROWS = 1000;
+
+    protected static final String TABLE_NAME = "benchfragment";
+
+    @Param({ "h2", "postgresql" })
+    public String database;
+
+    @Param({ "batch", "multirow" })
+    public String mode;
+
+    protected Connection connection;
+
+    protected Dialect dialect;
+
+    protected TableImpl table;
+
+    protected List<Column> columns;
+
+    protected Insert insert;
+
+    protected long counter;
+
+    protected BenchmarkRowMapper mapper;
+
+    protected int maxRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        switch (database) {
+        case "h2":
+            connection = DriverManager.getConnection("jdbc:h2:mem:bench", "sa", "");
+            dialect = new DialectH2(connection.getMetaData(), null);
+            break;
+        case "postgresql":
+            String url = String.format("jdbc:postgresql://%s:%s/%s",
+                    System.getProperty(DatabaseHelper.SERVER_PROPERTY, "localhost"),
+                    System.getProperty(DatabaseHelper.PORT_PROPERTY, "5432"),
+                    System.getProperty(DatabaseHelper.DATABASE_PROPERTY, DatabaseHelper.DEFAULT_DATABASE_NAME));
+            connection = DriverManager.getConnection(url, System.getProperty(DatabaseHelper.USER_PROPERTY, "nuxeo"),
+                    System.getProperty(DatabaseHelper.PASSWORD_PROPERTY, "nuxeo"));
+            dialect = new DialectPostgreSQL(connection.getMetaData(), null);
+            break;
+        default:
+            throw new IllegalArgumentException(database);
+        }
+        table = new TableImpl(dialect, TABLE_NAME, TABLE_NAME);
+        table.addColumn("id", ColumnType.SYSNAME, "id", null);
+        table.addColumn("title", ColumnType.STRING, "title", null);
+        table.addColumn("description", ColumnType.STRING, "description", null);
+        table.addColumn("created", ColumnType.TIMESTAMP, "created", null);
+        table.addColumn("modified", ColumnType.TIMESTAMP, "modified", null);
+        table.addColumn("creator", ColumnType.SYSNAME, "creator", null);
+        table.addColumn("size", ColumnType.LONG, "size", null);
+        table.addColumn("flag", ColumnType.BOOLEAN, "flag", null);
+        columns = new ArrayList<>(table.getColumns());
+        insert = new Insert(table);
+        for (Column column : columns) {
+            insert.addColumn(column);
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + table.getQuotedName());
+            st.execute(table.getCreateSql());
+        }
+        connection.setAutoCommit(false);
+        mapper = new BenchmarkRowMapper();
+        // a single row per statement is the JDBC-batched insert used when multi-row inserts are disabled
+        maxRows = mode.equals("batch") ? 1 : mapper.getMaximumRowsForInsert(TABLE_NAME);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE " + table.getQuotedName());
+        }
+        connection.commit();
+        connection.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DELETE FROM " + table.getQuotedName());
+        }
+        connection.commit();
+    }
+
+    protected List<Serializable[]> getValues() {
+        Calendar now = Calendar.getInstance();
+        List<Serializable[]> values = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            long n = counter++;
+            values.add(new Serializable[] { "id-" + n, "Title " + n, "Some description for row " + n, now, now,
+                    "Administrator", Long.valueOf(n), Boolean.valueOf(n % 2 == 0) });
+        }
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insert() throws SQLException {
+        mapper.insertMultiRows(TABLE_NAME, columns, getValues(), maxRows);
+        connection.commit();
+    }
+
+    /**
+     * Row mapper working directly on the benchmark connection and table, without a repository model.
+     */
+    protected class BenchmarkRowMapper extends JDBCRowMapper {
+
+        protected BenchmarkRowMapper() throws SQLException {
+            this.connection = MultiRowInsertBenchmark.this.connection;
+            supportsBatchUpdates = connection.getMetaData().supportsBatchUpdates();
+        }
+
+        @Override
+        protected String getInsertSql(String tableName, int rows) {
+            return MultiRowInsertBenchmark.this.insert.getStatement(rows);
+        }
+
+        @Override
+        protected int getMaximumRowsForInsert(String tableName) {
+            // same as SQLInfo.getMaximumRowsForInsert
+            Dialect dialect = MultiRowInsertBenchmark.this.dialect;
+            if (!dialect.supportsMultiRowInsert()) {
+                return 1;
+            }
+            int rows = dialect.getMaximumArgsForMultiRowInsert() / columns.size();
+            return Math.max(1, Math.min(rows, dialect.getMaximumRowsForMultiRowInsert()));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(MultiRowInsertBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+}
@@ -18,41 +18,143 @@
  */
 package org.nuxeo.ecm.core.storage.sql;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Propagator of invalidations to a set of {@link InvalidationsQueue}s.
+ * <p>
+ * Propagated invalidations are appended to a shared log, a linked list without locks. Each queue has a cursor in the
+ * log, and reads the invalidations appended since its last read. Entries already read by all the queues are no longer
+ * referenced and are garbage collected.
+ * <p>
+ * To bound the memory retained by a queue that is not read (an idle session), a queue lagging more than
+ * {@link #maxLag} entries behind is moved to the end of the log and marked as having to invalidate everything.
  */
 public class InvalidationsPropagator {
 
-    public final ArrayList<InvalidationsQueue> queues; // used synchronized
+    /** Default maximum number of entries a queue can lag behind before it's compacted. */
+    public static final int DEFAULT_MAX_LAG = 1000;
+
+    /** Interval, in number of appended entries, between checks for lagging queues. */
+    protected static final int CHECK_LAG_INTERVAL = 100;
+
+    public final CopyOnWriteArrayList<InvalidationsQueue> queues;
+
+    protected final AtomicReference<Node> tail;
+
+    protected final int maxLag;
 
     public InvalidationsPropagator() {
-        queues = new ArrayList<InvalidationsQueue>();
+        this(DEFAULT_MAX_LAG);
     }
 
-    public synchronized void addQueue(InvalidationsQueue queue) {
-        if (!queues.contains(queue)) {
-            queues.add(queue);
-        }
+    /**
+     * @since 8.3
+     */
+    public InvalidationsPropagator(int maxLag) {
+        queues = new CopyOnWriteArrayList<InvalidationsQueue>();
+        tail = new AtomicReference<>(new Node(null, null, 0));
+        this.maxLag = maxLag;
+    }
+
+    public void addQueue(InvalidationsQueue queue) {
+        // start at the end of the log, previous invalidations are not relevant for this queue
+        queue.cursor.set(new Cursor(tail.get(), false));
+        queues.addIfAbsent(queue);
     }
 
-    public synchronized void removeQueue(InvalidationsQueue queue) {
+    public void removeQueue(InvalidationsQueue queue) {
         queues.remove(queue);
+        queue.cursor.set(null);
     }
 
-    @SuppressWarnings("unchecked")
     public void propagateInvalidations(Invalidations invalidations, InvalidationsQueue skipQueue) {
-        Collection<InvalidationsQueue> qq;
-        synchronized (this) {
-            qq = (Collection<InvalidationsQueue>) queues.clone();
+        // copy, as the caller may reuse it
+        Invalidations copy = new Invalidations();
+        copy.add(invalidations);
+        Node node = append(copy, skipQueue);
+        if (node.seq % CHECK_LAG_INTERVAL == 0) {
+            compactLaggingQueues(node);
         }
-        for (InvalidationsQueue q : qq) {
-            if (q != skipQueue) {
-                q.addInvalidations(invalidations);
+    }
+
+    /**
+     * Appends an entry to the end of the log. When this returns, the entry is visible to all readers.
+     */
+    protected Node append(Invalidations invalidations, InvalidationsQueue source) {
+        for (;;) {
+            Node last = tail.get();
+            Node next = last.next.get();
+            if (next != null) {
+                // help a concurrent append to complete
+                tail.compareAndSet(last, next);
+                continue;
+            }
+            Node node = new Node(invalidations, source, last.seq + 1);
+            if (last.next.compareAndSet(null, node)) {
+                tail.compareAndSet(last, node);
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Moves the queues lagging too far behind to the given node, and marks them as having to invalidate everything.
+     */
+    protected void compactLaggingQueues(Node node) {
+        Cursor compacted = null;
+        for (InvalidationsQueue queue : queues) {
+            Cursor cursor = queue.cursor.get();
+            if (cursor != null && node.seq - cursor.node.seq > maxLag) {
+                if (compacted == null) {
+                    compacted = new Cursor(node, true);
+                }
+                // the flag moves with the position, a reader cannot see one without the other
+                queue.cursor.compareAndSet(cursor, compacted);
             }
         }
     }
 
+    /**
+     * An entry of the invalidations log.
+     *
+     * @since 8.3
+     */
+    protected static class Node {
+
+        protected final Invalidations invalidations;
+
+        /** The queue from which the invalidations originate, which does not need them. */
+        protected final InvalidationsQueue source;
+
+        protected final long seq;
+
+        protected final AtomicReference<Node> next = new AtomicReference<>();
+
+        protected Node(Invalidations invalidations, InvalidationsQueue source, long seq) {
+            this.invalidations = invalidations;
+            this.source = source;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * The position of a queue in the log: the last entry read, and whether the entries skipped by a compaction require
+     * invalidating everything. Immutable, so that both change atomically.
+     *
+     * @since 8.3
+     */
+    protected static class Cursor {
+
+        protected final Node node;
+
+        protected final boolean all;
+
+        protected Cursor(Node node, boolean all) {
+            this.node = node;
+            this.all = all;
+        }
+    }
+
 }
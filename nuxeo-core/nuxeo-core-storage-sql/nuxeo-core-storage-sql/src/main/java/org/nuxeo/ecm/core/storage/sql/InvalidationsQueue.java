@@ -18,15 +18,28 @@
  */
 package org.nuxeo.ecm.core.storage.sql;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator.Cursor;
+import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator.Node;
+
 /**
  * Queue of invalidations.
  * <p>
  * All invalidations added are accumulated (from multiple threads), then returned when asked for.
+ * <p>
+ * Invalidations propagated by an {@link InvalidationsPropagator} are not copied into the queue: the queue only keeps
+ * its position in the propagator log, and merges the entries following it when asked for its invalidations. Only one
+ * thread, the owner of the queue, may call {@link #getInvalidations}.
  */
 public class InvalidationsQueue {
 
+    /** Invalidations added directly to this queue. */
     public Invalidations queue; // used under synchronization
 
+    /** The position in the propagator log, or {@code null} if not registered. */
+    protected final AtomicReference<Cursor> cursor = new AtomicReference<>();
+
     /** used for debugging */
     public final String name;
 
@@ -47,9 +60,30 @@ public class InvalidationsQueue {
     /**
      * Gets the queued invalidations and resets the queue.
      */
-    public synchronized Invalidations getInvalidations() {
-        Invalidations invalidations = queue;
-        queue = new Invalidations();
+    public Invalidations getInvalidations() {
+        Invalidations invalidations;
+        synchronized (this) {
+            invalidations = queue;
+            queue = new Invalidations();
+        }
+        Cursor start = cursor.get();
+        if (start == null) {
+            return invalidations;
+        }
+        if (start.all) {
+            invalidations.setAll();
+        }
+        Node last = start.node;
+        for (Node node = last.next.get(); node != null; node = node.next.get()) {
+            if (node.source != this) {
+                invalidations.add(node.invalidations);
+            }
+            last = node;
+        }
+        if ((last != start.node || start.all) && !cursor.compareAndSet(start, new Cursor(last, false))) {
+            // compacted concurrently, the invalidations read may be incomplete
+            invalidations.setAll();
+        }
         return invalidations;
     }
 
@@ -0,0 +1,660 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * A {@link RowMapper} that uses a cache stored outside of the Java heap, shared by all the mappers of a repository.
+ * <p>
+ * The shared {@link OffHeapRowStore} only holds committed {@link Row}s. Rows written by this mapper are kept in a
+ * per-transaction overlay on the heap, and are published to the shared store only once the transaction has been
+ * successfully committed (when invalidations are sent), so other sessions never see uncommitted data, and a rollback or
+ * a failed commit just discards the overlay.
+ *
+ * @since 8.3
+ */
+public class OffHeapCachingRowMapper implements RowMapper {
+
+    private static final Log log = LogFactory.getLog(OffHeapCachingRowMapper.class);
+
+    /** Maximum off-heap memory used by the cache of a repository, in MB. */
+    public static final String MAX_SIZE_PROP = "offHeapMaxSize";
+
+    public static final String DEFAULT_MAX_SIZE = "256";
+
+    /** Size of the off-heap segments, in MB. */
+    public static final String SEGMENT_SIZE_PROP = "offHeapSegmentSize";
+
+    public static final String DEFAULT_SEGMENT_SIZE = "16";
+
+    /** Marker for an absent row in the transaction overlay. */
+    private static final Row ABSENT = new Row(null, (Serializable) null);
+
+    /**
+     * The stores, keyed by the invalidations propagator of the repository instance: a re-initialized repository gets a
+     * new store, and the store of a repository that was shut down is garbage collected with its direct buffers once its
+     * mappers are gone.
+     */
+    private static final Map<InvalidationsPropagator, OffHeapRowStore> stores = new WeakHashMap<>();
+
+    /** The current store of each repository name, to release the store of a previous instance eagerly. */
+    private static final Map<String, WeakReference<OffHeapRowStore>> currentStores = new HashMap<>();
+
+    protected OffHeapRowStore store;
+
+    protected OffHeapRowCodec codec;
+
+    private Model model;
+
+    /**
+     * The {@link RowMapper} to which operations that cannot be processed from the cache are delegated.
+     */
+    private RowMapper rowMapper;
+
+    /**
+     * The rows written or read by this mapper in the current transaction, not yet published to the shared store.
+     */
+    protected final Map<RowId, Row> transactionRows = new HashMap<>();
+
+    /**
+     * The rows modified by this mapper in the current transaction whose new value is unknown (copy, remove), to read
+     * from the database until the transaction ends.
+     */
+    protected final Set<RowId> transactionDirty = new HashSet<>();
+
+    /**
+     * The local invalidations due to writes through this mapper that should be propagated to other sessions at
+     * post-commit time.
+     */
+    private final Invalidations localInvalidations;
+
+    /**
+     * The queue of invalidations received from other session or from the cluster invalidator, to process at
+     * pre-transaction time.
+     */
+    private final InvalidationsQueue invalidationsQueue;
+
+    /**
+     * The propagator of invalidations to other mappers.
+     */
+    private InvalidationsPropagator invalidationsPropagator;
+
+    /**
+     * Whether an XA transaction is in progress, in which case the overlay is only published if it commits.
+     */
+    protected boolean inTransaction;
+
+    /**
+     * Whether the current XA transaction has been successfully committed.
+     */
+    protected boolean committed;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter cacheHitCount;
+
+    protected Timer cacheGetTimer;
+
+    // sor means system of record (database access)
+    protected Counter sorRows;
+
+    protected Timer sorGetTimer;
+
+    public OffHeapCachingRowMapper() {
+        localInvalidations = new Invalidations();
+        invalidationsQueue = new InvalidationsQueue("mapper-" + this);
+    }
+
+    public void initialize(String repositoryName, Model model, RowMapper rowMapper,
+            InvalidationsPropagator invalidationsPropagator, Map<String, String> properties) {
+        this.model = model;
+        this.rowMapper = rowMapper;
+        this.invalidationsPropagator = invalidationsPropagator;
+        invalidationsPropagator.addQueue(invalidationsQueue);
+        store = getStore(repositoryName, invalidationsPropagator, properties);
+        codec = store.getCodec();
+        setMetrics(repositoryName);
+    }
+
+    protected OffHeapRowStore getStore(String repositoryName, InvalidationsPropagator invalidationsPropagator,
+            Map<String, String> properties) {
+        synchronized (stores) {
+            OffHeapRowStore store = stores.get(invalidationsPropagator);
+            if (store == null) {
+                long maxSize = getSize(properties, MAX_SIZE_PROP, DEFAULT_MAX_SIZE);
+                long segmentSize = getSize(properties, SEGMENT_SIZE_PROP, DEFAULT_SEGMENT_SIZE);
+                log.info("Creating off-heap row cache for repository: " + repositoryName + ", max size: "
+                        + (maxSize >> 20) + "MB");
+                store = new OffHeapRowStore(maxSize, (int) Math.min(segmentSize, Integer.MAX_VALUE));
+                stores.put(invalidationsPropagator, store);
+                WeakReference<OffHeapRowStore> previous = currentStores.put(repositoryName,
+                        new WeakReference<>(store));
+                OffHeapRowStore previousStore = previous == null ? null : previous.get();
+                if (previousStore != null) {
+                    // repository re-initialized, the previous rows may be stale
+                    previousStore.release();
+                }
+                registerGauges(repositoryName, store);
+            }
+            return store;
+        }
+    }
+
+    protected static long getSize(Map<String, String> properties, String prop, String def) {
+        String value = properties.get(prop);
+        if (value == null || value.trim().isEmpty()) {
+            value = def;
+        }
+        return Long.parseLong(value.trim()) << 20;
+    }
+
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "offheap", "hits"));
+        cacheGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "offheap", "get"));
+        sorRows = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "offheap",
+                "sor", "rows"));
+        sorGetTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "offheap",
+                "sor", "get"));
+    }
+
+    /**
+     * Registers the gauges of a new store, replacing those of a previous store for the same repository. The gauges
+     * don't prevent the store from being garbage collected.
+     */
+    protected void registerGauges(String repositoryName, OffHeapRowStore store) {
+        final WeakReference<OffHeapRowStore> ref = new WeakReference<>(store);
+        String sizeGaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "offheap",
+                "cache-size");
+        String bytesGaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "offheap",
+                "bytes");
+        String evictionsGaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "offheap",
+                "evictions");
+        synchronized (registry) {
+            registry.remove(sizeGaugeName);
+            registry.remove(bytesGaugeName);
+            registry.remove(evictionsGaugeName);
+            registry.register(sizeGaugeName, new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    OffHeapRowStore store = ref.get();
+                    return Integer.valueOf(store == null ? 0 : store.getSize());
+                }
+            });
+            registry.register(bytesGaugeName, new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    OffHeapRowStore store = ref.get();
+                    return Long.valueOf(store == null ? 0 : store.getUsedBytes());
+                }
+            });
+            registry.register(evictionsGaugeName, new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    OffHeapRowStore store = ref.get();
+                    return Long.valueOf(store == null ? 0 : store.getEvictions());
+                }
+            });
+        }
+    }
+
+    public void close() {
+        invalidationsPropagator.removeQueue(invalidationsQueue);
+    }
+
+    @Override
+    public Serializable generateNewId() {
+        return rowMapper.generateNewId();
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    protected static Row prepare(Row row) {
+        row = row.clone();
+        // for ACL collections, make sure the order is correct
+        // (without the cache, the query to get a list of collection does an
+        // ORDER BY pos, so users of the cache must get the same behavior)
+        if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
+            row.values = sortACLRows((ACLRow[]) row.values);
+        }
+        return row;
+    }
+
+    protected static ACLRow[] sortACLRows(ACLRow[] acls) {
+        List<ACLRow> list = new ArrayList<ACLRow>(Arrays.asList(acls));
+        Collections.sort(list, ACLRowPositionComparator.INSTANCE);
+        ACLRow[] res = new ACLRow[acls.length];
+        return list.toArray(res);
+    }
+
+    /**
+     * Checks if the row has been modified in the current transaction, in which case the shared store must not be used
+     * for it.
+     */
+    protected boolean isDirty(RowId rowId) {
+        return localInvalidations.all || transactionDirty.contains(rowId) || transactionRows.containsKey(rowId);
+    }
+
+    /**
+     * Records the transaction value of a row.
+     */
+    protected void transactionPut(RowId rowId, Row row) {
+        RowId key = new RowId(rowId);
+        transactionRows.put(key, row == null ? ABSENT : prepare(row));
+        transactionDirty.remove(key);
+    }
+
+    /**
+     * Records that the transaction value of a row is unknown.
+     */
+    protected void transactionRemove(RowId rowId) {
+        RowId key = new RowId(rowId);
+        transactionRows.remove(key);
+        transactionDirty.add(key);
+    }
+
+    /**
+     * Puts a row read from the database, either in the transaction overlay if modified in this transaction, or in the
+     * shared store if still unchanged since the stamp was taken.
+     */
+    protected void cachePopulate(RowId rowId, Row row, long stamp) {
+        if (isDirty(rowId)) {
+            transactionPut(rowId, row);
+        } else {
+            store.populate(rowId, codec.encode(rowId, row == null ? null : prepare(row)), stamp);
+        }
+    }
+
+    protected void cachePopulateAbsentIfRowId(RowId rowId, long stamp) {
+        cachePopulate(rowId, rowId instanceof Row ? (Row) rowId : null, stamp);
+    }
+
+    /**
+     * Gets a row from the transaction overlay or the shared store.
+     *
+     * @return the row, {@link #ABSENT}, or {@code null} if unknown
+     */
+    protected Row cacheGet(RowId rowId) {
+        final Context context = cacheGetTimer.time();
+        try {
+            Row row = transactionRows.get(rowId);
+            if (row == null) {
+                if (isDirty(rowId)) {
+                    return null;
+                }
+                byte[] bytes = store.get(rowId);
+                if (bytes == null) {
+                    return null;
+                }
+                row = codec.decode(rowId.tableName, bytes);
+                if (row == null) {
+                    row = ABSENT;
+                }
+            } else if (row != ABSENT) {
+                row = row.clone();
+            }
+            cacheHitCount.inc();
+            return row;
+        } finally {
+            context.stop();
+        }
+    }
+
+    /**
+     * Publishes the rows of the transaction overlay to the shared store.
+     */
+    protected void publish() {
+        if (localInvalidations.all) {
+            store.clear();
+        } else {
+            for (Entry<RowId, Row> en : transactionRows.entrySet()) {
+                Row row = en.getValue();
+                store.put(en.getKey(), codec.encode(en.getKey(), row == ABSENT ? null : row));
+            }
+            for (RowId rowId : transactionDirty) {
+                store.remove(rowId);
+            }
+        }
+        transactionRows.clear();
+        transactionDirty.clear();
+    }
+
+    protected void transactionClear() {
+        transactionRows.clear();
+        transactionDirty.clear();
+        localInvalidations.clear();
+    }
+
+    /**
+     * Called when an XA transaction starts.
+     */
+    protected void transactionStarted() {
+        inTransaction = true;
+        committed = false;
+    }
+
+    /**
+     * Called when the XA transaction has been successfully committed in the database.
+     */
+    protected void transactionCommitted() {
+        committed = true;
+    }
+
+    /*
+     * ----- Invalidations / Cache Management -----
+     */
+
+    @Override
+    public Invalidations receiveInvalidations() {
+        // invalidations from the underlying mapper (cluster)
+        // already propagated to our invalidations queue
+        Invalidations remoteInvals = rowMapper.receiveInvalidations();
+
+        Invalidations ret = invalidationsQueue.getInvalidations();
+
+        if (remoteInvals != null) {
+            if (remoteInvals.all) {
+                store.clear();
+            } else {
+                // only handle remote invalidations, local ones are published at commit time
+                if (remoteInvals.modified != null) {
+                    for (RowId rowId : remoteInvals.modified) {
+                        store.remove(rowId);
+                    }
+                }
+                if (remoteInvals.deleted != null) {
+                    for (RowId rowId : remoteInvals.deleted) {
+                        store.put(rowId, codec.encode(rowId, null));
+                    }
+                }
+            }
+        }
+
+        return ret.isEmpty() ? null : ret;
+    }
+
+    // propagate invalidations
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        if (inTransaction && !committed) {
+            // called after a failed commit, nothing changed in the database
+            transactionClear();
+        } else {
+            // the transaction is committed (or there is none), make its rows visible to others
+            publish();
+        }
+        inTransaction = false;
+        committed = false;
+
+        // add local invalidations
+        if (!localInvalidations.isEmpty()) {
+            if (invalidations == null) {
+                invalidations = new Invalidations();
+            }
+            invalidations.add(localInvalidations);
+            localInvalidations.clear();
+        }
+
+        if (invalidations != null && !invalidations.isEmpty()) {
+            // send to underlying mapper
+            rowMapper.sendInvalidations(invalidations);
+
+            // queue to other mappers' caches
+            invalidationsPropagator.propagateInvalidations(invalidations, invalidationsQueue);
+        }
+    }
+
+    @Override
+    public void clearCache() {
+        store.clear();
+        transactionClear();
+        rowMapper.clearCache();
+    }
+
+    @Override
+    public void rollback(Xid xid) throws XAException {
+        try {
+            rowMapper.rollback(xid);
+        } finally {
+            // nothing was published, the shared store is still valid
+            transactionClear();
+            inTransaction = false;
+            committed = false;
+        }
+    }
+
+    /*
+     * ----- Batch -----
+     */
+
+    /*
+     * Use those from the cache if available, read from the mapper for the rest.
+     */
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        List<RowId> res = new ArrayList<RowId>(rowIds.size());
+        // find which are in cache, and which not
+        List<RowId> todo = new LinkedList<RowId>();
+        for (RowId rowId : rowIds) {
+            Row row = cacheGet(rowId);
+            if (row == null) {
+                if (cacheOnly) {
+                    res.add(new RowId(rowId));
+                } else {
+                    todo.add(rowId);
+                }
+            } else if (row == ABSENT) {
+                res.add(new RowId(rowId));
+            } else {
+                res.add(row);
+            }
+        }
+        if (!todo.isEmpty()) {
+            final Context context = sorGetTimer.time();
+            try {
+                long stamp = store.getStamp();
+                // ask missing ones to underlying row mapper
+                List<? extends RowId> fetched = rowMapper.read(todo, cacheOnly);
+                // add them to the cache
+                for (RowId rowId : fetched) {
+                    cachePopulateAbsentIfRowId(rowId, stamp);
+                }
+                // merge results
+                res.addAll(fetched);
+                sorRows.inc(fetched.size());
+            } finally {
+                context.stop();
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Save in the transaction overlay then pass all the writes to the mapper.
+     */
+    @Override
+    public void write(RowBatch batch) {
+        // we avoid gathering invalidations for a write-only table: fulltext
+        for (Row row : batch.creates) {
+            transactionPut(row, row);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(row.tableName)) {
+                // we need to send modified invalidations for created
+                // fragments because other session's ABSENT fragments have
+                // to be invalidated
+                localInvalidations.addModified(new RowId(row));
+            }
+        }
+        for (RowUpdate rowu : batch.updates) {
+            transactionPut(rowu.row, rowu.row);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowu.row.tableName)) {
+                localInvalidations.addModified(new RowId(rowu.row));
+            }
+        }
+        for (RowId rowId : batch.deletes) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            transactionPut(rowId, null);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        for (RowId rowId : batch.deletesDependent) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            transactionPut(rowId, null);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+
+        // propagate to underlying mapper
+        rowMapper.write(batch);
+    }
+
+    /*
+     * ----- Read -----
+     */
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            long stamp = store.getStamp();
+            row = rowMapper.readSimpleRow(rowId);
+            cachePopulate(rowId, row, stamp);
+            return row;
+        } else if (row == ABSENT) {
+            return null;
+        } else {
+            return row;
+        }
+    }
+
+    @Override
+    public Map<String, String> getBinaryFulltext(RowId rowId) {
+        return rowMapper.getBinaryFulltext(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            long stamp = store.getStamp();
+            Serializable[] array = rowMapper.readCollectionRowArray(rowId);
+            assert array != null;
+            row = new Row(rowId.tableName, rowId.id, array);
+            cachePopulate(rowId, row, stamp);
+            return row.values;
+        } else if (row == ABSENT) {
+            return null;
+        } else {
+            return row.values;
+        }
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        long stamp = store.getStamp();
+        List<Row> rows = rowMapper.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+        for (Row row : rows) {
+            cachePopulate(row, row, stamp);
+        }
+        return rows;
+    }
+
+    /*
+     * ----- Copy -----
+     */
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow) {
+        CopyResult result = rowMapper.copy(source, destParentId, destName, overwriteRow);
+        Invalidations invalidations = result.invalidations;
+        if (invalidations.modified != null) {
+            for (RowId rowId : invalidations.modified) {
+                transactionRemove(rowId);
+                localInvalidations.addModified(new RowId(rowId));
+            }
+        }
+        if (invalidations.deleted != null) {
+            for (RowId rowId : invalidations.deleted) {
+                transactionRemove(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<NodeInfo> remove(NodeInfo rootInfo) {
+        List<NodeInfo> infos = rowMapper.remove(rootInfo);
+        for (NodeInfo info : infos) {
+            for (String fragmentName : model.getTypeFragments(new IdWithTypes(info.id, info.primaryType, null))) {
+                RowId rowId = new RowId(fragmentName, info.id);
+                transactionRemove(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        // we only put as absent the root fragment, to avoid polluting the cache
+        // with lots of absent info. the rest is removed entirely
+        transactionPut(new RowId(Model.HIER_TABLE_NAME, rootInfo.id), null);
+        return infos;
+    }
+
+    @Override
+    public long getCacheSize() {
+        return store.getSize() + transactionRows.size();
+    }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Compact binary encoding of {@link Row}s for the {@link OffHeapRowStore}.
+ * <p>
+ * Values are written with a one-byte tag for the column types used by the {@link Model} (strings, longs, booleans,
+ * doubles, timestamps, arrays of those, and {@link ACLRow}s), numbers use a variable-length encoding, and table names,
+ * column keys and time zones are written as indexes in a dictionary shared by all the rows of the store. Any other
+ * value falls back on Java serialization.
+ *
+ * @since 8.3
+ */
+public class OffHeapRowCodec {
+
+    protected static final byte ROW_ABSENT = 0;
+
+    protected static final byte ROW_SIMPLE = 1;
+
+    protected static final byte ROW_COLLECTION = 2;
+
+    protected static final byte NULL = 0;
+
+    protected static final byte STRING = 1;
+
+    protected static final byte LONG = 2;
+
+    protected static final byte TRUE = 3;
+
+    protected static final byte FALSE = 4;
+
+    protected static final byte DOUBLE = 5;
+
+    protected static final byte CALENDAR = 6;
+
+    protected static final byte INTEGER = 7;
+
+    protected static final byte ACLROW = 8;
+
+    protected static final byte ARRAY = 9;
+
+    protected static final byte OPAQUE = 10;
+
+    protected static final byte SERIALIZED = 11;
+
+    // array component types
+
+    protected static final Class<?>[] COMPONENT_TYPES = { String.class, Long.class, Boolean.class, Double.class,
+            Calendar.class, Integer.class, ACLRow.class, Serializable.class };
+
+    /** Dictionary of table names, keys, time zones and array component types. */
+    protected final ConcurrentMap<String, Integer> dictionary = new ConcurrentHashMap<>();
+
+    protected final List<String> dictionaryList = new ArrayList<>();
+
+    /**
+     * Encodes a row, or an absent row if {@code row} is {@code null}.
+     */
+    public byte[] encode(RowId rowId, Row row) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(baos);
+        try {
+            if (row == null) {
+                out.writeByte(ROW_ABSENT);
+            } else if (row.isCollection()) {
+                out.writeByte(ROW_COLLECTION);
+                writeValue(out, row.id);
+                writeValue(out, row.values);
+            } else {
+                out.writeByte(ROW_SIMPLE);
+                writeValue(out, row.id);
+                writeVarInt(out, row.size);
+                for (int i = 0; i < row.size; i++) {
+                    writeVarInt(out, getIndex(row.keys[i]));
+                    writeValue(out, row.values[i]);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decodes a row.
+     *
+     * @return the row, or {@code null} if the row was encoded as absent
+     */
+    public Row decode(String tableName, byte[] bytes) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            byte kind = in.readByte();
+            switch (kind) {
+            case ROW_ABSENT:
+                return null;
+            case ROW_COLLECTION:
+                Serializable id = readValue(in);
+                return new Row(tableName, id, (Serializable[]) readValue(in));
+            case ROW_SIMPLE:
+                Row row = new Row(tableName, readValue(in));
+                int size = readVarInt(in);
+                for (int i = 0; i < size; i++) {
+                    String key = getString(readVarInt(in));
+                    row.putNew(key, readValue(in));
+                }
+                return row;
+            default:
+                throw new NuxeoException("Unknown row kind: " + kind);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Encodes a row id, used as the key of the row in the store.
+     */
+    public byte[] encodeKey(RowId rowId) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(baos);
+        try {
+            writeVarInt(out, getIndex(rowId.tableName));
+            writeValue(out, rowId.id);
+            out.flush();
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Checks if the encoded row is an absent row.
+     */
+    public static boolean isAbsent(byte[] bytes) {
+        return bytes[0] == ROW_ABSENT;
+    }
+
+    protected int getIndex(String string) {
+        Integer index = dictionary.get(string);
+        if (index == null) {
+            synchronized (dictionaryList) {
+                index = dictionary.get(string);
+                if (index == null) {
+                    index = Integer.valueOf(dictionaryList.size());
+                    dictionaryList.add(string);
+                    dictionary.put(string, index);
+                }
+            }
+        }
+        return index.intValue();
+    }
+
+    protected String getString(int index) {
+        synchronized (dictionaryList) {
+            return dictionaryList.get(index);
+        }
+    }
+
+    protected void writeValue(DataOutputStream out, Serializable value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, ((Long) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeVarLong(out, ((Integer) value).longValue());
+        } else if (value instanceof GregorianCalendar) {
+            Calendar cal = (Calendar) value;
+            out.writeByte(CALENDAR);
+            writeVarLong(out, cal.getTimeInMillis());
+            writeVarInt(out, getIndex(cal.getTimeZone().getID()));
+        } else if (value instanceof ACLRow) {
+            ACLRow acl = (ACLRow) value;
+            out.writeByte(ACLROW);
+            writeVarInt(out, acl.pos);
+            writeValue(out, acl.name);
+            out.writeBoolean(acl.grant);
+            writeValue(out, acl.permission);
+            writeValue(out, acl.user);
+            writeValue(out, acl.group);
+            writeValue(out, acl.creator);
+            writeValue(out, acl.begin);
+            writeValue(out, acl.end);
+            writeValue(out, acl.status);
+        } else if (value instanceof Serializable[]) {
+            Serializable[] array = (Serializable[]) value;
+            out.writeByte(ARRAY);
+            writeVarInt(out, getComponentType(array.getClass().getComponentType()));
+            writeVarInt(out, array.length);
+            for (Serializable v : array) {
+                writeValue(out, v);
+            }
+        } else if (value == Row.OPAQUE) {
+            out.writeByte(OPAQUE);
+        } else {
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+            byte[] bytes = baos.toByteArray();
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    protected Serializable readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return Long.valueOf(readVarLong(in));
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case INTEGER:
+            return Integer.valueOf((int) readVarLong(in));
+        case CALENDAR:
+            long millis = readVarLong(in);
+            Calendar cal = new GregorianCalendar(TimeZone.getTimeZone(getString(readVarInt(in))));
+            cal.setTimeInMillis(millis);
+            return cal;
+        case ACLROW:
+            int pos = readVarInt(in);
+            String name = (String) readValue(in);
+            boolean grant = in.readBoolean();
+            String permission = (String) readValue(in);
+            String user = (String) readValue(in);
+            String group = (String) readValue(in);
+            String creator = (String) readValue(in);
+            Calendar begin = (Calendar) readValue(in);
+            Calendar end = (Calendar) readValue(in);
+            Long status = (Long) readValue(in);
+            return new ACLRow(pos, name, grant, permission, user, group, creator, begin, end, status);
+        case ARRAY:
+            Class<?> componentType = getComponentType(readVarInt(in));
+            int length = readVarInt(in);
+            Serializable[] array = (Serializable[]) Array.newInstance(componentType, length);
+            for (int i = 0; i < length; i++) {
+                array[i] = readValue(in);
+            }
+            return array;
+        case OPAQUE:
+            return Row.OPAQUE;
+        case SERIALIZED:
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return (Serializable) ois.readObject();
+            }
+        default:
+            throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    protected int getComponentType(Class<?> klass) {
+        for (int i = 0; i < COMPONENT_TYPES.length; i++) {
+            if (COMPONENT_TYPES[i] == klass) {
+                return i;
+            }
+        }
+        // other arrays are rare, keep their class name
+        return COMPONENT_TYPES.length + getIndex(klass.getName());
+    }
+
+    protected Class<?> getComponentType(int index) throws ClassNotFoundException {
+        if (index < COMPONENT_TYPES.length) {
+            return COMPONENT_TYPES[index];
+        }
+        String className = getString(index - COMPONENT_TYPES.length);
+        return Class.forName(className, false, Thread.currentThread().getContextClassLoader());
+    }
+
+    protected static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    protected static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    // zigzag + LEB128
+    protected static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    protected static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+}
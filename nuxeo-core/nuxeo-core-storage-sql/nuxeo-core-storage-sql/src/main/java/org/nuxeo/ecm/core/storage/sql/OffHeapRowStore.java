@@ -0,0 +1,470 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A store of encoded {@link Row}s kept outside of the Java heap, shared by all the mappers of a repository.
+ * <p>
+ * The data is appended to a ring of direct {@link ByteBuffer} segments, each record holding its encoded row id (the
+ * key) and its encoded row. When the ring wraps around, the oldest segment is reclaimed: its records that have been
+ * read since they were written get a second chance and are copied to the new segment (up to half of it), the others
+ * are evicted.
+ * <p>
+ * The index from key to record is an open-addressing hash table with linear probing, also stored in a direct buffer,
+ * so the heap used by the store does not depend on the number of rows it holds.
+ * <p>
+ * To avoid caching a stale value read from the database concurrently with a commit, readers take a {@link #getStamp
+ * stamp} before going to the database, and {@link #populate} refuses the value if the row was invalidated since.
+ *
+ * @since 8.3
+ */
+public class OffHeapRowStore {
+
+    protected static final int STRIPES = 1024;
+
+    /** Record header: record length (int), accessed flag (byte), key length (int). */
+    protected static final int HEADER_SIZE = 9;
+
+    protected static final int ACCESSED_OFFSET = 4;
+
+    protected static final int KEY_LENGTH_OFFSET = 5;
+
+    /** Index slot: key hash and segment + 1 (long, 0 for an empty slot), then offset in segment (long). */
+    protected static final int SLOT_SIZE = 16;
+
+    protected static final int INITIAL_SLOTS = 1024;
+
+    protected final OffHeapRowCodec codec = new OffHeapRowCodec();
+
+    protected final int segmentSize;
+
+    protected final ByteBuffer[] segments;
+
+    /** The end of the records written in each segment, including the ones since replaced or removed. */
+    protected final int[] segmentEnds;
+
+    protected ByteBuffer index;
+
+    /** The number of slots of the index, a power of two. */
+    protected int slots;
+
+    /** The number of rows in the index. */
+    protected int size;
+
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    protected int currentSegment;
+
+    protected int position;
+
+    protected long usedBytes;
+
+    protected final AtomicLong stampCounter = new AtomicLong();
+
+    /** Last invalidation stamp for each stripe of row ids. */
+    protected final AtomicLongArray stripeStamps = new AtomicLongArray(STRIPES);
+
+    protected final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a store.
+     *
+     * @param maxBytes the maximum off-heap memory to use for the rows
+     * @param segmentSize the size of each segment
+     */
+    public OffHeapRowStore(long maxBytes, int segmentSize) {
+        int n = (int) Math.max(2, maxBytes / segmentSize);
+        this.segmentSize = segmentSize;
+        segments = new ByteBuffer[n];
+        segmentEnds = new int[n];
+        newIndex(INITIAL_SLOTS);
+    }
+
+    public OffHeapRowCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Gets the encoded row, or {@code null} if not in the store.
+     */
+    public byte[] get(RowId rowId) {
+        byte[] key = codec.encodeKey(rowId);
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(key, hash(key));
+            if (slot < 0) {
+                return null;
+            }
+            int offset = getSlotOffset(slot);
+            ByteBuffer buf = segments[getSlotSegment(slot)];
+            // absolute put, concurrent readers can only write the same value
+            buf.put(offset + ACCESSED_OFFSET, (byte) 1);
+            int keyLength = buf.getInt(offset + KEY_LENGTH_OFFSET);
+            byte[] bytes = new byte[buf.getInt(offset) - HEADER_SIZE - keyLength];
+            ByteBuffer dup = buf.duplicate();
+            dup.position(offset + HEADER_SIZE + keyLength);
+            dup.get(bytes);
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a stamp to pass to {@link #populate} for values about to be read from the database.
+     */
+    public long getStamp() {
+        return stampCounter.get();
+    }
+
+    /**
+     * Puts a value read from the database, unless the row was invalidated since the stamp was taken.
+     */
+    public void populate(RowId rowId, byte[] bytes, long stamp) {
+        byte[] key = codec.encodeKey(rowId);
+        lock.writeLock().lock();
+        try {
+            if (stripeStamps.get(stripe(rowId)) > stamp) {
+                return;
+            }
+            doPut(key, bytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts a committed value.
+     */
+    public void put(RowId rowId, byte[] bytes) {
+        byte[] key = codec.encodeKey(rowId);
+        lock.writeLock().lock();
+        try {
+            invalidateStripe(rowId);
+            doPut(key, bytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a row.
+     */
+    public void remove(RowId rowId) {
+        byte[] key = codec.encodeKey(rowId);
+        lock.writeLock().lock();
+        try {
+            invalidateStripe(rowId);
+            doRemove(key, hash(key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all rows.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            long stamp = stampCounter.incrementAndGet();
+            for (int i = 0; i < STRIPES; i++) {
+                stripeStamps.set(i, stamp);
+            }
+            newIndex(INITIAL_SLOTS);
+            Arrays.fill(segmentEnds, 0);
+            currentSegment = 0;
+            position = 0;
+            usedBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all rows and gives back the off-heap memory of the segments. Segments are allocated again if the store is
+     * used afterwards.
+     */
+    public void release() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            Arrays.fill(segments, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getSize() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    protected static int stripe(RowId rowId) {
+        int h = rowId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    protected void invalidateStripe(RowId rowId) {
+        stripeStamps.set(stripe(rowId), stampCounter.incrementAndGet());
+    }
+
+    protected static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /*
+     * ----- Index -----
+     */
+
+    protected void newIndex(int n) {
+        slots = n;
+        size = 0;
+        index = ByteBuffer.allocateDirect(n * SLOT_SIZE);
+    }
+
+    protected int getSlotHash(int slot) {
+        return (int) (index.getLong(slot * SLOT_SIZE) >>> 32);
+    }
+
+    protected int getSlotSegment(int slot) {
+        return (int) index.getLong(slot * SLOT_SIZE) - 1;
+    }
+
+    protected int getSlotOffset(int slot) {
+        return (int) index.getLong(slot * SLOT_SIZE + 8);
+    }
+
+    protected boolean isSlotEmpty(int slot) {
+        return index.getLong(slot * SLOT_SIZE) == 0;
+    }
+
+    protected void setSlot(int slot, int hash, int segment, int offset) {
+        index.putLong(slot * SLOT_SIZE, ((long) hash << 32) | (segment + 1));
+        index.putLong(slot * SLOT_SIZE + 8, offset);
+    }
+
+    protected void copySlot(int from, int to) {
+        index.putLong(to * SLOT_SIZE, index.getLong(from * SLOT_SIZE));
+        index.putLong(to * SLOT_SIZE + 8, index.getLong(from * SLOT_SIZE + 8));
+    }
+
+    /**
+     * Finds the index slot of a key.
+     *
+     * @return the slot, or {@code -1} if the key is not in the index
+     */
+    protected int findSlot(byte[] key, int hash) {
+        int mask = slots - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            if (isSlotEmpty(slot)) {
+                return -1;
+            }
+            if (getSlotHash(slot) == hash && keyEquals(key, getSlotSegment(slot), getSlotOffset(slot))) {
+                return slot;
+            }
+        }
+    }
+
+    protected boolean keyEquals(byte[] key, int segment, int offset) {
+        ByteBuffer buf = segments[segment];
+        if (buf.getInt(offset + KEY_LENGTH_OFFSET) != key.length) {
+            return false;
+        }
+        int start = offset + HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (buf.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a key known not to be in the index.
+     */
+    protected void insertSlot(int hash, int segment, int offset) {
+        if ((size + 1) * 4L > slots * 3L) {
+            resizeIndex(slots * 2);
+        }
+        int mask = slots - 1;
+        int slot = hash & mask;
+        while (!isSlotEmpty(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        setSlot(slot, hash, segment, offset);
+        size++;
+    }
+
+    /**
+     * Removes a slot, shifting back the following slots of the probe sequence so that no tombstone is needed.
+     */
+    protected void deleteSlot(int slot) {
+        int mask = slots - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; !isSlotEmpty(i); i = (i + 1) & mask) {
+            int home = getSlotHash(i) & mask;
+            // the entry can move to the hole if the hole is between its home slot and its current slot
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                copySlot(i, hole);
+                hole = i;
+            }
+        }
+        index.putLong(hole * SLOT_SIZE, 0);
+        index.putLong(hole * SLOT_SIZE + 8, 0);
+        size--;
+    }
+
+    protected void resizeIndex(int n) {
+        ByteBuffer old = index;
+        int oldSlots = slots;
+        newIndex(n);
+        int mask = n - 1;
+        for (int i = 0; i < oldSlots; i++) {
+            long v = old.getLong(i * SLOT_SIZE);
+            if (v == 0) {
+                continue;
+            }
+            int slot = (int) (v >>> 32) & mask;
+            while (!isSlotEmpty(slot)) {
+                slot = (slot + 1) & mask;
+            }
+            index.putLong(slot * SLOT_SIZE, v);
+            index.putLong(slot * SLOT_SIZE + 8, old.getLong(i * SLOT_SIZE + 8));
+            size++;
+        }
+    }
+
+    /*
+     * ----- Segments -----
+     */
+
+    protected void doRemove(byte[] key, int hash) {
+        int slot = findSlot(key, hash);
+        if (slot >= 0) {
+            usedBytes -= segments[getSlotSegment(slot)].getInt(getSlotOffset(slot));
+            deleteSlot(slot);
+        }
+    }
+
+    protected void doPut(byte[] key, byte[] bytes) {
+        int hash = hash(key);
+        doRemove(key, hash);
+        if (HEADER_SIZE + key.length + bytes.length > segmentSize / 2) {
+            // too big to be worth caching
+            return;
+        }
+        if (position + HEADER_SIZE + key.length + bytes.length > segmentSize) {
+            nextSegment();
+        }
+        append(key, hash, bytes);
+    }
+
+    protected void append(byte[] key, int hash, byte[] bytes) {
+        ByteBuffer buf = segments[currentSegment];
+        if (buf == null) {
+            buf = segments[currentSegment] = ByteBuffer.allocateDirect(segmentSize);
+        }
+        int length = HEADER_SIZE + key.length + bytes.length;
+        ByteBuffer dup = buf.duplicate();
+        dup.position(position);
+        dup.putInt(length);
+        dup.put((byte) 0);
+        dup.putInt(key.length);
+        dup.put(key);
+        dup.put(bytes);
+        insertSlot(hash, currentSegment, position);
+        position += length;
+        segmentEnds[currentSegment] = position;
+        usedBytes += length;
+    }
+
+    /**
+     * Moves to the next segment of the ring, reclaiming it first.
+     */
+    protected void nextSegment() {
+        currentSegment = (currentSegment + 1) % segments.length;
+        position = 0;
+        int end = segmentEnds[currentSegment];
+        segmentEnds[currentSegment] = 0;
+        if (end == 0) {
+            return;
+        }
+        // collect the live records, keeping recently accessed ones for a second chance
+        List<byte[]> survivorKeys = new ArrayList<>();
+        List<byte[]> survivorBytes = new ArrayList<>();
+        int budget = segmentSize / 2;
+        ByteBuffer buf = segments[currentSegment].duplicate();
+        for (int offset = 0; offset < end;) {
+            int length = buf.getInt(offset);
+            byte[] key = new byte[buf.getInt(offset + KEY_LENGTH_OFFSET)];
+            buf.position(offset + HEADER_SIZE);
+            buf.get(key);
+            int slot = findSlot(key, hash(key));
+            if (slot >= 0 && getSlotSegment(slot) == currentSegment && getSlotOffset(slot) == offset) {
+                deleteSlot(slot);
+                usedBytes -= length;
+                if (buf.get(offset + ACCESSED_OFFSET) != 0 && length <= budget) {
+                    byte[] bytes = new byte[length - HEADER_SIZE - key.length];
+                    buf.get(bytes);
+                    survivorKeys.add(key);
+                    survivorBytes.add(bytes);
+                    budget -= length;
+                } else {
+                    evictions.incrementAndGet();
+                }
+            } // else replaced or removed since
+            offset += length;
+        }
+        for (int i = 0; i < survivorKeys.size(); i++) {
+            byte[] key = survivorKeys.get(i);
+            append(key, hash(key), survivorBytes.get(i));
+        }
+    }
+
+}
@@ -47,4 +47,18 @@ public interface CollectionIO {
     void executeInserts(PreparedStatement ps, List<RowUpdate> rowus, List<Column> columns, boolean supportsBatchUpdates,
             String sql, JDBCConnection connection) throws SQLException;
 
+    /**
+     * Gets the values of the rows to insert for a fragment, one array of column values per row, in the order of the
+     * columns.
+     * <p>
+     * This allows the caller to insert several rows with a single statement. If {@code null} is returned, the caller
+     * must use {@link #executeInserts} instead.
+     *
+     * @return the rows values, or {@code null} if not available
+     * @since 8.3
+     */
+    default List<Serializable[]> getInsertValues(List<RowUpdate> rowus, List<Column> columns) {
+        return null;
+    }
+
 }
@@ -83,6 +83,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
     /** Property to determine whether collection appends delete all then re-insert, or are optimized for append. */
     public static final String COLLECTION_DELETE_BEFORE_APPEND_PROP = "org.nuxeo.vcs.list-delete-before-append";
 
+    /**
+     * Property to disable multi-row {@code INSERT} statements for dialects supporting them.
+     *
+     * @since 8.3
+     */
+    public static final String MULTI_ROW_INSERT_PROP = "org.nuxeo.vcs.multi-row-insert";
+
     /**
      * Cluster invalidator, or {@code null} if this mapper does not participate in invalidation propagation (cluster
      * invalidator, lock manager).
@@ -93,6 +100,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     private final boolean collectionDeleteBeforeAppend;
 
+    private final boolean multiRowInsert;
+
     private final CollectionIO aclCollectionIO;
 
     private final CollectionIO scalarCollectionIO;
@@ -104,6 +113,21 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         this.invalidationsPropagator = invalidationsPropagator;
         ConfigurationService configurationService = Framework.getService(ConfigurationService.class);
         collectionDeleteBeforeAppend = configurationService.isBooleanPropertyTrue(COLLECTION_DELETE_BEFORE_APPEND_PROP);
+        multiRowInsert = !configurationService.isBooleanPropertyFalse(MULTI_ROW_INSERT_PROP);
+        aclCollectionIO = new ACLCollectionIO(collectionDeleteBeforeAppend);
+        scalarCollectionIO = new ScalarCollectionIO(collectionDeleteBeforeAppend);
+    }
+
+    /**
+     * for tests only
+     *
+     * @since 8.3
+     */
+    public JDBCRowMapper() {
+        clusterInvalidator = null;
+        invalidationsPropagator = null;
+        collectionDeleteBeforeAppend = false;
+        multiRowInsert = true;
         aclCollectionIO = new ACLCollectionIO(collectionDeleteBeforeAppend);
         scalarCollectionIO = new ScalarCollectionIO(collectionDeleteBeforeAppend);
     }
@@ -536,9 +560,23 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (sql == null) {
             throw new NuxeoException("Unknown table: " + tableName);
         }
-        String loggedSql = supportsBatchUpdates && rows.size() > 1 ? sql + " -- BATCHED" : sql;
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
+        int maxRows = getMaximumRowsForInsert(tableName);
         try {
+            if (maxRows > 1 && rows.size() > 1) {
+                List<Serializable[]> values = new ArrayList<>(rows.size());
+                for (Row row : rows) {
+                    Serializable[] rowValues = new Serializable[columns.size()];
+                    int i = 0;
+                    for (Column column : columns) {
+                        rowValues[i++] = row.get(column.getKey());
+                    }
+                    values.add(rowValues);
+                }
+                insertMultiRows(tableName, columns, values, maxRows);
+                return;
+            }
+            String loggedSql = supportsBatchUpdates && rows.size() > 1 ? sql + " -- BATCHED" : sql;
             PreparedStatement ps = connection.prepareStatement(sql);
             try {
                 int batch = 0;
@@ -592,7 +630,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         String sql = sqlInfo.getInsertSql(tableName);
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
         CollectionIO io = getCollectionIO(tableName);
+        int maxRows = getMaximumRowsForInsert(tableName);
+        List<Serializable[]> values = maxRows > 1 ? io.getInsertValues(rowus, columns) : null;
         try {
+            if (values != null) {
+                insertMultiRows(tableName, columns, values, maxRows);
+                return;
+            }
             PreparedStatement ps = connection.prepareStatement(sql);
             try {
                 io.executeInserts(ps, rowus, columns, supportsBatchUpdates, sql, this);
@@ -604,6 +648,108 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Gets the maximum number of rows to insert in a single statement for the given table, or {@code 1} if multi-row
+     * inserts are not used.
+     *
+     * @param tableName the table name
+     */
+    protected int getMaximumRowsForInsert(String tableName) {
+        if (!multiRowInsert) {
+            return 1;
+        }
+        return sqlInfo.getMaximumRowsForInsert(tableName);
+    }
+
+    /**
+     * Gets the SQL to insert {@code rows} rows in the given table with a single statement.
+     *
+     * @param tableName the table name
+     * @param rows the number of rows
+     */
+    protected String getInsertSql(String tableName, int rows) {
+        return sqlInfo.getInsertSql(tableName, rows);
+    }
+
+    /**
+     * Inserts rows using multi-row {@code INSERT} statements.
+     * <p>
+     * The rows are split in statements of {@code maxRows} rows, which reuse the same prepared statement and are batched
+     * if possible. The remaining rows are inserted with a last, smaller, statement.
+     *
+     * @param tableName the table name
+     * @param columns the insert columns
+     * @param values the values of each row, in the order of the columns
+     * @param maxRows the maximum number of rows per statement
+     */
+    protected void insertMultiRows(String tableName, List<Column> columns, List<Serializable[]> values, int maxRows)
+            throws SQLException {
+        int size = values.size();
+        if (size == 0) {
+            return;
+        }
+        int rows = Math.min(maxRows, size);
+        int full = size - size % rows;
+        executeMultiRowInsert(tableName, columns, values.subList(0, full), rows);
+        if (full < size) {
+            executeMultiRowInsert(tableName, columns, values.subList(full, size), size - full);
+        }
+    }
+
+    /**
+     * Executes multi-row {@code INSERT} statements of {@code rows} rows each. The number of values must be a multiple
+     * of {@code rows}.
+     */
+    protected void executeMultiRowInsert(String tableName, List<Column> columns, List<Serializable[]> values, int rows)
+            throws SQLException {
+        String sql = getInsertSql(tableName, rows);
+        boolean batched = supportsBatchUpdates && values.size() > rows;
+        String loggedSql = batched ? sql + " -- BATCHED" : sql;
+        List<Serializable> debugValues = logger.isLogEnabled() ? new ArrayList<Serializable>() : null;
+        int nargs = rows * columns.size();
+        PreparedStatement ps = connection.prepareStatement(sql);
+        try {
+            int batch = 0;
+            int i = 0;
+            for (Serializable[] rowValues : values) {
+                int n = 0;
+                for (Column column : columns) {
+                    Serializable v = rowValues[n++];
+                    column.setToPreparedStatement(ps, ++i, v);
+                    if (debugValues != null) {
+                        debugValues.add(v);
+                    }
+                }
+                if (i < nargs) {
+                    continue;
+                }
+                // statement complete
+                i = 0;
+                batch++;
+                if (debugValues != null) {
+                    logger.logSQL(loggedSql, debugValues);
+                    debugValues.clear();
+                }
+                if (batched) {
+                    ps.addBatch();
+                    if (batch % UPDATE_BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        countExecute();
+                    }
+                } else {
+                    ps.execute();
+                    countExecute();
+                }
+            }
+            if (batched && batch % UPDATE_BATCH_SIZE != 0) {
+                ps.executeBatch();
+                countExecute();
+            }
+        } finally {
+            closeStatement(ps);
+        }
+    }
+
     /**
      * Updates multiple simple rows, all for the same table.
      */
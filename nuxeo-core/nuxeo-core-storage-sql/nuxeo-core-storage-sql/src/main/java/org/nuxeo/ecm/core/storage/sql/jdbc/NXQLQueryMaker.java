@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -70,6 +71,9 @@ import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.ModelProperty;
 import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryPlanCache.ParamKind;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryPlanCache.ParamMarker;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryPlanCache.QueryPlan;
 import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.ColumnMapMaker;
 import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
@@ -254,6 +258,9 @@ public class NXQLQueryMaker implements QueryMaker {
 
     protected int fragJoinCount = 0;
 
+    // when building a plan for the QueryPlanCache, the normalized literals and their index
+    protected Map<Literal, Integer> planLiterals;
+
     @Override
     public String getName() {
         return NXQL.NXQL;
@@ -290,6 +297,51 @@ public class NXQLQueryMaker implements QueryMaker {
             sqlQuery = transformer.transform(queryFilter.getPrincipal(), sqlQuery);
         }
 
+        planLiterals = null;
+        QueryPlanCache planCache = sqlInfo.getQueryPlanCache();
+        if (planCache.isEnabled() && isPlanCacheable()) {
+            List<Literal> literals = new ArrayList<Literal>();
+            String key = QueryPlanCache.getKey(sqlQuery, queryFilter.getFacetFilter(),
+                    queryFilter.getPrincipals() != null, literals);
+            if (key != null) {
+                QueryPlan plan = planCache.get(key);
+                if (plan != null) {
+                    return plan.bind(literals, getSecurityPrincipals(queryFilter),
+                            getSecurityPermissions(queryFilter));
+                }
+                planLiterals = new IdentityHashMap<Literal, Integer>();
+                for (int i = 0; i < literals.size(); i++) {
+                    planLiterals.put(literals.get(i), Integer.valueOf(i));
+                }
+                Query q = buildQuery(sqlQuery, queryFilter);
+                plan = QueryPlan.record(q, literals.size());
+                if (plan != null) {
+                    planCache.put(key, plan);
+                }
+                return q;
+            }
+        }
+        return buildQuery(sqlQuery, queryFilter);
+    }
+
+    /**
+     * Checks if the queries built by this query maker can be cached in the {@link QueryPlanCache}.
+     * <p>
+     * Specialized query makers that build different SQL for the same NXQL must return {@code false}.
+     *
+     * @since 8.3
+     */
+    protected boolean isPlanCacheable() {
+        return getClass() == NXQLQueryMaker.class;
+    }
+
+    /**
+     * Builds the query from the parsed and transformed NXQL.
+     *
+     * @since 8.3
+     */
+    protected Query buildQuery(SQLQuery sqlQuery, QueryFilter queryFilter) {
+
         // SELECT * -> SELECT ecm:uuid
         SelectClause selectClause = sqlQuery.select;
         if (selectClause.isEmpty()) {
@@ -546,11 +598,11 @@ public class NXQLQueryMaker implements QueryMaker {
             List<Serializable> securityParams = new LinkedList<Serializable>();
             List<Join> securityJoins = new ArrayList<Join>(2);
             if (queryFilter.getPrincipals() != null) {
-                Serializable principals = queryFilter.getPrincipals();
-                Serializable permissions = queryFilter.getPermissions();
-                if (!dialect.supportsArrays()) {
-                    principals = StringUtils.join((String[]) principals, Dialect.ARRAY_SEP);
-                    permissions = StringUtils.join((String[]) permissions, Dialect.ARRAY_SEP);
+                Serializable principals = getSecurityPrincipals(queryFilter);
+                Serializable permissions = getSecurityPermissions(queryFilter);
+                if (planLiterals != null) {
+                    principals = new ParamMarker(-1, ParamKind.PRINCIPALS, principals);
+                    permissions = new ParamMarker(-1, ParamKind.PERMISSIONS, permissions);
                 }
                 // when using WITH for the query, the main column is referenced
                 // through an alias because of the subselect
@@ -723,6 +775,31 @@ public class NXQLQueryMaker implements QueryMaker {
         return q;
     }
 
+    protected Serializable getSecurityPrincipals(QueryFilter queryFilter) {
+        String[] principals = queryFilter.getPrincipals();
+        if (principals == null || dialect.supportsArrays()) {
+            return principals;
+        }
+        return StringUtils.join(principals, Dialect.ARRAY_SEP);
+    }
+
+    protected Serializable getSecurityPermissions(QueryFilter queryFilter) {
+        String[] permissions = queryFilter.getPermissions();
+        if (permissions == null || dialect.supportsArrays()) {
+            return permissions;
+        }
+        return StringUtils.join(permissions, Dialect.ARRAY_SEP);
+    }
+
+    /**
+     * Gets the SQL parameter for a literal, wrapped into a {@link ParamMarker} if a plan is being built and the literal
+     * was normalized out of the query.
+     */
+    protected Serializable getLiteralParam(Literal literal, ParamKind kind, Serializable value) {
+        Integer index = planLiterals == null ? null : planLiterals.get(literal);
+        return index == null ? value : new ParamMarker(index.intValue(), kind, value);
+    }
+
     // overridden by specialized query makers that need to tweak some joins
     protected void addJoin(int kind, String alias, Table table, String column, Table contextTable, String contextColumn,
             String name, int index, String primaryType) {
@@ -2353,15 +2430,22 @@ public class NXQLQueryMaker implements QueryMaker {
         public void visitDateLiteral(DateLiteral node) {
             buf.append('?');
             if (node.onlyDate) {
-                whereParams.add(node.toSqlDate());
+                whereParams.add(getLiteralParam(node, ParamKind.DATE, node.toSqlDate()));
             } else {
-                whereParams.add(node.toCalendar());
+                whereParams.add(getLiteralParam(node, ParamKind.TIMESTAMP, node.toCalendar()));
             }
         }
 
         @Override
         public void visitStringLiteral(StringLiteral node) {
-            if (visitingId) {
+            if (planLiterals != null && planLiterals.containsKey(node)) {
+                buf.append('?');
+                if (visitingId) {
+                    whereParams.add(getLiteralParam(node, ParamKind.ID, new WrappedId(node.value)));
+                } else {
+                    whereParams.add(getLiteralParam(node, ParamKind.STRING, node.value));
+                }
+            } else if (visitingId) {
                 visitId(node.value);
             } else {
                 visitStringLiteral(node.value);
@@ -2393,7 +2477,7 @@ public class NXQLQueryMaker implements QueryMaker {
         @Override
         public void visitBooleanLiteral(BooleanLiteral node) {
             buf.append('?');
-            whereParams.add(Boolean.valueOf(node.value));
+            whereParams.add(getLiteralParam(node, ParamKind.BOOLEAN, Boolean.valueOf(node.value)));
         }
 
         @Override
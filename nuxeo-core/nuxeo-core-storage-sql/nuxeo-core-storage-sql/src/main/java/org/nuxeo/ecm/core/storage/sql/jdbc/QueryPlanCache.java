@@ -0,0 +1,484 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+import org.nuxeo.ecm.core.api.impl.FacetFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.BooleanLiteral;
+import org.nuxeo.ecm.core.query.sql.model.DateLiteral;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * Bounded cache of the SQL generated by the {@link NXQLQueryMaker} for a given query shape.
+ * <p>
+ * The key of a plan is the normalized query text, where the literals that end up as simple SQL parameters (values
+ * compared to schema properties or to a few system properties) are replaced by typed placeholders. Literals that
+ * influence the structure of the generated SQL (types, mixins, paths, fulltext, proxies, numbers inlined in the SQL...)
+ * are kept verbatim in the key.
+ * <p>
+ * A plan holds the generated SQL and column list, and the positions of the SQL parameters that must be rebound from the
+ * literals of the query (or from the {@link org.nuxeo.ecm.core.query.QueryFilter QueryFilter} principals and
+ * permissions) when the plan is reused.
+ * <p>
+ * There is one cache per {@link SQLInfo}, i.e. per repository and dialect; it is discarded with the model.
+ *
+ * @since 8.3
+ */
+public class QueryPlanCache {
+
+    /** Framework property for the maximum number of cached plans, {@code 0} disables the cache. */
+    public static final String SIZE_PROP = "org.nuxeo.vcs.query.plan.cache.size";
+
+    public static final String DEFAULT_SIZE = "1000";
+
+    /** Names of system properties whose values can be bound as parameters without changing the generated SQL. */
+    protected static final List<String> PARAMETERIZABLE_SYSTEM_PROPERTIES = Arrays.asList( //
+            NXQL.ECM_UUID, //
+            NXQL.ECM_PARENTID, //
+            NXQL.ECM_NAME, //
+            NXQL.ECM_LIFECYCLESTATE, //
+            NXQL.ECM_VERSIONLABEL, //
+            NXQL.ECM_LOCK_OWNER);
+
+    protected static final String SYSTEM_PREFIX = "ecm:";
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final int maxSize;
+
+    protected final Map<String, QueryPlan> plans;
+
+    protected final Counter hitCount;
+
+    protected final Counter missCount;
+
+    protected final Counter evictionCount;
+
+    public QueryPlanCache(String repositoryName, int maxSize) {
+        this.maxSize = maxSize;
+        hitCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "queryplan",
+                "hits"));
+        missCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "queryplan", "misses"));
+        evictionCount = registry.counter(MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches",
+                "queryplan", "evictions"));
+        plans = new LinkedHashMap<String, QueryPlan>(Math.min(maxSize, 16), 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<String, QueryPlan> eldest) {
+                if (size() > QueryPlanCache.this.maxSize) {
+                    evictionCount.inc();
+                    return true;
+                }
+                return false;
+            }
+        };
+        String gaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "queryplan",
+                "size");
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return Integer.valueOf(size());
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public QueryPlan get(String key) {
+        QueryPlan plan;
+        synchronized (plans) {
+            plan = plans.get(key);
+        }
+        if (plan == null) {
+            missCount.inc();
+        } else {
+            hitCount.inc();
+        }
+        return plan;
+    }
+
+    public void put(String key, QueryPlan plan) {
+        synchronized (plans) {
+            plans.put(key, plan);
+        }
+    }
+
+    public int size() {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    /**
+     * Computes the normalized key of a query, and collects the literals replaced by placeholders, in order.
+     *
+     * @param sqlQuery the parsed and transformed query
+     * @param facetFilter the facet filter, or {@code null}
+     * @param withSecurity whether a security check will be generated
+     * @param literals the list to which the replaced literals are added
+     * @return the key, or {@code null} if the query cannot use a cached plan
+     */
+    public static String getKey(SQLQuery sqlQuery, FacetFilter facetFilter, boolean withSecurity,
+            List<Literal> literals) {
+        if (sqlQuery.groupBy != null || sqlQuery.having != null) {
+            return null;
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append("SELECT ").append(sqlQuery.select);
+        buf.append(" FROM ").append(sqlQuery.from);
+        if (sqlQuery.where != null) {
+            buf.append(" WHERE ");
+            if (!normalize(sqlQuery.where.predicate, buf, literals)) {
+                return null;
+            }
+        }
+        if (sqlQuery.orderBy != null) {
+            buf.append(" ORDER BY ").append(sqlQuery.orderBy);
+        }
+        if (facetFilter != null) {
+            if (facetFilter.required != null) {
+                buf.append(" REQUIRED ").append(new TreeSet<String>(facetFilter.required));
+            }
+            if (facetFilter.excluded != null) {
+                buf.append(" EXCLUDED ").append(new TreeSet<String>(facetFilter.excluded));
+            }
+        }
+        if (withSecurity) {
+            buf.append(" SECURITY");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Normalizes an operand into the buffer. Returns {@code false} if the query cannot use a cached plan.
+     */
+    protected static boolean normalize(Operand node, StringBuilder buf, List<Literal> literals) {
+        if (node instanceof MultiExpression) {
+            MultiExpression multi = (MultiExpression) node;
+            buf.append(multi.operator).append('(');
+            for (Iterator<Operand> it = multi.values.iterator(); it.hasNext();) {
+                if (!normalize(it.next(), buf, literals)) {
+                    return false;
+                }
+                if (it.hasNext()) {
+                    buf.append(", ");
+                }
+            }
+            buf.append(')');
+        } else if (node instanceof Expression) {
+            Expression expr = (Expression) node;
+            if (expr.lvalue instanceof Reference) {
+                String name = ((Reference) expr.lvalue).name;
+                if (NXQL.ECM_PATH.equals(name) || expr.operator == Operator.STARTSWITH) {
+                    // path resolution depends on the current state of the repository
+                    return false;
+                }
+            }
+            buf.append('(');
+            if (isParameterizable(expr)) {
+                buf.append(expr.lvalue).append(' ').append(expr.operator).append(' ');
+                if (expr.rvalue instanceof LiteralList) {
+                    buf.append('(');
+                    for (Iterator<Literal> it = ((LiteralList) expr.rvalue).iterator(); it.hasNext();) {
+                        appendPlaceholder(it.next(), buf, literals);
+                        if (it.hasNext()) {
+                            buf.append(", ");
+                        }
+                    }
+                    buf.append(')');
+                } else {
+                    appendPlaceholder((Literal) expr.rvalue, buf, literals);
+                }
+            } else if (expr.rvalue == null) {
+                if (expr.isSuffix()) {
+                    if (!normalize(expr.lvalue, buf, literals)) {
+                        return false;
+                    }
+                    buf.append(' ').append(expr.operator);
+                } else {
+                    buf.append(expr.operator).append(' ');
+                    if (!normalize(expr.lvalue, buf, literals)) {
+                        return false;
+                    }
+                }
+            } else {
+                if (!normalize(expr.lvalue, buf, literals)) {
+                    return false;
+                }
+                buf.append(' ').append(expr.operator).append(' ');
+                if (!normalize(expr.rvalue, buf, literals)) {
+                    return false;
+                }
+            }
+            buf.append(')');
+        } else if (node instanceof StringLiteral) {
+            // escaped so that two different queries cannot share a key
+            buf.append(NXQL.escapeString(((StringLiteral) node).value));
+        } else if (node instanceof LiteralList) {
+            buf.append('(');
+            for (Iterator<Literal> it = ((LiteralList) node).iterator(); it.hasNext();) {
+                if (!normalize(it.next(), buf, literals)) {
+                    return false;
+                }
+                if (it.hasNext()) {
+                    buf.append(", ");
+                }
+            }
+            buf.append(')');
+        } else {
+            buf.append(node);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the literals of an expression are only used as SQL parameters by the query maker.
+     */
+    protected static boolean isParameterizable(Expression expr) {
+        if (!(expr.lvalue instanceof Reference)) {
+            return false;
+        }
+        Reference ref = (Reference) expr.lvalue;
+        if (ref.name.startsWith(SYSTEM_PREFIX) && !PARAMETERIZABLE_SYSTEM_PROPERTIES.contains(ref.name)) {
+            return false;
+        }
+        Operator op = expr.operator;
+        if (op == Operator.IN || op == Operator.NOTIN || op == Operator.BETWEEN || op == Operator.NOTBETWEEN) {
+            if (!(expr.rvalue instanceof LiteralList)) {
+                return false;
+            }
+            for (Literal literal : (LiteralList) expr.rvalue) {
+                if (!isParameterizable(literal)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (op == Operator.EQ || op == Operator.NOTEQ || op == Operator.LT || op == Operator.GT
+                || op == Operator.LTEQ || op == Operator.GTEQ || op == Operator.LIKE || op == Operator.NOTLIKE
+                || op == Operator.ILIKE || op == Operator.NOTILIKE) {
+            return expr.rvalue instanceof Literal && isParameterizable((Literal) expr.rvalue);
+        }
+        return false;
+    }
+
+    /**
+     * Integer and double literals are inlined in the generated SQL so they are kept in the key.
+     */
+    protected static boolean isParameterizable(Literal literal) {
+        return literal instanceof StringLiteral || literal instanceof DateLiteral || literal instanceof BooleanLiteral;
+    }
+
+    protected static void appendPlaceholder(Literal literal, StringBuilder buf, List<Literal> literals) {
+        if (literal instanceof DateLiteral) {
+            buf.append(((DateLiteral) literal).onlyDate ? "?DATE" : "?TIMESTAMP");
+        } else if (literal instanceof BooleanLiteral) {
+            buf.append("?BOOLEAN");
+        } else {
+            buf.append("?STRING");
+        }
+        literals.add(literal);
+    }
+
+    /**
+     * The kind of value bound to a parameter of a plan.
+     */
+    public enum ParamKind {
+        STRING, ID, DATE, TIMESTAMP, BOOLEAN, PRINCIPALS, PERMISSIONS;
+    }
+
+    /**
+     * Placeholder added to the SQL parameters by the query maker when building a plan, replaced by its actual value
+     * when the plan is recorded.
+     */
+    public static class ParamMarker implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The index of the literal, or -1 for query filter parameters. */
+        public final int index;
+
+        public final ParamKind kind;
+
+        public final Serializable value;
+
+        public ParamMarker(int index, ParamKind kind, Serializable value) {
+            this.index = index;
+            this.kind = kind;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * A cached query plan: the generated SQL and the positions of the parameters to rebind.
+     */
+    public static class QueryPlan {
+
+        /** The select info, or {@code null} if the query cannot match anything. */
+        protected final SQLInfoSelect selectInfo;
+
+        protected final List<Serializable> params;
+
+        protected final int[] positions;
+
+        protected final ParamMarker[] markers;
+
+        protected QueryPlan(SQLInfoSelect selectInfo, List<Serializable> params, int[] positions,
+                ParamMarker[] markers) {
+            this.selectInfo = selectInfo;
+            this.params = params;
+            this.positions = positions;
+            this.markers = markers;
+        }
+
+        /**
+         * Records a plan from a query built with {@link ParamMarker}s, and replaces the markers in the query by their
+         * actual values.
+         *
+         * @param q the query, or {@code null} if it cannot match anything
+         * @param literalCount the number of normalized literals
+         * @return the plan, or {@code null} if some normalized literals were not bound as simple parameters
+         */
+        public static QueryPlan record(Query q, int literalCount) {
+            if (q == null) {
+                return literalCount == 0 ? new QueryPlan(null, null, null, null) : null;
+            }
+            List<Serializable> params = new ArrayList<Serializable>(q.selectParams);
+            List<Integer> positions = new ArrayList<Integer>();
+            List<ParamMarker> markers = new ArrayList<ParamMarker>();
+            boolean[] bound = new boolean[literalCount];
+            for (int i = 0; i < params.size(); i++) {
+                Serializable param = params.get(i);
+                if (param instanceof ParamMarker) {
+                    ParamMarker marker = (ParamMarker) param;
+                    params.set(i, marker.value);
+                    positions.add(Integer.valueOf(i));
+                    markers.add(marker);
+                    if (marker.index >= 0) {
+                        bound[marker.index] = true;
+                    }
+                }
+            }
+            q.selectParams = new ArrayList<Serializable>(params);
+            for (boolean b : bound) {
+                if (!b) {
+                    // a literal was used in a way we cannot rebind
+                    return null;
+                }
+            }
+            int[] pos = new int[positions.size()];
+            for (int i = 0; i < pos.length; i++) {
+                pos[i] = positions.get(i).intValue();
+            }
+            return new QueryPlan(q.selectInfo, params, pos, markers.toArray(new ParamMarker[markers.size()]));
+        }
+
+        /**
+         * Creates a query from this plan, binding the given literals and query filter parameters.
+         *
+         * @return the query, or {@code null} if it cannot match anything
+         */
+        public Query bind(List<Literal> literals, Serializable principals, Serializable permissions) {
+            if (selectInfo == null) {
+                return null;
+            }
+            Query q = new Query();
+            q.selectInfo = selectInfo;
+            List<Serializable> selectParams = new ArrayList<Serializable>(params);
+            for (int i = 0; i < positions.length; i++) {
+                ParamMarker marker = markers[i];
+                Serializable value;
+                switch (marker.kind) {
+                case PRINCIPALS:
+                    value = principals;
+                    break;
+                case PERMISSIONS:
+                    value = permissions;
+                    break;
+                default:
+                    value = getValue(marker.kind, literals.get(marker.index));
+                }
+                selectParams.set(positions[i], value);
+            }
+            q.selectParams = selectParams;
+            return q;
+        }
+
+        protected static Serializable getValue(ParamKind kind, Literal literal) {
+            switch (kind) {
+            case STRING:
+                return ((StringLiteral) literal).value;
+            case ID:
+                return new WrappedId(((StringLiteral) literal).value);
+            case DATE:
+                return ((DateLiteral) literal).toSqlDate();
+            case TIMESTAMP:
+                return ((DateLiteral) literal).toCalendar();
+            case BOOLEAN:
+                return Boolean.valueOf(((BooleanLiteral) literal).value);
+            default:
+                throw new AssertionError(kind);
+            }
+        }
+    }
+
+}
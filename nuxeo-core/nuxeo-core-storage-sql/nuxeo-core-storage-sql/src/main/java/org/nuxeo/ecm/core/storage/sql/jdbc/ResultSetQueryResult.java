@@ -49,6 +49,9 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
 
     private long size = -1;
 
+    /** The number of rows left to return when the limit is not applied by the database, or -1 for no limit. */
+    private long remaining = -1;
+
     private final JDBCLogger logger;
 
     public ResultSetQueryResult(QueryMaker queryMaker, String query, QueryFilter queryFilter, PathResolver pathResolver,
@@ -64,11 +67,18 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
         } else {
             eof = false;
         }
+        String sql = q.selectInfo.sql;
+        long limit = queryFilter.getLimit();
+        long offset = queryFilter.getOffset();
+        boolean paging = limit > 0 && mapper.dialect.supportsPaging();
+        if (paging) {
+            // only the rows of the page are read
+            sql = mapper.dialect.addPagingClause(sql, limit, offset);
+        }
         if (logger.isLogEnabled()) {
-            logger.logSQL(q.selectInfo.sql, q.selectParams);
+            logger.logSQL(sql, q.selectParams);
         }
-        ps = mapper.connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
+        ps = mapper.connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
         int i = 1;
         for (Serializable object : q.selectParams) {
             mapper.setToPreparedStatement(ps, i++, object);
@@ -76,6 +86,13 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
         rs = ps.executeQuery();
         mapper.countExecute();
         // rs.setFetchDirection(ResultSet.FETCH_UNKNOWN); fails in H2
+        if (limit > 0 && !paging) {
+            // do limit/offset by hand
+            if (offset > 0) {
+                rs.absolute((int) offset);
+            }
+            remaining = limit;
+        }
     }
 
     protected static void closePreparedStatement(PreparedStatement ps) throws SQLException {
@@ -193,12 +210,15 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
 
     protected Map<String, Serializable> fetchNext() throws SQLException {
         checkNotClosed();
-        if (!rs.next()) {
+        if (remaining == 0 || !rs.next()) {
             if (logger.isLogEnabled()) {
                 logger.log("  -> END");
             }
             return null;
         }
+        if (remaining > 0) {
+            remaining--;
+        }
         return fetchCurrent();
     }
 
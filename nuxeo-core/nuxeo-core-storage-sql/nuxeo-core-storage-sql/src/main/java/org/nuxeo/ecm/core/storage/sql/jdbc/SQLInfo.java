@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.nuxeo.common.utils.StringUtils;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -56,6 +57,7 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.db.Table.IndexType;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.SQLStatement;
 import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.SQLStatement.ListCollector;
+import org.nuxeo.runtime.api.Framework;
 
 /**
  * This singleton generates and holds the actual SQL DDL and DML statements for the operations needed by the
@@ -87,6 +89,10 @@ public class SQLInfo {
 
     private final Map<String, List<Column>> insertColumnsMap;
 
+    private final Map<String, Insert> insertMap;
+
+    private final Map<String, String> multiRowInsertSqlMap; // statement, by table name and number of rows
+
     private final Map<String, String> deleteSqlMap; // statement
 
     private Map<SelectionType, SQLInfoSelection> selections;
@@ -129,6 +135,8 @@ public class SQLInfo {
 
     protected List<Column> getBinariesColumns;
 
+    protected final QueryPlanCache queryPlanCache;
+
     /**
      * Generates and holds the needed SQL statements given a {@link Model} and a {@link Dialect}.
      *
@@ -157,6 +165,8 @@ public class SQLInfo {
 
         insertSqlMap = new HashMap<String, String>();
         insertColumnsMap = new HashMap<String, List<Column>>();
+        insertMap = new HashMap<String, Insert>();
+        multiRowInsertSqlMap = new ConcurrentHashMap<String, String>();
 
         deleteSqlMap = new HashMap<String, String>();
 
@@ -166,6 +176,10 @@ public class SQLInfo {
         getBinariesSql = new ArrayList<String>(1);
         getBinariesColumns = new ArrayList<Column>(1);
 
+        int planCacheSize = Integer.parseInt(
+                Framework.getProperty(QueryPlanCache.SIZE_PROP, QueryPlanCache.DEFAULT_SIZE));
+        queryPlanCache = new QueryPlanCache(repositoryDescriptor.name, planCacheSize);
+
         initSQL();
         initSelections();
 
@@ -180,6 +194,15 @@ public class SQLInfo {
         return database;
     }
 
+    /**
+     * Gets the cache of NXQL query plans for this repository and dialect.
+     *
+     * @since 8.3
+     */
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
     // ----- select -----
 
     public String getSelectRootIdSql() {
@@ -266,6 +289,40 @@ public class SQLInfo {
         return insertSqlMap.get(tableName);
     }
 
+    /**
+     * Returns the SQL {@code INSERT} to add several rows in a single statement, with the same columns as
+     * {@link #getInsertSql(String)} repeated for each row.
+     *
+     * @param tableName the table name
+     * @param rows the number of rows
+     * @return the SQL multi-row {@code INSERT} statement, or {@code null} if not possible for this table
+     * @since 8.3
+     */
+    public String getInsertSql(String tableName, int rows) {
+        Insert insert = insertMap.get(tableName);
+        if (insert == null) {
+            return null;
+        }
+        return multiRowInsertSqlMap.computeIfAbsent(tableName + '/' + rows, k -> insert.getStatement(rows));
+    }
+
+    /**
+     * Returns the maximum number of rows to insert in a single multi-row {@code INSERT} statement for a table, or
+     * {@code 1} if multi-row inserts are not supported.
+     *
+     * @param tableName the table name
+     * @return the maximum number of rows per statement
+     * @since 8.3
+     */
+    public int getMaximumRowsForInsert(String tableName) {
+        List<Column> columns = insertColumnsMap.get(tableName);
+        if (!dialect.supportsMultiRowInsert() || columns == null || columns.isEmpty()) {
+            return 1;
+        }
+        int rows = dialect.getMaximumArgsForMultiRowInsert() / columns.size();
+        return Math.max(1, Math.min(rows, dialect.getMaximumRowsForMultiRowInsert()));
+    }
+
     /**
      * Returns the list of columns to use for an {@INSERT} statement {@link #getInsertSql}.
      *
@@ -983,7 +1040,6 @@ public class SQLInfo {
             selectComplexChildrenIdsAndTypesSql = select.getStatement();
         }
 
-        // TODO optimize multiple inserts into one statement for collections
         protected void postProcessInsert() {
             // insert (implicitly auto-generated sequences not included)
             Collection<Column> columns = table.getColumns();
@@ -999,6 +1055,7 @@ public class SQLInfo {
             }
             insertSqlMap.put(tableName, insert.getStatement());
             insertColumnsMap.put(tableName, insertColumns);
+            insertMap.put(tableName, insert);
         }
 
         protected void postProcessDelete() {
@@ -23,6 +23,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.nuxeo.ecm.core.storage.sql.Model;
@@ -72,11 +73,40 @@ public class ScalarCollectionIO implements CollectionIO {
     @Override
     public void executeInserts(PreparedStatement ps, List<RowUpdate> rowus, List<Column> columns,
             boolean supportsBatchUpdates, String sql, JDBCConnection connection) throws SQLException {
-        List<Serializable> debugValues = connection.logger.isLogEnabled() ? new ArrayList<Serializable>() : null;
-        String loggedSql = supportsBatchUpdates && rowus.size() > 1 ? sql + " -- BATCHED" : sql;
+        List<Serializable[]> rows = getInsertValues(rowus, columns);
+        String loggedSql = supportsBatchUpdates && rows.size() > 1 ? sql + " -- BATCHED" : sql;
         int batch = 0;
-        for (RowUpdate rowu : rowus) {
+        for (Serializable[] values : rows) {
             batch++;
+            int n = 0;
+            for (Column column : columns) {
+                column.setToPreparedStatement(ps, n + 1, values[n]);
+                n++;
+            }
+            if (connection.logger.isLogEnabled()) {
+                connection.logger.logSQL(loggedSql, Arrays.asList(values));
+            }
+            if (supportsBatchUpdates) {
+                ps.addBatch();
+                if (batch % JDBCRowMapper.UPDATE_BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                    connection.countExecute();
+                }
+            } else {
+                ps.execute();
+                connection.countExecute();
+            }
+        }
+        if (supportsBatchUpdates) {
+            ps.executeBatch();
+            connection.countExecute();
+        }
+    }
+
+    @Override
+    public List<Serializable[]> getInsertValues(List<RowUpdate> rowus, List<Column> columns) {
+        List<Serializable[]> rows = new ArrayList<>();
+        for (RowUpdate rowu : rowus) {
             int start;
             if (rowu.pos == -1 || insertAll) {
                 start = 0;
@@ -86,9 +116,9 @@ public class ScalarCollectionIO implements CollectionIO {
             Serializable id = rowu.row.id;
             Serializable[] array = rowu.row.values;
             for (int i = start; i < array.length; i++) {
+                Serializable[] values = new Serializable[columns.size()];
                 int n = 0;
                 for (Column column : columns) {
-                    n++;
                     String key = column.getKey();
                     Serializable v;
                     if (key.equals(Model.MAIN_KEY)) {
@@ -100,31 +130,12 @@ public class ScalarCollectionIO implements CollectionIO {
                     } else {
                         throw new RuntimeException(key);
                     }
-                    column.setToPreparedStatement(ps, n, v);
-                    if (debugValues != null) {
-                        debugValues.add(v);
-                    }
-                }
-                if (debugValues != null) {
-                    connection.logger.logSQL(loggedSql, debugValues);
-                    debugValues.clear();
-                }
-                if (supportsBatchUpdates) {
-                    ps.addBatch();
-                    if (batch % JDBCRowMapper.UPDATE_BATCH_SIZE == 0) {
-                        ps.executeBatch();
-                        connection.countExecute();
-                    }
-                } else {
-                    ps.execute();
-                    connection.countExecute();
+                    values[n++] = v;
                 }
+                rows.add(values);
             }
         }
-        if (supportsBatchUpdates) {
-            ps.executeBatch();
-            connection.countExecute();
-        }
+        return rows;
     }
 
 }
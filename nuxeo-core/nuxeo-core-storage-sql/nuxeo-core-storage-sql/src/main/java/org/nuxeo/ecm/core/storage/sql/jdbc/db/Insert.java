@@ -100,4 +100,43 @@ public class Insert implements Serializable {
         }
         return buf.toString();
     }
+
+    /**
+     * Gets the statement to insert several rows at once, or {@code null} if this insert cannot be expressed as a
+     * multi-row insert.
+     * <p>
+     * Example: {@code INSERT INTO foo (a, b) VALUES (?, ?), (?, ?), (?, ?)}
+     *
+     * @param rows the number of rows
+     * @return the SQL multi-row insert statement, or {@code null}
+     * @since 8.3
+     */
+    public String getStatement(int rows) {
+        if (columns.isEmpty() || insertValues != null) {
+            return null;
+        }
+        if (rows == 1) {
+            return getStatement();
+        }
+        List<String> columnNames = new LinkedList<String>();
+        List<String> values = new LinkedList<String>();
+        for (Column column : columns) {
+            columnNames.add(column.getQuotedName());
+            values.add(column.getFreeVariableSetter());
+        }
+        String tuple = '(' + String.join(", ", values) + ')';
+        StringBuilder buf = new StringBuilder(64 + rows * (tuple.length() + 2));
+        buf.append("INSERT INTO ");
+        buf.append(table.getQuotedName());
+        buf.append(" (");
+        buf.append(String.join(", ", columnNames));
+        buf.append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            if (i != 0) {
+                buf.append(", ");
+            }
+            buf.append(tuple);
+        }
+        return buf.toString();
+    }
 }
@@ -1068,6 +1068,37 @@ public abstract class Dialect {
         return 400;
     }
 
+    /**
+     * Does the dialect support inserting several rows with a single {@code INSERT ... VALUES (...), (...)} statement.
+     *
+     * @since 8.3
+     */
+    public boolean supportsMultiRowInsert() {
+        return false;
+    }
+
+    /**
+     * Maximum number of parameters in a multi-row {@code INSERT} statement.
+     * <p>
+     * SQL Server is limited to 2100 parameters in a statement.
+     *
+     * @since 8.3
+     */
+    public int getMaximumArgsForMultiRowInsert() {
+        return 2000;
+    }
+
+    /**
+     * Maximum number of rows in a multi-row {@code INSERT} statement.
+     * <p>
+     * SQL Server is limited to 1000 rows in a VALUES clause.
+     *
+     * @since 8.3
+     */
+    public int getMaximumRowsForMultiRowInsert() {
+        return 100;
+    }
+
     /**
      * Gets the statement to update the read acls
      */
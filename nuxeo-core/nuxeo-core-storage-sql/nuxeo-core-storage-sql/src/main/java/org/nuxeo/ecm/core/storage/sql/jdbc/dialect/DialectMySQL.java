@@ -496,4 +496,9 @@ public class DialectMySQL extends Dialect {
         return sql + " $$";
     }
 
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
 }
@@ -1382,5 +1382,9 @@ public class DialectPostgreSQL extends Dialect {
         return org.apache.commons.lang.StringUtils.join(newArgList, ", ");
     }
 
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
 
 }
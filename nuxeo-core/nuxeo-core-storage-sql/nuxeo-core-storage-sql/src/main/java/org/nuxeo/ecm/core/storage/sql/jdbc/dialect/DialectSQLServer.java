@@ -835,4 +835,9 @@ public class DialectSQLServer extends Dialect {
         return sql + "\nGO";
     }
 
+    @Override
+    public boolean supportsMultiRowInsert() {
+        return true;
+    }
+
 }
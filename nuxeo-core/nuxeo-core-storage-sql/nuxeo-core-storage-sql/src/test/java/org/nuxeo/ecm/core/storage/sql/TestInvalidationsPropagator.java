@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TestInvalidationsPropagator {
+
+    protected static Invalidations modified(String id) {
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(new RowId("hierarchy", id));
+        return invalidations;
+    }
+
+    @Test
+    public void testPropagate() {
+        InvalidationsPropagator propagator = new InvalidationsPropagator();
+        InvalidationsQueue q1 = new InvalidationsQueue("q1");
+        InvalidationsQueue q2 = new InvalidationsQueue("q2");
+        propagator.addQueue(q1);
+        propagator.propagateInvalidations(modified("a"), null);
+        propagator.addQueue(q2);
+        propagator.propagateInvalidations(modified("b"), q1);
+
+        Invalidations i1 = q1.getInvalidations();
+        assertEquals(1, i1.modified.size());
+        assertTrue(i1.modified.contains(new RowId("hierarchy", "a")));
+        Invalidations i2 = q2.getInvalidations();
+        assertEquals(1, i2.modified.size());
+        assertTrue(i2.modified.contains(new RowId("hierarchy", "b")));
+
+        // already read
+        assertTrue(q1.getInvalidations().isEmpty());
+        assertTrue(q2.getInvalidations().isEmpty());
+
+        propagator.removeQueue(q2);
+        propagator.propagateInvalidations(modified("c"), null);
+        assertEquals(1, q1.getInvalidations().modified.size());
+        assertTrue(q2.getInvalidations().isEmpty());
+        assertEquals(1, propagator.queues.size());
+    }
+
+    @Test
+    public void testPropagatedInvalidationsAreCopied() {
+        InvalidationsPropagator propagator = new InvalidationsPropagator();
+        InvalidationsQueue queue = new InvalidationsQueue("q");
+        propagator.addQueue(queue);
+        Invalidations invalidations = modified("a");
+        propagator.propagateInvalidations(invalidations, null);
+        invalidations.addModified(new RowId("hierarchy", "b"));
+        assertEquals(1, queue.getInvalidations().modified.size());
+    }
+
+    @Test
+    public void testLaggingQueueIsCompacted() {
+        int maxLag = 10;
+        InvalidationsPropagator propagator = new InvalidationsPropagator(maxLag);
+        InvalidationsQueue idle = new InvalidationsQueue("idle");
+        InvalidationsQueue active = new InvalidationsQueue("active");
+        propagator.addQueue(idle);
+        propagator.addQueue(active);
+        for (int i = 0; i < InvalidationsPropagator.CHECK_LAG_INTERVAL; i++) {
+            propagator.propagateInvalidations(modified("id" + i), null);
+            assertFalse(active.getInvalidations().all);
+        }
+        Invalidations invalidations = idle.getInvalidations();
+        assertTrue(invalidations.all);
+        assertNull(invalidations.modified);
+        // back to normal afterwards
+        propagator.propagateInvalidations(modified("x"), null);
+        invalidations = idle.getInvalidations();
+        assertFalse(invalidations.all);
+        assertEquals(1, invalidations.modified.size());
+    }
+
+    @Test
+    public void testConcurrentPropagation() throws Exception {
+        int nthreads = 8;
+        int n = 500;
+        InvalidationsPropagator propagator = new InvalidationsPropagator(Integer.MAX_VALUE);
+        InvalidationsQueue queue = new InvalidationsQueue("q");
+        propagator.addQueue(queue);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nthreads; t++) {
+            String prefix = "t" + t + "-";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < n; i++) {
+                    propagator.propagateInvalidations(modified(prefix + i), null);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        Set<RowId> received = new HashSet<>();
+        start.countDown();
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                Invalidations invalidations = queue.getInvalidations();
+                if (invalidations.modified != null) {
+                    received.addAll(invalidations.modified);
+                }
+                thread.join(1);
+            }
+        }
+        Invalidations invalidations = queue.getInvalidations();
+        if (invalidations.modified != null) {
+            received.addAll(invalidations.modified);
+        }
+        assertEquals(nthreads * n, received.size());
+    }
+
+    @Test
+    public void testConcurrentCompaction() throws Exception {
+        int nthreads = 4;
+        int n = 5000;
+        InvalidationsPropagator propagator = new InvalidationsPropagator(1);
+        InvalidationsQueue queue = new InvalidationsQueue("q");
+        propagator.addQueue(queue);
+        // logical clock, to order propagations and reads
+        AtomicLong clock = new AtomicLong();
+        Map<RowId, Long> started = new ConcurrentHashMap<>();
+        Queue<RowId> completed = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < nthreads; t++) {
+            String prefix = "t" + t + "-";
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < n; i++) {
+                    RowId rowId = new RowId("hierarchy", prefix + i);
+                    started.put(rowId, Long.valueOf(clock.incrementAndGet()));
+                    propagator.propagateInvalidations(modified(prefix + i), null);
+                    completed.add(rowId);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        Set<RowId> received = new HashSet<>();
+        long allRead = -1;
+        start.countDown();
+        for (int i = 0; threads.stream().anyMatch(Thread::isAlive) || !completed.isEmpty(); i++) {
+            if (i % 100 == 0) {
+                // lag behind to get compacted
+                Thread.sleep(1);
+            }
+            // propagations completed before the read must be seen by it
+            List<RowId> before = new ArrayList<>();
+            for (RowId rowId; (rowId = completed.poll()) != null;) {
+                before.add(rowId);
+            }
+            Invalidations invalidations = queue.getInvalidations();
+            if (invalidations.all) {
+                allRead = clock.get();
+            } else if (invalidations.modified != null) {
+                received.addAll(invalidations.modified);
+            }
+            for (RowId rowId : before) {
+                // not received, then skipped by a compaction reported by this read or an earlier one
+                assertTrue(rowId.toString(), received.contains(rowId) || started.get(rowId).longValue() <= allRead);
+            }
+        }
+    }
+
+}
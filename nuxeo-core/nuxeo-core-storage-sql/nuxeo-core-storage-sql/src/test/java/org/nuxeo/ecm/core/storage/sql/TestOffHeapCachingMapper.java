@@ -0,0 +1,216 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.transaction.xa.XAException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowBatch;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowUpdate;
+
+public class TestOffHeapCachingMapper {
+
+    protected static final RowId ROW_ID = new RowId("hierarchy", "id1");
+
+    /**
+     * Database mapper keeping committed rows in a map.
+     */
+    protected static class FakeDatabase implements InvocationHandler {
+
+        protected final Map<RowId, Row> rows = new HashMap<>();
+
+        protected final Map<RowId, Row> pending = new HashMap<>();
+
+        protected int reads;
+
+        protected boolean failCommit;
+
+        protected Invalidations remoteInvalidations;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "readSimpleRow":
+                reads++;
+                Row row = rows.get(args[0]);
+                return row == null ? null : row.clone();
+            case "write":
+                for (RowUpdate rowu : ((RowBatch) args[0]).updates) {
+                    pending.put(new RowId(rowu.row), rowu.row.clone());
+                }
+                return null;
+            case "commit":
+                if (failCommit) {
+                    pending.clear();
+                    throw new XAException(XAException.XA_RBROLLBACK);
+                }
+                rows.putAll(pending);
+                pending.clear();
+                return null;
+            case "rollback":
+                pending.clear();
+                return null;
+            case "receiveInvalidations":
+                Invalidations invalidations = remoteInvalidations;
+                remoteInvalidations = null;
+                return invalidations;
+            default:
+                return null;
+            }
+        }
+    }
+
+    protected FakeDatabase db;
+
+    protected Mapper dbMapper;
+
+    protected InvalidationsPropagator propagator;
+
+    protected OffHeapCachingMapper mapper1;
+
+    protected OffHeapCachingMapper mapper2;
+
+    @Before
+    public void setUp() {
+        db = new FakeDatabase();
+        db.rows.put(ROW_ID, newRow("v1"));
+        dbMapper = (Mapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Mapper.class }, db);
+        propagator = new InvalidationsPropagator();
+        mapper1 = newMapper();
+        mapper2 = newMapper();
+    }
+
+    protected OffHeapCachingMapper newMapper() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(OffHeapCachingRowMapper.MAX_SIZE_PROP, "1");
+        properties.put(OffHeapCachingRowMapper.SEGMENT_SIZE_PROP, "1");
+        OffHeapCachingMapper mapper = new OffHeapCachingMapper();
+        mapper.initialize("test", null, dbMapper, propagator, properties);
+        return mapper;
+    }
+
+    protected static Row newRow(String title) {
+        Row row = new Row(ROW_ID.tableName, ROW_ID.id);
+        row.putNew("title", title);
+        return row;
+    }
+
+    protected static String getTitle(OffHeapCachingMapper mapper) {
+        return (String) mapper.readSimpleRow(ROW_ID).get("title");
+    }
+
+    protected static void update(OffHeapCachingMapper mapper, String title) throws Exception {
+        mapper.start(null, 0);
+        RowBatch batch = new RowBatch();
+        batch.updates.add(new RowUpdate(newRow(title), Collections.singleton("title")));
+        mapper.write(batch);
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        assertEquals("v1", getTitle(mapper2));
+        assertEquals("v1", getTitle(mapper2));
+        assertEquals(1, db.reads);
+
+        update(mapper1, "v2");
+        assertEquals("v2", getTitle(mapper1));
+        // not visible to others before commit
+        assertEquals("v1", getTitle(mapper2));
+
+        mapper1.commit(null, true);
+        mapper1.sendInvalidations(null);
+        mapper2.receiveInvalidations();
+        // published to the shared store
+        assertEquals("v2", getTitle(mapper2));
+        assertEquals(1, db.reads);
+        assertEquals(1, mapper2.getCacheSize());
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        assertEquals("v1", getTitle(mapper2));
+
+        update(mapper1, "v2");
+        mapper1.rollback(null);
+        assertEquals("v1", getTitle(mapper1));
+        assertEquals("v1", getTitle(mapper2));
+        assertEquals(1, db.reads);
+    }
+
+    @Test
+    public void testFailedCommit() throws Exception {
+        assertEquals("v1", getTitle(mapper2));
+
+        update(mapper1, "v2");
+        db.failCommit = true;
+        try {
+            mapper1.commit(null, true);
+            fail();
+        } catch (XAException e) {
+            // expected
+        }
+        // invalidations are still sent after a failed commit
+        mapper1.sendInvalidations(null);
+        mapper2.receiveInvalidations();
+        assertEquals("v1", getTitle(mapper1));
+        assertEquals("v1", getTitle(mapper2));
+        assertEquals("v1", db.rows.get(ROW_ID).get("title"));
+    }
+
+    @Test
+    public void testRemoteInvalidation() throws Exception {
+        assertEquals("v1", getTitle(mapper2));
+        assertEquals(1, db.reads);
+
+        // changed on another cluster node
+        db.rows.put(ROW_ID, newRow("v2"));
+        db.remoteInvalidations = new Invalidations();
+        db.remoteInvalidations.addModified(ROW_ID);
+        assertEquals("v1", getTitle(mapper2));
+
+        mapper2.receiveInvalidations();
+        assertEquals("v2", getTitle(mapper1));
+        assertEquals("v2", getTitle(mapper2));
+        assertEquals(2, db.reads);
+    }
+
+    @Test
+    public void testRepositoryReinitialized() throws Exception {
+        assertEquals("v1", getTitle(mapper2));
+        db.rows.put(ROW_ID, newRow("v2"));
+
+        // a new repository instance has a new propagator and does not see the previous rows
+        propagator = new InvalidationsPropagator();
+        OffHeapCachingMapper mapper3 = newMapper();
+        assertEquals("v2", getTitle(mapper3));
+        assertEquals(2, db.reads);
+    }
+
+}
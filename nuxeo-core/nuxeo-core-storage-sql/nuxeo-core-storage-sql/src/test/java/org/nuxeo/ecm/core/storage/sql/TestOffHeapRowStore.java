@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TestOffHeapRowStore {
+
+    @Test
+    public void testCodec() throws Exception {
+        OffHeapRowCodec codec = new OffHeapRowCodec();
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890123L);
+        Row row = new Row("hierarchy", "id1");
+        row.putNew("name", "foo");
+        row.putNew("pos", Long.valueOf(-3));
+        row.putNew("isversion", Boolean.TRUE);
+        row.putNew("modified", cal);
+        row.putNew("mixins", new String[] { "a", "b" });
+        row.putNew("nothing", null);
+        RowId rowId = new RowId(row);
+        Row decoded = codec.decode("hierarchy", codec.encode(rowId, row));
+        assertEquals("id1", decoded.id);
+        assertEquals("foo", decoded.get("name"));
+        assertEquals(Long.valueOf(-3), decoded.get("pos"));
+        assertEquals(Boolean.TRUE, decoded.get("isversion"));
+        assertEquals(cal, decoded.get("modified"));
+        assertArrayEquals(new String[] { "a", "b" }, (String[]) decoded.get("mixins"));
+        assertNull(decoded.get("nothing"));
+
+        ACLRow acl = new ACLRow(1, "local", true, "Read", "bob", null, null, null, null, null);
+        Row coll = new Row("acls", "id1", new Serializable[] { acl });
+        decoded = codec.decode("acls", codec.encode(new RowId(coll), coll));
+        assertTrue(decoded.isCollection());
+        ACLRow decodedAcl = (ACLRow) decoded.values[0];
+        assertEquals("bob", decodedAcl.user);
+        assertEquals("Read", decodedAcl.permission);
+
+        byte[] absent = codec.encode(rowId, null);
+        assertTrue(OffHeapRowCodec.isAbsent(absent));
+        assertNull(codec.decode("hierarchy", absent));
+    }
+
+    @Test
+    public void testStalePopulate() throws Exception {
+        OffHeapRowStore store = new OffHeapRowStore(1 << 20, 1 << 16);
+        RowId rowId = new RowId("hierarchy", "id1");
+        long stamp = store.getStamp();
+        // concurrent commit
+        store.put(rowId, new byte[] { 1 });
+        // stale value read from the database before the commit
+        store.populate(rowId, new byte[] { 2 }, stamp);
+        assertArrayEquals(new byte[] { 1 }, store.get(rowId));
+        store.remove(rowId);
+        assertNull(store.get(rowId));
+        stamp = store.getStamp();
+        store.populate(rowId, new byte[] { 3 }, stamp);
+        assertArrayEquals(new byte[] { 3 }, store.get(rowId));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        int segmentSize = 1024;
+        OffHeapRowStore store = new OffHeapRowStore(4 * segmentSize, segmentSize);
+        RowId hot = new RowId("hierarchy", "hot");
+        store.put(hot, new byte[100]);
+        for (int i = 0; i < 100; i++) {
+            // keep accessing the hot row
+            assertNotNull(store.get(hot));
+            store.put(new RowId("hierarchy", "id" + i), new byte[100]);
+        }
+        assertTrue(store.getEvictions() > 0);
+        assertTrue(store.getUsedBytes() <= 4 * segmentSize);
+        assertNotNull(store.get(hot));
+        assertNull(store.get(new RowId("hierarchy", "id0")));
+        assertNotNull(store.get(new RowId("hierarchy", "id99")));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        // big enough to never evict
+        OffHeapRowStore store = new OffHeapRowStore(1 << 24, 1 << 20);
+        Map<RowId, byte[]> expected = new HashMap<>();
+        Random random = new Random(1234);
+        for (int i = 0; i < 20000; i++) {
+            RowId rowId = new RowId("hierarchy", "id" + random.nextInt(5000));
+            if (random.nextInt(4) == 0) {
+                store.remove(rowId);
+                expected.remove(rowId);
+            } else {
+                byte[] bytes = new byte[1 + random.nextInt(20)];
+                random.nextBytes(bytes);
+                store.put(rowId, bytes);
+                expected.put(rowId, bytes);
+            }
+        }
+        assertEquals(expected.size(), store.getSize());
+        for (int i = 0; i < 5000; i++) {
+            RowId rowId = new RowId("hierarchy", "id" + i);
+            byte[] bytes = expected.get(rowId);
+            if (bytes == null) {
+                assertNull(store.get(rowId));
+            } else {
+                assertArrayEquals(bytes, store.get(rowId));
+            }
+        }
+        store.clear();
+        assertEquals(0, store.getSize());
+        assertNull(store.get(new RowId("hierarchy", "id1")));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryPlanCache;
+
+public class TestQueryPlanCache {
+
+    protected static String key(String query, List<Literal> literals) {
+        return QueryPlanCache.getKey(SQLQueryParser.parse(query), null, true, literals);
+    }
+
+    protected static String key(String query) {
+        return key(query, new ArrayList<Literal>());
+    }
+
+    @Test
+    public void testNormalizedLiterals() throws Exception {
+        List<Literal> literals = new ArrayList<Literal>();
+        String k1 = key("SELECT * FROM Document WHERE dc:title = 'foo' AND ecm:parentId = '123'", literals);
+        assertEquals(2, literals.size());
+        assertEquals(k1, key("SELECT * FROM Document WHERE dc:title = 'bar' AND ecm:parentId = '456'"));
+        // IN list size is part of the key
+        assertEquals(key("SELECT * FROM Document WHERE dc:title IN ('a', 'b')"),
+                key("SELECT * FROM Document WHERE dc:title IN ('c', 'd')"));
+        assertNotEquals(key("SELECT * FROM Document WHERE dc:title IN ('a', 'b')"),
+                key("SELECT * FROM Document WHERE dc:title IN ('a')"));
+        // date vs timestamp
+        assertNotEquals(key("SELECT * FROM Document WHERE dc:modified > DATE '2016-01-01'"),
+                key("SELECT * FROM Document WHERE dc:modified > TIMESTAMP '2016-01-01T00:00:00'"));
+    }
+
+    @Test
+    public void testStructuralLiterals() throws Exception {
+        // types, mixins and numbers change the generated SQL
+        assertNotEquals(key("SELECT * FROM Document WHERE ecm:primaryType = 'File'"),
+                key("SELECT * FROM Document WHERE ecm:primaryType = 'Note'"));
+        assertNotEquals(key("SELECT * FROM Document WHERE ecm:mixinType = 'Folderish'"),
+                key("SELECT * FROM Document WHERE ecm:mixinType = 'Downloadable'"));
+        assertNotEquals(key("SELECT * FROM Document WHERE ecm:isProxy = 0"),
+                key("SELECT * FROM Document WHERE ecm:isProxy = 1"));
+        assertNotEquals(key("SELECT * FROM Document WHERE my:integer = 1"),
+                key("SELECT * FROM Document WHERE my:integer = 2"));
+        assertNotEquals(key("SELECT * FROM Document WHERE ecm:fulltext = 'foo'"),
+                key("SELECT * FROM Document WHERE ecm:fulltext = 'bar'"));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        assertNull(key("SELECT * FROM Document WHERE ecm:path = '/foo'"));
+        assertNull(key("SELECT * FROM Document WHERE ecm:path STARTSWITH '/foo'"));
+    }
+
+}
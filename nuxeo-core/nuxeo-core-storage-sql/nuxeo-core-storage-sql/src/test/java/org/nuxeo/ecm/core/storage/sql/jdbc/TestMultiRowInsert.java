@@ -0,0 +1,183 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.ColumnType;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Row;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowUpdate;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.TableImpl;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.DialectH2;
+
+/**
+ * Checks how {@link JDBCRowMapper} splits rows into multi-row {@code INSERT} statements.
+ */
+public class TestMultiRowInsert {
+
+    protected static final int MAX_ROWS = 3;
+
+    protected Dialect dialect;
+
+    protected List<String> statements;
+
+    protected List<String> calls;
+
+    protected RecordingRowMapper mapper;
+
+    /**
+     * Row mapper recording the statements prepared and their executions.
+     */
+    protected class RecordingRowMapper extends JDBCRowMapper {
+
+        protected RecordingRowMapper() {
+            connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("prepareStatement")) {
+                            statements.add((String) args[0]);
+                            return newPreparedStatement();
+                        }
+                        return null;
+                    });
+            supportsBatchUpdates = true;
+        }
+
+        @Override
+        protected int getMaximumRowsForInsert(String tableName) {
+            return MAX_ROWS;
+        }
+
+        @Override
+        protected String getInsertSql(String tableName, int rows) {
+            return tableName + '/' + rows;
+        }
+    }
+
+    protected PreparedStatement newPreparedStatement() {
+        int[] params = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("set")) {
+                        params[0]++;
+                        return null;
+                    }
+                    switch (name) {
+                    case "addBatch":
+                    case "execute":
+                        calls.add(name + '(' + params[0] + ')');
+                        params[0] = 0;
+                        return name.equals("execute") ? Boolean.FALSE : null;
+                    case "executeBatch":
+                        calls.add(name);
+                        return new int[0];
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    @Before
+    public void setUp() {
+        DatabaseMetaData metadata = (DatabaseMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DatabaseMetaData.class }, (proxy, method, args) -> Boolean.FALSE);
+        dialect = new DialectH2(metadata, null);
+        statements = new ArrayList<>();
+        calls = new ArrayList<>();
+        mapper = new RecordingRowMapper();
+    }
+
+    protected static List<Serializable[]> getSimpleValues(int size) {
+        List<Serializable[]> values = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            values.add(new Serializable[] { "id" + i, "title" + i });
+        }
+        return values;
+    }
+
+    @Test
+    public void testSimpleRows() throws SQLException {
+        TableImpl table = new TableImpl(dialect, "foo", "foo");
+        table.addColumn(Model.MAIN_KEY, ColumnType.NODEVAL, Model.MAIN_KEY, null);
+        table.addColumn("title", ColumnType.STRING, "title", null);
+        List<Column> columns = new ArrayList<>(table.getColumns());
+
+        mapper.insertMultiRows("foo", columns, getSimpleValues(7), mapper.getMaximumRowsForInsert("foo"));
+
+        // two full statements batched together, then the remaining row
+        assertEquals(Arrays.asList("foo/3", "foo/1"), statements);
+        assertEquals(Arrays.asList("addBatch(6)", "addBatch(6)", "executeBatch", "execute(2)"), calls);
+    }
+
+    @Test
+    public void testSimpleRowsFullChunksOnly() throws SQLException {
+        TableImpl table = new TableImpl(dialect, "foo", "foo");
+        table.addColumn(Model.MAIN_KEY, ColumnType.NODEVAL, Model.MAIN_KEY, null);
+        table.addColumn("title", ColumnType.STRING, "title", null);
+        List<Column> columns = new ArrayList<>(table.getColumns());
+
+        mapper.insertMultiRows("foo", columns, getSimpleValues(6), MAX_ROWS);
+        assertEquals(Arrays.asList("foo/3"), statements);
+        assertEquals(Arrays.asList("addBatch(6)", "addBatch(6)", "executeBatch"), calls);
+
+        // fewer rows than the maximum use a single statement of that size
+        statements.clear();
+        calls.clear();
+        mapper.insertMultiRows("foo", columns, getSimpleValues(2), MAX_ROWS);
+        assertEquals(Arrays.asList("foo/2"), statements);
+        assertEquals(Arrays.asList("execute(4)"), calls);
+    }
+
+    @Test
+    public void testCollectionRows() throws SQLException {
+        TableImpl table = new TableImpl(dialect, "coll", "coll");
+        table.addColumn(Model.MAIN_KEY, ColumnType.NODEVAL, Model.MAIN_KEY, null);
+        table.addColumn("pos", ColumnType.INTEGER, Model.COLL_TABLE_POS_KEY, null);
+        table.addColumn("item", ColumnType.STRING, Model.COLL_TABLE_VALUE_KEY, null);
+        List<Column> columns = new ArrayList<>(table.getColumns());
+        List<RowUpdate> rowus = new ArrayList<>();
+        rowus.add(new RowUpdate(new Row("coll", "id1", new String[] { "a", "b", "c", "d" })));
+        // right push of two values after the first three
+        rowus.add(new RowUpdate(new Row("coll", "id2", new String[] { "a", "b", "c", "d", "e" }), 3));
+        rowus.add(new RowUpdate(new Row("coll", "id3", new String[] { "a", "b" })));
+        List<Serializable[]> values = new ScalarCollectionIO(false).getInsertValues(rowus, columns);
+        assertEquals(8, values.size());
+
+        mapper.insertMultiRows("coll", columns, values, mapper.getMaximumRowsForInsert("coll"));
+
+        assertEquals(Arrays.asList("coll/3", "coll/2"), statements);
+        assertEquals(Arrays.asList("addBatch(9)", "addBatch(9)", "executeBatch", "execute(6)"), calls);
+    }
+
+}
@@ -173,6 +173,20 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
      */
     protected abstract List<T> getChildAsList(T state, String name) throws PropertyException;
 
+    /**
+     * Gets a child state which is a list, into whose elements we will want to write data.
+     * <p>
+     * The default implementation calls {@link #getChildAsList}.
+     *
+     * @param state the parent state
+     * @param name the child name
+     * @return the child state, never {@code null}
+     * @since 8.3
+     */
+    protected List<T> getChildAsListForWrite(T state, String name) throws PropertyException {
+        return getChildAsList(state, name);
+    }
+
     /**
      * Update a list.
      *
@@ -505,7 +519,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
                 if (!type.isListType() || ((ListType) type).getFieldType().isSimpleType()) {
                     throw new PropertyNotFoundException(xpath, "Cannot use index after segment: " + segment);
                 }
-                List<T> list = getChildAsList(state, name);
+                List<T> list = getChildAsListForWrite(state, name);
                 if (index >= list.size()) {
                     throw new PropertyNotFoundException(xpath, "Index out of bounds: " + index);
                 }
@@ -962,16 +976,30 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
         }
     }
 
+    /**
+     * Gets the state holding a visited blob, for a {@link BlobAccessor} about to write it after marking the document
+     * dirty.
+     * <p>
+     * By default the visited state itself is modified in place.
+     *
+     * @param path the path of the blob in the document, made of property names and list indexes
+     * @param state the visited state
+     * @since 8.3
+     */
+    protected T getBlobStateForWrite(List<String> path, T state) {
+        return state;
+    }
+
     protected class StateBlobAccessor implements BlobAccessor {
 
-        protected final Collection<String> path;
+        protected final List<String> path;
 
-        protected final T state;
+        protected T state;
 
         protected final Runnable markDirty;
 
         public StateBlobAccessor(Collection<String> path, T state, Runnable markDirty) {
-            this.path = path;
+            this.path = new ArrayList<>(path);
             this.state = state;
             this.markDirty = markDirty;
         }
@@ -989,6 +1017,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
         @Override
         public void setBlob(Blob blob) throws PropertyException {
             markDirty.run();
+            state = getBlobStateForWrite(path, state);
             setValueBlob(state, blob);
         }
     }
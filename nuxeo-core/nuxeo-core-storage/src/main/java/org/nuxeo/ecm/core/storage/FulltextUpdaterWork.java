@@ -103,6 +103,12 @@ public class FulltextUpdaterWork extends AbstractWork {
         return 1;
     }
 
+    @Override
+    public boolean isBatchable() {
+        // only sets system properties, running it again is harmless
+        return true;
+    }
+
     @Override
     public void work() {
         openSystemSession();
@@ -19,7 +19,6 @@
 package org.nuxeo.ecm.core.storage;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
@@ -32,6 +31,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,7 +41,9 @@ import com.google.common.collect.ImmutableSet;
 /**
  * Abstraction for a Map<String, Serializable> that is Serializable.
  * <p>
- * Internal storage is optimized to avoid a full {@link HashMap} when there is a small number of keys.
+ * Internal storage is optimized to avoid a full {@link HashMap} when there is a small number of keys: keys and values
+ * are then packed in two arrays. Keys are stored in their canonical form (see {@link #internKey}), which allows lookups
+ * to compare them by identity first.
  *
  * @since 5.9.5
  */
@@ -66,6 +68,14 @@ public class State implements StateAccessor, Serializable {
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
 
+    private static final Serializable[] EMPTY_VALUES = new Serializable[0];
+
+    // maximum number of canonical keys kept in KEYS, after which String.intern is used directly
+    private static final int KEYS_MAX = 10000;
+
+    /** Canonical keys, see {@link #internKey}. */
+    private static final ConcurrentMap<String, String> KEYS = new ConcurrentHashMap<>();
+
     /** Initial key order for the {@link #toString} method. */
     private static final Set<String> TO_STRING_KEY_ORDER = new LinkedHashSet<>(Arrays.asList(
             new String[] { "ecm:id", "ecm:primaryType", "ecm:name", "ecm:parentId", "ecm:isVersion", "ecm:isProxy" }));
@@ -151,10 +161,12 @@ public class State implements StateAccessor, Serializable {
     // if map != null then use it
     protected Map<String, Serializable> map;
 
-    // else use keys / values
-    protected List<String> keys;
+    // else use keys / values, of which only the first count elements are used
+    protected String[] keys;
 
-    protected List<Serializable> values;
+    protected Serializable[] values;
+
+    protected int count;
 
     /**
      * Private constructor with explicit map.
@@ -198,10 +210,77 @@ public class State implements StateAccessor, Serializable {
             if (size > ARRAY_MAX) {
                 map = new HashMap<>(initialCapacity(size));
             } else {
-                keys = new ArrayList<String>(size);
-                values = new ArrayList<Serializable>(size);
+                keys = size == 0 ? EMPTY_STRING_ARRAY : new String[size];
+                values = size == 0 ? EMPTY_VALUES : new Serializable[size];
+            }
+        }
+    }
+
+    /**
+     * Gets the canonical instance of a key.
+     * <p>
+     * The canonical instance is the one returned by {@link String#intern}, so it's also the one used for string
+     * constants and schema field names. Keys registered through {@link #registerKeys} or already seen are found
+     * without going through the JVM string table.
+     *
+     * @since 8.3
+     */
+    public static String internKey(String key) {
+        String canonical = KEYS.get(key);
+        if (canonical == null) {
+            canonical = key.intern();
+            if (KEYS.size() < KEYS_MAX) {
+                KEYS.putIfAbsent(canonical, canonical);
             }
         }
+        return canonical;
+    }
+
+    /**
+     * Registers keys known in advance, typically the names of the schema fields.
+     *
+     * @since 8.3
+     */
+    public static void registerKeys(Collection<String> keys) {
+        for (String key : keys) {
+            internKey(key);
+        }
+    }
+
+    /**
+     * Finds the index of a key in the keys array, or -1 if absent.
+     */
+    protected int indexOf(Object key) {
+        // keys are canonical, and so are most keys looked up
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < count; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the key and value at the given index of the arrays.
+     */
+    protected Serializable removeAt(int i) {
+        Serializable value = values[i];
+        int n = count - i - 1;
+        if (n > 0) {
+            System.arraycopy(keys, i + 1, keys, i, n);
+            System.arraycopy(values, i + 1, values, i, n);
+        }
+        count--;
+        keys[count] = null;
+        values[count] = null;
+        return value;
     }
 
     protected static int initialCapacity(int size) {
@@ -215,7 +294,7 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.size();
         } else {
-            return keys.size();
+            return count;
         }
     }
 
@@ -226,7 +305,7 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.isEmpty();
         } else {
-            return keys.isEmpty();
+            return count == 0;
         }
     }
 
@@ -237,8 +316,8 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.get(key);
         } else {
-            int i = keys.indexOf(key);
-            return i >= 0 ? values.get(i) : null;
+            int i = indexOf(key);
+            return i >= 0 ? values[i] : null;
         }
     }
 
@@ -253,11 +332,10 @@ public class State implements StateAccessor, Serializable {
             if (map != null) {
                 map.remove(key);
             } else {
-                int i = keys.indexOf(key);
+                int i = indexOf(key);
                 if (i >= 0) {
                     // cost is not trivial but we don't use this often, if at all
-                    keys.remove(i);
-                    values.remove(i);
+                    removeAt(i);
                 }
             }
         } else {
@@ -267,31 +345,56 @@ public class State implements StateAccessor, Serializable {
 
     protected void putEvenIfNull(String key, Serializable value) {
         if (map != null) {
-            map.put(key.intern(), value);
+            map.put(internKey(key), value);
         } else {
-            int i = keys.indexOf(key);
+            int i = indexOf(key);
             if (i >= 0) {
                 // existing key
-                values.set(i, value);
+                values[i] = value;
             } else {
                 // new key
-                if (keys.size() < ARRAY_MAX) {
-                    keys.add(key.intern());
-                    values.add(value);
+                if (count < ARRAY_MAX) {
+                    if (count == keys.length) {
+                        int capacity = Math.min(Math.max(2 * count, 2), ARRAY_MAX);
+                        keys = Arrays.copyOf(keys, capacity);
+                        values = Arrays.copyOf(values, capacity);
+                    }
+                    keys[count] = internKey(key);
+                    values[count] = value;
+                    count++;
                 } else {
                     // upgrade to a full HashMap
-                    map = new HashMap<>(initialCapacity(keys.size() + 1));
-                    for (int j = 0; j < keys.size(); j++) {
-                        map.put(keys.get(j), values.get(j));
+                    map = new HashMap<>(initialCapacity(count + 1));
+                    for (int j = 0; j < count; j++) {
+                        map.put(keys[j], values[j]);
                     }
-                    map.put(key.intern(), value);
+                    map.put(internKey(key), value);
                     keys = null;
                     values = null;
+                    count = 0;
                 }
             }
         }
     }
 
+    /**
+     * Adds a key/value for a key that is known to be absent and already canonical, when copying another state.
+     *
+     * @since 8.3
+     */
+    protected void putNew(String key, Serializable value) {
+        if (value == null) {
+            return;
+        }
+        if (map == null && count < keys.length) {
+            keys[count] = key;
+            values[count] = value;
+            count++;
+        } else {
+            putEvenIfNull(key, value);
+        }
+    }
+
     /**
      * Removes the mapping for a key.
      *
@@ -301,10 +404,9 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.remove(key);
         } else {
-            int i = keys.indexOf(key);
+            int i = indexOf(key);
             if (i >= 0) {
-                keys.remove(i);
-                return values.remove(i);
+                return removeAt(i);
             } else {
                 return null;
             }
@@ -318,7 +420,7 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.keySet();
         } else {
-            return ImmutableSet.copyOf(keys);
+            return ImmutableSet.copyOf(keyArray());
         }
     }
 
@@ -329,7 +431,7 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.keySet().toArray(EMPTY_STRING_ARRAY);
         } else {
-            return keys.toArray(EMPTY_STRING_ARRAY);
+            return count == 0 ? EMPTY_STRING_ARRAY : Arrays.copyOf(keys, count);
         }
     }
 
@@ -340,7 +442,7 @@ public class State implements StateAccessor, Serializable {
         if (map != null) {
             return map.containsKey(key);
         } else {
-            return keys.contains(key);
+            return indexOf(key) >= 0;
         }
     }
 
@@ -360,12 +462,12 @@ public class State implements StateAccessor, Serializable {
 
         @Override
         public int size() {
-            return keys.size();
+            return count;
         }
 
         @Override
         public boolean isEmpty() {
-            return keys.isEmpty();
+            return count == 0;
         }
 
         @Override
@@ -430,7 +532,7 @@ public class State implements StateAccessor, Serializable {
 
         @Override
         public boolean hasNext() {
-            return index < keys.size();
+            return index < count;
         }
 
         @Override
@@ -449,12 +551,12 @@ public class State implements StateAccessor, Serializable {
 
         @Override
         public String getKey() {
-            return keys.get(index);
+            return keys[index];
         }
 
         @Override
         public Serializable getValue() {
-            return values.get(index);
+            return values[index];
         }
 
         @Override
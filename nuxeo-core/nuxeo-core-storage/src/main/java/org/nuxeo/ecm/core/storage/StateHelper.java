@@ -308,7 +308,22 @@ public class StateHelper {
     public static State deepCopy(State state, boolean threadSafe) {
         State copy = new State(state.size(), threadSafe);
         for (Entry<String, Serializable> en : state.entrySet()) {
-            copy.put(en.getKey(), deepCopy(en.getValue(), threadSafe));
+            copy.putNew(en.getKey(), deepCopy(en.getValue(), threadSafe));
+        }
+        return copy;
+    }
+
+    /**
+     * Makes a shallow copy of a {@link State} map.
+     * <p>
+     * Only the top-level map is copied, the values (including sub-states and lists) are shared with the original.
+     *
+     * @since 8.3
+     */
+    public static State shallowCopy(State state) {
+        State copy = new State(state.size());
+        for (Entry<String, Serializable> en : state.entrySet()) {
+            copy.putNew(en.getKey(), en.getValue());
         }
         return copy;
     }
@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of the {@link State} operations done by DBS for each document it loads and updates in a
+ * transaction: building the state read from the database, copying it into a transient state, and computing the diff
+ * after a change.
+ * <p>
+ * The GC profiler is enabled, its normalized allocation rate gives the bytes allocated per document.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.core.storage.StateBenchmark}.
+ *
+ * @since 8.3
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateBenchmark {
+
+    /** A document as decoded from the database, with fresh key strings. */
+    protected Object[][] decoded;
+
+    protected State state;
+
+    @Setup
+    public void setUp() {
+        state = newDocumentState();
+        decoded = decode(state);
+    }
+
+    protected static State newDocumentState() {
+        Calendar cal = new GregorianCalendar();
+        State state = new State();
+        state.put("ecm:id", "0b3ea62e-7f1c-4d3e-9d62-5c8a2b0e1c45");
+        state.put("ecm:primaryType", "File");
+        state.put("ecm:name", "report.pdf");
+        state.put("ecm:parentId", "9a7c2f50-3b8e-4f4c-a3a8-0d26e4f0b7a1");
+        state.put("ecm:ancestorIds", new Object[] { "00000000-0000-0000-0000-000000000000",
+                "9a7c2f50-3b8e-4f4c-a3a8-0d26e4f0b7a1" });
+        state.put("ecm:racl", new Object[] { "Administrator", "members" });
+        state.put("ecm:isVersion", Boolean.FALSE);
+        state.put("ecm:isCheckedIn", Boolean.FALSE);
+        state.put("ecm:majorVersion", Long.valueOf(1));
+        state.put("ecm:minorVersion", Long.valueOf(0));
+        state.put("ecm:lifeCyclePolicy", "default");
+        state.put("ecm:lifeCycleState", "project");
+        state.put("ecm:changeToken", Long.valueOf(3));
+        state.put("dc:title", "Quarterly report");
+        state.put("dc:description", "The quarterly report");
+        state.put("dc:creator", "Administrator");
+        state.put("dc:lastContributor", "Administrator");
+        state.put("dc:contributors", new Object[] { "Administrator", "jdoe" });
+        state.put("dc:created", cal);
+        state.put("dc:modified", cal);
+        state.put("uid:major_version", Long.valueOf(1));
+        state.put("uid:minor_version", Long.valueOf(0));
+        State blob = new State();
+        blob.put("name", "report.pdf");
+        blob.put("mime-type", "application/pdf");
+        blob.put("data", "5d41402abc4b2a76b9719d911017c592");
+        blob.put("length", Long.valueOf(123456));
+        blob.put("digest", "5d41402abc4b2a76b9719d911017c592");
+        state.put("file:content", blob);
+        ArrayList<Serializable> acl = new ArrayList<>();
+        for (String user : new String[] { "Administrator", "members", "jdoe" }) {
+            State ace = new State();
+            ace.put("user", user);
+            ace.put("perm", "Everything");
+            ace.put("grant", Boolean.TRUE);
+            acl.add(ace);
+        }
+        State acp = new State();
+        acp.put("name", "local");
+        acp.put("acl", acl);
+        ArrayList<Serializable> acps = new ArrayList<>();
+        acps.add(acp);
+        state.put("ecm:acp", acps);
+        return state;
+    }
+
+    /**
+     * Converts a state into key/value pairs, with new key strings as a database driver would produce them. Lists are
+     * kept as lists of converted items.
+     */
+    protected static Object[][] decode(State state) {
+        Object[][] pairs = new Object[state.size()][];
+        int i = 0;
+        for (Entry<String, Serializable> en : state.entrySet()) {
+            Object value = en.getValue();
+            if (value instanceof State) {
+                value = decode((State) value);
+            } else if (value instanceof List) {
+                List<Object> items = new ArrayList<>();
+                for (Object item : (List<?>) value) {
+                    items.add(item instanceof State ? decode((State) item) : item);
+                }
+                value = items;
+            }
+            pairs[i++] = new Object[] { new String(en.getKey()), value };
+        }
+        return pairs;
+    }
+
+    protected static Serializable build(Object value) {
+        if (value instanceof Object[][]) {
+            Object[][] pairs = (Object[][]) value;
+            State state = new State(pairs.length);
+            for (Object[] pair : pairs) {
+                state.put((String) pair[0], build(pair[1]));
+            }
+            return state;
+        } else if (value instanceof List) {
+            ArrayList<Serializable> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(build(item));
+            }
+            return list;
+        } else {
+            return (Serializable) value;
+        }
+    }
+
+    @Benchmark
+    public Serializable read() {
+        return build(decoded);
+    }
+
+    @Benchmark
+    public State copy() {
+        return StateHelper.deepCopy(state);
+    }
+
+    @Benchmark
+    public StateDiff update() {
+        // transient state, then original state saved when marked dirty
+        State copy = StateHelper.deepCopy(state);
+        State original = StateHelper.deepCopy(copy);
+        copy.put("dc:title", "Quarterly report (updated)");
+        return StateHelper.diff(original, copy);
+    }
+
+    @Benchmark
+    public Serializable get() {
+        state.get("ecm:primaryType");
+        state.get("dc:title");
+        return state.get("nosuchkey");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(StateBenchmark.class.getSimpleName())
+                                              .addProfiler(GCProfiler.class)
+                                              .build();
+        new Runner(options).run();
+    }
+
+}
@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.storage;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Serializable;
@@ -83,6 +84,38 @@ public class TestState {
         check(s, 6);
     }
 
+    @Test
+    public void testRemoveKeepsOrder() {
+        State s = new State();
+        s.put("1", "1");
+        s.put("x", "x");
+        s.put("2", "2");
+        s.put("y", "y");
+        s.put("3", "3");
+        assertEquals("x", s.remove("x"));
+        s.put("y", null);
+        check(s, 3);
+        s.put("4", "4");
+        check(s, 4);
+    }
+
+    @Test
+    public void testCanonicalKeys() {
+        String key = new String("dc:title");
+        assertSame("dc:title", State.internKey(key));
+
+        State s = new State();
+        s.put(new String("1"), "1");
+        assertSame("1", s.keyArray()[0]);
+        // lookup with a non-canonical key
+        assertEquals("1", s.get(new String("1")));
+        assertTrue(s.containsKey(new String("1")));
+
+        State copy = StateHelper.deepCopy(s);
+        assertSame("1", copy.keyArray()[0]);
+        check(copy, 1);
+    }
+
     protected static void check(State s, int n) {
         Set<String> set = s.keySet();
         Set<Entry<String, Serializable>> es = s.entrySet();
@@ -1201,6 +1201,30 @@ public abstract class AbstractSession implements CoreSession, Serializable {
     @Override
     public IterableQueryResult queryAndFetch(String query, String queryType, boolean distinctDocuments,
             Object... params) {
+        return doQueryAndFetch(query, queryType, distinctDocuments, 0, 0, params);
+    }
+
+    @Override
+    public PartialList<Map<String, Serializable>> queryProjection(String query, long limit, long offset) {
+        IterableQueryResult result = doQueryAndFetch(query, NXQL.NXQL, false, limit, offset);
+        try {
+            List<Map<String, Serializable>> list = new ArrayList<>();
+            for (Map<String, Serializable> map : result) {
+                list.add(map);
+            }
+            return new PartialList<>(list, -1);
+        } finally {
+            result.close();
+        }
+    }
+
+    /**
+     * Executes a query returning an iterable of maps, optionally limited to a page of rows.
+     *
+     * @since 8.3
+     */
+    protected IterableQueryResult doQueryAndFetch(String query, String queryType, boolean distinctDocuments,
+            long limit, long offset, Object... params) {
         try {
             SecurityService securityService = getSecurityService();
             Principal principal = getPrincipal();
@@ -1219,7 +1243,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             } else {
                 transformers = Collections.emptyList();
             }
-            QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+            QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, limit,
+                    offset);
             IterableQueryResult result = getSession().queryAndFetch(query, queryType, queryFilter, distinctDocuments,
                     params);
             return result;
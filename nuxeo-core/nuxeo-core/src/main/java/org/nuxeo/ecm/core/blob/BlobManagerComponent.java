@@ -409,6 +409,8 @@ public class BlobManagerComponent extends DefaultComponent implements BlobManage
             globalStatus.sizeBinaries += status.sizeBinaries;
             globalStatus.numBinariesGC += status.numBinariesGC;
             globalStatus.sizeBinariesGC += status.sizeBinariesGC;
+            globalStatus.numDirectories += status.numDirectories;
+            globalStatus.numDirectoriesDone += status.numDirectoriesDone;
         }
         globalStatus.gcDuration = System.currentTimeMillis() - start;
         return globalStatus;
@@ -320,6 +320,14 @@ public class AESBinaryManager extends LocalBinaryManager {
         return new Binary(tmp, digest, blobProviderId);
     }
 
+    @Override
+    protected Binary getBinary(File file, boolean temporary) throws IOException {
+        // the file must be encrypted, store it as a stream
+        try (InputStream in = new FileInputStream(file)) {
+            return getBinary(in);
+        }
+    }
+
     @Override
     public Binary getBinary(String digest) {
         File file = getFileForDigest(digest, false);
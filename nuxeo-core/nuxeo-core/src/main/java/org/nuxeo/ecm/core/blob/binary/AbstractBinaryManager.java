@@ -19,19 +19,35 @@
 
 package org.nuxeo.ecm.core.blob.binary;
 
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.xmap.XMap;
 import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * Abstract BinaryManager implementation that provides a few utilities
@@ -40,6 +56,8 @@ import org.nuxeo.ecm.core.api.Blob;
  */
 public abstract class AbstractBinaryManager implements BinaryManager {
 
+    private static final Log log = LogFactory.getLog(AbstractBinaryManager.class);
+
     public static final String MD5_DIGEST = "MD5";
 
     public static final String SHA1_DIGEST = "SHA-1";
@@ -67,9 +85,29 @@ public abstract class AbstractBinaryManager implements BinaryManager {
 
     protected BinaryGarbageCollector garbageCollector;
 
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /**
+     * Bytes actually written for each stored binary.
+     *
+     * @since 8.3
+     */
+    protected Histogram storeBytesHistogram;
+
+    /**
+     * Stores skipped because the binary was already present.
+     *
+     * @since 8.3
+     */
+    protected Counter storeSkippedCount;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         this.blobProviderId = blobProviderId;
+        storeBytesHistogram = registry.histogram(
+                MetricRegistry.name("nuxeo", "binaries", blobProviderId, "store", "bytes-copied"));
+        storeSkippedCount = registry.counter(
+                MetricRegistry.name("nuxeo", "binaries", blobProviderId, "store", "skipped"));
         DIGESTS_BY_LENGTH.put(MD5_DIGEST_LENGTH, MD5_DIGEST);
         DIGESTS_BY_LENGTH.put(SHA1_DIGEST_LENGTH, SHA1_DIGEST);
         DIGESTS_BY_LENGTH.put(SHA256_DIGEST_LENGTH, SHA256_DIGEST);
@@ -81,8 +119,24 @@ public abstract class AbstractBinaryManager implements BinaryManager {
     // not in the public API of BinaryManager anymore
     abstract protected Binary getBinary(InputStream in) throws IOException;
 
+    /**
+     * Creates a binary value from the file backing a blob.
+     * <p>
+     * This abstract implementation just reads the file as a stream.
+     *
+     * @param file the file
+     * @param temporary {@code true} if the file is a temporary file that will not be modified by its owner, and may
+     *            therefore be shared with the store
+     * @since 8.3
+     */
+    protected Binary getBinary(File file, boolean temporary) throws IOException {
+        try (InputStream stream = new FileInputStream(file)) {
+            return getBinary(stream);
+        }
+    }
+
     /*
-     * This abstract implementation just opens the stream.
+     * This abstract implementation just opens the stream, or uses the file if the blob has one.
      */
     @Override
     public Binary getBinary(Blob blob) throws IOException {
@@ -93,6 +147,11 @@ public abstract class AbstractBinaryManager implements BinaryManager {
             }
             // don't reuse the binary if it comes from another blob provider
         }
+        File file = blob.getFile();
+        if (file != null && file.isFile()) {
+            boolean temporary = blob instanceof FileBlob && ((FileBlob) blob).isTemporary();
+            return getBinary(file, temporary);
+        }
         try (InputStream stream = blob.getStream()) {
             return getBinary(stream);
         }
@@ -129,13 +188,16 @@ public abstract class AbstractBinaryManager implements BinaryManager {
 
     public static final int MAX_BUF_SIZE = 64 * 1024; // 64 kB
 
-    protected String storeAndDigest(InputStream in, OutputStream out) throws IOException {
-        MessageDigest digest;
+    protected MessageDigest getMessageDigest() throws IOException {
         try {
-            digest = MessageDigest.getInstance(getDigestAlgorithm());
+            return MessageDigest.getInstance(getDigestAlgorithm());
         } catch (NoSuchAlgorithmException e) {
             throw (IOException) new IOException().initCause(e);
         }
+    }
+
+    protected String storeAndDigest(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest = getMessageDigest();
 
         int size = in.available();
         if (size == 0) {
@@ -160,6 +222,57 @@ public abstract class AbstractBinaryManager implements BinaryManager {
         return toHexString(digest.digest());
     }
 
+    /**
+     * Computes the digest of a file, without copying it.
+     *
+     * @since 8.3
+     */
+    protected String digestFile(File file) throws IOException {
+        MessageDigest digest = getMessageDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(MAX_BUF_SIZE);
+            while (channel.read(buf) != -1) {
+                buf.flip();
+                digest.update(buf);
+                buf.clear();
+            }
+        }
+        return toHexString(digest.digest());
+    }
+
+    /**
+     * Copies a file to a new file, letting the kernel transfer the data.
+     * <p>
+     * If {@code link} is {@code true}, a hard link is created instead when the filesystem allows it. This must only be
+     * used for files that will not be modified afterwards, as the data is then shared.
+     *
+     * @param source the source file
+     * @param dest the destination file, which must not exist
+     * @param link whether to try to hard link the file
+     * @return the number of bytes copied, {@code 0} if linked
+     * @since 8.3
+     */
+    protected long copyFile(File source, File dest, boolean link) throws IOException {
+        if (link) {
+            try {
+                Files.createLink(dest.toPath(), source.toPath());
+                return 0;
+            } catch (IOException | UnsupportedOperationException e) {
+                // different filesystem or no hard link support, copy instead
+                log.debug("Cannot link " + source + " to " + dest + ": " + e);
+            }
+        }
+        try (FileChannel in = FileChannel.open(source.toPath(), READ); //
+                FileChannel out = FileChannel.open(dest.toPath(), WRITE, CREATE_NEW)) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+            return size;
+        }
+    }
+
     private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     public static String toHexString(byte[] data) {
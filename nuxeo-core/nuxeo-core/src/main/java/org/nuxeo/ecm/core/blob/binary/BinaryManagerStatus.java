@@ -33,6 +33,16 @@ public class BinaryManagerStatus {
 
     public long sizeBinariesGC;
 
+    /**
+     * @since 8.3
+     */
+    public volatile long numDirectories;
+
+    /**
+     * @since 8.3
+     */
+    public volatile long numDirectoriesDone;
+
     /**
      * The GC duration, in milliseconds
      */
@@ -68,6 +78,26 @@ public class BinaryManagerStatus {
         return sizeBinariesGC;
     }
 
+    /**
+     * The number of directories to process, for a GC processing directories incrementally.
+     *
+     * @since 8.3
+     */
+    public long getNumDirectories() {
+        return numDirectories;
+    }
+
+    /**
+     * The number of directories already processed, for a GC processing directories incrementally.
+     * <p>
+     * May be read during the GC to follow its progress.
+     *
+     * @since 8.3
+     */
+    public long getNumDirectoriesDone() {
+        return numDirectoriesDone;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -75,7 +105,9 @@ public class BinaryManagerStatus {
         .append(", numBinaries=").append(numBinaries) //
         .append(", sizeBinaries=").append(sizeBinaries) //
         .append(", numBinariesGC=").append(numBinariesGC) //
-        .append(", sizeBinariesGC=").append(sizeBinariesGC).append("]");
+        .append(", sizeBinariesGC=").append(sizeBinariesGC) //
+        .append(", numDirectories=").append(numDirectories) //
+        .append(", numDirectoriesDone=").append(numDirectoriesDone).append("]");
         return builder.toString();
     }
 
@@ -20,6 +20,7 @@
 package org.nuxeo.ecm.core.blob.binary;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,6 +37,10 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
 /**
  * Abstract class for a {@link BinaryManager} that uses a cache for its files because fetching them is expensive.
  * <p>
@@ -72,8 +77,43 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * @since 5.9.2
      */
     protected void initializeCache(File dir, long maxSize, long maxCount, long minAge, FileStorage fileStorage) {
-        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        LRUFileCache cache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        fileCache = cache;
         this.fileStorage = fileStorage;
+        registerCacheMetrics(cache);
+    }
+
+    protected String getCacheMetricName(String name) {
+        return MetricRegistry.name("nuxeo", "binaries", blobProviderId, "cache", name);
+    }
+
+    /**
+     * Registers gauges for the hits, misses, hit ratio, evictions, size and number of files of the cache.
+     *
+     * @since 8.3
+     */
+    protected void registerCacheMetrics(LRUFileCache cache) {
+        unregisterCacheMetrics();
+        registry.register(getCacheMetricName("hits"), (Gauge<Long>) cache::getHits);
+        registry.register(getCacheMetricName("misses"), (Gauge<Long>) cache::getMisses);
+        registry.register(getCacheMetricName("hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = cache.getHits();
+                return Ratio.of(hits, hits + cache.getMisses());
+            }
+        });
+        registry.register(getCacheMetricName("evictions"), (Gauge<Long>) cache::getEvictions);
+        registry.register(getCacheMetricName("size"), (Gauge<Long>) cache::getSize);
+        registry.register(getCacheMetricName("count"), (Gauge<Integer>) cache::getNumberOfItems);
+    }
+
+    /**
+     * @since 8.3
+     */
+    protected void unregisterCacheMetrics() {
+        String prefix = getCacheMetricName("") + ".";
+        registry.removeMatching((name, metric) -> name.startsWith(prefix));
     }
 
     /**
@@ -118,6 +158,7 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     @Override
     public void close() {
+        unregisterCacheMetrics();
         fileCache.clear();
         if (cachedir != null) {
             try {
@@ -140,6 +181,7 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
             in.close();
             out.close();
         }
+        storeBytesHistogram.update(tmp.length());
 
         File cachedFile = fileCache.getFile(digest);
         if (cachedFile != null) {
@@ -149,7 +191,34 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
             }
             // delete tmp file, not needed anymore
             tmp.delete();
+            storeSkippedCount.inc();
+        } else {
+            // send the file to storage
+            fileStorage.storeFile(digest, tmp);
+            // register the file in the file cache
+            fileCache.putFile(digest, tmp);
+        }
+        return getBinary(digest);
+    }
+
+    @Override
+    protected Binary getBinary(File file, boolean temporary) throws IOException {
+        if (!temporary) {
+            // read the file only once, copying it while computing the digest
+            return getBinary(new FileInputStream(file));
+        }
+        // digest in place, nothing to write if the file is already in cache
+        String digest = digestFile(file);
+        if (fileCache.getFile(digest) != null) {
+            if (Framework.isTestModeSet()) {
+                Framework.getProperties().setProperty("cachedBinary", digest);
+            }
+            storeSkippedCount.inc();
+            storeBytesHistogram.update(0);
         } else {
+            File tmp = fileCache.getTempFile();
+            tmp.delete();
+            storeBytesHistogram.update(copyFile(file, tmp, true));
             // send the file to storage
             fileStorage.storeFile(digest, tmp);
             // register the file in the file cache
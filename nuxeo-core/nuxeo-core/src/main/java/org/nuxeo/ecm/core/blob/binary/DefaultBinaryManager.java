@@ -21,9 +21,6 @@ package org.nuxeo.ecm.core.blob.binary;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-
-import org.apache.commons.io.output.NullOutputStream;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
 
@@ -61,10 +58,7 @@ public class DefaultBinaryManager extends LocalBinaryManager {
      * Stores and digests a temporary FileBlob.
      */
     protected String storeAndDigest(FileBlob blob) throws IOException {
-        String digest;
-        try (InputStream in = blob.getStream()) {
-            digest = storeAndDigest(in, NullOutputStream.NULL_OUTPUT_STREAM);
-        }
+        String digest = digestFile(blob.getFile());
         File digestFile = getFileForDigest(digest, true);
         if (digestFile.exists()) {
             // The file with the proper digest is already there so don't do anything. This is to avoid
@@ -73,9 +67,11 @@ public class DefaultBinaryManager extends LocalBinaryManager {
             // at the same time.
             // Update date for the GC.
             digestFile.setLastModified(blob.getFile().lastModified());
+            storeSkippedCount.inc();
         } else {
             blob.moveTo(digestFile);
         }
+        storeBytesHistogram.update(0);
         return digest;
     }
 
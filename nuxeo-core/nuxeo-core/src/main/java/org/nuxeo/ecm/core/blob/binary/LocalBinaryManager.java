@@ -69,6 +69,36 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
     public static final String CONFIG_FILE = "config.xml";
 
+    /**
+     * Property to use a {@link ParallelBinaryGarbageCollector}.
+     *
+     * @since 8.3
+     */
+    public static final String PROP_GC_PARALLEL = "gcParallel";
+
+    /**
+     * Property for the number of threads used by the parallel GC, by default the number of processors.
+     *
+     * @since 8.3
+     */
+    public static final String PROP_GC_THREADS = "gcThreads";
+
+    /**
+     * Property for the maximum number of leaf directories swept by each parallel GC run, by default all of them.
+     *
+     * @since 8.3
+     */
+    public static final String PROP_GC_MAX_DIRECTORIES = "gcMaxDirectories";
+
+    /**
+     * Property for the expected number of binaries, used to size the parallel GC in-memory marks.
+     *
+     * @since 8.3
+     */
+    public static final String PROP_GC_EXPECTED_BINARIES = "gcExpectedBinaries";
+
+    public static final long DEFAULT_GC_EXPECTED_BINARIES = 1000000;
+
     protected File storageDir;
 
     protected File tmpDir;
@@ -111,7 +141,11 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         storageDir.mkdirs();
         tmpDir.mkdirs();
         descriptor = getDescriptor(new File(base, CONFIG_FILE));
-        createGarbageCollector();
+        if (Boolean.parseBoolean(properties.get(PROP_GC_PARALLEL))) {
+            createParallelGarbageCollector(properties);
+        } else {
+            createGarbageCollector();
+        }
     }
 
     @Override
@@ -139,6 +173,13 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         return new Binary(file, digest, blobProviderId);
     }
 
+    @Override
+    protected Binary getBinary(File source, boolean temporary) throws IOException {
+        String digest = storeAndDigest(source, temporary);
+        File file = getFileForDigest(digest, false);
+        return new Binary(file, digest, blobProviderId);
+    }
+
     @Override
     public Binary getBinary(String digest) {
         File file = getFileForDigest(digest, false);
@@ -193,10 +234,14 @@ public class LocalBinaryManager extends AbstractBinaryManager {
                 in.close();
                 out.close();
             }
+            storeBytesHistogram.update(tmp.length());
             /*
              * Move the tmp file to its destination.
              */
             File file = getFileForDigest(digest, true);
+            if (file.exists()) {
+                storeSkippedCount.inc();
+            }
             atomicMove(tmp, file);
             return digest;
         } finally {
@@ -205,6 +250,40 @@ public class LocalBinaryManager extends AbstractBinaryManager {
 
     }
 
+    /**
+     * Stores a file. A temporary file is digested in place first, so that nothing is written if the binary is already
+     * stored, and is otherwise hard linked to the storage, or copied by the kernel. Other files are read only once,
+     * being copied while computing the digest as for a stream.
+     *
+     * @param source the file to store
+     * @param temporary {@code true} if the file is a temporary file that will not be modified by its owner
+     * @return the digest
+     * @since 8.3
+     */
+    protected String storeAndDigest(File source, boolean temporary) throws IOException {
+        if (!temporary) {
+            return storeAndDigest(new FileInputStream(source));
+        }
+        String digest = digestFile(source);
+        File file = getFileForDigest(digest, true);
+        if (file.exists()) {
+            // already stored, update date for the GC
+            touch(file);
+            storeSkippedCount.inc();
+            storeBytesHistogram.update(0);
+            return digest;
+        }
+        File tmp = File.createTempFile("create_", ".tmp", tmpDir);
+        try {
+            tmp.delete();
+            storeBytesHistogram.update(copyFile(source, tmp, true));
+            atomicMove(tmp, file);
+            return digest;
+        } finally {
+            tmp.delete();
+        }
+    }
+
     /**
      * Does an atomic move of the tmp (or source) file to the final file.
      * <p>
@@ -250,6 +329,24 @@ public class LocalBinaryManager extends AbstractBinaryManager {
         garbageCollector = new DefaultBinaryGarbageCollector(this);
     }
 
+    /**
+     * @since 8.3
+     */
+    protected void createParallelGarbageCollector(Map<String, String> properties) {
+        if (descriptor.depth > 3) {
+            log.warn("Parallel GC not available for a depth of " + descriptor.depth + ", using the default GC");
+            createGarbageCollector();
+            return;
+        }
+        String threads = properties.get(PROP_GC_THREADS);
+        String maxDirectories = properties.get(PROP_GC_MAX_DIRECTORIES);
+        String expected = properties.get(PROP_GC_EXPECTED_BINARIES);
+        garbageCollector = new ParallelBinaryGarbageCollector(this,
+                StringUtils.isBlank(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads),
+                StringUtils.isBlank(maxDirectories) ? 0 : Integer.parseInt(maxDirectories),
+                StringUtils.isBlank(expected) ? DEFAULT_GC_EXPECTED_BINARIES : Long.parseLong(expected));
+    }
+
     public static class DefaultBinaryGarbageCollector implements BinaryGarbageCollector {
 
         /**
@@ -0,0 +1,333 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * Garbage collector for a {@link LocalBinaryManager} that marks live digests in memory instead of touching files, and
+ * sweeps the storage directories in parallel.
+ * <p>
+ * Marked digests are recorded in a Bloom filter, so a few unused binaries may survive a GC but a used binary is never
+ * deleted. As before, binaries more recent than the GC start are never deleted, which protects binaries created or
+ * stored again during the GC.
+ * <p>
+ * The GC can be incremental: each run only processes a given number of leaf directories, and the next run resumes
+ * where the previous one stopped. Only digests belonging to these directories need to be recorded, which keeps the
+ * filter small. The position is saved in the binaries directory so that it survives restarts. A run that does not
+ * delete anything (dry run) does not move the position.
+ *
+ * @since 8.3
+ */
+public class ParallelBinaryGarbageCollector implements BinaryGarbageCollector {
+
+    private static final Log log = LogFactory.getLog(ParallelBinaryGarbageCollector.class);
+
+    public static final String CURSOR_FILE = "gc-cursor";
+
+    /** False positive probability of the filter. */
+    protected static final double FPP = 0.01;
+
+    protected final LocalBinaryManager binaryManager;
+
+    protected final int parallelism;
+
+    protected final int maxDirectories;
+
+    protected final long expectedBinaries;
+
+    /** Number of hex characters of a digest used by the directory hierarchy. */
+    protected final int prefixLength;
+
+    protected final int numDirectories;
+
+    protected volatile long startTime;
+
+    protected BinaryManagerStatus status;
+
+    /** First directory index of the current run. */
+    protected int first;
+
+    /** Number of directories of the current run. */
+    protected int count;
+
+    protected BloomFilter marked;
+
+    /**
+     * Creates the garbage collector.
+     *
+     * @param binaryManager the binary manager
+     * @param parallelism the number of threads used to sweep
+     * @param maxDirectories the maximum number of leaf directories to sweep per run, or {@code 0} for all
+     * @param expectedBinaries the expected total number of binaries, to size the filter
+     */
+    public ParallelBinaryGarbageCollector(LocalBinaryManager binaryManager, int parallelism, int maxDirectories,
+            long expectedBinaries) {
+        this.binaryManager = binaryManager;
+        this.parallelism = parallelism;
+        this.expectedBinaries = expectedBinaries;
+        int depth = binaryManager.descriptor.depth;
+        prefixLength = 2 * depth;
+        numDirectories = 1 << (8 * depth);
+        this.maxDirectories = maxDirectories <= 0 || maxDirectories > numDirectories ? numDirectories
+                : maxDirectories;
+    }
+
+    @Override
+    public String getId() {
+        return binaryManager.getStorageDir().toURI().toString();
+    }
+
+    @Override
+    public BinaryManagerStatus getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean isInProgress() {
+        // volatile as this is designed to be called from another thread
+        return startTime != 0;
+    }
+
+    @Override
+    public void start() {
+        if (startTime != 0) {
+            throw new RuntimeException("Alread started");
+        }
+        startTime = System.currentTimeMillis();
+        first = readCursor();
+        count = maxDirectories;
+        long expected = Math.max(1, expectedBinaries * count / numDirectories);
+        marked = new BloomFilter(expected, FPP);
+        status = new BinaryManagerStatus();
+        status.numDirectories = count;
+    }
+
+    /**
+     * Gets the index of the leaf directory for a digest, or {@code -1} if the digest is not a hex digest.
+     */
+    protected int getDirectoryIndex(String digest) {
+        if (digest.length() < prefixLength) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(digest.substring(0, prefixLength), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks if a directory is processed by the current run, taking wrap-around into account.
+     */
+    protected boolean isInRun(int index) {
+        return Math.floorMod(index - first, numDirectories) < count;
+    }
+
+    @Override
+    public void mark(String digest) {
+        int index = getDirectoryIndex(digest);
+        if (index < 0) {
+            log.error("Invalid digest: " + digest);
+            return;
+        }
+        if (isInRun(index)) {
+            marked.add(digest);
+        }
+    }
+
+    @Override
+    public void stop(boolean delete) {
+        if (startTime == 0) {
+            throw new RuntimeException("Not started");
+        }
+        long minTime = startTime - LocalBinaryManager.DefaultBinaryGarbageCollector.TIME_RESOLUTION;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(
+                    i -> sweep((first + i) % numDirectories, minTime, delete))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            throw new NuxeoException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        if (delete) {
+            // a dry run must not skip the directories it only reported on
+            writeCursor((first + count) % numDirectories);
+        }
+        marked = null;
+        status.gcDuration = System.currentTimeMillis() - startTime;
+        startTime = 0;
+    }
+
+    protected File getDirectory(int index) {
+        StringBuilder buf = new StringBuilder(prefixLength + prefixLength / 2);
+        String hex = String.format("%0" + prefixLength + "x", Integer.valueOf(index));
+        for (int i = 0; i < prefixLength; i += 2) {
+            if (i != 0) {
+                buf.append(File.separatorChar);
+            }
+            buf.append(hex, i, i + 2);
+        }
+        return new File(binaryManager.getStorageDir(), buf.toString());
+    }
+
+    protected void sweep(int index, long minTime, boolean delete) {
+        File dir = getDirectory(index);
+        File[] files = dir.listFiles();
+        long num = 0;
+        long size = 0;
+        long numGC = 0;
+        long sizeGC = 0;
+        if (files != null) {
+            for (File file : files) {
+                if (!file.isFile() || !file.canWrite()) {
+                    continue;
+                }
+                long lastModified = file.lastModified();
+                long length = file.length();
+                if (lastModified == 0) {
+                    log.error("Cannot read last modified for file: " + file);
+                } else if (lastModified < minTime && !marked.mightContain(file.getName())) {
+                    sizeGC += length;
+                    numGC++;
+                    if (delete && !file.delete()) {
+                        log.warn("Cannot gc file: " + file);
+                    }
+                } else {
+                    size += length;
+                    num++;
+                }
+            }
+            if (delete && dir.list().length == 0) {
+                // empty directory
+                dir.delete();
+            }
+        }
+        synchronized (status) {
+            status.numBinaries += num;
+            status.sizeBinaries += size;
+            status.numBinariesGC += numGC;
+            status.sizeBinariesGC += sizeGC;
+            status.numDirectoriesDone++;
+        }
+    }
+
+    protected File getCursorFile() {
+        return new File(binaryManager.getStorageDir().getParentFile(), CURSOR_FILE);
+    }
+
+    protected int readCursor() {
+        File file = getCursorFile();
+        if (!file.exists()) {
+            return 0;
+        }
+        try {
+            String s = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            return Integer.parseInt(s) % numDirectories;
+        } catch (IOException | NumberFormatException e) {
+            log.error("Cannot read GC cursor from: " + file + ", restarting from the beginning", e);
+            return 0;
+        }
+    }
+
+    protected void writeCursor(int cursor) {
+        File file = getCursorFile();
+        try {
+            Files.write(file.toPath(), String.valueOf(cursor).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Cannot write GC cursor to: " + file, e);
+        }
+    }
+
+    /**
+     * A thread-safe Bloom filter for digests.
+     */
+    protected static class BloomFilter {
+
+        protected final AtomicLongArray bits;
+
+        protected final long numBits;
+
+        protected final int numHashes;
+
+        public BloomFilter(long expected, double fpp) {
+            long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) / 64));
+            bits = new AtomicLongArray(words);
+            numBits = 64L * words;
+            numHashes = Math.max(1, (int) Math.round((double) numBits / expected * Math.log(2)));
+        }
+
+        /** 64-bit FNV-1a hash with a seed. */
+        protected static long hash(String s, long seed) {
+            long h = 0xcbf29ce484222325L ^ seed;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h;
+        }
+
+        protected long index(long h1, long h2, int i) {
+            return Long.remainderUnsigned(h1 + i * h2, numBits);
+        }
+
+        public void add(String digest) {
+            long h1 = hash(digest, 0);
+            long h2 = hash(digest, 0x9e3779b97f4a7c15L);
+            for (int i = 0; i < numHashes; i++) {
+                long index = index(h1, h2, i);
+                int word = (int) (index >>> 6);
+                long mask = 1L << (index & 63);
+                long old;
+                do {
+                    old = bits.get(word);
+                } while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        public boolean mightContain(String digest) {
+            long h1 = hash(digest, 0);
+            long h2 = hash(digest, 0x9e3779b97f4a7c15L);
+            for (int i = 0; i < numHashes; i++) {
+                long index = index(h1, h2, i);
+                if ((bits.get((int) (index >>> 6)) & (1L << (index & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -28,7 +28,10 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.nuxeo.ecm.core.api.Blobs;
@@ -124,6 +127,63 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testParallelGarbageCollector() throws Exception {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalBinaryManager.PROP_GC_PARALLEL, "true");
+        binaryManager.initialize("repo", properties);
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob("abc"));
+        // sleep before GC to pass its time threshold
+        Thread.sleep(3 * 1000);
+        binaryManager.getBinary(Blobs.createBlob("defg"));
+        assertEquals(3, countFiles(binaryManager.getStorageDir()));
+
+        BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+        assertTrue(gc instanceof ParallelBinaryGarbageCollector);
+        gc.start();
+        assertTrue(gc.isInProgress());
+        gc.mark(CONTENT_MD5);
+        gc.stop(true);
+        assertFalse(gc.isInProgress());
+        BinaryManagerStatus status = gc.getStatus();
+        assertEquals(2, status.numBinaries);
+        assertEquals(CONTENT.getBytes("UTF-8").length + 4, status.sizeBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(3, status.sizeBinariesGC);
+        assertEquals(status.numDirectories, status.numDirectoriesDone);
+        assertEquals(2, countFiles(binaryManager.getStorageDir()));
+
+        binaryManager.close();
+    }
+
+    @Test
+    public void testIncrementalGarbageCollector() throws Exception {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        Map<String, String> properties = new HashMap<>();
+        properties.put(LocalBinaryManager.PROP_GC_PARALLEL, "true");
+        properties.put(LocalBinaryManager.PROP_GC_MAX_DIRECTORIES, "100");
+        binaryManager.initialize("repo", properties);
+        ParallelBinaryGarbageCollector gc = (ParallelBinaryGarbageCollector) binaryManager.getGarbageCollector();
+        gc.writeCursor(0);
+
+        gc.start();
+        gc.stop(false);
+        assertEquals(100, gc.getStatus().numDirectories);
+        assertEquals(100, gc.getStatus().numDirectoriesDone);
+        // a dry run does not move the cursor
+        assertEquals(0, gc.readCursor());
+
+        gc.start();
+        gc.stop(true);
+        assertEquals(100, gc.getStatus().numDirectoriesDone);
+        // next run resumes after the processed directories
+        assertEquals(100, gc.readCursor());
+
+        binaryManager.close();
+    }
+
     @Test
     public void testTemporaryCopies() throws IOException {
         DefaultBinaryManager binaryManager = new DefaultBinaryManager();
@@ -138,6 +198,35 @@ public class TestDefaultBinaryManager extends NXRuntimeTestCase {
         binaryManager.close();
     }
 
+    @Test
+    public void testStoreFile() throws IOException {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        File file = File.createTempFile("nxtest-", ".txt");
+        try {
+            FileUtils.writeStringToFile(file, CONTENT, "UTF-8");
+            FileBlob source = new FileBlob(file);
+            assertFalse(source.isTemporary());
+            long skipped = binaryManager.storeSkippedCount.getCount();
+
+            Binary binary = binaryManager.getBinary(source);
+            assertEquals(CONTENT_MD5, binary.getDigest());
+            assertEquals(1, countFiles(binaryManager.getStorageDir()));
+            assertEquals(CONTENT, IOUtils.toString(binary.getStream(), "UTF-8"));
+            // non-temporary file is copied, not moved
+            assertTrue(file.exists());
+            assertEquals(skipped, binaryManager.storeSkippedCount.getCount());
+
+            // already stored, not moved to the storage
+            binary = binaryManager.getBinary(source);
+            assertEquals(CONTENT_MD5, binary.getDigest());
+            assertEquals(skipped + 1, binaryManager.storeSkippedCount.getCount());
+        } finally {
+            file.delete();
+            binaryManager.close();
+        }
+    }
+
     protected static int countFiles(File dir) {
         int n = 0;
         for (File f : dir.listFiles()) {
@@ -27,6 +27,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.Iterables;
 import org.apache.commons.logging.Log;
@@ -72,7 +75,16 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
 
     protected final AutomationFilterRegistry automationFilterRegistry;
 
-    protected Map<CacheKey, CompiledChainImpl> compiledChains = new HashMap<CacheKey, CompiledChainImpl>();
+    /**
+     * Compiled registered chains and operations, by id and input type. Flushed whenever the registry changes.
+     */
+    protected final ConcurrentMap<CacheKey, CompiledChainImpl> compiledChains = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented before each flush of {@link #compiledChains}, so that a chain compiled against a previous registry
+     * is not left in the cache.
+     */
+    protected final AtomicLong compiledChainsVersion = new AtomicLong();
 
     /**
      * Adapter registry.
@@ -192,20 +204,30 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
             Object input = ctx.getInput();
             Class<?> inputType = input == null ? Void.TYPE : input.getClass();
             tracer.onChain(operationType);
-            if (ChainTypeImpl.class.isAssignableFrom(operationType.getClass())) {
+            boolean isChain = ChainTypeImpl.class.isAssignableFrom(operationType.getClass());
+            if (isChain) {
                 ctx.put(Constants.VAR_IS_CHAIN, true);
-                CacheKey cacheKey = new CacheKey(operationType.getId(), inputType.getName());
-                chain = compiledChains.get(cacheKey);
-                if (chain == null) {
+            }
+            CacheKey cacheKey = new CacheKey(operationType.getId(), inputType.getName());
+            long version = compiledChainsVersion.get();
+            chain = compiledChains.get(cacheKey);
+            if (chain == null) {
+                if (isChain) {
                     chain = (CompiledChainImpl) operationType.newInstance(ctx, params);
-                    // Registered Chains are the only ones that can be cached
-                    // Runtime ones can update their operations, model...
-                    if (hasOperation(operationType.getId())) {
-                        compiledChains.put(cacheKey, chain);
+                } else {
+                    chain = CompiledChainImpl.buildChain(inputType, toParams(operationType.getId()));
+                }
+                // Registered chains and operations are the only ones that can be cached
+                // Runtime ones can update their operations, model...
+                if (hasOperation(operationType.getId())) {
+                    CompiledChainImpl previous = compiledChains.putIfAbsent(cacheKey, chain);
+                    if (previous != null) {
+                        chain = previous;
+                    } else if (compiledChainsVersion.get() != version) {
+                        // the registry changed while compiling, the flush may have happened before our put
+                        compiledChains.remove(cacheKey, chain);
                     }
                 }
-            } else {
-                chain = CompiledChainImpl.buildChain(inputType, toParams(operationType.getId()));
             }
             Object ret = chain.invoke(ctx);
             tracer.onOutput(ret);
@@ -317,6 +339,7 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
         OperationChain chain = new OperationChain(id);
         OperationType docChainType = new ChainTypeImpl(this, chain);
         operations.removeContribution(docChainType);
+        flushCompiledChains();
     }
 
     @Override
@@ -341,7 +364,8 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
     }
 
     @Override
-    public synchronized void flushCompiledChains() {
+    public void flushCompiledChains() {
+        compiledChainsVersion.incrementAndGet();
         compiledChains.clear();
     }
 
@@ -372,6 +396,7 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
     @Override
     public synchronized void putOperation(OperationType op, boolean replace) throws OperationException {
         operations.addContribution(op, replace);
+        flushCompiledChains();
     }
 
     @Override
@@ -387,6 +412,7 @@ public class OperationServiceImpl implements AutomationService, AutomationAdmin
     @Override
     public synchronized void removeOperation(OperationType type) {
         operations.removeContribution(type);
+        flushCompiledChains();
     }
 
     @Override
@@ -94,6 +94,13 @@ public class OperationTypeImpl implements OperationType {
      */
     protected List<Field> injectableFields;
 
+    /**
+     * Injectors for the {@link #params}, so that their annotations are not read when instantiating the operation.
+     *
+     * @since 8.3
+     */
+    protected List<ParamInjector> paramInjectors;
+
     /**
      * The input type of a chain/operation. If set, the following input types {"document", "documents", "blob", "blobs"}
      * for all 'run method(s)' will handled. Other values will be adapted as java.lang.Object. If not set, Automation
@@ -137,6 +144,7 @@ public class OperationTypeImpl implements OperationType {
         params = new HashMap<String, Field>();
         methods = new ArrayList<InvokableMethod>();
         injectableFields = new ArrayList<Field>();
+        paramInjectors = new ArrayList<ParamInjector>();
         initMethods();
         initFields();
     }
@@ -144,6 +152,29 @@ public class OperationTypeImpl implements OperationType {
     public OperationTypeImpl() {
     }
 
+    /**
+     * A parameter to inject, with its annotation attributes.
+     *
+     * @since 8.3
+     */
+    protected static class ParamInjector {
+
+        protected final String name;
+
+        protected final String[] aliases;
+
+        protected final boolean required;
+
+        protected final Field field;
+
+        protected ParamInjector(String name, Param param, Field field) {
+            this.name = name;
+            aliases = param.alias();
+            required = param.required();
+            this.field = field;
+        }
+    }
+
     static class Match implements Comparable<Match> {
         protected InvokableMethod method;
 
@@ -221,6 +252,10 @@ public class OperationTypeImpl implements OperationType {
                 injectableFields.add(field);
             }
         }
+        for (Map.Entry<String, Field> entry : params.entrySet()) {
+            Field field = entry.getValue();
+            paramInjectors.add(new ParamInjector(entry.getKey(), field.getAnnotation(Param.class), field));
+        }
     }
 
     @Override
@@ -254,14 +289,13 @@ public class OperationTypeImpl implements OperationType {
     }
 
     public void inject(OperationContext ctx, Map<String, Object> args, Object target) throws OperationException {
-        for (Map.Entry<String, Field> entry : params.entrySet()) {
-            Object obj = resolveObject(ctx, entry.getKey(), args);
+        for (ParamInjector param : paramInjectors) {
+            Object obj = resolveObject(ctx, param.name, args);
             if (obj == null) {
                 // We did not resolve object according to its param name, let's
                 // check with potential alias
-                String[] aliases = entry.getValue().getAnnotation(Param.class).alias();
-                if (aliases != null) {
-                    for (String alias : entry.getValue().getAnnotation(Param.class).alias()) {
+                if (param.aliases != null) {
+                    for (String alias : param.aliases) {
                         obj = resolveObject(ctx, alias, args);
                         if (obj != null) {
                             break;
@@ -270,19 +304,18 @@ public class OperationTypeImpl implements OperationType {
                 }
             }
             if (obj == null) {
-                if (entry.getValue().getAnnotation(Param.class).required()) {
-                    throw new OperationException("Failed to inject parameter '" + entry.getKey()
+                if (param.required) {
+                    throw new OperationException("Failed to inject parameter '" + param.name
                             + "'. Seems it is missing from the context. Operation: " + getId());
                 } // else do nothing
             } else {
-                Field field = entry.getValue();
                 Class<?> cl = obj.getClass();
-                if (!field.getType().isAssignableFrom(cl)) {
+                if (!param.field.getType().isAssignableFrom(cl)) {
                     // try to adapt
-                    obj = service.getAdaptedValue(ctx, obj, field.getType());
+                    obj = service.getAdaptedValue(ctx, obj, param.field.getType());
                 }
                 try {
-                    field.set(target, obj);
+                    param.field.set(target, obj);
                 } catch (ReflectiveOperationException e) {
                     throw new OperationException(e);
                 }
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.automation.core.impl;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.automation.OperationContext;
+import org.nuxeo.ecm.automation.OperationException;
+import org.nuxeo.ecm.automation.core.annotations.Context;
+import org.nuxeo.ecm.automation.core.annotations.Operation;
+import org.nuxeo.ecm.automation.core.annotations.OperationMethod;
+import org.nuxeo.ecm.automation.core.annotations.Param;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the overhead of dispatching an operation: instantiation, parameter and context injection, and invocation of
+ * the operation method, through an {@link InvokableMethod} or through the injection done before the parameter
+ * annotations were cached in {@link OperationTypeImpl}, for comparison.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.ecm.automation.core.impl.OperationDispatchBenchmark}.
+ *
+ * @since 8.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OperationDispatchBenchmark {
+
+    @Operation(id = "Benchmark.Echo")
+    public static class EchoOperation {
+
+        @Param(name = "suffix")
+        protected String suffix;
+
+        @Param(name = "count", required = false)
+        protected Integer count;
+
+        @Context
+        protected OperationContext ctx;
+
+        @OperationMethod
+        public String run(String input) {
+            return suffix;
+        }
+    }
+
+    protected OperationContext ctx;
+
+    protected Map<String, Object> args;
+
+    protected OperationTypeImpl type;
+
+    protected InvokableMethod method;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ctx = new OperationContext();
+        ctx.setInput("input");
+        args = Collections.singletonMap("suffix", "suffix");
+        type = new OperationTypeImpl(new OperationServiceImpl(), EchoOperation.class);
+        method = type.getMethodsMatchingInput(String.class)[0];
+    }
+
+    @Benchmark
+    public Object invokableMethod() throws OperationException {
+        return method.invoke(ctx, args);
+    }
+
+    @Benchmark
+    public Object previousInject() throws ReflectiveOperationException, OperationException {
+        Object target = type.getType().newInstance();
+        for (Map.Entry<String, Field> entry : type.params.entrySet()) {
+            Object obj = type.resolveObject(ctx, entry.getKey(), args);
+            if (obj == null) {
+                for (String alias : entry.getValue().getAnnotation(Param.class).alias()) {
+                    obj = type.resolveObject(ctx, alias, args);
+                    if (obj != null) {
+                        break;
+                    }
+                }
+            }
+            if (obj == null) {
+                if (entry.getValue().getAnnotation(Param.class).required()) {
+                    throw new OperationException("Missing parameter: " + entry.getKey());
+                }
+            } else {
+                Field field = entry.getValue();
+                if (!field.getType().isAssignableFrom(obj.getClass())) {
+                    obj = type.getService().getAdaptedValue(ctx, obj, field.getType());
+                }
+                field.set(target, obj);
+            }
+        }
+        for (Field field : type.injectableFields) {
+            field.set(target, ctx.getAdapter(field.getType()));
+        }
+        Object input = ctx.getInput();
+        if (input != null && !method.consume.isAssignableFrom(input.getClass())) {
+            input = type.getService().getAdaptedValue(ctx, input, method.consume);
+        }
+        return method.method.invoke(target, input);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(OperationDispatchBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+}
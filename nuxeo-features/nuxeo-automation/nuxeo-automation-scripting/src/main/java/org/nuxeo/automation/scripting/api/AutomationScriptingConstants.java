@@ -35,6 +35,16 @@ public class AutomationScriptingConstants {
 
     public static final String DEFAULT_PRECOMPILE_STATUS = "true";
 
+    /**
+     * @since 8.3
+     */
+    public static final String AUTOMATION_SCRIPTING_ENGINE_POOL_SIZE = "automation.scripting.engine.pool.size";
+
+    /**
+     * @since 8.3
+     */
+    public static final String DEFAULT_ENGINE_POOL_SIZE = "16";
+
     public static final String XP_OPERATION = "operation";
 
     public static final String NX_NASHORN = "nx-nashorn";
@@ -19,6 +19,7 @@
 package org.nuxeo.automation.scripting.api;
 
 import java.io.InputStream;
+import java.util.Map;
 
 import javax.script.ScriptException;
 
@@ -57,6 +58,16 @@ public interface AutomationScriptingService {
      */
     void run(String script, CoreSession session) throws ScriptException, OperationException;
 
+    /**
+     * Run Automation Scripting for a given scripting operation 'JavaScript' script and CoreSession, then call the
+     * {@code run(input, params)} function it defines.
+     *
+     * @return the value returned by the {@code run} function
+     * @since 8.3
+     */
+    Object runOperation(String script, Object input, Map<String, Object> params, CoreSession session)
+            throws ScriptException, OperationException;
+
     /**
      * @param scriptingOperationInterface
      * @param script
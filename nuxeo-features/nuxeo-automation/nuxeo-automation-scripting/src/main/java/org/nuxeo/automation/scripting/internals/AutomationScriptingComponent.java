@@ -21,6 +21,7 @@
 package org.nuxeo.automation.scripting.internals;
 
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,7 +47,9 @@ public class AutomationScriptingComponent extends DefaultComponent {
 
     protected ScriptingFactory scriptingFactory;
 
-    public AutomationScriptingService scriptingService = new AutomationScriptingServiceImpl();
+    protected final AutomationScriptingServiceImpl scriptingServiceImpl = new AutomationScriptingServiceImpl();
+
+    public AutomationScriptingService scriptingService = scriptingServiceImpl;
 
     @Override
     public void activate(ComponentContext context) {
@@ -95,6 +98,11 @@ public class AutomationScriptingComponent extends DefaultComponent {
     @Override
     public void applicationStarted(ComponentContext context) {
         super.applicationStarted(context);
+        try {
+            scriptingServiceImpl.prewarm();
+        } catch (ScriptException | OperationException e) {
+            log.error("Cannot pre-warm a scripting engine", e);
+        }
     }
 
     @Override
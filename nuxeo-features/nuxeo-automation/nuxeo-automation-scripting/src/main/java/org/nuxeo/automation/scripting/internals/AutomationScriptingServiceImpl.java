@@ -24,10 +24,16 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -36,6 +42,7 @@ import javax.script.SimpleScriptContext;
 import org.apache.commons.io.IOUtils;
 import org.nuxeo.automation.scripting.api.AutomationScriptingConstants;
 import org.nuxeo.automation.scripting.api.AutomationScriptingService;
+import org.nuxeo.automation.scripting.internals.operation.ScriptingOperationInterface;
 import org.nuxeo.ecm.automation.AutomationService;
 import org.nuxeo.ecm.automation.OperationException;
 import org.nuxeo.ecm.automation.OperationType;
@@ -53,15 +60,81 @@ import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.runtime.api.Framework;
 
 /**
+ * The scripts are run on engines taken from a pool. Each engine compiles the JS wrapper once, and keeps the scripts it
+ * compiled. Each script is still run in a new context, in which the compiled JS wrapper is evaluated first: this
+ * creates a new global and the operation functions for each run, which is most of the remaining cost of a run, but
+ * keeps scripts from seeing each other's globals.
+ * <p>
+ * Every borrowed engine is put back in the pool. The pool keeps at most the configured number of idle engines: when
+ * more scripts run concurrently, the extra engines are created for the call and dropped afterwards. A single engine is
+ * created when the application starts, see {@link #prewarm}, the others when needed.
+ *
  * @since 7.2
  */
 public class AutomationScriptingServiceImpl implements AutomationScriptingService {
 
+    /**
+     * Maximum number of compiled scripts kept by each engine.
+     *
+     * @since 8.3
+     */
+    protected static final int MAX_COMPILED_SCRIPTS = 100;
+
     protected String jsWrapper = null;
 
     protected ScriptOperationContext operationContext;
 
-    protected String getJSWrapper(boolean refresh) throws OperationException {
+    /**
+     * The idle engines, most recently used first.
+     *
+     * @since 8.3
+     */
+    protected final BlockingDeque<PooledEngine> engines = new LinkedBlockingDeque<>(
+            Integer.parseInt(Framework.getProperty(AutomationScriptingConstants.AUTOMATION_SCRIPTING_ENGINE_POOL_SIZE,
+                    AutomationScriptingConstants.DEFAULT_ENGINE_POOL_SIZE)));
+
+    /**
+     * An engine with the JS wrapper and the scripts it already compiled.
+     *
+     * @since 8.3
+     */
+    protected static class PooledEngine {
+
+        protected final ScriptEngine engine;
+
+        /** The JS wrapper compiled by this engine. */
+        protected final String wrapper;
+
+        protected final CompiledScript compiledWrapper;
+
+        /** The compiled scripts, by source, least recently used first. */
+        protected final Map<String, CompiledScript> scripts = new LinkedHashMap<String, CompiledScript>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledScript> eldest) {
+                return size() > MAX_COMPILED_SCRIPTS;
+            }
+        };
+
+        protected PooledEngine(ScriptEngine engine, String wrapper) throws ScriptException {
+            this.engine = engine;
+            this.wrapper = wrapper;
+            compiledWrapper = ((Compilable) engine).compile(wrapper);
+        }
+
+        protected CompiledScript compile(String script) throws ScriptException {
+            CompiledScript compiled = scripts.get(script);
+            if (compiled == null) {
+                compiled = ((Compilable) engine).compile(script);
+                scripts.put(script, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    protected synchronized String getJSWrapper(boolean refresh) throws OperationException {
         if (jsWrapper == null || refresh) {
             StringBuffer sb = new StringBuffer();
             AutomationService as = Framework.getService(AutomationService.class);
@@ -121,14 +194,6 @@ public class AutomationScriptingServiceImpl implements AutomationScriptingServic
         return getJSWrapper(false);
     }
 
-    protected final ThreadLocal<ScriptEngine> engines = new ThreadLocal<ScriptEngine>() {
-        @Override
-        protected ScriptEngine initialValue() {
-            return Framework.getService(ScriptEngineManager.class).getEngineByName(
-                    AutomationScriptingConstants.NX_NASHORN);
-        }
-    };
-
     protected final ThreadLocal<ScriptOperationContext> operationContexts = new ThreadLocal<ScriptOperationContext>() {
         @Override
         protected ScriptOperationContext initialValue() {
@@ -147,9 +212,56 @@ public class AutomationScriptingServiceImpl implements AutomationScriptingServic
 
     @Override
     public void run(String script, CoreSession session) throws ScriptException, OperationException {
-        ScriptEngine engine = engines.get();
-        engine.setContext(new SimpleScriptContext());
-        engine.eval(getJSWrapper());
+        PooledEngine pooledEngine = borrowEngine();
+        try {
+            eval(pooledEngine, script, session);
+        } finally {
+            releaseEngine(pooledEngine);
+        }
+    }
+
+    @Override
+    public Object runOperation(String script, Object input, Map<String, Object> params, CoreSession session)
+            throws ScriptException, OperationException {
+        PooledEngine pooledEngine = borrowEngine();
+        try {
+            eval(pooledEngine, script, session);
+            Invocable inv = (Invocable) pooledEngine.engine;
+            return inv.getInterface(ScriptingOperationInterface.class).run(input, params);
+        } finally {
+            releaseEngine(pooledEngine);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned interface is bound to the global scope of the context in which the script was run, not to the
+     * engine, which is put back in the pool and reused with other contexts.
+     */
+    @Override
+    public <T> T getInterface(Class<T> scriptingOperationInterface, String script, CoreSession session)
+            throws ScriptException, OperationException {
+        PooledEngine pooledEngine = borrowEngine();
+        try {
+            eval(pooledEngine, script, session);
+            Invocable inv = (Invocable) pooledEngine.engine;
+            return inv.getInterface(scriptingOperationInterface);
+        } finally {
+            releaseEngine(pooledEngine);
+        }
+    }
+
+    /**
+     * Runs a script in a new context of a pooled engine, which stays the default context of the engine afterwards.
+     *
+     * @since 8.3
+     */
+    protected void eval(PooledEngine pooledEngine, String script, CoreSession session) throws ScriptException {
+        ScriptEngine engine = pooledEngine.engine;
+        ScriptContext context = new SimpleScriptContext();
+        engine.setContext(context);
+        pooledEngine.compiledWrapper.eval(context);
 
         // Initialize Operation Context
         if (operationContext == null) {
@@ -187,15 +299,53 @@ public class AutomationScriptingServiceImpl implements AutomationScriptingServic
         for (String helperFunctionsId : helperFunctions.keySet()) {
             engine.put(helperFunctionsId, helperFunctions.get(helperFunctionsId));
         }
-        engine.eval(script);
+        pooledEngine.compile(script).eval(context);
     }
 
-    @Override
-    public <T> T getInterface(Class<T> scriptingOperationInterface, String script, CoreSession session)
-            throws ScriptException, OperationException {
-        run(script, session);
-        Invocable inv = (Invocable) engines.get();
-        return inv.getInterface(scriptingOperationInterface);
+    /**
+     * Takes an engine from the pool, or creates a new one if there is none for the current JS wrapper.
+     *
+     * @since 8.3
+     */
+    protected PooledEngine borrowEngine() throws ScriptException, OperationException {
+        String wrapper = getJSWrapper();
+        PooledEngine pooledEngine;
+        while ((pooledEngine = engines.pollFirst()) != null) {
+            if (pooledEngine.wrapper.equals(wrapper)) {
+                return pooledEngine;
+            }
+            // the wrapper was refreshed, drop the engine
+        }
+        return newEngine(wrapper);
+    }
+
+    protected PooledEngine newEngine(String wrapper) throws ScriptException {
+        ScriptEngine engine = Framework.getService(ScriptEngineManager.class).getEngineByName(
+                AutomationScriptingConstants.NX_NASHORN);
+        return new PooledEngine(engine, wrapper);
+    }
+
+    /**
+     * Puts an engine for the current JS wrapper in the pool if it's empty, so that the first script doesn't pay for the
+     * engine creation and the compilation of the wrapper.
+     *
+     * @since 8.3
+     */
+    public void prewarm() throws ScriptException, OperationException {
+        if (engines.isEmpty()) {
+            engines.offerLast(newEngine(getJSWrapper()));
+        }
+    }
+
+    /**
+     * Puts an engine back in the pool, unless the pool is full.
+     *
+     * @since 8.3
+     */
+    protected void releaseEngine(PooledEngine pooledEngine) {
+        // don't keep references to the last script run
+        pooledEngine.engine.setContext(new SimpleScriptContext());
+        engines.offerFirst(pooledEngine);
     }
 
     protected void parseAutomationIDSForScripting(Map<String, List<String>> opMap, List<String> flatOps, String id) {
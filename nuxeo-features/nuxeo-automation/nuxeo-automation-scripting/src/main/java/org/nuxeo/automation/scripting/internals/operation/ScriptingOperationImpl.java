@@ -61,10 +61,8 @@ public class ScriptingOperationImpl {
         try {
             AutomationScriptingService scriptingService = Framework.getService(AutomationScriptingService.class);
             scriptingService.setOperationContext(ctx);
-            ScriptingOperationInterface itf = scriptingService.getInterface(ScriptingOperationInterface.class, source,
-                    ctx.getCoreSession());
             input = wrapArgsAndInput(input, args);
-            return unwrapResult(itf.run(input, args));
+            return unwrapResult(scriptingService.runOperation(source, input, args, ctx.getCoreSession()));
         } catch (ScriptException e) {
             throw new OperationException(e);
         } finally {
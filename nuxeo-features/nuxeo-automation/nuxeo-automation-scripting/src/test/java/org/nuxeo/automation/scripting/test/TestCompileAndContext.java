@@ -249,6 +249,21 @@ public class TestCompileAndContext {
                 outContent.toString());
     }
 
+    @Test
+    public void testIsolationWithReusedEngine() throws Exception {
+        InputStream stream = this.getClass().getResourceAsStream("/checkIsolation.js");
+        assertNotNull(stream);
+        String check = IOUtils.toString(stream);
+
+        // the same compiled script run twice on the pooled engine doesn't see its previous globals
+        scriptingService.run(check, session);
+        scriptingService.run(check, session);
+
+        // the wrapper altered by a script is restored for the next one
+        scriptingService.run("Document.Fetch=\"toto\";", session);
+        scriptingService.run(check, session);
+    }
+
     @Test
     public void testAutomationCtxSharing() throws Exception {
         org.junit.Assert.assertNotNull(scriptingService);
@@ -106,6 +106,18 @@ final public class ElasticSearchConstants {
 
     public static final String REINDEX_BUCKET_WRITE_PROPERTY = "elasticsearch.reindex.bucketWriteSize";
 
+    /** @since 8.3 */
+    public static final String INDEXING_BULK_ACTIONS_PROPERTY = "elasticsearch.indexing.bulkActions";
+
+    /** @since 8.3 */
+    public static final String INDEXING_BULK_SIZE_PROPERTY = "elasticsearch.indexing.bulkSizeBytes";
+
+    /** @since 8.3 */
+    public static final String INDEXING_BULK_CONCURRENT_REQUESTS_PROPERTY = "elasticsearch.indexing.bulkConcurrentRequests";
+
+    /** @since 8.3 */
+    public static final String REINDEX_RANGE_COUNT_PROPERTY = "elasticsearch.reindex.rangeCount";
+
     public static final String REINDEX_ON_STARTUP_PROPERTY = "elastcisearch.reindex.onStartup";
 
     public static final String DISABLE_AUTO_INDEXING = "disableAutoIndexing";
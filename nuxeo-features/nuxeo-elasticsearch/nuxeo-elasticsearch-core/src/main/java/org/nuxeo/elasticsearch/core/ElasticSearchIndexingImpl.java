@@ -20,6 +20,8 @@
 
 package org.nuxeo.elasticsearch.core;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
@@ -29,8 +31,10 @@ import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteRequestBuilder;
 import org.elasticsearch.action.deletebyquery.DeleteByQueryRequestBuilder;
 import org.elasticsearch.action.deletebyquery.DeleteByQueryResponse;
@@ -38,6 +42,8 @@ import org.elasticsearch.action.deletebyquery.IndexDeleteByQueryResponse;
 import org.elasticsearch.action.get.GetRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
@@ -59,11 +65,17 @@ import org.nuxeo.runtime.metrics.MetricsService;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.CHILDREN_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_ACTIONS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_CONCURRENT_REQUESTS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEXING_BULK_SIZE_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.PATH_FIELD;
 
 /**
@@ -80,8 +92,28 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
 
     private final Timer bulkIndexTimer;
 
+    private final Timer bulkRequestTimer;
+
+    private final Meter bulkActionsMeter;
+
+    private final Histogram bulkSizeHistogram;
+
     private final boolean useExternalVersion;
 
+    private final int bulkActions;
+
+    private final long bulkSizeBytes;
+
+    private final int bulkConcurrentRequests;
+
+    protected static final String DEFAULT_BULK_ACTIONS = "25";
+
+    protected static final String DEFAULT_BULK_SIZE_BYTES = String.valueOf(5 * 1024 * 1024);
+
+    protected static final String DEFAULT_BULK_CONCURRENT_REQUESTS = "2";
+
+    protected static final long BULK_CLOSE_TIMEOUT_SECONDS = 300;
+
     private JsonESDocumentWriter jsonESDocumentWriter;
 
     public ElasticSearchIndexingImpl(ElasticSearchAdminImpl esa) {
@@ -90,6 +122,13 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         indexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "index"));
         deleteTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "delete"));
         bulkIndexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex"));
+        bulkRequestTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkRequest"));
+        bulkActionsMeter = registry.meter(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkActions"));
+        bulkSizeHistogram = registry.histogram(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkSize"));
+        bulkActions = Integer.parseInt(Framework.getProperty(INDEXING_BULK_ACTIONS_PROPERTY, DEFAULT_BULK_ACTIONS));
+        bulkSizeBytes = Long.parseLong(Framework.getProperty(INDEXING_BULK_SIZE_PROPERTY, DEFAULT_BULK_SIZE_BYTES));
+        bulkConcurrentRequests = Integer.parseInt(
+                Framework.getProperty(INDEXING_BULK_CONCURRENT_REQUESTS_PROPERTY, DEFAULT_BULK_CONCURRENT_REQUESTS));
         this.jsonESDocumentWriter = new JsonESDocumentWriter();// default writer
         this.useExternalVersion = esa.useExternalVersion();
     }
@@ -133,13 +172,15 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         refreshIfNeeded(cmds);
     }
 
+    /**
+     * Processes the recursive delete commands, the non recursive ones are sent in bulk with the index requests.
+     */
     void processBulkDeleteCommands(List<IndexingCommand> cmds) {
-        // Can be optimized with a single delete by query
         for (IndexingCommand cmd : cmds) {
-            if (cmd.getType() == Type.DELETE) {
+            if (cmd.getType() == Type.DELETE && cmd.isRecurse()) {
                 Context stopWatch = deleteTimer.time();
                 try {
-                    processDeleteCommand(cmd);
+                    processDeleteCommandRecursive(cmd);
                 } finally {
                     stopWatch.stop();
                 }
@@ -147,41 +188,138 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         }
     }
 
+    /**
+     * Sends the index requests and non recursive delete requests of the commands through a {@link BulkProcessor}.
+     * <p>
+     * The documents are serialized on the calling thread, as they need its session, while the previous bulk requests
+     * are executed. Returns when all the bulk requests are done.
+     */
     void processBulkIndexCommands(List<IndexingCommand> cmds) {
-        BulkRequestBuilder bulkRequest = esa.getClient().prepareBulk();
-        Set<String> docIds = new HashSet<>(cmds.size());
+        // a non recursive delete is not needed if the document is indexed again, the index request replaces it
+        Set<String> indexedIds = new HashSet<>(cmds.size());
         for (IndexingCommand cmd : cmds) {
-            if (cmd.getType() == Type.DELETE || cmd.getType() == Type.UPDATE_DIRECT_CHILDREN) {
-                continue;
+            if (cmd.getType() != Type.DELETE && cmd.getType() != Type.UPDATE_DIRECT_CHILDREN) {
+                indexedIds.add(cmd.getTargetDocumentId());
             }
-            if (! docIds.add(cmd.getTargetDocumentId()) ) {
-                // do not submit the same doc 2 times
-                continue;
+        }
+        Set<String> skippedDeleteIds = new HashSet<>();
+        BulkListener listener = new BulkListener();
+        BulkProcessor processor = newBulkProcessor(listener);
+        try {
+            for (IndexingCommand cmd : cmds) {
+                if (cmd.getType() == Type.DELETE && !cmd.isRecurse()) {
+                    if (indexedIds.contains(cmd.getTargetDocumentId())) {
+                        skippedDeleteIds.add(cmd.getTargetDocumentId());
+                    } else {
+                        processor.add(buildEsDeleteRequest(cmd));
+                    }
+                }
             }
-            try {
-                IndexRequestBuilder idxRequest = buildEsIndexingRequest(cmd);
+            Set<String> docIds = new HashSet<>(cmds.size());
+            for (IndexingCommand cmd : cmds) {
+                if (cmd.getType() == Type.DELETE || cmd.getType() == Type.UPDATE_DIRECT_CHILDREN) {
+                    continue;
+                }
+                if (!docIds.add(cmd.getTargetDocumentId())) {
+                    // do not submit the same doc 2 times
+                    continue;
+                }
+                IndexRequestBuilder idxRequest = null;
+                try {
+                    idxRequest = buildEsIndexingRequest(cmd);
+                } catch (ConcurrentUpdateException e) {
+                    throw e; // bubble up, usually until AbstractWork catches it and maybe retries
+                } catch (DocumentNotFoundException e) {
+                    log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
+                } catch (IllegalArgumentException e) {
+                    log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
+                }
                 if (idxRequest != null) {
-                    bulkRequest.add(idxRequest);
+                    processor.add(idxRequest.request());
+                } else if (skippedDeleteIds.contains(cmd.getTargetDocumentId())) {
+                    // the delete was skipped in favor of this request, which could not be built
+                    processor.add(buildEsDeleteRequest(cmd));
                 }
-            } catch (ConcurrentUpdateException e) {
-                throw e; // bubble up, usually until AbstractWork catches it and maybe retries
-            } catch (DocumentNotFoundException e) {
-                log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
-            } catch (IllegalArgumentException e) {
-                log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
             }
+        } finally {
+            closeBulkProcessor(processor);
+        }
+        if (listener.failure != null) {
+            throw new NuxeoException("Fail to execute bulk request", listener.failure);
         }
-        if (bulkRequest.numberOfActions() > 0) {
+    }
+
+    /**
+     * Creates a bulk processor flushing requests asynchronously when they reach the configured number of actions or
+     * size, with a bounded number of concurrent bulk requests.
+     *
+     * @since 8.3
+     */
+    protected BulkProcessor newBulkProcessor(BulkProcessor.Listener listener) {
+        return BulkProcessor.builder(esa.getClient(), listener)
+                            .setName("nuxeo-indexing")
+                            .setBulkActions(bulkActions)
+                            .setBulkSize(new ByteSizeValue(bulkSizeBytes, ByteSizeUnit.BYTES))
+                            .setConcurrentRequests(bulkConcurrentRequests)
+                            .build();
+    }
+
+    protected void closeBulkProcessor(BulkProcessor processor) {
+        try {
+            if (!processor.awaitClose(BULK_CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new NuxeoException(
+                        "Timeout waiting " + BULK_CLOSE_TIMEOUT_SECONDS + "s for bulk requests to complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while waiting for bulk requests", e);
+        }
+    }
+
+    /**
+     * Bulk processor listener recording metrics and failures.
+     *
+     * @since 8.3
+     */
+    protected class BulkListener implements BulkProcessor.Listener {
+
+        protected final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+        protected volatile Throwable failure;
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            startTimes.put(Long.valueOf(executionId), Long.valueOf(System.nanoTime()));
+            bulkSizeHistogram.update(request.estimatedSizeInBytes());
             if (log.isDebugEnabled()) {
                 log.debug(String.format(
                         "Index %d docs in bulk request: curl -XPOST 'http://localhost:9200/_bulk' -d '%s'",
-                        bulkRequest.numberOfActions(), bulkRequest.request().requests().toString()));
+                        request.numberOfActions(), request.requests().toString()));
             }
-            BulkResponse response = bulkRequest.execute().actionGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            done(executionId);
+            bulkActionsMeter.mark(request.numberOfActions());
             if (response.hasFailures()) {
                 logBulkFailure(response);
             }
         }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            done(executionId);
+            log.error("Fail to execute bulk request of " + request.numberOfActions() + " actions", failure);
+            this.failure = failure;
+        }
+
+        protected void done(long executionId) {
+            Long start = startTimes.remove(Long.valueOf(executionId));
+            if (start != null) {
+                bulkRequestTimer.update(System.nanoTime() - start.longValue(), TimeUnit.NANOSECONDS);
+            }
+        }
     }
 
     protected void logBulkFailure(BulkResponse response) {
@@ -289,6 +427,11 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         request.execute().actionGet();
     }
 
+    DeleteRequest buildEsDeleteRequest(IndexingCommand cmd) {
+        String indexName = esa.getIndexNameForRepository(cmd.getRepositoryName());
+        return esa.getClient().prepareDelete(indexName, DOC_TYPE, cmd.getTargetDocumentId()).request();
+    }
+
     void processDeleteCommandRecursive(IndexingCommand cmd) {
         String indexName = esa.getIndexNameForRepository(cmd.getRepositoryName());
         // we don't want to rely on target document because the document can be
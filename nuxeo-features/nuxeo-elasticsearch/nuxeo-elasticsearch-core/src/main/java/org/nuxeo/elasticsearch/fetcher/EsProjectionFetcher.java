@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.elasticsearch.fetcher;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.nuxeo.common.utils.Path;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelFactory;
+import org.nuxeo.ecm.core.api.IdRef;
+import org.nuxeo.ecm.core.api.PropertyException;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.schema.DocumentType;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.ecm.core.schema.types.Type;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Fetcher building lightweight documents from the {@code _source} of the hits, filtered on the projected properties.
+ * <p>
+ * Only the projected properties are set on the documents, the other properties of their schemas are left empty and
+ * the other schemas are loaded from the repository on demand. Hits for which a projected property is not found in the
+ * {@code _source}, because it is not indexed, are fetched from the repository like with {@link VcsFetcher}.
+ *
+ * @since 8.3
+ */
+public class EsProjectionFetcher extends VcsFetcher {
+
+    private static final Log log = LogFactory.getLog(EsProjectionFetcher.class);
+
+    /**
+     * The system properties needed to build a document, always fetched.
+     */
+    public static final List<String> SYSTEM_FIELDS = Collections.unmodifiableList(Arrays.asList(NXQL.ECM_UUID,
+            NXQL.ECM_NAME, NXQL.ECM_PATH, NXQL.ECM_PARENTID, "ecm:repository", NXQL.ECM_PRIMARYTYPE,
+            NXQL.ECM_MIXINTYPE, NXQL.ECM_ISPROXY, NXQL.ECM_LIFECYCLESTATE));
+
+    protected final List<String> projection;
+
+    public EsProjectionFetcher(CoreSession session, SearchResponse response, Map<String, String> repoNames,
+            List<String> projection) {
+        super(session, response, repoNames);
+        this.projection = projection;
+    }
+
+    /**
+     * Gets the fields to fetch from the {@code _source} for the given projection.
+     */
+    public static String[] getSourceIncludes(Collection<String> projection) {
+        Set<String> includes = new HashSet<>(SYSTEM_FIELDS);
+        includes.addAll(projection);
+        return includes.toArray(new String[includes.size()]);
+    }
+
+    @Override
+    public DocumentModelListImpl fetchDocuments() {
+        SearchHit[] hits = getResponse().getHits().getHits();
+        DocumentModel[] docs = new DocumentModel[hits.length];
+        List<SearchHit> missingHits = new ArrayList<>();
+        String sid = getSession().getSessionId();
+        SchemaManager schemaManager = Framework.getService(SchemaManager.class);
+        for (int i = 0; i < hits.length; i++) {
+            docs[i] = getDocumentModel(hits[i].getSource(), sid, schemaManager);
+            if (docs[i] == null) {
+                missingHits.add(hits[i]);
+            }
+        }
+        if (!missingHits.isEmpty()) {
+            // fall back to the repository for the hits missing some properties
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Fetch %d documents out of %d from repository", missingHits.size(),
+                        hits.length));
+            }
+            Map<String, DocumentModel> fetched = new HashMap<>();
+            for (DocumentModel doc : fetchFromVcs(
+                    getHitsPerRepository(missingHits.toArray(new SearchHit[missingHits.size()])))) {
+                fetched.put(doc.getRepositoryName() + doc.getId(), doc);
+            }
+            for (int i = 0; i < hits.length; i++) {
+                if (docs[i] == null) {
+                    docs[i] = fetched.get(getRepoForIndex(hits[i].getIndex()) + hits[i].getId());
+                }
+            }
+        }
+        DocumentModelListImpl ret = new DocumentModelListImpl(docs.length);
+        for (DocumentModel doc : docs) {
+            if (doc != null) {
+                ret.add(doc);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Builds a lightweight document from the filtered {@code _source} of a hit.
+     *
+     * @return the document, or {@code null} if some projected properties are missing from the source
+     */
+    protected DocumentModel getDocumentModel(Map<String, Object> source, String sid, SchemaManager schemaManager) {
+        if (source == null) {
+            return null;
+        }
+        String type = getString(source, NXQL.ECM_PRIMARYTYPE);
+        DocumentType docType = type == null ? null : schemaManager.getDocumentType(type);
+        if (docType == null) {
+            return null;
+        }
+        String id = getString(source, NXQL.ECM_UUID);
+        String path = getString(source, NXQL.ECM_PATH);
+        String parentId = getString(source, NXQL.ECM_PARENTID);
+        Set<String> instanceFacets = new HashSet<>();
+        Object mixinTypes = source.get(NXQL.ECM_MIXINTYPE);
+        if (mixinTypes instanceof Collection) {
+            for (Object facet : (Collection<?>) mixinTypes) {
+                instanceFacets.add(String.valueOf(facet));
+            }
+        }
+        instanceFacets.removeAll(docType.getFacets());
+        boolean isProxy = Boolean.parseBoolean(getString(source, NXQL.ECM_ISPROXY));
+        DocumentModelImpl doc = new DocumentModelImpl(sid, type, id, path == null ? null : new Path(path),
+                new IdRef(id), parentId == null ? null : new IdRef(parentId), null, instanceFacets, null,
+                getString(source, "ecm:repository"), isProxy);
+        String lifeCycleState = getString(source, NXQL.ECM_LIFECYCLESTATE);
+        if (lifeCycleState != null) {
+            doc.prefetchCurrentLifecycleState(lifeCycleState);
+        }
+        for (String xpath : projection) {
+            if (xpath.startsWith(NXQL.ECM_PREFIX)) {
+                continue;
+            }
+            Field field = schemaManager.getField(xpath);
+            if (field == null) {
+                continue;
+            }
+            Schema schema = (Schema) field.getDeclaringType();
+            if (!doc.hasSchema(schema.getName())) {
+                continue;
+            }
+            if (!source.containsKey(xpath)) {
+                // not indexed
+                return null;
+            }
+            if (!doc.isSchemaLoaded(schema.getName())) {
+                doc.addDataModel(DocumentModelFactory.createDataModel(null, schema));
+            }
+            Object value = source.get(xpath);
+            if (value == null) {
+                continue;
+            }
+            Type fieldType = field.getType();
+            if (value instanceof String && fieldType.isSimpleType()) {
+                // dates are indexed as strings
+                value = fieldType.decode((String) value);
+            }
+            try {
+                doc.setPropertyValue(xpath, (Serializable) value);
+            } catch (PropertyException | ClassCastException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Cannot set property %s of doc %s to %s", xpath, id, value));
+                }
+                return null;
+            }
+        }
+        doc.setIsImmutable(true);
+        return doc;
+    }
+
+    protected static String getString(Map<String, Object> source, String name) {
+        Object value = source.get(name);
+        return value == null ? null : value.toString();
+    }
+
+}
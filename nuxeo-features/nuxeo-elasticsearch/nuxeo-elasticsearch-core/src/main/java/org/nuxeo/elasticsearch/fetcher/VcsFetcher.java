@@ -46,7 +46,22 @@ public class VcsFetcher extends Fetcher {
 
     @Override
     public DocumentModelListImpl fetchDocuments() {
-        Map<String, List<String>> repoHits = getHitsPerRepository();
+        List<DocumentModel> docs = fetchFromVcs(getHitsPerRepository(getResponse().getHits().getHits()));
+        sortResults(docs);
+        DocumentModelListImpl ret = new DocumentModelListImpl(docs.size());
+        if (!docs.isEmpty()) {
+            ret.addAll(docs);
+        }
+        return ret;
+    }
+
+    /**
+     * Fetches the documents from their repository.
+     *
+     * @param repoHits the document ids by repository name
+     * @since 8.3
+     */
+    protected List<DocumentModel> fetchFromVcs(Map<String, List<String>> repoHits) {
         List<DocumentModel> docs = new ArrayList<>();
         String openSessionRepository = getSession().getRepositoryName();
         boolean closeSession;
@@ -67,17 +82,17 @@ public class VcsFetcher extends Fetcher {
                 }
             }
         }
-        sortResults(docs);
-        DocumentModelListImpl ret = new DocumentModelListImpl(docs.size());
-        if (!docs.isEmpty()) {
-            ret.addAll(docs);
-        }
-        return ret;
+        return docs;
     }
 
-    private Map<String, List<String>> getHitsPerRepository() {
+    /**
+     * Gets the document ids of the hits by repository name.
+     *
+     * @since 8.3
+     */
+    protected Map<String, List<String>> getHitsPerRepository(SearchHit[] hits) {
         Map<String, List<String>> ret = new HashMap<>();
-        for (SearchHit hit : getResponse().getHits()) {
+        for (SearchHit hit : hits) {
             String repoName = getRepoForIndex(hit.getIndex());
             List<String> docIds = ret.get(repoName);
             if (docIds == null) {
@@ -127,15 +142,23 @@ public class VcsFetcher extends Fetcher {
     }
 
     private void sortResults(List<DocumentModel> docs) {
-        final List<String> ids = new ArrayList<>();
+        final Map<String, Integer> positions = new HashMap<>();
         for (SearchHit hit : getResponse().getHits()) {
-            ids.add(getRepoForIndex(hit.getIndex()) + hit.getId());
+            String key = getRepoForIndex(hit.getIndex()) + hit.getId();
+            if (!positions.containsKey(key)) {
+                positions.put(key, Integer.valueOf(positions.size()));
+            }
         }
 
         Collections.sort(docs, new Comparator<DocumentModel>() {
             @Override
             public int compare(DocumentModel a, DocumentModel b) {
-                return ids.indexOf(a.getRepositoryName() + a.getId()) - ids.indexOf(b.getRepositoryName() + b.getId());
+                return Integer.compare(getPosition(a), getPosition(b));
+            }
+
+            private int getPosition(DocumentModel doc) {
+                Integer pos = positions.get(doc.getRepositoryName() + doc.getId());
+                return pos == null ? -1 : pos.intValue();
             }
         });
 
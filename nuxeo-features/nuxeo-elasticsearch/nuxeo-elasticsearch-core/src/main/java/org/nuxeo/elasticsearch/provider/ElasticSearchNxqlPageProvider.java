@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -56,6 +57,14 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
 
     public static final String SEARCH_ON_ALL_REPOSITORIES_PROPERTY = "searchAllRepositories";
 
+    /**
+     * Page provider property holding a comma-separated list of properties. When set, the documents of the page are
+     * built from these properties as indexed in Elasticsearch, instead of being loaded from the repository.
+     *
+     * @since 8.3
+     */
+    public static final String PROJECTION_PROPERTY = "projection";
+
     protected static final Log log = LogFactory.getLog(ElasticSearchNxqlPageProvider.class);
 
     private static final long serialVersionUID = 1L;
@@ -95,6 +104,10 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
             if (searchOnAllRepositories()) {
                 nxQuery.searchOnAllRepositories();
             }
+            List<String> projection = getProjection();
+            if (projection != null) {
+                nxQuery.projection(projection);
+            }
             EsResult ret = ess.queryAndAggregate(nxQuery);
             DocumentModelList dmList = ret.getDocuments();
             currentAggregates = new HashMap<>(ret.getAggregates().size());
@@ -168,6 +181,24 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
         return Boolean.valueOf(value);
     }
 
+    /**
+     * @since 8.3
+     */
+    protected List<String> getProjection() {
+        String value = (String) getProperties().get(PROJECTION_PROPERTY);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        List<String> ret = new ArrayList<>();
+        for (String xpath : value.split(",")) {
+            xpath = xpath.trim();
+            if (!xpath.isEmpty()) {
+                ret.add(xpath);
+            }
+        }
+        return ret;
+    }
+
     @Override
     public boolean hasAggregateSupport() {
         return true;
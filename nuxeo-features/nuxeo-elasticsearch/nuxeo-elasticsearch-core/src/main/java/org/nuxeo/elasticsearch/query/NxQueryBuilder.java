@@ -41,6 +41,7 @@ import org.nuxeo.elasticsearch.ElasticSearchConstants;
 import org.nuxeo.elasticsearch.aggregate.AggregateEsBase;
 import org.nuxeo.elasticsearch.api.EsResult;
 import org.nuxeo.elasticsearch.fetcher.EsFetcher;
+import org.nuxeo.elasticsearch.fetcher.EsProjectionFetcher;
 import org.nuxeo.elasticsearch.fetcher.Fetcher;
 import org.nuxeo.elasticsearch.fetcher.VcsFetcher;
 import org.nuxeo.runtime.api.Framework;
@@ -95,6 +96,8 @@ public class NxQueryBuilder {
 
     private boolean esOnly = false;
 
+    private List<String> projection;
+
     public NxQueryBuilder(CoreSession coreSession) {
         session = coreSession;
         repositories.add(coreSession.getRepositoryName());
@@ -171,6 +174,18 @@ public class NxQueryBuilder {
         return this;
     }
 
+    /**
+     * Builds the returned documents from the given properties of the Elasticsearch {@code _source}, instead of loading
+     * them from the repository. The documents are only loaded from the repository when a property is not indexed.
+     *
+     * @param xpaths the top-level properties to fetch
+     * @since 8.3
+     */
+    public NxQueryBuilder projection(List<String> xpaths) {
+        projection = xpaths;
+        return this;
+    }
+
     /**
      * Don't return document model list, aggregates or rows, only the original Elasticsearch response is accessible from
      * {@link EsResult#getElasticsearchResponse()}
@@ -210,6 +225,13 @@ public class NxQueryBuilder {
         return nxql;
     }
 
+    /**
+     * @since 8.3
+     */
+    public List<String> getProjection() {
+        return projection;
+    }
+
     public boolean isFetchFromElasticsearch() {
         return fetchFromElasticsearch;
     }
@@ -333,7 +355,9 @@ public class NxQueryBuilder {
             request.setPostFilter(aggFilter);
         }
         // Fields selection
-        if (!isFetchFromElasticsearch()) {
+        if (projection != null && returnsDocuments()) {
+            request.setFetchSource(EsProjectionFetcher.getSourceIncludes(projection), null);
+        } else if (!isFetchFromElasticsearch()) {
             request.addFields(getSelectFields());
         }
 
@@ -391,6 +415,9 @@ public class NxQueryBuilder {
      * @since 6.0
      */
     public Fetcher getFetcher(SearchResponse response, Map<String, String> repoNames) {
+        if (projection != null) {
+            return new EsProjectionFetcher(session, response, repoNames, projection);
+        }
         if (isFetchFromElasticsearch()) {
             return new EsFetcher(session, response, repoNames);
         }
@@ -48,6 +48,18 @@ public class IndexingWorker extends AbstractIndexingWorker implements Work {
         return " ElasticSearch indexing for docs: " + getCmdsDigest();
     }
 
+    @Override
+    public boolean isBatchable() {
+        // reindexing is idempotent, but recursion schedules new works immediately, so they would be scheduled
+        // again if the batch fails
+        for (IndexingCommand cmd : cmds) {
+            if (needRecurse(cmd)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected boolean needRecurse(IndexingCommand cmd) {
         if (cmd.isRecurse()) {
             switch (cmd.getType()) {
@@ -20,23 +20,37 @@
 package org.nuxeo.elasticsearch.work;
 
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_BUCKET_READ_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_RANGE_COUNT_PROPERTY;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
+import org.nuxeo.ecm.core.api.PartialList;
+import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.runtime.api.Framework;
 
 /**
  * Worker to reindex a large amount of document
+ * <p>
+ * The documents are enumerated by pages ordered by {@code ecm:uuid}, each page being a new query starting after the
+ * last id of the previous one, so that no cursor or transaction is held during the whole enumeration. The last id is a
+ * checkpoint: a retried or suspended worker resumes after it.
+ * <p>
+ * When there is more than one page, the remaining id space is split into ranges of {@code ecm:uuid} prefixes, each
+ * range being enumerated by its own worker in parallel.
  *
  * @since 7.1
  */
@@ -47,22 +61,79 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
 
     private static final String DEFAULT_BUCKET_SIZE = "500";
 
+    private static final String DEFAULT_RANGE_COUNT = "16";
+
     private static final long WARN_DOC_COUNT = 500;
 
+    private static final Pattern WHERE_PATTERN = Pattern.compile("\\sWHERE\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern UUID_PATTERN = Pattern.compile(
+            "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
     protected final String nxql;
 
+    /**
+     * The lower bound of the enumerated ids, or {@code null} for no bound. It is moved after each page.
+     *
+     * @since 8.3
+     */
+    protected String lowerBound;
+
+    /** @since 8.3 */
+    protected boolean lowerBoundInclusive;
+
+    /**
+     * The exclusive upper bound of the enumerated ids, or {@code null} for no bound.
+     *
+     * @since 8.3
+     */
+    protected String upperBound;
+
+    /**
+     * Whether this worker enumerates a range resulting from a split, in which case it is not split again.
+     *
+     * @since 8.3
+     */
+    protected final boolean isRange;
+
     protected transient WorkManager workManager;
 
     protected long documentCount = 0;
 
+    /** @since 8.3 */
+    protected int bucketCount = 0;
+
     public ScrollingIndexingWorker(String repositoryName, String nxql) {
         this.repositoryName = repositoryName;
         this.nxql = nxql;
+        isRange = false;
+    }
+
+    /**
+     * Creates a worker enumerating the documents of the query whose id is in the given range.
+     *
+     * @param lowerBound the inclusive lower bound of the ids, or {@code null} for no bound
+     * @param upperBound the exclusive upper bound of the ids, or {@code null} for no bound
+     * @since 8.3
+     */
+    public ScrollingIndexingWorker(String repositoryName, String nxql, String lowerBound, String upperBound) {
+        this.repositoryName = repositoryName;
+        this.nxql = nxql;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        lowerBoundInclusive = true;
+        isRange = true;
     }
 
     @Override
     public String getTitle() {
-        return "Elasticsearch scrolling indexer: " + nxql + ", processed " + documentCount;
+        String range = isRange || upperBound != null ? " " + getRange() : "";
+        return "Elasticsearch scrolling indexer: " + nxql + range + ", processed " + documentCount;
+    }
+
+    protected String getRange() {
+        return (lowerBoundInclusive ? "[" : "(") + (lowerBound == null ? "" : lowerBound) + ", "
+                + (upperBound == null ? "" : upperBound) + ")";
     }
 
     @Override
@@ -73,8 +144,190 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
                     repositoryName));
         }
         openSystemSession();
+        String[] parts = splitQuery(nxql);
+        if (parts == null) {
+            // the query cannot be enumerated by pages
+            doWorkWithCursor(jobName);
+            return;
+        }
+        int bucketSize = getBucketSize();
+        int rangeCount = isRange ? 1 : getRangeCount();
+        boolean warnAtEnd = false;
+        try {
+            for (;;) {
+                List<String> ids = fetchNextIds(parts[0], parts[1], bucketSize);
+                boolean hasMore = ids.size() == bucketSize;
+                documentCount += ids.size();
+                if (!ids.isEmpty()) {
+                    lowerBound = ids.get(ids.size() - 1);
+                    lowerBoundInclusive = false;
+                    bucketCount += 1;
+                }
+                if (!hasMore && documentCount > WARN_DOC_COUNT) {
+                    warnAtEnd = true;
+                }
+                scheduleBucketWorker(ids, warnAtEnd);
+                setStatus("Processed " + documentCount + " documents, next range " + getRange());
+                if (!hasMore) {
+                    break;
+                }
+                if (rangeCount > 1) {
+                    splitRange(rangeCount);
+                    rangeCount = 1;
+                }
+                // don't keep the transaction open between pages
+                commitOrRollbackTransaction();
+                startTransaction();
+                if (isSuspending()) {
+                    // the bounds are saved with the work
+                    suspended();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error(String.format("Re-indexing job: %s failed after %d documents, remaining range: %s", jobName,
+                    documentCount, getRange()));
+            throw e;
+        }
+        if (warnAtEnd || log.isDebugEnabled()) {
+            String message = String.format(
+                    "Re-indexing job: %s has submited %d documents in %d bucket workers, range: %s", jobName,
+                    documentCount, bucketCount, getRange());
+            if (warnAtEnd) {
+                log.warn(message);
+            } else {
+                log.debug(message);
+            }
+        }
+    }
+
+    /**
+     * Splits a query into its part before the {@code WHERE} clause and its {@code WHERE} clause predicate (or
+     * {@code null}).
+     *
+     * @return the query parts, or {@code null} if the query has clauses preventing an enumeration by pages
+     * @since 8.3
+     */
+    protected static String[] splitQuery(String nxql) {
+        SQLQuery query;
+        try {
+            query = SQLQueryParser.parse(nxql);
+        } catch (QueryParseException e) {
+            return null;
+        }
+        if ((query.orderBy != null && !query.orderBy.elements.isEmpty())
+                || (query.groupBy != null && query.groupBy.elements != null && query.groupBy.elements.length > 0)
+                || (query.having != null && query.having.predicate != null) || query.limit != 0
+                || query.offset != 0) {
+            return null;
+        }
+        if (query.where == null || query.where.predicate == null) {
+            return new String[] { nxql, null };
+        }
+        // the select and from clauses have no literals, so the first WHERE is the keyword
+        Matcher m = WHERE_PATTERN.matcher(nxql);
+        if (!m.find()) {
+            return null;
+        }
+        return new String[] { nxql.substring(0, m.start()).trim(), nxql.substring(m.end()).trim() };
+    }
+
+    /**
+     * Builds the query of the next page of ids.
+     *
+     * @since 8.3
+     */
+    protected String getPageQuery(String select, String where) {
+        List<String> clauses = new ArrayList<>(3);
+        if (where != null) {
+            clauses.add("(" + where + ")");
+        }
+        if (lowerBound != null) {
+            clauses.add(NXQL.ECM_UUID + (lowerBoundInclusive ? " >= " : " > ") + NXQL.escapeString(lowerBound));
+        }
+        if (upperBound != null) {
+            clauses.add(NXQL.ECM_UUID + " < " + NXQL.escapeString(upperBound));
+        }
+        StringBuilder sb = new StringBuilder(select);
+        if (!clauses.isEmpty()) {
+            sb.append(" WHERE ").append(String.join(" AND ", clauses));
+        }
+        sb.append(" ORDER BY ").append(NXQL.ECM_UUID);
+        return sb.toString();
+    }
+
+    /**
+     * Fetches the ids of the next page.
+     * <p>
+     * The page is a limited projection query, so that the database only reads the ids of the page and the whole
+     * enumeration stays linear, and no document is loaded before the bucket workers do.
+     *
+     * @since 8.3
+     */
+    protected List<String> fetchNextIds(String select, String where, int bucketSize) {
+        PartialList<Map<String, Serializable>> rows = session.queryProjection(getPageQuery(select, where), bucketSize,
+                0);
+        List<String> ids = new ArrayList<>(rows.list.size());
+        for (Map<String, Serializable> row : rows.list) {
+            ids.add((String) row.get(NXQL.ECM_UUID));
+        }
+        return ids;
+    }
+
+    /**
+     * Splits the remaining ids into ranges, this worker keeps the first one and new workers are
+     * scheduled for the other ones. Only done for UUID ids.
+     *
+     * @since 8.3
+     */
+    protected void splitRange(int rangeCount) {
+        if (!UUID_PATTERN.matcher(lowerBound).matches()) {
+            // ids are not random hexadecimal UUIDs (sequence or custom ids), prefixes don't split them evenly
+            log.debug("Re-indexing job: not splitting range, ids are not UUIDs: " + lowerBound);
+            return;
+        }
+        List<String> bounds = getRangeBounds(rangeCount, lowerBound, upperBound);
+        if (bounds.isEmpty()) {
+            return;
+        }
+        String end = upperBound;
+        upperBound = bounds.get(0);
+        for (int i = 0; i < bounds.size(); i++) {
+            String upper = i + 1 < bounds.size() ? bounds.get(i + 1) : end;
+            getWorkManager().schedule(new ScrollingIndexingWorker(repositoryName, nxql, bounds.get(i), upper));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Re-indexing job: %s split into %d ranges after id: %s",
+                    getSchedulePath().getPath(), bounds.size() + 1, lowerBound));
+        }
+    }
+
+    /**
+     * Gets the bounds splitting the UUIDs into ranges of about the same size, between the given bounds. They are full
+     * UUIDs, as a repository storing ids in a {@code uuid} column cannot compare them to a prefix, and they compare as
+     * strings like the two hexadecimal digits prefix they start with.
+     *
+     * @since 8.3
+     */
+    protected static List<String> getRangeBounds(int rangeCount, String lowerBound, String upperBound) {
+        List<String> bounds = new ArrayList<>(rangeCount);
+        for (int i = 1; i < rangeCount; i++) {
+            String bound = String.format("%02x000000-0000-0000-0000-000000000000",
+                    Integer.valueOf(i * 256 / rangeCount));
+            if (bound.compareTo(lowerBound) > 0 && (upperBound == null || bound.compareTo(upperBound) < 0)) {
+                bounds.add(bound);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Enumerates the ids of all the documents using a single cursor.
+     *
+     * @since 8.3
+     */
+    protected void doWorkWithCursor(String jobName) {
         IterableQueryResult res = session.queryAndFetch(nxql, NXQL.NXQL);
-        int bucketCount = 0;
         boolean warnAtEnd = false;
         try {
             Iterator<Map<String, Serializable>> it = res.iterator();
@@ -130,4 +383,14 @@ public class ScrollingIndexingWorker extends BaseIndexingWorker implements Work
         return Integer.parseInt(value);
     }
 
+    /**
+     * Gets the number of ranges into which the ids are split, at most 256.
+     *
+     * @since 8.3
+     */
+    protected int getRangeCount() {
+        String value = Framework.getProperty(REINDEX_RANGE_COUNT_PROPERTY, DEFAULT_RANGE_COUNT);
+        return Math.max(1, Math.min(256, Integer.parseInt(value)));
+    }
+
 }
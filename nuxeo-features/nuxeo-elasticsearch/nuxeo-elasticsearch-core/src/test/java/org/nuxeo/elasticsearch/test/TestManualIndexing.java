@@ -181,4 +181,55 @@ public class TestManualIndexing {
         Assert.assertEquals(1, searchResponse.getHits().getTotalHits());
     }
 
+    protected DocumentModel createDocumentWithoutIndexing(String name) {
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.setPropertyValue("dc:title", name);
+        doc.putContextData(ElasticSearchConstants.DISABLE_AUTO_INDEXING, Boolean.TRUE);
+        return session.createDocument(doc);
+    }
+
+    protected long countIndexedDocuments() {
+        esa.refresh();
+        SearchResponse searchResponse = esa.getClient().prepareSearch(IDX_NAME).setSearchType(
+                SearchType.DFS_QUERY_THEN_FETCH).setFrom(0).setSize(60).execute().actionGet();
+        return searchResponse.getHits().getTotalHits();
+    }
+
+    @Test
+    public void checkBulkDeleteDroppedWhenDocumentIsIndexedAgain() throws Exception {
+        startTransaction();
+        DocumentModel doc1 = createDocumentWithoutIndexing("doc1");
+        DocumentModel doc2 = createDocumentWithoutIndexing("doc2");
+        session.save();
+        esi.indexNonRecursive(Arrays.asList(new IndexingCommand(doc1, Type.INSERT, true, false),
+                new IndexingCommand(doc2, Type.INSERT, true, false)));
+        Assert.assertEquals(2, countIndexedDocuments());
+
+        // the delete is replaced by the index request of the same document
+        esi.indexNonRecursive(Arrays.asList(new IndexingCommand(doc1, Type.DELETE, true, false),
+                new IndexingCommand(doc1, Type.UPDATE, true, false), new IndexingCommand(doc2, Type.UPDATE, true,
+                        false)));
+        assertNumberOfCommandProcessed(5);
+        Assert.assertEquals(2, countIndexedDocuments());
+    }
+
+    @Test
+    public void checkBulkDeleteKeptWhenDocumentIsGone() throws Exception {
+        startTransaction();
+        DocumentModel doc1 = createDocumentWithoutIndexing("doc1");
+        DocumentModel doc2 = createDocumentWithoutIndexing("doc2");
+        session.save();
+        esi.indexNonRecursive(Arrays.asList(new IndexingCommand(doc1, Type.INSERT, true, false),
+                new IndexingCommand(doc2, Type.INSERT, true, false)));
+        Assert.assertEquals(2, countIndexedDocuments());
+
+        IndexingCommand delete = new IndexingCommand(doc1, Type.DELETE, true, false);
+        IndexingCommand update = new IndexingCommand(doc1, Type.UPDATE, true, false);
+        session.removeDocument(doc1.getRef());
+        session.save();
+        // the document cannot be indexed again, so the delete is sent after all
+        esi.indexNonRecursive(Arrays.asList(delete, update, new IndexingCommand(doc2, Type.UPDATE, true, false)));
+        Assert.assertEquals(1, countIndexedDocuments());
+    }
+
 }
@@ -22,6 +22,7 @@ package org.nuxeo.elasticsearch.test;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -229,6 +230,47 @@ public class TestPageProvider {
 
     }
 
+    @Test
+    public void ICanUseANxqlPageProviderWithProjection() throws Exception {
+        PageProviderService pps = Framework.getService(PageProviderService.class);
+        PageProviderDefinition ppdef = pps.getPageProviderDefinition("NXQL_PP_PATTERN");
+        Assert.assertNotNull(ppdef);
+
+        HashMap<String, Serializable> props = new HashMap<String, Serializable>();
+        props.put(ElasticSearchNativePageProvider.CORE_SESSION_PROPERTY, (Serializable) session);
+        props.put(ElasticSearchNxqlPageProvider.PROJECTION_PROPERTY, "dc:title, dc:modified");
+        long pageSize = 5;
+        ElasticSearchNxqlPageProvider pp = (ElasticSearchNxqlPageProvider) pps.getPageProvider("NXQL_PP_PATTERN",
+                ppdef, null, null, pageSize, (long) 0, props);
+
+        startTransaction();
+        for (int i = 0; i < 10; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "testDoc" + i, "File");
+            doc.setPropertyValue("dc:title", "TestMe" + i);
+            doc = session.createDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        waitForCompletion();
+
+        startTransaction();
+        List<DocumentModel> p = (List<DocumentModel>) pp.getCurrentPage();
+        Assert.assertEquals(10, pp.getResultsCount());
+        Assert.assertEquals(pageSize, p.size());
+        DocumentModel doc = p.get(0);
+        Assert.assertEquals("TestMe9", doc.getTitle());
+        Assert.assertEquals("/testDoc9", doc.getPathAsString());
+        Assert.assertEquals("File", doc.getType());
+        Assert.assertTrue(doc.getPropertyValue("dc:modified") instanceof Calendar);
+        // only the projected schemas are built from the index
+        Assert.assertTrue(((DocumentModelImpl) doc).isSchemaLoaded("dublincore"));
+        Assert.assertFalse(((DocumentModelImpl) doc).isSchemaLoaded("file"));
+
+        pp.nextPage();
+        p = (List<DocumentModel>) pp.getCurrentPage();
+        Assert.assertEquals(pageSize, p.size());
+        Assert.assertEquals("TestMe0", p.get((int) pageSize - 1).getTitle());
+    }
+
     @Test
     public void ICanUseANxqlPageProviderWithParameters() throws Exception {
         PageProviderService pps = Framework.getService(PageProviderService.class);
@@ -19,7 +19,17 @@
 
 package org.nuxeo.elasticsearch.test;
 
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_BUCKET_READ_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.REINDEX_RANGE_COUNT_PROPERTY;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -34,8 +44,10 @@ import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.PathRef;
 import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
 import org.nuxeo.ecm.core.api.impl.blob.StringBlob;
 import org.nuxeo.ecm.core.trash.TrashService;
+import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.platform.tag.TagService;
 import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
@@ -43,6 +55,7 @@ import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
 import org.nuxeo.elasticsearch.api.ElasticSearchService;
 import org.nuxeo.elasticsearch.listener.ElasticSearchInlineListener;
 import org.nuxeo.elasticsearch.query.NxQueryBuilder;
+import org.nuxeo.elasticsearch.work.ScrollingIndexingWorker;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
@@ -155,6 +168,104 @@ public class TestReindex {
 
     }
 
+    @Test
+    public void shouldReindexDocumentByRanges() throws Exception {
+        buildDocs();
+        startTransaction();
+
+        String nxql = "SELECT * FROM Document WHERE ecm:isProxy = 0 order by ecm:uuid";
+        DocumentModelList coreDocs = session.query(nxql);
+        esa.initIndexes(true);
+        esa.refresh();
+        // small pages, so that the ids are split into ranges
+        Framework.getProperties().setProperty(REINDEX_BUCKET_READ_PROPERTY, "3");
+        Framework.getProperties().setProperty(REINDEX_RANGE_COUNT_PROPERTY, "4");
+        try {
+            esi.runReindexingWorker(session.getRepositoryName(), "SELECT * FROM Document WHERE ecm:isProxy = 0");
+            waitForCompletion();
+        } finally {
+            Framework.getProperties().remove(REINDEX_BUCKET_READ_PROPERTY);
+            Framework.getProperties().remove(REINDEX_RANGE_COUNT_PROPERTY);
+        }
+        DocumentModelList docs = ess.query(new NxQueryBuilder(session).nxql(nxql).limit(100));
+
+        Assert.assertEquals(getDigest(coreDocs), getDigest(docs));
+    }
+
+    /**
+     * Worker in the state saved after a page ending with the given id, as when it's suspended or retried.
+     */
+    protected static class CheckpointedIndexingWorker extends ScrollingIndexingWorker {
+
+        private static final long serialVersionUID = 1L;
+
+        public CheckpointedIndexingWorker(String repositoryName, String nxql, String checkpoint) {
+            super(repositoryName, nxql);
+            lowerBound = checkpoint;
+            lowerBoundInclusive = false;
+        }
+
+        protected static List<String> rangeBounds(int rangeCount, String lowerBound, String upperBound) {
+            return getRangeBounds(rangeCount, lowerBound, upperBound);
+        }
+    }
+
+    @Test
+    public void shouldSplitRangesWithUUIDBounds() throws Exception {
+        String first = "0a1b2c3d-0000-4000-8000-000000000000";
+        List<String> bounds = CheckpointedIndexingWorker.rangeBounds(4, first, null);
+        Assert.assertEquals(Arrays.asList("40000000-0000-0000-0000-000000000000",
+                "80000000-0000-0000-0000-000000000000", "c0000000-0000-0000-0000-000000000000"), bounds);
+        for (String bound : bounds) {
+            // valid for a repository storing ids as uuid
+            Assert.assertEquals(bound, UUID.fromString(bound).toString());
+        }
+        // only the bounds inside the range
+        Assert.assertEquals(Collections.singletonList("80000000-0000-0000-0000-000000000000"),
+                CheckpointedIndexingWorker.rangeBounds(4, "40000000-0000-0000-0000-000000000000",
+                        "c0000000-0000-0000-0000-000000000000"));
+        Assert.assertEquals(Collections.emptyList(),
+                CheckpointedIndexingWorker.rangeBounds(4, "c1000000-0000-4000-8000-000000000000", null));
+    }
+
+    protected static Work serializeAndDeserialize(Work work) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+            out.writeObject(work);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            return (Work) in.readObject();
+        }
+    }
+
+    @Test
+    public void shouldResumeReindexingAfterCheckpoint() throws Exception {
+        buildDocs();
+        startTransaction();
+
+        String nxql = "SELECT * FROM Document WHERE ecm:isProxy = 0 order by ecm:uuid";
+        DocumentModelList coreDocs = session.query(nxql);
+        Assert.assertTrue(coreDocs.size() > 5);
+        esa.initIndexes(true);
+        esa.refresh();
+        String checkpoint = coreDocs.get(4).getId();
+        Framework.getProperties().setProperty(REINDEX_BUCKET_READ_PROPERTY, "3");
+        try {
+            // the saved state is restored, as for a suspended work
+            Work work = serializeAndDeserialize(new CheckpointedIndexingWorker(session.getRepositoryName(),
+                    "SELECT * FROM Document WHERE ecm:isProxy = 0", checkpoint));
+            workManager.schedule(work);
+            waitForCompletion();
+        } finally {
+            Framework.getProperties().remove(REINDEX_BUCKET_READ_PROPERTY);
+        }
+        DocumentModelList docs = ess.query(new NxQueryBuilder(session).nxql(nxql).limit(100));
+
+        // only the documents after the checkpoint are indexed
+        DocumentModelList expected = new DocumentModelListImpl(coreDocs.subList(5, coreDocs.size()));
+        Assert.assertEquals(getDigest(expected), getDigest(docs));
+    }
+
     private void buildDocs() throws Exception {
         startTransaction();
 
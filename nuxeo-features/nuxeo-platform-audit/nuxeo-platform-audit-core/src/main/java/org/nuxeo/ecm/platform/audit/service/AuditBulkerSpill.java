@@ -0,0 +1,351 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+
+/**
+ * Append-only spill files receiving the audit entries that don't fit in the bulker queue.
+ * <p>
+ * Entries are appended to the current file as length-prefixed serialized records, each one written through to the file.
+ * To replay them, the current file is rotated and read back in batches, then deleted. If a batch cannot be flushed,
+ * the entries not yet flushed are kept in their file, which is replayed again later with the following ones. Records
+ * that cannot be read back are dropped. Files left by a previous run (crash or shutdown with a full queue) are replayed
+ * separately by {@link #recover}.
+ *
+ * @since 8.3
+ */
+public class AuditBulkerSpill {
+
+    private static final Log log = LogFactory.getLog(AuditBulkerSpill.class);
+
+    protected static final String PREFIX = "spill-";
+
+    protected static final String SUFFIX = ".bin";
+
+    protected final File dir;
+
+    protected final AtomicLong pending = new AtomicLong();
+
+    protected final AtomicLong spilled = new AtomicLong();
+
+    protected File current;
+
+    protected DataOutputStream out;
+
+    protected long sequence;
+
+    /** Number of records of each file of this run still counted as pending. */
+    protected final Map<File, Long> records = new HashMap<>();
+
+    /** Files written and closed, to replay. */
+    protected final List<File> closed = new ArrayList<>();
+
+    /** Files left by a previous run. */
+    protected final List<File> previous;
+
+    /** Serializes the replays. */
+    protected final Object replayLock = new Object();
+
+    public AuditBulkerSpill(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        previous = files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+        Collections.sort(previous);
+    }
+
+    /**
+     * Number of spilled entries not yet replayed, excluding files left by a previous run.
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Total number of spilled entries.
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public synchronized void append(LogEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(entry);
+        }
+        if (out == null) {
+            current = new File(dir, String.format("%s%013d-%06d%s", PREFIX, Long.valueOf(System.currentTimeMillis()),
+                    Long.valueOf(sequence++), SUFFIX));
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(current, true)));
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+        // one write per record, and nothing lost in the buffer if the process dies
+        out.flush();
+        records.merge(current, Long.valueOf(1), Long::sum);
+        pending.incrementAndGet();
+        spilled.incrementAndGet();
+    }
+
+    /**
+     * Closes the current file so that it can be replayed, new entries will go to a new file.
+     */
+    protected synchronized void rotate() throws IOException {
+        if (out != null) {
+            out.close();
+            closed.add(current);
+            out = null;
+            current = null;
+        }
+    }
+
+    /**
+     * Replays the entries spilled so far, in batches.
+     *
+     * @param batchSize the batch size
+     * @param flusher the receiver of the batches, throwing if a batch could not be flushed
+     * @return the number of replayed entries
+     */
+    public long replay(int batchSize, Consumer<List<LogEntry>> flusher) throws IOException {
+        return replay(batchSize, flusher, count -> {
+        });
+    }
+
+    /**
+     * Replays the entries spilled so far, in batches.
+     *
+     * @param batchSize the batch size
+     * @param flusher the receiver of the batches, throwing if a batch could not be flushed
+     * @param dropped the receiver of the number of entries dropped because they could not be read back
+     * @return the number of replayed entries
+     */
+    public long replay(int batchSize, Consumer<List<LogEntry>> flusher, LongConsumer dropped) throws IOException {
+        synchronized (replayLock) {
+            List<File> files;
+            synchronized (this) {
+                rotate();
+                files = new ArrayList<>(closed);
+                closed.clear();
+            }
+            return replay(files, batchSize, flusher, dropped, true);
+        }
+    }
+
+    /**
+     * Replays the entries left by a previous run, in batches.
+     *
+     * @param batchSize the batch size
+     * @param flusher the receiver of the batches, throwing if a batch could not be flushed
+     * @return the number of replayed entries
+     */
+    public long recover(int batchSize, Consumer<List<LogEntry>> flusher) throws IOException {
+        synchronized (replayLock) {
+            List<File> files = new ArrayList<>(previous);
+            previous.clear();
+            long count = replay(files, batchSize, flusher, c -> {
+            }, false);
+            if (count > 0) {
+                log.info("Recovered " + count + " audit entries from spill files");
+            }
+            return count;
+        }
+    }
+
+    protected long replay(List<File> files, int batchSize, Consumer<List<LogEntry>> flusher, LongConsumer dropped,
+            boolean counted) {
+        long count = 0;
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            try {
+                count += replay(file, batchSize, flusher, dropped, counted);
+            } catch (RuntimeException | IOException e) {
+                log.error("Cannot flush audit entries from spill file: " + file + ", keeping them for a later replay",
+                        e);
+                keep(files.subList(i, files.size()), counted);
+                break;
+            }
+            if (!file.delete()) {
+                log.error("Cannot delete audit spill file: " + file);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Puts back files whose replay failed, to be replayed first next time.
+     */
+    protected void keep(List<File> files, boolean counted) {
+        if (counted) {
+            synchronized (this) {
+                closed.addAll(0, files);
+            }
+        } else {
+            previous.addAll(0, files);
+        }
+    }
+
+    protected long replay(File file, int batchSize, Consumer<List<LogEntry>> flusher, LongConsumer dropped,
+            boolean counted) throws IOException {
+        long count = 0;
+        List<LogEntry> batch = new ArrayList<>(batchSize);
+        // offset of the first record of the current batch
+        long batchOffset = 0;
+        long offset = 0;
+        long length = file.length();
+        try {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for (;;) {
+                    byte[] bytes;
+                    try {
+                        int size = in.readInt();
+                        if (size < 0 || size > length - offset - 4) {
+                            log.warn("Truncated or corrupted record in audit spill file: " + file
+                                    + ", ignoring the end of the file");
+                            break;
+                        }
+                        bytes = new byte[size];
+                        in.readFully(bytes);
+                    } catch (EOFException e) {
+                        // end of file, or record truncated by a crash
+                        break;
+                    }
+                    offset += 4 + bytes.length;
+                    LogEntry entry;
+                    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        entry = (LogEntry) ois.readObject();
+                    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                        log.error("Cannot read audit entry from spill file: " + file + ", skipping it", e);
+                        continue;
+                    }
+                    batch.add(entry);
+                    if (batch.size() >= batchSize) {
+                        count += flush(batch, flusher, counted);
+                        batch = new ArrayList<>(batchSize);
+                        batchOffset = offset;
+                    }
+                }
+            }
+            count += flush(batch, flusher, counted);
+        } catch (RuntimeException | IOException e) {
+            // the batches before this one are flushed, don't replay them again
+            removeHead(file, batchOffset);
+            if (counted) {
+                long flushed = count;
+                synchronized (this) {
+                    records.computeIfPresent(file, (f, n) -> Long.valueOf(n.longValue() - flushed));
+                }
+            }
+            throw e;
+        }
+        if (counted) {
+            // the records of the file that were not flushed could not be read back
+            Long n;
+            synchronized (this) {
+                n = records.remove(file);
+            }
+            long lost = n == null ? 0 : n.longValue() - count;
+            if (lost > 0) {
+                log.error("Dropped " + lost + " unreadable audit entries from spill file: " + file);
+                pending.addAndGet(-lost);
+                dropped.accept(lost);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Removes the records before the given offset from a file.
+     */
+    protected void removeHead(File file, long offset) throws IOException {
+        if (offset == 0) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel src = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                FileChannel dst = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = src.size();
+            for (long position = offset; position < size;) {
+                position += src.transferTo(position, size - position, dst);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    protected int flush(List<LogEntry> batch, Consumer<List<LogEntry>> flusher, boolean counted) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int size = batch.size();
+        // not pending anymore once the flusher reports them flushed
+        if (counted) {
+            pending.addAndGet(-size);
+        }
+        try {
+            flusher.accept(batch);
+        } catch (RuntimeException e) {
+            if (counted) {
+                pending.addAndGet(size);
+            }
+            throw e;
+        }
+        return size;
+    }
+
+    public boolean hasPrevious() {
+        synchronized (replayLock) {
+            return !previous.isEmpty();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        rotate();
+    }
+
+}
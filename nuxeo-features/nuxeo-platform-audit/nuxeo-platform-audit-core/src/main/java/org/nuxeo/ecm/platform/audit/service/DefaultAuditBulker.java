@@ -18,16 +18,21 @@
  */
 package org.nuxeo.ecm.platform.audit.service;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.platform.audit.api.LogEntry;
 import org.nuxeo.ecm.platform.audit.service.extension.AuditBulkerDescriptor;
 import org.nuxeo.ecm.platform.audit.service.management.AuditBulkerMBean;
@@ -39,7 +44,19 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
-
+import com.codahale.metrics.Timer;
+
+/**
+ * Audit bulker feeding the backend from a bounded queue drained by several consumer threads.
+ * <p>
+ * Each consumer flushes a batch when it reaches the bulk size or when its first entry has waited for the bulk timeout.
+ * The batch size adapts to the backend: it is halved when a flush takes longer than the configured latency, and grows
+ * back while flushes are fast and batches full.
+ * <p>
+ * When the queue is full, entries are appended to a local spill file instead of being kept on the heap, and are
+ * replayed once the queue is drained, staying in the spill file as long as the backend fails to store them. Entries
+ * still queued at shutdown are spilled too, and replayed at next startup.
+ */
 public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     final Log log = LogFactory.getLog(DefaultAuditBulker.class);
@@ -55,47 +72,105 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     };
 
+    final Gauge<Long> spillGauge = new Gauge<Long>() {
+
+        @Override
+        public Long getValue() {
+            return spill.getPending();
+        }
+
+    };
+
     final AuditBackend backend;
 
     final Counter queuedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "queued"));
 
     final Counter drainedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "drained"));
 
+    final Counter spilledCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "spilled"));
+
+    final Timer batchTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "batch"));
+
     int timeout;
 
     int size;
 
-    Thread thread;
+    int latency;
+
+    final int consumers;
+
+    final BlockingQueue<LogEntry> queue;
+
+    final AuditBulkerSpill spill;
+
+    /** Current adaptive batch size. */
+    volatile int batchSize;
+
+    Thread[] threads;
 
     DefaultAuditBulker(AuditBackend backend, AuditBulkerDescriptor config) {
         this.backend = backend;
         timeout = config.timeout;
         size = config.size;
+        latency = config.latency;
+        consumers = Math.max(1, config.consumers);
+        batchSize = size;
+        queue = new LinkedBlockingQueue<>(config.capacity);
+        spill = new AuditBulkerSpill(getSpillDirectory());
+    }
+
+    protected File getSpillDirectory() {
+        Environment env = Environment.getDefault();
+        File base = env == null ? new File(System.getProperty("java.io.tmpdir")) : env.getData();
+        return new File(base, "audit-spill");
     }
 
     @Override
     public void onApplicationStarted() {
-        thread = new Thread(new Consumer(), "Nuxeo-Audit-Bulker");
-        thread.start();
+        stopped = false;
+        threads = new Thread[consumers];
+        for (int i = 0; i < consumers; i++) {
+            threads[i] = new Thread(new Consumer(), "Nuxeo-Audit-Bulker-" + i);
+            threads[i].start();
+        }
         ResourcePublisher publisher = Framework.getService(ResourcePublisher.class);
         if (publisher != null) {
             publisher.registerResource("audit-bulker", "audit-bulker", AuditBulkerMBean.class, this);
         }
         registry.register(MetricRegistry.name("nuxeo", "audit", "size"), sizeGauge);
+        registry.register(MetricRegistry.name("nuxeo", "audit", "spill"), spillGauge);
     }
 
     @Override
     public void onShutdown() {
         registry.remove(MetricRegistry.name("nuxeo", "audit", "size"));
+        registry.remove(MetricRegistry.name("nuxeo", "audit", "spill"));
         ResourcePublisher publisher = Framework.getService(ResourcePublisher.class);
         if (publisher != null) {
             publisher.unregisterResource("audit-bulker", "audit-bulker");
         }
         stopped = true;
         try {
-            thread.interrupt();
+            // let the consumers finish their current batch
+            for (Thread thread : threads) {
+                thread.join(timeout);
+                thread.interrupt();
+            }
+        } catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
         } finally {
-            thread = null;
+            threads = null;
+        }
+        // keep what's left for next startup
+        List<LogEntry> entries = new ArrayList<>();
+        queue.drainTo(entries);
+        for (LogEntry entry : entries) {
+            spill(entry);
+        }
+        try {
+            spill.close();
+        } catch (IOException cause) {
+            log.error("caught error while closing audit spill file", cause);
         }
     }
 
@@ -103,9 +178,11 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     final Condition isEmpty = lock.newCondition();
 
-    final Condition isFilled = lock.newCondition();
+    /** Entries offered and not yet flushed, including spilled ones. */
+    final AtomicLong pending = new AtomicLong();
 
-    final Queue<LogEntry> queue = new ConcurrentLinkedQueue<>();
+    /** Number of threads waiting for the entries to be flushed. */
+    final AtomicInteger awaiting = new AtomicInteger();
 
     volatile boolean stopped;
 
@@ -114,12 +191,29 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         if (log.isDebugEnabled()) {
             log.debug("offered " + entry);
         }
-        queue.add(entry);
+        pending.incrementAndGet();
         queuedCount.inc();
-        if (queue.size() >= size) {
+        if (!queue.offer(entry)) {
+            // back-pressure, don't keep it on the heap
+            spill(entry);
+        }
+    }
+
+    void spill(LogEntry entry) {
+        try {
+            spill.append(entry);
+            spilledCount.inc();
+        } catch (IOException cause) {
+            log.error("caught error while spilling audit entry, entry lost: " + entry, cause);
+            flushed(1);
+        }
+    }
+
+    void flushed(int count) {
+        if (pending.addAndGet(-count) <= 0) {
             lock.lock();
             try {
-                isFilled.signalAll();
+                isEmpty.signalAll();
             } finally {
                 lock.unlock();
             }
@@ -128,34 +222,86 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     @Override
     public boolean await(long time, TimeUnit unit) throws InterruptedException {
-        if (queue.isEmpty()) {
-            return true;
-        }
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        awaiting.incrementAndGet();
         lock.lock();
         try {
-            isFilled.signalAll();
-            return isEmpty.await(time, unit);
+            while (pending.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                isEmpty.awaitNanos(remaining);
+            }
+            return true;
         } finally {
             lock.unlock();
+            awaiting.decrementAndGet();
         }
     }
 
-    int drain() {
-        List<LogEntry> entries = new LinkedList<>();
-        while (!queue.isEmpty()) {
-            entries.add(queue.remove());
+    void flush(List<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
         }
-        backend.addLogEntries(entries);
-        drainedCount.inc(entries.size());
-        if (queue.isEmpty()) {
-            lock.lock();
-            try {
-                isEmpty.signalAll();
-            } finally {
-                lock.unlock();
+        try {
+            store(entries);
+        } catch (RuntimeException cause) {
+            log.error("caught error while draining audit queue", cause);
+        } finally {
+            flushed(entries.size());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("flushed " + entries.size() + " events");
+        }
+    }
+
+    /**
+     * Stores entries in the backend, throwing if they could not be stored.
+     */
+    void store(List<LogEntry> entries) {
+        long start = System.nanoTime();
+        try {
+            backend.addLogEntries(entries);
+            drainedCount.inc(entries.size());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batchTimer.update(elapsed, TimeUnit.NANOSECONDS);
+            adapt(entries.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    /**
+     * Adapts the batch size to the backend latency.
+     */
+    void adapt(int flushedSize, long elapsedMillis) {
+        int current = batchSize;
+        if (latency > 0 && elapsedMillis > latency) {
+            batchSize = Math.max(1, current / 2);
+        } else if (flushedSize >= current && current < size) {
+            batchSize = Math.min(size, current + Math.max(1, size / 10));
+        } else if (current > size) {
+            // bulk size was lowered
+            batchSize = size;
+        }
+    }
+
+    void replaySpill() {
+        try {
+            // entries failing to be stored are kept in the spill files for a later replay
+            if (spill.hasPrevious()) {
+                // entries of a previous run are not counted as pending
+                spill.recover(batchSize, this::store);
+            }
+            if (spill.getPending() > 0) {
+                spill.replay(batchSize, entries -> {
+                    store(entries);
+                    flushed(entries.size());
+                }, dropped -> flushed((int) dropped));
             }
+        } catch (IOException cause) {
+            log.error("caught error while replaying audit spill file", cause);
         }
-        return entries.size();
     }
 
     class Consumer implements Runnable {
@@ -164,23 +310,19 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         public void run() {
             log.info("bulk audit logger started");
             while (!stopped) {
-                lock.lock();
                 try {
-                    isFilled.await(timeout, TimeUnit.MILLISECONDS);
-                    if (queue.isEmpty()) {
+                    List<LogEntry> entries = nextBatch();
+                    if (entries.isEmpty()) {
+                        replaySpill();
                         continue;
                     }
+                    flush(entries);
+                    if (queue.isEmpty()) {
+                        replaySpill();
+                    }
                 } catch (InterruptedException cause) {
                     Thread.currentThread().interrupt();
                     return;
-                } finally {
-                    lock.unlock();
-                }
-                try {
-                    int count = drain();
-                    if (log.isDebugEnabled()) {
-                        log.debug("flushed " + count + " events");
-                    }
                 } catch (RuntimeException cause) {
                     log.error("caught error while draining audit queue", cause);
                 }
@@ -188,6 +330,37 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
             log.info("bulk audit logger stopped");
         }
 
+        /**
+         * Waits for a batch to be full, or for its first entry to have waited for the bulk timeout. Returns early if
+         * someone awaits the flush.
+         */
+        List<LogEntry> nextBatch() throws InterruptedException {
+            int max = batchSize;
+            List<LogEntry> entries = new ArrayList<>(max);
+            LogEntry entry = queue.poll(timeout, TimeUnit.MILLISECONDS);
+            if (entry == null) {
+                return entries;
+            }
+            entries.add(entry);
+            long deadline = System.currentTimeMillis() + timeout;
+            while (entries.size() < max && !stopped) {
+                queue.drainTo(entries, max - entries.size());
+                if (entries.size() >= max) {
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || awaiting.get() > 0) {
+                    break;
+                }
+                entry = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    break;
+                }
+                entries.add(entry);
+            }
+            return entries;
+        }
+
     }
 
     @Override
@@ -210,9 +383,60 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         size = value;
     }
 
+    @Override
+    public int getBulkLatency() {
+        return latency;
+    }
+
+    @Override
+    public void setBulkLatency(int value) {
+        latency = value;
+    }
+
+    @Override
+    public int getCurrentBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public int getConsumers() {
+        return consumers;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilledCount.getCount();
+    }
+
+    @Override
+    public long getSpillPendingCount() {
+        return spill.getPending();
+    }
+
+    @Override
+    public double getBatchLatencyMean() {
+        return batchTimer.getSnapshot().getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getBatchLatency99() {
+        return batchTimer.getSnapshot().get99thPercentile() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
     @Override
     public void resetMetrics() {
         queuedCount.dec(queuedCount.getCount());
         drainedCount.dec(drainedCount.getCount());
+        spilledCount.dec(spilledCount.getCount());
     }
 }
@@ -41,6 +41,30 @@ public class AuditBulkerDescriptor implements Serializable {
     @XNode("size")
     public int size = 1000;
 
+    /**
+     * Flush duration above which the batch size is reduced, in milliseconds, {@code 0} to disable.
+     *
+     * @since 8.3
+     */
+    @XNode("latency")
+    public int latency = 2000;
+
+    /**
+     * Number of threads flushing to the backend.
+     *
+     * @since 8.3
+     */
+    @XNode("consumers")
+    public int consumers = 1;
+
+    /**
+     * Maximum number of entries kept in memory, above which entries are spilled to disk.
+     *
+     * @since 8.3
+     */
+    @XNode("capacity")
+    public int capacity = 100000;
+
     public AuditBulker newInstance(AuditBackend backend) {
         try {
             Constructor<? extends AuditBulker> declaredConstructor = klass.getDeclaredConstructor(AuditBackend.class, AuditBulkerDescriptor.class);
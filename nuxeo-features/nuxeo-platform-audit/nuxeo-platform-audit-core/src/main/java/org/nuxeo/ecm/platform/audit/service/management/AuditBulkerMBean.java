@@ -23,5 +23,65 @@ public interface AuditBulkerMBean {
 
     void setBulkSize(int value);
 
+    /**
+     * @since 8.3
+     */
+    int getBulkLatency();
+
+    /**
+     * @since 8.3
+     */
+    void setBulkLatency(int value);
+
+    /**
+     * The batch size currently used, adapted to the backend latency.
+     *
+     * @since 8.3
+     */
+    int getCurrentBatchSize();
+
+    /**
+     * @since 8.3
+     */
+    int getConsumers();
+
+    /**
+     * @since 8.3
+     */
+    int getQueueSize();
+
+    /**
+     * @since 8.3
+     */
+    int getQueueRemainingCapacity();
+
+    /**
+     * Number of entries spilled to disk because the queue was full.
+     *
+     * @since 8.3
+     */
+    long getSpilledCount();
+
+    /**
+     * Number of spilled entries not yet flushed to the backend.
+     *
+     * @since 8.3
+     */
+    long getSpillPendingCount();
+
+    /**
+     * Mean duration of a batch flush, in milliseconds.
+     *
+     * @since 8.3
+     */
+    double getBatchLatencyMean();
+
+    /**
+     * 99th percentile of the duration of a batch flush, in milliseconds.
+     *
+     * @since 8.3
+     */
+    double getBatchLatency99();
+
     void resetMetrics();
 }
@@ -0,0 +1,212 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.extension.AuditBulkerDescriptor;
+
+public class TestDefaultAuditBulker {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected final List<LogEntry> flushed = Collections.synchronizedList(new ArrayList<>());
+
+    protected AuditBackend newBackend() {
+        return (AuditBackend) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AuditBackend.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("addLogEntries")) {
+                        @SuppressWarnings("unchecked")
+                        List<LogEntry> entries = (List<LogEntry>) args[0];
+                        flushed.addAll(entries);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    protected DefaultAuditBulker newBulker(AuditBulkerDescriptor config) throws IOException {
+        File dir = folder.newFolder();
+        return new DefaultAuditBulker(newBackend(), config) {
+            @Override
+            protected File getSpillDirectory() {
+                return dir;
+            }
+        };
+    }
+
+    protected static LogEntry newEntry(int i) {
+        LogEntryImpl entry = new LogEntryImpl();
+        entry.setEventId("event" + i);
+        return entry;
+    }
+
+    @Test
+    public void testSpillWhenFull() throws Exception {
+        AuditBulkerDescriptor config = new AuditBulkerDescriptor();
+        config.capacity = 10;
+        config.size = 7;
+        config.timeout = 100;
+        DefaultAuditBulker bulker = newBulker(config);
+        // no consumer yet
+        for (int i = 0; i < 50; i++) {
+            bulker.offer(newEntry(i));
+        }
+        assertEquals(10, bulker.getQueueSize());
+        assertEquals(40, bulker.getSpillPendingCount());
+        assertEquals(40, bulker.getSpilledCount());
+
+        Thread consumer = new Thread(bulker.new Consumer());
+        consumer.start();
+        try {
+            assertTrue(bulker.await(10, TimeUnit.SECONDS));
+            assertEquals(50, flushed.size());
+            assertEquals(0, bulker.getSpillPendingCount());
+        } finally {
+            bulker.stopped = true;
+            consumer.join();
+        }
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() throws Exception {
+        AuditBulkerDescriptor config = new AuditBulkerDescriptor();
+        config.size = 100;
+        config.latency = 10;
+        DefaultAuditBulker bulker = newBulker(config);
+        assertEquals(100, bulker.getCurrentBatchSize());
+        // slow flush
+        bulker.adapt(100, 50);
+        assertEquals(50, bulker.getCurrentBatchSize());
+        // fast and full
+        bulker.adapt(50, 1);
+        assertEquals(60, bulker.getCurrentBatchSize());
+        // fast but not full
+        bulker.adapt(10, 1);
+        assertEquals(60, bulker.getCurrentBatchSize());
+    }
+
+    @Test
+    public void testSpillKeptWhenFlushFails() throws Exception {
+        AuditBulkerSpill spill = new AuditBulkerSpill(folder.newFolder());
+        for (int i = 0; i < 10; i++) {
+            spill.append(newEntry(i));
+        }
+        // backend down after the first batch
+        List<LogEntry> stored = new ArrayList<>();
+        spill.replay(3, entries -> {
+            if (!stored.isEmpty()) {
+                throw new RuntimeException("backend down");
+            }
+            stored.addAll(entries);
+        });
+        assertEquals(3, stored.size());
+        assertEquals(7, spill.getPending());
+
+        // entries spilled meanwhile are replayed after the kept ones
+        spill.append(newEntry(10));
+        spill.replay(3, stored::addAll);
+        assertEquals(0, spill.getPending());
+        assertEquals(11, stored.size());
+        for (int i = 0; i < 11; i++) {
+            assertEquals("event" + i, stored.get(i).getEventId());
+        }
+        spill.close();
+    }
+
+    /**
+     * Overwrites the start of the serialized object of a record, or its length if {@code length} is {@code true}.
+     */
+    protected static void corruptRecord(File file, int index, boolean length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            for (int i = 0; i < index; i++) {
+                int size = raf.readInt();
+                raf.seek(raf.getFilePointer() + size);
+            }
+            if (length) {
+                raf.writeInt(Integer.MAX_VALUE);
+            } else {
+                raf.readInt();
+                raf.writeInt(0);
+            }
+        }
+    }
+
+    @Test
+    public void testSpillWithCorruptedRecords() throws Exception {
+        AuditBulkerSpill spill = new AuditBulkerSpill(folder.newFolder());
+        for (int i = 0; i < 10; i++) {
+            spill.append(newEntry(i));
+        }
+        corruptRecord(spill.current, 2, false);
+        corruptRecord(spill.current, 8, true);
+        List<LogEntry> stored = new ArrayList<>();
+        List<Long> dropped = new ArrayList<>();
+        spill.replay(3, stored::addAll, dropped::add);
+        // unreadable record skipped, end of the file after the corrupted length dropped
+        assertEquals(7, stored.size());
+        assertEquals("event3", stored.get(2).getEventId());
+        assertEquals(Collections.singletonList(Long.valueOf(3)), dropped);
+        assertEquals(0, spill.getPending());
+        spill.close();
+    }
+
+    @Test
+    public void testAwaitWithCorruptedSpill() throws Exception {
+        AuditBulkerDescriptor config = new AuditBulkerDescriptor();
+        config.capacity = 10;
+        config.size = 7;
+        config.timeout = 100;
+        DefaultAuditBulker bulker = newBulker(config);
+        // no consumer yet
+        for (int i = 0; i < 20; i++) {
+            bulker.offer(newEntry(i));
+        }
+        assertEquals(10, bulker.getSpillPendingCount());
+        corruptRecord(bulker.spill.current, 3, false);
+
+        Thread consumer = new Thread(bulker.new Consumer());
+        consumer.start();
+        try {
+            assertTrue(bulker.await(10, TimeUnit.SECONDS));
+            assertEquals(19, flushed.size());
+            assertEquals(0, bulker.getSpillPendingCount());
+        } finally {
+            bulker.stopped = true;
+            consumer.join();
+        }
+    }
+
+}
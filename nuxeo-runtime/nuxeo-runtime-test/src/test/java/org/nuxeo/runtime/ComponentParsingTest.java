@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.FileNotFoundException;
+import java.net.URL;
+
+import org.junit.Test;
+import org.nuxeo.runtime.model.ComponentName;
+import org.nuxeo.runtime.model.RegistrationInfo;
+import org.nuxeo.runtime.model.URLStreamRef;
+import org.nuxeo.runtime.model.impl.DefaultRuntimeContext;
+import org.nuxeo.runtime.model.impl.RegistrationInfoImpl;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+
+public class ComponentParsingTest extends NXRuntimeTestCase {
+
+    @Test
+    public void testParseAhead() throws Exception {
+        DefaultRuntimeContext ctx = (DefaultRuntimeContext) runtime.getContext();
+        URL url1 = getResource("MyComp1.xml");
+        URL url2 = getResource("MyComp2.xml");
+        ctx.parseAhead(new URLStreamRef(url1));
+        ctx.parseAhead(new URLStreamRef(url2));
+
+        RegistrationInfo ri1 = ctx.deploy(url1);
+        RegistrationInfo ri2 = ctx.deploy(url2);
+        assertEquals(new ComponentName("service:my.comp1"), ri1.getName());
+        assertEquals(new ComponentName("service:my.comp2"), ri2.getName());
+        assertNotNull(runtime.getComponentInstance("service:my.comp1"));
+        assertNotNull(runtime.getComponentInstance("service:my.comp2"));
+        assertTrue(((RegistrationInfoImpl) ri1).getActivationTime() > 0);
+    }
+
+    @Test
+    public void testParseAheadFailure() throws Exception {
+        DefaultRuntimeContext ctx = (DefaultRuntimeContext) runtime.getContext();
+        URL url = new URL(getResource("MyComp1.xml"), "NoSuchComp.xml");
+        ctx.parseAhead(new URLStreamRef(url));
+        try {
+            ctx.deploy(url);
+            fail("should fail on missing descriptor");
+        } catch (FileNotFoundException e) {
+            // ok, same error as without parsing ahead
+        }
+    }
+
+}
@@ -21,9 +21,13 @@
 
 package org.nuxeo.runtime;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
+import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.services.event.EventService;
 import org.nuxeo.runtime.test.NXRuntimeTestCase;
 
@@ -36,4 +40,20 @@ public class TestService extends NXRuntimeTestCase {
         assertSame(eventComponent, eventService);
     }
 
+    @Test
+    public void testServiceLookupFollowsRegistrations() throws Exception {
+        EventService eventService = Framework.getService(EventService.class);
+        assertNotNull(eventService);
+        assertSame(eventService, Framework.getService(EventService.class));
+
+        runtime.getComponentManager().unregister(EventService.NAME);
+        assertNull(Framework.getService(EventService.class));
+
+        deployContrib("org.nuxeo.runtime", "OSGI-INF/EventService.xml");
+        EventService newEventService = Framework.getService(EventService.class);
+        assertNotNull(newEventService);
+        assertNotSame(eventService, newEventService);
+        assertSame(newEventService, runtime.getComponent(EventService.NAME));
+    }
+
 }
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime.model.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.services.event.EventService;
+import org.nuxeo.runtime.test.NXRuntimeTestCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the cost of {@link Framework#getService} on a started test runtime, through the resolved services cache
+ * or through the registration lookup done when the cache is not published.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.nuxeo.runtime.model.impl.ServiceLookupBenchmark}.
+ *
+ * @since 8.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceLookupBenchmark {
+
+    protected NXRuntimeTestCase harness;
+
+    protected ComponentManagerImpl manager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        harness = new NXRuntimeTestCase();
+        harness.setUp();
+        manager = (ComponentManagerImpl) Framework.getRuntime().getComponentManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        harness.tearDown();
+    }
+
+    @Benchmark
+    public EventService cached() {
+        return Framework.getService(EventService.class);
+    }
+
+    @Benchmark
+    public EventService uncached() {
+        return manager.lookupService(EventService.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public EventService cachedContended() {
+        return Framework.getService(EventService.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public EventService uncachedContended() {
+        return manager.lookupService(EventService.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder().include(ServiceLookupBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+
+}
@@ -63,7 +63,21 @@ public class ComponentManagerImpl implements ComponentManager {
 
     protected ComponentRegistry reg;
 
+    protected final RuntimeService runtime;
+
+    /** Marker for a cached lookup that found no service. */
+    protected static final Object NO_SERVICE = new Object();
+
+    /**
+     * Resolved services, published once the runtime is started and dropped on any change to the registered services
+     * or to the components providing them. Service lookups hitting this cache don't take any lock.
+     *
+     * @since 8.3
+     */
+    protected volatile ClassValue<Object> serviceCache;
+
     public ComponentManagerImpl(RuntimeService runtime) {
+        this.runtime = runtime;
         reg = new ComponentRegistry();
         pendingExtensions = new HashMap<ComponentName, Set<Extension>>();
         listeners = new ListenerList();
@@ -113,6 +127,7 @@ public class ComponentManagerImpl implements ComponentManager {
 
     @Override
     public synchronized void shutdown() {
+        invalidateServiceCache();
         ShutdownTask.shutdown(this);
         listeners = null;
         reg.destroy();
@@ -214,10 +229,43 @@ public class ComponentManagerImpl implements ComponentManager {
 
     @Override
     public <T> T getService(Class<T> serviceClass) {
+        ClassValue<Object> cache = serviceCache;
+        if (cache == null) {
+            if (runtime == null || !runtime.isStarted()) {
+                return lookupService(serviceClass);
+            }
+            cache = publishServiceCache();
+        }
+        Object service = cache.get(serviceClass);
+        return service == NO_SERVICE ? null : serviceClass.cast(service);
+    }
+
+    protected <T> T lookupService(Class<T> serviceClass) {
         ComponentInstance comp = getComponentProvidingService(serviceClass);
         return comp != null ? comp.getAdapter(serviceClass) : null;
     }
 
+    protected ClassValue<Object> publishServiceCache() {
+        ClassValue<Object> cache = new ClassValue<Object>() {
+            @Override
+            protected Object computeValue(Class<?> type) {
+                Object service = lookupService(type);
+                return service == null ? NO_SERVICE : service;
+            }
+        };
+        serviceCache = cache;
+        return cache;
+    }
+
+    /**
+     * Drops the resolved services, they will be looked up again.
+     *
+     * @since 8.3
+     */
+    public void invalidateServiceCache() {
+        serviceCache = null;
+    }
+
     @Override
     public Collection<ComponentName> getActivatingRegistrations() {
         return getRegistrations(RegistrationInfo.ACTIVATING);
@@ -244,6 +292,16 @@ public class ComponentManagerImpl implements ComponentManager {
 
     void sendEvent(ComponentEvent event) {
         log.debug("Dispatching event: " + event);
+        switch (event.id) {
+        case ComponentEvent.COMPONENT_ACTIVATED:
+        case ComponentEvent.DEACTIVATING_COMPONENT:
+        case ComponentEvent.COMPONENT_DEACTIVATED:
+            // the instance providing the services changes
+            invalidateServiceCache();
+            break;
+        default:
+            break;
+        }
         Object[] listeners = this.listeners.getListeners();
         for (Object listener : listeners) {
             ((ComponentListener) listener).handleEvent(event);
@@ -326,6 +384,7 @@ public class ComponentManagerImpl implements ComponentManager {
             services.put(service, ri);
             // TODO: send notifications
         }
+        invalidateServiceCache();
     }
 
     public synchronized void unregisterServices(RegistrationInfoImpl ri) {
@@ -336,6 +395,7 @@ public class ComponentManagerImpl implements ComponentManager {
             services.remove(service);
             // TODO: send notifications
         }
+        invalidateServiceCache();
     }
 
     @Override
@@ -0,0 +1,563 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime.model.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.xmap.XMap;
+import org.nuxeo.runtime.Version;
+import org.nuxeo.runtime.model.ComponentName;
+import org.nuxeo.runtime.model.RuntimeContext;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A binary snapshot of the registrations parsed from component descriptors, used to skip the XML parsing and mapping
+ * of unchanged descriptors on the next startups.
+ * <p>
+ * Each registration is stored with a digest of the descriptor content it was parsed from, after variables expansion.
+ * A registration is only taken from the snapshot if the descriptor has the same digest, otherwise the descriptor is
+ * parsed again and the snapshot is updated when {@link #save} is called.
+ * <p>
+ * Extension contributions are not stored, as they can be of any class: the extension XML elements are stored instead,
+ * in a binary form which is much faster to rebuild than to parse. Descriptors with a configuration or properties are
+ * never stored.
+ *
+ * @since 8.3
+ */
+public class ComponentRegistrySnapshot {
+
+    private static final Log log = LogFactory.getLog(ComponentRegistrySnapshot.class);
+
+    protected static final int MAGIC = 0x4e584352; // NXCR
+
+    protected static final int FORMAT_VERSION = 1;
+
+    protected static final byte ELEMENT = 1;
+
+    protected static final byte TEXT = 2;
+
+    protected static final byte CDATA = 3;
+
+    protected static final byte COMMENT = 4;
+
+    protected static class Entry {
+
+        protected final byte[] digest;
+
+        protected final byte[] data;
+
+        /** Time it took to parse the descriptor, in nanoseconds. */
+        protected final long parseTime;
+
+        public Entry(byte[] digest, byte[] data, long parseTime) {
+            this.digest = digest;
+            this.data = data;
+            this.parseTime = parseTime;
+        }
+    }
+
+    protected final File file;
+
+    /** Entries read from the snapshot file, by descriptor id. */
+    protected final Map<String, Entry> loaded = new ConcurrentHashMap<>();
+
+    /** Entries found or parsed during this startup, by descriptor id. */
+    protected final Map<String, Entry> used = new ConcurrentHashMap<>();
+
+    protected final AtomicInteger hits = new AtomicInteger();
+
+    protected final AtomicInteger misses = new AtomicInteger();
+
+    protected final AtomicInteger updates = new AtomicInteger();
+
+    protected final AtomicLong parseTime = new AtomicLong();
+
+    protected final AtomicLong readTime = new AtomicLong();
+
+    public ComponentRegistrySnapshot(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the snapshot file, if any. An unreadable snapshot is ignored.
+     */
+    public void load() {
+        loaded.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.info("Ignoring component registry snapshot with an unknown format: " + file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = readString(in);
+                byte[] digest = readBytes(in);
+                long time = in.readLong();
+                byte[] data = readBytes(in);
+                loaded.put(id, new Entry(digest, data, time));
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable component registry snapshot: " + file, e);
+            loaded.clear();
+        }
+    }
+
+    /**
+     * Gets the registration for a descriptor from the snapshot.
+     *
+     * @param id the descriptor id
+     * @param digest the digest of the descriptor content
+     * @param ctx the context used to load the classes referenced by the descriptor
+     * @return the registration, or {@code null} if the snapshot has no registration for this descriptor content
+     */
+    public RegistrationInfoImpl get(String id, byte[] digest, RuntimeContext ctx) {
+        Entry entry = loaded.get(id);
+        if (entry == null || !Arrays.equals(entry.digest, digest)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        long start = System.nanoTime();
+        RegistrationInfoImpl ri;
+        try {
+            ri = read(entry.data, ctx);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.warn("Cannot read registration for " + id + " from component registry snapshot", e);
+            misses.incrementAndGet();
+            return null;
+        }
+        readTime.addAndGet(System.nanoTime() - start);
+        parseTime.addAndGet(entry.parseTime);
+        hits.incrementAndGet();
+        used.put(id, entry);
+        return ri;
+    }
+
+    /**
+     * Records the registration parsed from a descriptor. Must be called before the registration is registered.
+     *
+     * @param id the descriptor id
+     * @param digest the digest of the descriptor content
+     * @param ri the registration
+     * @param time the time it took to parse the descriptor, in nanoseconds
+     */
+    public void put(String id, byte[] digest, RegistrationInfoImpl ri, long time) {
+        byte[] data;
+        try {
+            data = write(ri);
+        } catch (IOException e) {
+            log.warn("Cannot write registration for " + id + " to component registry snapshot", e);
+            return;
+        }
+        if (data != null) {
+            used.put(id, new Entry(digest, data, time));
+            updates.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the snapshot file if registrations were added or are no longer used.
+     *
+     * @return {@code true} if the snapshot file was written
+     */
+    public boolean save() throws IOException {
+        if (updates.get() == 0 && used.keySet().equals(loaded.keySet())) {
+            return false;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                Map<String, Entry> entries = new TreeMap<>(used);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> en : entries.entrySet()) {
+                    Entry entry = en.getValue();
+                    writeString(out, en.getKey());
+                    writeBytes(out, entry.digest);
+                    out.writeLong(entry.parseTime);
+                    writeBytes(out, entry.data);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        loaded.clear();
+        loaded.putAll(used);
+        updates.set(0);
+        return true;
+    }
+
+    /** Gets the number of descriptors whose registration was read from the snapshot. */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /** Gets the number of descriptors that had to be parsed. */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /** Gets the time it originally took to parse the descriptors read from the snapshot, in nanoseconds. */
+    public long getParseTime() {
+        return parseTime.get();
+    }
+
+    /** Gets the time spent reading registrations from the snapshot, in nanoseconds. */
+    public long getReadTime() {
+        return readTime.get();
+    }
+
+    /**
+     * Writes a registration in binary form.
+     *
+     * @return the binary form, or {@code null} if the registration cannot be stored
+     */
+    protected static byte[] write(RegistrationInfoImpl ri) throws IOException {
+        if (ri.config != null || (ri.properties != null && !ri.properties.isEmpty())) {
+            return null;
+        }
+        for (ExtensionPointImpl xp : ri.extensionPoints) {
+            if (xp.contributions != null && Arrays.asList(xp.contributions).contains(null)) {
+                // class not found, let the next parsing try again
+                return null;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, ri.name == null ? null : ri.name.getRawName());
+        out.writeBoolean(ri.disabled);
+        writeNames(out, ri.aliases);
+        writeNames(out, ri.requires);
+        writeString(out, ri.implementation);
+        writeString(out, ri.bundle);
+        writeString(out, ri.documentation);
+        writeString(out, ri.version == null ? null : ri.version.toString());
+        ServiceDescriptor sd = ri.serviceDescriptor;
+        out.writeBoolean(sd != null);
+        if (sd != null) {
+            out.writeBoolean(sd.isFactory);
+            writeStrings(out, sd.services);
+        }
+        out.writeInt(ri.extensionPoints.length);
+        for (ExtensionPointImpl xp : ri.extensionPoints) {
+            writeString(out, xp.name);
+            writeString(out, xp.superComponent);
+            writeString(out, xp.documentation);
+            if (xp.contributions == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(xp.contributions.length);
+                for (Class<?> klass : xp.contributions) {
+                    writeString(out, klass.getName());
+                }
+            }
+        }
+        out.writeInt(ri.extensions.length);
+        for (ExtensionImpl xt : ri.extensions) {
+            writeString(out, xt.target == null ? null : xt.target.getRawName());
+            writeString(out, xt.extensionPoint);
+            writeString(out, xt.id);
+            writeString(out, xt.documentation);
+            out.writeBoolean(xt.element != null);
+            if (xt.element != null) {
+                writeNode(out, xt.element);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a registration from its binary form.
+     */
+    protected static RegistrationInfoImpl read(byte[] data, RuntimeContext ctx) throws IOException,
+            ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        RegistrationInfoImpl ri = new RegistrationInfoImpl();
+        String name = readString(in);
+        ri.name = name == null ? null : new ComponentName(name);
+        ri.disabled = in.readBoolean();
+        ri.aliases = readNames(in);
+        ri.requires = readNames(in);
+        ri.implementation = readString(in);
+        ri.bundle = readString(in);
+        ri.documentation = readString(in);
+        String version = readString(in);
+        ri.version = version == null ? null : Version.parseString(version);
+        if (in.readBoolean()) {
+            ServiceDescriptor sd = new ServiceDescriptor();
+            sd.isFactory = in.readBoolean();
+            sd.services = readStrings(in);
+            ri.serviceDescriptor = sd;
+        }
+        XMapContext xctx = new XMapContext(ctx);
+        ri.extensionPoints = new ExtensionPointImpl[in.readInt()];
+        for (int i = 0; i < ri.extensionPoints.length; i++) {
+            ExtensionPointImpl xp = new ExtensionPointImpl();
+            xp.name = readString(in);
+            xp.superComponent = readString(in);
+            xp.documentation = readString(in);
+            int count = in.readInt();
+            if (count >= 0) {
+                xp.contributions = new Class<?>[count];
+                for (int j = 0; j < count; j++) {
+                    xp.contributions[j] = xctx.loadClass(readString(in));
+                }
+            }
+            xp.ri = ri;
+            ri.extensionPoints[i] = xp;
+        }
+        ri.extensions = new ExtensionImpl[in.readInt()];
+        Document document = null;
+        for (int i = 0; i < ri.extensions.length; i++) {
+            ExtensionImpl xt = new ExtensionImpl();
+            String target = readString(in);
+            xt.target = target == null ? null : new ComponentName(target);
+            xt.extensionPoint = readString(in);
+            xt.id = readString(in);
+            xt.documentation = readString(in);
+            if (in.readBoolean()) {
+                if (document == null) {
+                    document = newDocument();
+                }
+                // keep the extensions under a common root as in the descriptor
+                xt.element = (Element) document.getDocumentElement().appendChild(readNode(in, document));
+            }
+            ri.extensions[i] = xt;
+        }
+        return ri;
+    }
+
+    protected static Document newDocument() throws IOException {
+        try {
+            Document document = XMap.newDocumentBuilder().newDocument();
+            document.appendChild(document.createElement("component"));
+            return document;
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected static void writeNode(DataOutput out, Node node) throws IOException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            out.writeByte(ELEMENT);
+            writeString(out, node.getNamespaceURI());
+            writeString(out, node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            out.writeInt(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr) attributes.item(i);
+                writeString(out, attr.getNamespaceURI());
+                writeString(out, attr.getName());
+                writeString(out, attr.getValue());
+            }
+            NodeList children = node.getChildNodes();
+            int count = 0;
+            for (int i = 0; i < children.getLength(); i++) {
+                if (isStored(children.item(i))) {
+                    count++;
+                }
+            }
+            out.writeInt(count);
+            for (int i = 0; i < children.getLength(); i++) {
+                Node child = children.item(i);
+                if (isStored(child)) {
+                    writeNode(out, child);
+                }
+            }
+            break;
+        case Node.TEXT_NODE:
+            out.writeByte(TEXT);
+            writeString(out, node.getNodeValue());
+            break;
+        case Node.CDATA_SECTION_NODE:
+            out.writeByte(CDATA);
+            writeString(out, node.getNodeValue());
+            break;
+        case Node.COMMENT_NODE:
+            out.writeByte(COMMENT);
+            writeString(out, node.getNodeValue());
+            break;
+        default:
+            throw new IOException("Unexpected node type: " + node.getNodeType());
+        }
+    }
+
+    protected static boolean isStored(Node node) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+        case Node.COMMENT_NODE:
+            return true;
+        default:
+            // processing instructions
+            return false;
+        }
+    }
+
+    protected static Node readNode(DataInput in, Document document) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case ELEMENT:
+            String ns = readString(in);
+            String qname = readString(in);
+            Element element = document.createElementNS(ns, qname);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String attrNs = readString(in);
+                String attrName = readString(in);
+                String value = readString(in);
+                element.setAttributeNS(attrNs, attrName, value);
+            }
+            count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                element.appendChild(readNode(in, document));
+            }
+            return element;
+        case TEXT:
+            return document.createTextNode(readString(in));
+        case CDATA:
+            return document.createCDATASection(readString(in));
+        case COMMENT:
+            return document.createComment(readString(in));
+        default:
+            throw new IOException("Unexpected node type: " + type);
+        }
+    }
+
+    protected static void writeNames(DataOutput out, Collection<ComponentName> names) throws IOException {
+        if (names == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(names.size());
+        for (ComponentName name : names) {
+            writeString(out, name.getRawName());
+        }
+    }
+
+    protected static Set<ComponentName> readNames(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        Set<ComponentName> names = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            names.add(new ComponentName(readString(in)));
+        }
+        return names;
+    }
+
+    protected static void writeStrings(DataOutput out, String[] strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.length);
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    protected static String[] readStrings(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    protected static void writeString(DataOutput out, String string) throws IOException {
+        writeBytes(out, string == null ? null : string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static String readString(DataInput in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+}
@@ -28,8 +28,13 @@ import java.net.URL;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.commons.codec.Charsets;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,6 +49,7 @@ import org.nuxeo.runtime.model.StreamRef;
 import org.nuxeo.runtime.model.URLStreamRef;
 import org.nuxeo.runtime.osgi.OSGiRuntimeActivator;
 import org.nuxeo.runtime.osgi.OSGiRuntimeContext;
+import org.nuxeo.runtime.osgi.OSGiRuntimeService;
 import org.osgi.framework.Bundle;
 
 /**
@@ -61,6 +67,13 @@ public class DefaultRuntimeContext implements RuntimeContext {
 
 	protected final Map<String, ComponentName> deployedFiles;
 
+	/**
+	 * Descriptors being parsed ahead of their deployment, by stream id.
+	 *
+	 * @since 8.3
+	 */
+	protected final Map<String, ForkJoinTask<RegistrationInfoImpl>> parsedAhead = new ConcurrentHashMap<>();
+
 	public DefaultRuntimeContext() {
 		this(Framework.getRuntime());
 	}
@@ -110,7 +123,7 @@ public class DefaultRuntimeContext implements RuntimeContext {
 		if (deployedFiles.containsKey(name)) {
 			return null;
 		}
-		RegistrationInfoImpl ri = createRegistrationInfo(ref);
+		RegistrationInfoImpl ri = readRegistrationInfo(ref);
 		if (ri == null || ri.name == null) {
 			// not parsed correctly, e.g., faces-config.xml
 			return null;
@@ -194,6 +207,7 @@ public class DefaultRuntimeContext implements RuntimeContext {
 
 	@Override
 	public void destroy() {
+		parsedAhead.clear();
 		Iterator<ComponentName> it = deployedFiles.values().iterator();
 		ComponentManager mgr = runtime.getComponentManager();
 		while (it.hasNext()) {
@@ -208,12 +222,96 @@ public class DefaultRuntimeContext implements RuntimeContext {
 		return null;
 	}
 
+	/**
+	 * Starts parsing a component descriptor in the background. The next deployment of the same stream uses the result
+	 * instead of parsing it again, so that several descriptors can be parsed concurrently while still being deployed
+	 * in order.
+	 * <p>
+	 * Variables in the descriptor are expanded when it is parsed, not when it is deployed.
+	 *
+	 * @since 8.3
+	 */
+	public void parseAhead(StreamRef ref) {
+		if (deployedFiles.containsKey(ref.getId())) {
+			return;
+		}
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		parsedAhead.computeIfAbsent(ref.getId(), id -> ForkJoinPool.commonPool().submit(() -> {
+			// parse with the class loader of the deploying thread
+			Thread thread = Thread.currentThread();
+			ClassLoader previous = thread.getContextClassLoader();
+			thread.setContextClassLoader(loader);
+			try {
+				return createRegistrationInfo(ref);
+			} finally {
+				thread.setContextClassLoader(previous);
+			}
+		}));
+	}
+
+	/**
+	 * Gets the registration info for a component descriptor, waiting for its parsing if it was started ahead.
+	 *
+	 * @since 8.3
+	 */
+	protected RegistrationInfoImpl readRegistrationInfo(StreamRef ref) throws IOException {
+		ForkJoinTask<RegistrationInfoImpl> task = parsedAhead.remove(ref.getId());
+		if (task == null) {
+			return createRegistrationInfo(ref);
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while parsing: " + ref.getId(), e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeServiceException("Cannot parse: " + ref.getId(), cause);
+		}
+	}
+
 	public RegistrationInfoImpl createRegistrationInfo(StreamRef ref) throws IOException {
 		String source = IOUtils.toString(ref.getStream(), Charsets.UTF_8);
 		String expanded = Framework.expandVars(source);
-		try (InputStream in = new ByteArrayInputStream(expanded.getBytes())) {
-			return createRegistrationInfo(in);
+		byte[] bytes = expanded.getBytes();
+		ComponentRegistrySnapshot snapshot = getComponentRegistrySnapshot();
+		if (snapshot == null) {
+			try (InputStream in = new ByteArrayInputStream(bytes)) {
+				return createRegistrationInfo(in);
+			}
+		}
+		byte[] digest = DigestUtils.sha1(bytes);
+		RegistrationInfoImpl ri = snapshot.get(ref.getId(), digest, this);
+		if (ri != null) {
+			return ri;
+		}
+		long start = System.nanoTime();
+		try (InputStream in = new ByteArrayInputStream(bytes)) {
+			ri = createRegistrationInfo(in);
+		}
+		if (ri != null) {
+			snapshot.put(ref.getId(), digest, ri, System.nanoTime() - start);
 		}
+		return ri;
+	}
+
+	/**
+	 * Gets the snapshot of parsed registrations to use, if enabled.
+	 *
+	 * @since 8.3
+	 */
+	protected ComponentRegistrySnapshot getComponentRegistrySnapshot() {
+		if (runtime instanceof OSGiRuntimeService) {
+			return ((OSGiRuntimeService) runtime).getComponentRegistrySnapshot();
+		}
+		return null;
 	}
 
 	public RegistrationInfoImpl createRegistrationInfo(InputStream in) throws IOException {
@@ -54,7 +54,7 @@ public class ExtensionImpl implements Extension {
     String extensionPoint;
 
     @XNode("@id")
-    private String id;
+    String id;
 
     @XContent("documentation")
     String documentation;
@@ -126,6 +126,12 @@ public class RegistrationInfoImpl implements RegistrationInfo {
     // the managed component
     transient ComponentInstance component;
 
+    // time spent activating the component, in nanoseconds
+    transient long activationTime;
+
+    // time spent notifying the component that the application is started, in nanoseconds
+    transient long applicationStartedTime;
+
     public RegistrationInfoImpl() {
     }
 
@@ -202,6 +208,9 @@ public class RegistrationInfoImpl implements RegistrationInfo {
         if (component != null) {
             component.reload();
         }
+        if (manager != null) {
+            manager.invalidateServiceCache();
+        }
     }
 
     @Override
@@ -328,22 +337,54 @@ public class RegistrationInfoImpl implements RegistrationInfo {
         if (component != null) {
             Object ci = component.getInstance();
             if (ci instanceof Component) {
+                long start = System.nanoTime();
                 try {
                     ((Component) ci).applicationStarted(component);
                 } catch (RuntimeException e) {
                     log.error(String.format("Component %s notification of application started failed: %s",
                             component.getName(), e.getMessage()), e);
                     state = START_FAILURE;
+                } finally {
+                    applicationStartedTime = System.nanoTime() - start;
                 }
             }
         }
     }
 
+    /**
+     * Gets the time spent activating the component, including the registration of its extensions and of the pending
+     * extensions contributed to it.
+     *
+     * @return the activation time in nanoseconds, or 0 if the component was not activated
+     * @since 8.3
+     */
+    public long getActivationTime() {
+        return activationTime;
+    }
+
+    /**
+     * Gets the time spent in the component {@link Component#applicationStarted} notification.
+     *
+     * @return the notification time in nanoseconds, or 0 if the component was not notified
+     * @since 8.3
+     */
+    public long getApplicationStartedTime() {
+        return applicationStartedTime;
+    }
+
     public synchronized void activate() {
         if (state != RESOLVED) {
             return;
         }
+        long start = System.nanoTime();
+        try {
+            doActivate();
+        } finally {
+            activationTime = System.nanoTime() - start;
+        }
+    }
 
+    protected void doActivate() {
         component = createComponentInstance();
 
         state = ACTIVATING;
@@ -54,6 +54,14 @@ public class OSGiComponentLoader implements SynchronousBundleListener {
         ctx.addBundleListener(this);
         Bundle[] bundles = ctx.getBundles();
         int mask = Bundle.STARTING | Bundle.ACTIVE;
+        if (runtime.isParallelParsing()) {
+            // parse the components of all the bundles ahead, they are then deployed bundle by bundle
+            for (Bundle bundle : bundles) {
+                if ((bundle.getState() & mask) != 0 && OSGiRuntimeService.getComponentsList(bundle) != null) {
+                    runtime.prepareContext(bundle);
+                }
+            }
+        }
         for (Bundle bundle : bundles) {
             String name = bundle.getSymbolicName();
             runtime.bundles.put(name, bundle);
@@ -41,6 +41,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,7 +58,10 @@ import org.nuxeo.runtime.api.ServicePassivator;
 import org.nuxeo.runtime.model.ComponentName;
 import org.nuxeo.runtime.model.RegistrationInfo;
 import org.nuxeo.runtime.model.RuntimeContext;
+import org.nuxeo.runtime.model.URLStreamRef;
 import org.nuxeo.runtime.model.impl.ComponentPersistence;
+import org.nuxeo.runtime.model.impl.ComponentRegistrySnapshot;
+import org.nuxeo.runtime.model.impl.DefaultRuntimeContext;
 import org.nuxeo.runtime.model.impl.RegistrationInfoImpl;
 
 import org.osgi.framework.Bundle;
@@ -90,6 +94,37 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
 
     public static final String PROP_NUXEO_BIND_ADDRESS = "nuxeo.bind.address";
 
+    /**
+     * Property enabling the parsing of component descriptors in parallel. Descriptors are still deployed in the same
+     * order, but their variables are expanded when they are parsed.
+     *
+     * @since 8.3
+     */
+    public static final String PROP_PARALLEL_PARSING = "org.nuxeo.runtime.component.parallelParsing";
+
+    /**
+     * Property enabling the binary snapshot of parsed component descriptors, used to skip the parsing of unchanged
+     * descriptors on the next startups.
+     *
+     * @see ComponentRegistrySnapshot
+     * @since 8.3
+     */
+    public static final String PROP_COMPONENT_SNAPSHOT = "org.nuxeo.runtime.component.snapshot";
+
+    /**
+     * Name of the component registry snapshot file, in the data directory.
+     *
+     * @since 8.3
+     */
+    public static final String COMPONENT_SNAPSHOT_FILE = "component-registry.snapshot";
+
+    /**
+     * Number of slowest components logged at startup.
+     *
+     * @since 8.3
+     */
+    protected static final int SLOWEST_COMPONENTS = 10;
+
     public static final String NAME = "OSGi NXRuntime";
 
     public static final Version VERSION = Version.parseString("1.4.0");
@@ -100,8 +135,22 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
 
     private final Map<String, RuntimeContext> contexts;
 
+    /**
+     * Contexts whose components are being parsed ahead of their deployment, by bundle symbolic name.
+     *
+     * @since 8.3
+     */
+    private final Map<String, OSGiRuntimeContext> preparedContexts;
+
     private boolean appStarted = false;
 
+    /**
+     * The snapshot of parsed component descriptors, or {@code null} if not enabled.
+     *
+     * @since 8.3
+     */
+    private volatile ComponentRegistrySnapshot snapshot;
+
     /**
      * OSGi doesn't provide a method to lookup bundles by symbolic name. This table is used to map symbolic names to
      * bundles. This map is not handling bundle versions.
@@ -119,6 +168,7 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
         bundleContext = context;
         bundles = new ConcurrentHashMap<>();
         contexts = new ConcurrentHashMap<>();
+        preparedContexts = new ConcurrentHashMap<>();
         String bindAddress = context.getProperty(PROP_NUXEO_BIND_ADDRESS);
         if (bindAddress != null) {
             properties.put(PROP_NUXEO_BIND_ADDRESS, bindAddress);
@@ -173,15 +223,44 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
     public synchronized RuntimeContext createContext(Bundle bundle) {
         RuntimeContext ctx = contexts.get(bundle.getSymbolicName());
         if (ctx == null) {
-            // workaround to handle fragment bundles
-            ctx = new OSGiRuntimeContext(bundle);
+            ctx = preparedContexts.remove(bundle.getSymbolicName());
+            if (ctx == null) {
+                // workaround to handle fragment bundles
+                ctx = new OSGiRuntimeContext(bundle);
+            }
             contexts.put(bundle.getSymbolicName(), ctx);
             loadComponents(bundle, ctx);
         }
         return ctx;
     }
 
+    /**
+     * Starts parsing the components of a bundle whose context will be created later, if parallel parsing is enabled.
+     *
+     * @since 8.3
+     */
+    public synchronized void prepareContext(Bundle bundle) {
+        String name = bundle.getSymbolicName();
+        if (!isParallelParsing() || contexts.containsKey(name) || preparedContexts.containsKey(name)) {
+            return;
+        }
+        OSGiRuntimeContext ctx = new OSGiRuntimeContext(bundle);
+        preparedContexts.put(name, ctx);
+        parseComponents(bundle, ctx);
+    }
+
+    /**
+     * Checks whether component descriptors are parsed in parallel.
+     *
+     * @see #PROP_PARALLEL_PARSING
+     * @since 8.3
+     */
+    public boolean isParallelParsing() {
+        return Boolean.parseBoolean(getProperty(PROP_PARALLEL_PARSING));
+    }
+
     public synchronized void destroyContext(Bundle bundle) {
+        preparedContexts.remove(bundle.getSymbolicName());
         RuntimeContext ctx = contexts.remove(bundle.getSymbolicName());
         if (ctx != null) {
             ctx.destroy();
@@ -204,10 +283,27 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
         } catch (IOException e) {
             throw new RuntimeServiceException(e);
         }
+        if (Boolean.parseBoolean(getProperty(PROP_COMPONENT_SNAPSHOT))) {
+            ComponentRegistrySnapshot snapshot = new ComponentRegistrySnapshot(new File(
+                    Environment.getDefault().getData(), COMPONENT_SNAPSHOT_FILE));
+            snapshot.load();
+            this.snapshot = snapshot;
+        }
         // load configuration if any
         loadComponents(bundleContext.getBundle(), context);
     }
 
+    /**
+     * Gets the snapshot of parsed component descriptors, if enabled.
+     *
+     * @return the snapshot, or {@code null} if not enabled
+     * @see #PROP_COMPONENT_SNAPSHOT
+     * @since 8.3
+     */
+    public ComponentRegistrySnapshot getComponentRegistrySnapshot() {
+        return snapshot;
+    }
+
     @Override
     protected void doStop() {
         bundleContext.removeFrameworkListener(this);
@@ -225,6 +321,9 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
         if (list == null) {
             return;
         }
+        if (isParallelParsing()) {
+            parseComponents(bundle, ctx);
+        }
         StringTokenizer tok = new StringTokenizer(list, ", \t\n\r\f");
         while (tok.hasMoreTokens()) {
             String path = tok.nextToken();
@@ -248,6 +347,27 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
         }
     }
 
+    /**
+     * Starts parsing the components of a bundle in the background, they will be deployed by
+     * {@link #loadComponents(Bundle, RuntimeContext)}.
+     *
+     * @since 8.3
+     */
+    protected void parseComponents(Bundle bundle, RuntimeContext ctx) {
+        String list = getComponentsList(bundle);
+        if (list == null || !(ctx instanceof DefaultRuntimeContext)) {
+            return;
+        }
+        StringTokenizer tok = new StringTokenizer(list, ", \t\n\r\f");
+        while (tok.hasMoreTokens()) {
+            URL url = bundle.getEntry(tok.nextToken());
+            if (url != null) {
+                // unknown components are reported at deployment
+                ((DefaultRuntimeContext) ctx).parseAhead(new URLStreamRef(url));
+            }
+        }
+    }
+
     public static String getComponentsList(Bundle bundle) {
         return (String) bundle.getHeaders().get("Nuxeo-Component");
     }
@@ -521,10 +641,71 @@ public class OSGiRuntimeService extends AbstractRuntimeService implements Framew
         // on this marker component
         deployFrameworkStartedComponent();
         notifyComponentsOnStarted();
+        logComponentTimes();
+        saveComponentRegistrySnapshot();
         // print the startup message
         printStatusMessage();
     }
 
+    /**
+     * Logs the components that took the most time to activate and to be notified that the application is started.
+     *
+     * @since 8.3
+     */
+    protected void logComponentTimes() {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        List<RegistrationInfoImpl> ris = new ArrayList<>();
+        for (RegistrationInfo ri : manager.getRegistrations()) {
+            if (ri instanceof RegistrationInfoImpl) {
+                ris.add((RegistrationInfoImpl) ri);
+            }
+        }
+        Collections.sort(ris, new Comparator<RegistrationInfoImpl>() {
+            @Override
+            public int compare(RegistrationInfoImpl r1, RegistrationInfoImpl r2) {
+                return Long.compare(getStartTime(r2), getStartTime(r1)); // slowest first
+            }
+        });
+        int count = log.isDebugEnabled() ? ris.size() : Math.min(SLOWEST_COMPONENTS, ris.size());
+        StringBuilder msg = new StringBuilder("Slowest components to start:");
+        for (RegistrationInfoImpl ri : ris.subList(0, count)) {
+            msg.append(String.format("%n  %s: %d ms (activation: %d ms, application started: %d ms)", ri.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(getStartTime(ri)),
+                    TimeUnit.NANOSECONDS.toMillis(ri.getActivationTime()),
+                    TimeUnit.NANOSECONDS.toMillis(ri.getApplicationStartedTime())));
+        }
+        log.info(msg);
+    }
+
+    /**
+     * Reports the parsing time saved by the component registry snapshot, and updates it for the next startup.
+     *
+     * @since 8.3
+     */
+    protected void saveComponentRegistrySnapshot() {
+        ComponentRegistrySnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            return;
+        }
+        log.info(String.format(
+                "Component registry snapshot: %d descriptors read in %d ms instead of parsed in %d ms, %d parsed",
+                snapshot.getHits(), TimeUnit.NANOSECONDS.toMillis(snapshot.getReadTime()),
+                TimeUnit.NANOSECONDS.toMillis(snapshot.getParseTime()), snapshot.getMisses()));
+        try {
+            if (snapshot.save()) {
+                log.info("Component registry snapshot updated: " + snapshot.getFile());
+            }
+        } catch (IOException e) {
+            log.error("Failed to save component registry snapshot: " + snapshot.getFile(), e);
+        }
+    }
+
+    protected static long getStartTime(RegistrationInfoImpl ri) {
+        return ri.getActivationTime() + ri.getApplicationStartedTime();
+    }
+
     /* --------------- FrameworkListener API ------------------ */
 
     @Override
@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime.model.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nuxeo.runtime.Version;
+import org.nuxeo.runtime.model.ComponentName;
+import org.nuxeo.runtime.model.Property;
+
+public class TestComponentRegistrySnapshot {
+
+    protected static final String DESCRIPTOR = "<?xml version=\"1.0\"?>\n" //
+            + "<component name=\"my.comp\" version=\"1.2.3\">\n" //
+            + "  <alias>my.alias</alias>\n" //
+            + "  <require>my.other</require>\n" //
+            + "  <documentation>My component</documentation>\n" //
+            + "  <implementation class=\"org.example.MyComponent\"/>\n" //
+            + "  <service>\n" //
+            + "    <provide interface=\"org.example.MyService\"/>\n" //
+            + "  </service>\n" //
+            + "  <extension-point name=\"things\">\n" //
+            + "    <documentation>Things</documentation>\n" //
+            + "    <object class=\"java.lang.String\"/>\n" //
+            + "  </extension-point>\n" //
+            + "  <extension target=\"my.other\" point=\"stuff\">\n" //
+            + "    <!-- a comment -->\n" //
+            + "    <thing name=\"foo\" xmlns:x=\"http://example.org/x\" x:kind=\"bar\">\n" //
+            + "      <value><![CDATA[a < b]]></value>\n" //
+            + "    </thing>\n" //
+            + "  </extension>\n" //
+            + "</component>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected RegistrationInfoImpl parse(DefaultRuntimeContext ctx) throws Exception {
+        return ctx.createRegistrationInfo(new ByteArrayInputStream(DESCRIPTOR.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        DefaultRuntimeContext ctx = new DefaultRuntimeContext(null);
+        RegistrationInfoImpl parsed = parse(ctx);
+        byte[] data = ComponentRegistrySnapshot.write(parsed);
+        assertNotNull(data);
+        RegistrationInfoImpl ri = ComponentRegistrySnapshot.read(data, ctx);
+
+        assertEquals(new ComponentName("my.comp"), ri.getName());
+        assertEquals(parsed.getAliases(), ri.getAliases());
+        assertEquals(parsed.getRequiredComponents(), ri.getRequiredComponents());
+        assertEquals(Version.parseString("1.2.3"), ri.getVersion());
+        assertEquals(parsed.getDocumentation(), ri.getDocumentation());
+        assertEquals("org.example.MyComponent", ri.getImplementation());
+        assertArrayEquals(new String[] { "org.example.MyService" }, ri.getProvidedServiceNames());
+        assertEquals(parsed.getServiceDescriptor().isFactory, ri.getServiceDescriptor().isFactory);
+
+        assertEquals(1, ri.getExtensionPoints().length);
+        ExtensionPointImpl xp = ri.getExtensionPoint("things");
+        assertEquals(parsed.getExtensionPoint("things").getDocumentation(), xp.getDocumentation());
+        assertArrayEquals(new Class<?>[] { String.class }, xp.getContributions());
+        assertEquals(ri, xp.ri);
+
+        assertEquals(1, ri.getExtensions().length);
+        ExtensionImpl xt = (ExtensionImpl) ri.getExtensions()[0];
+        ExtensionImpl parsedXt = (ExtensionImpl) parsed.getExtensions()[0];
+        assertEquals(new ComponentName("my.other"), xt.getTargetComponent());
+        assertEquals("stuff", xt.getExtensionPoint());
+        assertNull(xt.id);
+        assertEquals(parsedXt.toXML(), xt.toXML());
+        assertEquals("bar", xt.getElement().getElementsByTagName("thing").item(0).getAttributes().getNamedItemNS(
+                "http://example.org/x", "kind").getNodeValue());
+    }
+
+    @Test
+    public void testNotStored() throws Exception {
+        // property values are decoded at parsing time
+        RegistrationInfoImpl ri = parse(new DefaultRuntimeContext(null));
+        ri.properties.put("foo", new Property());
+        assertNull(ComponentRegistrySnapshot.write(ri));
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        DefaultRuntimeContext ctx = new DefaultRuntimeContext(null);
+        File file = new File(folder.getRoot(), "snapshot");
+        byte[] digest = { 1, 2, 3 };
+
+        ComponentRegistrySnapshot snapshot = new ComponentRegistrySnapshot(file);
+        snapshot.load();
+        assertNull(snapshot.get("my-id", digest, ctx));
+        snapshot.put("my-id", digest, parse(ctx), 1000);
+        assertTrue(snapshot.save());
+        assertFalse(snapshot.save());
+
+        snapshot = new ComponentRegistrySnapshot(file);
+        snapshot.load();
+        // changed content
+        assertNull(snapshot.get("my-id", new byte[] { 4, 5, 6 }, ctx));
+        RegistrationInfoImpl ri = snapshot.get("my-id", digest, ctx);
+        assertNotNull(ri);
+        assertEquals(new ComponentName("my.comp"), ri.getName());
+        assertEquals(1, snapshot.getHits());
+        assertEquals(1, snapshot.getMisses());
+        assertEquals(1000, snapshot.getParseTime());
+        // same entries used, nothing to save
+        assertFalse(snapshot.save());
+
+        // entries no longer used are dropped
+        snapshot = new ComponentRegistrySnapshot(file);
+        snapshot.load();
+        assertTrue(snapshot.save());
+        snapshot = new ComponentRegistrySnapshot(file);
+        snapshot.load();
+        assertNull(snapshot.get("my-id", digest, ctx));
+    }
+
+}
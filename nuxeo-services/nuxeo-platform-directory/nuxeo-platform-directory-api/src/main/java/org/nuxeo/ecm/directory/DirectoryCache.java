@@ -22,6 +22,11 @@ package org.nuxeo.ecm.directory;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +43,10 @@ import com.codahale.metrics.SharedMetricRegistries;
 /**
  * Very simple cache system to cache directory entry lookups (not search queries) on top of nuxeo cache
  * <p>
+ * Entries are cached in the compact immutable form of a {@link DirectoryCacheEntry}, and each lookup gets its own
+ * {@link DocumentModel} reading from it. Concurrent lookups of the same missing entry only fetch it once from the
+ * source.
+ * <p>
  * Beware that this cache is not transaction aware (which is not a problem for LDAP directories anyway).
  */
 public class DirectoryCache {
@@ -68,8 +77,31 @@ public class DirectoryCache {
 
     protected final Counter maxCounter;
 
+    /**
+     * Counter of lookups that waited for a concurrent fetch of the same entry instead of fetching it themselves.
+     *
+     * @since 8.3
+     */
+    protected final Counter coalescedCounter;
+
     protected final Counter sizeCounter;
 
+    /**
+     * A fetch from the source in progress, whose result is the cache value for the entry.
+     *
+     * @since 8.3
+     */
+    protected static class PendingFetch extends CompletableFuture<Serializable> {
+
+        protected final Thread thread = Thread.currentThread();
+    }
+
+    /** Fetches in progress, by entry id. */
+    protected final ConcurrentMap<String, PendingFetch> pendingFetches = new ConcurrentHashMap<>();
+
+    /** Fetches in progress without references, by entry id. */
+    protected final ConcurrentMap<String, PendingFetch> pendingFetchesWithoutReferences = new ConcurrentHashMap<>();
+
     private final static Log log = LogFactory.getLog(DirectoryCache.class);
 
     protected DirectoryCache(String name) {
@@ -81,6 +113,7 @@ public class DirectoryCache {
                 "invalidations"));
         sizeCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "size"));
         maxCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "max"));
+        coalescedCounter = metrics.counter(MetricRegistry.name("nuxeo", "directories", name, "cache", "coalesced"));
     }
 
     protected boolean isCacheEnabled() {
@@ -118,26 +151,88 @@ public class DirectoryCache {
             negativeHitsCounter.inc();
             return null;
         }
-        DocumentModel dm = (DocumentModel) entry;
-        if (dm == null) {
-            // fetch the entry from the backend and cache it for later reuse
-            dm = source.getEntryFromSource(entryId, fetchReferences);
+        if (entry == null) {
+            entry = fetchEntry(entryId, source, fetchReferences, cache);
+            if (CACHE_MISS.equals(entry)) {
+                return null;
+            }
+        } else {
+            hitsCounter.inc();
+        }
+        return toDocumentModel(entry);
+    }
+
+    /**
+     * Fetches an entry from the source and caches it. Concurrent fetches of the same entry are coalesced into a single
+     * one whose result is shared.
+     *
+     * @return the cache value for the entry, which is {@link #CACHE_MISS} if there is no such entry
+     * @since 8.3
+     */
+    protected Serializable fetchEntry(String entryId, EntrySource source, boolean fetchReferences, Cache cache)
+            throws DirectoryException {
+        ConcurrentMap<String, PendingFetch> pending = fetchReferences ? pendingFetches
+                : pendingFetchesWithoutReferences;
+        PendingFetch fetch = new PendingFetch();
+        PendingFetch other = pending.putIfAbsent(entryId, fetch);
+        if (other != null) {
+            // don't wait for a fetch done higher in our own call stack
+            if (other.thread != Thread.currentThread()) {
+                try {
+                    Serializable entry = other.join();
+                    coalescedCounter.inc();
+                    return entry;
+                } catch (CompletionException | CancellationException e) {
+                    // the other fetch failed, fetch from this thread
+                }
+            }
+            fetch = null;
+        }
+        try {
+            DocumentModel dm = source.getEntryFromSource(entryId, fetchReferences);
+            Serializable entry;
             if (dm != null) {
-                cache.put(entryId, dm);
+                DirectoryCacheEntry cacheEntry = DirectoryCacheEntry.of(dm);
+                entry = cacheEntry == null ? dm : cacheEntry;
+                cache.put(entryId, entry);
                 if (fetchReferences) {
                     sizeCounter.inc();
                 }
-            } else if (negativeCaching) {
-                cache.put(entryId, CACHE_MISS);
+            } else {
+                entry = CACHE_MISS;
+                if (negativeCaching) {
+                    cache.put(entryId, CACHE_MISS);
+                }
             }
             missesCounter.inc();
-        } else {
-            hitsCounter.inc();
+            if (fetch != null) {
+                fetch.complete(entry);
+            }
+            return entry;
+        } catch (RuntimeException | Error e) {
+            if (fetch != null) {
+                fetch.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            if (fetch != null) {
+                pending.remove(entryId, fetch);
+            }
+        }
+    }
+
+    /**
+     * Gets a new document model from a cache value.
+     *
+     * @since 8.3
+     */
+    protected DocumentModel toDocumentModel(Serializable entry) {
+        if (entry instanceof DirectoryCacheEntry) {
+            return ((DirectoryCacheEntry) entry).getDocumentModel();
         }
+        // entry that could not be represented in a compact form
+        DocumentModel dm = (DocumentModel) entry;
         try {
-            if (dm == null) {
-                return null;
-            }
             DocumentModel clone = dm.clone();
             // DocumentModelImpl#clone does not copy context data, hence
             // propagate the read-only flag manually
@@ -155,6 +250,8 @@ public class DirectoryCache {
         if (isCacheEnabled()) {
             synchronized (this) {
                 for (String entryId : entryIds) {
+                    pendingFetches.remove(entryId);
+                    pendingFetchesWithoutReferences.remove(entryId);
                     getEntryCache().invalidate(entryId);
                     getEntryCacheWithoutReferences().invalidate(entryId);
                     sizeCounter.dec();
@@ -174,6 +271,8 @@ public class DirectoryCache {
                 long count = sizeCounter.getCount();
                 sizeCounter.dec(count);
                 invalidationsCounter.inc(count);
+                pendingFetches.clear();
+                pendingFetchesWithoutReferences.clear();
                 getEntryCache().invalidateAll();
                 getEntryCacheWithoutReferences().invalidateAll();
             }
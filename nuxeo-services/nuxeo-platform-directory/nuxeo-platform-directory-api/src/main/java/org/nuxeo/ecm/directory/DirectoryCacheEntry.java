@@ -0,0 +1,234 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.directory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nuxeo.ecm.core.api.DataModel;
+import org.nuxeo.ecm.core.api.DataModelMap;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.impl.DataModelImpl;
+import org.nuxeo.ecm.core.api.impl.DocumentModelImpl;
+
+/**
+ * Immutable representation of a directory entry, as stored in a {@link DirectoryCache}.
+ * <p>
+ * Only the flat field values of each schema are kept, which is much more compact than a full {@link DocumentModel}
+ * and its property trees. Entries are served from it through a {@link DocumentModel} that reads the field values
+ * directly, and only builds the data model of a schema (from a copy of the values) when it is about to be modified
+ * or when its property tree is needed.
+ *
+ * @since 8.3
+ */
+public class DirectoryCacheEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected final String sessionId;
+
+    protected final String type;
+
+    protected final String id;
+
+    protected final String[] schemas;
+
+    protected final String[] facets;
+
+    /** Field values by schema. */
+    protected final Map<String, Map<String, Serializable>> values;
+
+    protected final boolean readOnly;
+
+    protected DirectoryCacheEntry(DocumentModel entry) {
+        sessionId = entry.getSessionId();
+        type = entry.getType();
+        id = entry.getId();
+        schemas = entry.getSchemas();
+        Collection<String> entryFacets = entry.getFacets();
+        facets = entryFacets.toArray(new String[entryFacets.size()]);
+        Map<String, Map<String, Serializable>> map = new HashMap<>();
+        for (String schema : schemas) {
+            Map<String, Serializable> fields = new LinkedHashMap<>();
+            for (Entry<String, Object> en : entry.getProperties(schema).entrySet()) {
+                fields.put(en.getKey(), copy((Serializable) en.getValue()));
+            }
+            map.put(schema, Collections.unmodifiableMap(fields));
+        }
+        values = Collections.unmodifiableMap(map);
+        readOnly = BaseSession.isReadOnlyEntry(entry);
+    }
+
+    /**
+     * Creates the immutable representation of a directory entry, if the entry can be represented that way.
+     * <p>
+     * The entry is the one just loaded from the directory. Its dirty flags are not kept: sources fill reference fields
+     * through {@link DocumentModel#setProperty}, which marks them dirty, but they are loaded values like the others.
+     *
+     * @return the immutable entry, or {@code null} if the entry must be cached as is
+     */
+    public static DirectoryCacheEntry of(DocumentModel entry) {
+        // only plain entries, as built by BaseSession.createEntryModel, can be rebuilt from their values
+        if (entry.getClass() != DocumentModelImpl.class || entry.getRef() != null) {
+            return null;
+        }
+        return new DirectoryCacheEntry(entry);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets a new {@link DocumentModel} for this entry. The returned document can be freely modified by the caller.
+     */
+    public DocumentModel getDocumentModel() {
+        EntryDocumentModel doc = new EntryDocumentModel(this);
+        if (readOnly) {
+            BaseSession.setReadOnlyEntry(doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Copies a value, so that no mutable container is shared between the cached entry and its users.
+     */
+    @SuppressWarnings("unchecked")
+    protected static Serializable copy(Serializable value) {
+        if (value instanceof List) {
+            ArrayList<Serializable> list = new ArrayList<>(((List<?>) value).size());
+            for (Object v : (List<?>) value) {
+                list.add(copy((Serializable) v));
+            }
+            return list;
+        } else if (value instanceof Map) {
+            HashMap<String, Serializable> map = new HashMap<>();
+            for (Entry<String, Serializable> en : ((Map<String, Serializable>) value).entrySet()) {
+                map.put(en.getKey(), copy(en.getValue()));
+            }
+            return map;
+        } else if (value instanceof Object[]) {
+            Object[] array = ((Object[]) value).clone();
+            for (int i = 0; i < array.length; i++) {
+                array[i] = copy((Serializable) array[i]);
+            }
+            return array;
+        } else if (value instanceof Calendar) {
+            return (Serializable) ((Calendar) value).clone();
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Document model for a cached entry.
+     * <p>
+     * Field values are read from the shared immutable entry until the data model of their schema is needed, at which
+     * point it is built from a copy of the values.
+     */
+    protected static class EntryDocumentModel extends DocumentModelImpl {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final DirectoryCacheEntry entry;
+
+        protected EntryDocumentModel(DirectoryCacheEntry entry) {
+            super(entry.sessionId, entry.type, entry.id, null, null, null, null, entry.schemas,
+                    new HashSet<>(Arrays.asList(entry.facets)), null, null);
+            this.entry = entry;
+        }
+
+        @Override
+        protected DataModel loadDataModel(String schema) {
+            Map<String, Serializable> fields = entry.values.get(schema);
+            if (fields == null) {
+                return super.loadDataModel(schema);
+            }
+            DataModel dataModel = new DataModelImpl(schema, copyFields(fields));
+            dataModels.put(schema, dataModel);
+            return dataModel;
+        }
+
+        protected static Map<String, Object> copyFields(Map<String, Serializable> fields) {
+            Map<String, Object> map = new HashMap<>();
+            for (Entry<String, Serializable> en : fields.entrySet()) {
+                map.put(en.getKey(), copy(en.getValue()));
+            }
+            return map;
+        }
+
+        /** Gets the cached fields of a schema whose data model hasn't been built yet. */
+        protected Map<String, Serializable> getCachedFields(String schema) {
+            if (dataModels.containsKey(schema)) {
+                return null;
+            }
+            return entry.values.get(schema);
+        }
+
+        @Override
+        public Map<String, Object> getProperties(String schemaName) {
+            Map<String, Serializable> fields = getCachedFields(schemaName);
+            if (fields == null) {
+                return super.getProperties(schemaName);
+            }
+            return copyFields(fields);
+        }
+
+        @Override
+        public Object getProperty(String schemaName, String name) {
+            Map<String, Serializable> fields = getCachedFields(schemaName);
+            if (fields == null || !fields.containsKey(name)) {
+                return super.getProperty(schemaName, name);
+            }
+            return copy(fields.get(name));
+        }
+
+        protected void loadDataModels() {
+            for (String schema : entry.schemas) {
+                if (!dataModels.containsKey(schema)) {
+                    loadDataModel(schema);
+                }
+            }
+        }
+
+        @Override
+        public DataModelMap getDataModels() {
+            loadDataModels();
+            return super.getDataModels();
+        }
+
+        @Override
+        public Collection<DataModel> getDataModelsCollection() {
+            loadDataModels();
+            return super.getDataModelsCollection();
+        }
+
+    }
+
+}
@@ -22,8 +22,12 @@
 package org.nuxeo.ecm.directory.sql;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -31,10 +35,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.cache.Cache;
 import org.nuxeo.ecm.core.redis.RedisFeature;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.directory.AbstractDirectory;
 import org.nuxeo.ecm.directory.DirectoryCache;
+import org.nuxeo.ecm.directory.DirectoryCacheEntry;
 import org.nuxeo.ecm.directory.DirectoryException;
 import org.nuxeo.ecm.directory.Session;
 import org.nuxeo.runtime.api.Framework;
@@ -115,6 +121,37 @@ public class TestCachedSQLDirectory extends SQLDirectoryTestSuite {
         assertEquals(baseMissesCount + 1, missesCounter.getCount());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachedEntriesAreIndependent() throws Exception {
+        try (Session sqlSession = getSQLDirectory().getSession()) {
+            DocumentModel entry = sqlSession.getEntry("user_1");
+            assertEquals("f", entry.getProperty(SCHEMA, "firstName"));
+            List<String> groups = (List<String>) entry.getProperty(SCHEMA, "groups");
+            assertEquals(2, groups.size());
+            // cached in compact form, even though its references were set after loading
+            Cache cache = getSQLDirectory().getCache().getEntryCache();
+            assertTrue(cache.get("user_1") instanceof DirectoryCacheEntry);
+
+            // modify the entry returned from the cache
+            entry = sqlSession.getEntry("user_1");
+            groups = (List<String>) entry.getProperty(SCHEMA, "groups");
+            groups.add("administrators");
+            entry.setProperty(SCHEMA, "firstName", "changed");
+            assertEquals("changed", entry.getProperty(SCHEMA, "firstName"));
+            assertTrue(entry.getDataModel(SCHEMA).isDirty("firstName"));
+
+            // the cached entry is unchanged
+            entry = sqlSession.getEntry("user_1");
+            assertFalse(entry.isDirty());
+            assertEquals("f", entry.getProperty(SCHEMA, "firstName"));
+            groups = (List<String>) entry.getProperty(SCHEMA, "groups");
+            assertEquals(2, groups.size());
+            assertFalse(groups.contains("administrators"));
+            assertEquals("f", entry.getProperties(SCHEMA).get("firstName"));
+        }
+    }
+
     @Test
     public void testNegativeCaching() throws Exception {
         DirectoryCache cache = getSQLDirectory().getCache();
@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.usermanager;
+
+import java.util.List;
+
+/**
+ * Provider of the transitive closure of the "member of group" relation, used to compute all the groups of a principal
+ * without walking the parent groups one lookup at a time.
+ *
+ * @since 8.3
+ */
+public interface GroupClosureProvider {
+
+    /**
+     * Gets the names of a group and of all its ancestor groups.
+     *
+     * @param groupName the group name
+     * @return the group and its ancestors, the group itself first, or {@code null} if the group does not exist
+     */
+    List<String> getGroupClosure(String groupName);
+
+    /**
+     * Gets an immutable list equal to the given list of groups, shared with other principals having the same groups.
+     *
+     * @param groups the list of groups
+     * @return an immutable list of groups
+     */
+    List<String> getSharedGroups(List<String> groups);
+
+}
@@ -36,6 +36,7 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -68,6 +69,7 @@ public class NuxeoPrincipalImpl implements NuxeoPrincipal {
     public List<String> virtualGroups = new LinkedList<String>();
 
     // transitive closure of the "member of group" relation
+    // always replaced and never modified in place, as it may be shared
     public List<String> allGroups;
 
     public final boolean isAnonymous;
@@ -124,7 +126,7 @@ public class NuxeoPrincipalImpl implements NuxeoPrincipal {
         }
         dataModel = model.getDataModel(config.schemaName);
         roles.addAll(other.roles);
-        allGroups = new ArrayList<>(other.allGroups);
+        allGroups = other.allGroups;
         virtualGroups = new ArrayList<>(other.virtualGroups);
         isAdministrator = other.isAdministrator;
         isAnonymous = other.isAnonymous;
@@ -319,6 +321,66 @@ public class NuxeoPrincipalImpl implements NuxeoPrincipal {
 
     public void updateAllGroups() {
         UserManager userManager = Framework.getService(UserManager.class);
+        if (userManager instanceof GroupClosureProvider) {
+            updateAllGroups((GroupClosureProvider) userManager);
+        } else {
+            allGroups = computeAllGroups(userManager);
+        }
+
+        // set isAdministrator boolean according to groups declared on user
+        // manager
+        if (!isAdministrator() && userManager != null) {
+            List<String> adminGroups = userManager.getAdministratorsGroups();
+            for (String adminGroup : adminGroups) {
+                if (allGroups.contains(adminGroup)) {
+                    isAdministrator = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes all groups by getting the transitive closure of each group of the principal from the given provider.
+     *
+     * @since 8.3
+     */
+    protected void updateAllGroups(GroupClosureProvider provider) {
+        Set<String> resultingGroups = new LinkedHashSet<String>();
+        for (String groupName : getGroups()) {
+            if (resultingGroups.contains(groupName)) {
+                continue;
+            }
+            List<String> closure;
+            try {
+                closure = provider.getGroupClosure(groupName);
+            } catch (DirectoryException de) {
+                if (virtualGroups.contains(groupName)) {
+                    // do not fail while retrieving a virtual group
+                    log.warn("Failed to get group '" + groupName + "' due to '" + de.getMessage()
+                            + "': permission resolution involving groups may not be correct");
+                    closure = null;
+                } else {
+                    throw de;
+                }
+            }
+            if (closure == null) {
+                if (virtualGroups.contains(groupName)) {
+                    // just add the virtual group as is
+                    resultingGroups.add(groupName);
+                } else {
+                    // XXX this should only happens in case of
+                    // inconsistency in DB
+                    log.error("User " + getName() + " references the " + groupName + " group that does not exists");
+                }
+            } else {
+                resultingGroups.addAll(closure);
+            }
+        }
+        allGroups = provider.getSharedGroups(new ArrayList<String>(resultingGroups));
+    }
+
+    protected List<String> computeAllGroups(UserManager userManager) {
         Set<String> checkedGroups = new HashSet<String>();
         List<String> groupsToProcess = new ArrayList<String>();
         List<String> resultingGroups = new ArrayList<String>();
@@ -364,20 +426,7 @@ public class NuxeoPrincipalImpl implements NuxeoPrincipal {
                 }
             }
         }
-
-        allGroups = new ArrayList<String>(resultingGroups);
-
-        // set isAdministrator boolean according to groups declared on user
-        // manager
-        if (!isAdministrator() && userManager != null) {
-            List<String> adminGroups = userManager.getAdministratorsGroups();
-            for (String adminGroup : adminGroups) {
-                if (allGroups.contains(adminGroup)) {
-                    isAdministrator = true;
-                    break;
-                }
-            }
-        }
+        return new ArrayList<String>(resultingGroups);
     }
 
     public List<String> getVirtualGroups() {
@@ -107,6 +107,12 @@ public class UserManagerWithComputedGroups extends UserManagerImpl {
         return principal;
     }
 
+    @Override
+    protected boolean useGroupClosureIndex() {
+        // computed groups are not invalidated when they change
+        return !activateComputedGroup();
+    }
+
     @Override
     public NuxeoGroup getGroup(String groupName) {
         NuxeoGroup grp = super.getGroup(groupName);
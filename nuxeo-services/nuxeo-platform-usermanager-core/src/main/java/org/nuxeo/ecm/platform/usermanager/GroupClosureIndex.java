@@ -0,0 +1,289 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.usermanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.nuxeo.ecm.core.api.NuxeoGroup;
+
+/**
+ * Index of the transitive closure of the "member of group" relation.
+ * <p>
+ * The index keeps the parent groups of each group it has seen, loading them on demand or in bulk through
+ * {@link #put}, and the closure of each group it has been asked for. When a group changes, only the closures
+ * involving it are discarded.
+ * <p>
+ * Groups can also change without the index being told, for instance directly in the directory or on another node, so
+ * groups and closures older than a maximum age are reloaded.
+ * <p>
+ * Closures and shared group lists are immutable and can be handed out to principals.
+ *
+ * @since 8.3
+ */
+public class GroupClosureIndex {
+
+    /** Default maximum age of the groups and closures kept: 10 minutes. */
+    public static final long DEFAULT_MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+    /** Default maximum number of shared group lists kept. */
+    public static final int DEFAULT_MAX_SHARED_GROUPS = 10000;
+
+    /** A group and its direct parents. */
+    protected static class GroupNode {
+
+        /** The group name, or {@code null} for a non-existent group. */
+        protected final String name;
+
+        protected final List<String> parents;
+
+        /** Load time. */
+        protected final long time;
+
+        protected GroupNode(String name, List<String> parents, long time) {
+            this.name = name;
+            this.parents = parents;
+            this.time = time;
+        }
+    }
+
+    /** The closure of a group. */
+    protected static class Closure {
+
+        /** The closure, or {@code null} for a non-existent group. */
+        protected final List<String> groups;
+
+        /** Load time of the oldest group used to compute the closure. */
+        protected final long time;
+
+        protected Closure(List<String> groups, long time) {
+            this.groups = groups;
+            this.time = time;
+        }
+    }
+
+    protected final Function<String, NuxeoGroup> groupLoader;
+
+    protected final long maxAgeMillis;
+
+    protected final int maxSharedGroups;
+
+    /** Groups by name. */
+    protected final ConcurrentMap<String, GroupNode> nodes = new ConcurrentHashMap<>();
+
+    /** Closures by group name. */
+    protected final ConcurrentMap<String, Closure> closures = new ConcurrentHashMap<>();
+
+    /** Shared immutable group lists. */
+    protected final ConcurrentMap<List<String>, List<String>> sharedGroups = new ConcurrentHashMap<>();
+
+    /** Incremented on each invalidation, to avoid storing closures computed from outdated groups. */
+    protected final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Creates an index loading the groups it doesn't know yet using the given function.
+     *
+     * @param groupLoader the function returning a group given its name, or {@code null} if it doesn't exist
+     */
+    public GroupClosureIndex(Function<String, NuxeoGroup> groupLoader) {
+        this(groupLoader, DEFAULT_MAX_AGE_MILLIS, DEFAULT_MAX_SHARED_GROUPS);
+    }
+
+    /**
+     * Creates an index loading the groups it doesn't know yet using the given function.
+     *
+     * @param groupLoader the function returning a group given its name, or {@code null} if it doesn't exist
+     * @param maxAgeMillis the age after which groups and closures are reloaded, or {@code 0} to keep them until
+     *            invalidated
+     * @param maxSharedGroups the maximum number of shared group lists kept
+     */
+    public GroupClosureIndex(Function<String, NuxeoGroup> groupLoader, long maxAgeMillis, int maxSharedGroups) {
+        this.groupLoader = groupLoader;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxSharedGroups = maxSharedGroups;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected boolean isExpired(long time) {
+        return maxAgeMillis > 0 && now() - time > maxAgeMillis;
+    }
+
+    /**
+     * Adds a group to the index, for instance when pre-warming the index from the group directory.
+     */
+    public void put(NuxeoGroup group) {
+        GroupNode node = newNode(group);
+        nodes.put(group.getName(), node);
+    }
+
+    protected GroupNode newNode(NuxeoGroup group) {
+        List<String> parents = group.getParentGroups();
+        parents = parents == null || parents.isEmpty() ? Collections.<String> emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(parents));
+        return new GroupNode(group.getName(), parents, now());
+    }
+
+    /**
+     * Gets a group, loading it if unknown or too old.
+     *
+     * @return the group, with a {@code null} name if it does not exist
+     */
+    protected GroupNode getNode(String groupName) {
+        GroupNode node = nodes.get(groupName);
+        if (node == null || isExpired(node.time)) {
+            long gen = generation.get();
+            NuxeoGroup group = groupLoader.apply(groupName);
+            node = group == null ? new GroupNode(null, Collections.<String> emptyList(), now()) : newNode(group);
+            nodes.put(groupName, node);
+            if (generation.get() != gen) {
+                // invalidated during loading, don't keep a possibly outdated group
+                nodes.remove(groupName, node);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Gets the names of a group and of all its ancestor groups, the group itself first.
+     *
+     * @return the immutable closure, or {@code null} if the group does not exist
+     */
+    public List<String> getClosure(String groupName) {
+        Closure closure = closures.get(groupName);
+        if (closure == null || isExpired(closure.time)) {
+            long gen = generation.get();
+            closure = newClosure(groupName);
+            closures.put(groupName, closure);
+            if (generation.get() != gen) {
+                // invalidated during computation, don't keep a possibly outdated closure
+                closures.remove(groupName, closure);
+            }
+        }
+        return closure.groups;
+    }
+
+    /**
+     * Computes the closure of a group from the known groups, without storing it.
+     *
+     * @return the immutable closure, or {@code null} if the group does not exist
+     */
+    public List<String> computeClosure(String groupName) {
+        return newClosure(groupName).groups;
+    }
+
+    protected Closure newClosure(String groupName) {
+        GroupNode node = getNode(groupName);
+        if (node.name == null) {
+            return new Closure(null, node.time);
+        }
+        long time = node.time;
+        Set<String> closure = new LinkedHashSet<>();
+        closure.add(node.name);
+        Set<String> checked = new HashSet<>();
+        checked.add(groupName);
+        Deque<String> toProcess = new ArrayDeque<>(node.parents);
+        while (!toProcess.isEmpty()) {
+            String name = toProcess.removeFirst();
+            if (!checked.add(name)) {
+                continue;
+            }
+            GroupNode parent = getNode(name);
+            time = Math.min(time, parent.time);
+            if (parent.name != null) {
+                // use the name from the returned entry in case it does not have the same case than the actual entry
+                // in directory (for case insensitive directories)
+                closure.add(parent.name);
+                toProcess.addAll(parent.parents);
+            }
+        }
+        return new Closure(Collections.unmodifiableList(new ArrayList<>(closure)), time);
+    }
+
+    /**
+     * Gets an immutable list equal to the given one, shared with all callers asking for the same list.
+     */
+    public List<String> getSharedGroups(List<String> groups) {
+        List<String> shared = sharedGroups.get(groups);
+        if (shared == null) {
+            if (sharedGroups.size() >= maxSharedGroups) {
+                // sharing is only a memory optimization, start over rather than grow without bounds
+                sharedGroups.clear();
+            }
+            shared = Collections.unmodifiableList(new ArrayList<>(groups));
+            List<String> previous = sharedGroups.putIfAbsent(shared, shared);
+            if (previous != null) {
+                shared = previous;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Invalidates the given groups, which have been created, modified or deleted.
+     * <p>
+     * The groups whose parents may have changed (members of a modified group) must be invalidated too.
+     */
+    public void invalidate(Collection<String> groupNames) {
+        generation.incrementAndGet();
+        for (String groupName : groupNames) {
+            nodes.remove(groupName);
+            closures.remove(groupName);
+        }
+        // groups whose parents include an invalidated group
+        for (Iterator<GroupNode> it = nodes.values().iterator(); it.hasNext();) {
+            if (!Collections.disjoint(it.next().parents, groupNames)) {
+                it.remove();
+            }
+        }
+        // closures including an invalidated group
+        for (Iterator<Closure> it = closures.values().iterator(); it.hasNext();) {
+            List<String> groups = it.next().groups;
+            if (groups != null && !Collections.disjoint(groups, groupNames)) {
+                it.remove();
+            }
+        }
+        sharedGroups.clear();
+    }
+
+    /**
+     * Invalidates all groups.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        nodes.clear();
+        closures.clear();
+        sharedGroups.clear();
+    }
+
+}
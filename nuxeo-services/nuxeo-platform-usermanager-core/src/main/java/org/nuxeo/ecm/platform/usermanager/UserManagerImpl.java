@@ -75,7 +75,8 @@ import org.nuxeo.runtime.services.event.EventService;
 /**
  * Standard implementation of the Nuxeo UserManager.
  */
-public class UserManagerImpl implements UserManager, MultiTenantUserManager, AdministratorGroupsProvider {
+public class UserManagerImpl implements UserManager, MultiTenantUserManager, AdministratorGroupsProvider,
+        GroupClosureProvider {
 
     private static final long serialVersionUID = 1L;
 
@@ -109,6 +110,22 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
 
     public static final String INVALIDATE_ALL_PRINCIPALS_EVENT_ID = "invalidateAllPrincipals";
 
+    /**
+     * Framework property to pre-warm the group closure index from the group directory at startup.
+     *
+     * @since 8.3
+     */
+    public static final String GROUP_CLOSURE_PREWARM_PROPERTY = "nuxeo.usermanager.groupclosure.prewarm";
+
+    /**
+     * Framework property for the maximum age, in seconds, of the groups and closures kept in the group closure index.
+     * Changes done behind the user manager's back are seen after at most this delay. {@code 0} keeps them until
+     * invalidated.
+     *
+     * @since 8.3
+     */
+    public static final String GROUP_CLOSURE_MAX_AGE_PROPERTY = "nuxeo.usermanager.groupclosure.maxage";
+
     private static final String USER_GROUP_CATEGORY = "userGroup";
 
     protected final DirectoryService dirService;
@@ -117,6 +134,14 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
 
     protected Cache principalCache = null;
 
+    /**
+     * Transitive closure of the "member of group" relation, shared by all principals.
+     *
+     * @since 8.3
+     */
+    protected final GroupClosureIndex groupClosureIndex = new GroupClosureIndex(this::getGroup,
+            getGroupClosureMaxAgeMillis(), GroupClosureIndex.DEFAULT_MAX_SHARED_GROUPS);
+
     public UserMultiTenantManagement multiTenantManagement = new DefaultUserMultiTenantManagement();
 
     /**
@@ -233,6 +258,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
             principalCache = cacheService.getCache(descriptor.userCacheName);
             principalCache.invalidateAll();
         }
+        groupClosureIndex.invalidateAll();
 
     }
 
@@ -646,6 +672,87 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
         return group;
     }
 
+    /**
+     * Gets the maximum age of the groups and closures kept in the group closure index.
+     *
+     * @since 8.3
+     */
+    protected static long getGroupClosureMaxAgeMillis() {
+        String maxAge = Framework.getProperty(GROUP_CLOSURE_MAX_AGE_PROPERTY);
+        if (StringUtils.isBlank(maxAge)) {
+            return GroupClosureIndex.DEFAULT_MAX_AGE_MILLIS;
+        }
+        try {
+            return Long.parseLong(maxAge.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            log.error("Invalid value for " + GROUP_CLOSURE_MAX_AGE_PROPERTY + ": " + maxAge);
+            return GroupClosureIndex.DEFAULT_MAX_AGE_MILLIS;
+        }
+    }
+
+    /**
+     * Whether group closures can be kept in the index. If not, they are computed from freshly fetched groups.
+     *
+     * @since 8.3
+     */
+    protected boolean useGroupClosureIndex() {
+        return true;
+    }
+
+    @Override
+    public List<String> getGroupClosure(String groupName) {
+        if (!useGroupClosureIndex()) {
+            return new GroupClosureIndex(this::getGroup).computeClosure(groupName);
+        }
+        return groupClosureIndex.getClosure(groupName);
+    }
+
+    @Override
+    public List<String> getSharedGroups(List<String> groups) {
+        return groupClosureIndex.getSharedGroups(groups);
+    }
+
+    /**
+     * Loads all the groups of the group directory in the group closure index, so that principals don't have to fetch
+     * their groups one at a time.
+     *
+     * @since 8.3
+     */
+    public void prewarmGroupClosureIndex() {
+        try (Session groupDir = dirService.open(groupDirectoryName)) {
+            // retrieve all entries with references, to get the parent groups
+            DocumentModelList groups = groupDir.query(Collections.<String, Serializable> emptyMap(), null, null, true);
+            for (DocumentModel group : groups) {
+                groupClosureIndex.put(makeGroup(group));
+            }
+            log.debug("Group closure index pre-warmed with " + groups.size() + " groups");
+        }
+    }
+
+    /**
+     * Invalidates the group closures involving a group that changed, or one of the member groups of its new version,
+     * whose parents changed.
+     *
+     * @since 8.3
+     */
+    @SuppressWarnings("unchecked")
+    protected void invalidateGroupClosures(String groupId, DocumentModel groupModel) {
+        List<String> groups = new ArrayList<String>();
+        groups.add(groupId);
+        if (groupModel != null) {
+            List<String> subGroups;
+            try {
+                subGroups = (List<String>) groupModel.getProperty(groupSchemaName, groupSubGroupsField);
+            } catch (PropertyException e) {
+                subGroups = null;
+            }
+            if (subGroups != null) {
+                groups.addAll(subGroups);
+            }
+        }
+        groupClosureIndex.invalidate(groups);
+    }
+
     @Override
     public List<String> getTopLevelGroups() {
         return getTopLevelGroups(null);
@@ -1160,6 +1267,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
                 throw new GroupAlreadyExistsException();
             }
             groupModel = groupDir.createEntry(groupModel);
+            invalidateGroupClosures(groupId, groupModel);
             notifyGroupChanged(groupId, GROUPCREATED_EVENT_ID);
             return groupModel;
 
@@ -1351,6 +1459,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
                 throw new DirectoryException("group does not exist: " + groupId);
             }
             groupDir.updateEntry(groupModel);
+            invalidateGroupClosures(groupId, groupModel);
             notifyGroupChanged(groupId, GROUPMODIFIED_EVENT_ID);
         }
     }
@@ -1368,6 +1477,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
                 throw new DirectoryException("Group does not exist: " + groupId);
             }
             groupDir.deleteEntry(groupId);
+            invalidateGroupClosures(groupId, null);
             notifyGroupChanged(groupId, GROUPDELETED_EVENT_ID);
         }
     }
@@ -1485,6 +1595,7 @@ public class UserManagerImpl implements UserManager, MultiTenantUserManager, Adm
         if (INVALIDATE_PRINCIPAL_EVENT_ID.equals(id)) {
             invalidatePrincipal((String) event.getData());
         } else if (INVALIDATE_ALL_PRINCIPALS_EVENT_ID.equals(id)) {
+            groupClosureIndex.invalidateAll();
             invalidateAllPrincipals();
         }
     }
@@ -120,6 +120,20 @@ public class UserService extends DefaultComponent {
         log.info("UserService activated");
     }
 
+    @Override
+    public void applicationStarted(ComponentContext context) {
+        if (Framework.isBooleanPropertyTrue(UserManagerImpl.GROUP_CLOSURE_PREWARM_PROPERTY)) {
+            UserManager um = getUserManager();
+            if (um instanceof UserManagerImpl) {
+                try {
+                    ((UserManagerImpl) um).prewarmGroupClosureIndex();
+                } catch (DirectoryException e) {
+                    log.error("Cannot pre-warm the group closure index", e);
+                }
+            }
+        }
+    }
+
     @Override
     public void deactivate(ComponentContext context) {
         log.info("UserService deactivated");
@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2016 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.usermanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoGroup;
+import org.nuxeo.ecm.core.api.impl.NuxeoGroupImpl;
+
+public class TestGroupClosureIndex {
+
+    protected Map<String, NuxeoGroup> groups;
+
+    protected Map<String, Integer> loads;
+
+    protected GroupClosureIndex index;
+
+    protected long time;
+
+    @Before
+    public void setUp() {
+        groups = new HashMap<>();
+        loads = new HashMap<>();
+        index = new GroupClosureIndex(name -> {
+            loads.merge(name, 1, Integer::sum);
+            return groups.get(name);
+        }, 1000, 2) {
+            @Override
+            protected long now() {
+                return time;
+            }
+        };
+        addGroup("g1", "g2", "g3");
+        addGroup("g2", "g4");
+        addGroup("g3", "g4");
+        addGroup("g4");
+    }
+
+    protected void addGroup(String name, String... parents) {
+        NuxeoGroup group = new NuxeoGroupImpl(name);
+        group.setParentGroups(Arrays.asList(parents));
+        groups.put(name, group);
+    }
+
+    @Test
+    public void testClosure() {
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4"), index.getClosure("g1"));
+        assertEquals(Arrays.asList("g2", "g4"), index.getClosure("g2"));
+        assertEquals(Collections.singletonList("g4"), index.getClosure("g4"));
+        assertNull(index.getClosure("nosuchgroup"));
+        // each group loaded only once
+        for (String name : Arrays.asList("g1", "g2", "g3", "g4", "nosuchgroup")) {
+            assertEquals(name, Integer.valueOf(1), loads.get(name));
+        }
+        // closures are stored
+        assertSame(index.getClosure("g1"), index.getClosure("g1"));
+    }
+
+    @Test
+    public void testCycle() {
+        addGroup("g4", "g1");
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4"), index.getClosure("g1"));
+        assertEquals(Arrays.asList("g4", "g1", "g2", "g3"), index.getClosure("g4"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4"), index.getClosure("g1"));
+        List<String> g3 = index.getClosure("g3");
+        assertNull(index.getClosure("g5"));
+
+        // g2 gets a new parent g5
+        addGroup("g5");
+        addGroup("g2", "g4", "g5");
+        index.invalidate(Arrays.asList("g5", "g2"));
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4", "g5"), index.getClosure("g1"));
+        assertEquals(Arrays.asList("g2", "g4", "g5"), index.getClosure("g2"));
+        // unrelated closure kept
+        assertSame(g3, index.getClosure("g3"));
+
+        // deleting g4 affects the groups having it as parent
+        groups.remove("g4");
+        index.invalidate(Collections.singletonList("g4"));
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g5"), index.getClosure("g1"));
+        assertEquals(Collections.singletonList("g3"), index.getClosure("g3"));
+        assertNull(index.getClosure("g4"));
+    }
+
+    @Test
+    public void testPut() {
+        NuxeoGroup group = new NuxeoGroupImpl("g6");
+        group.setParentGroups(Collections.singletonList("g4"));
+        index.put(group);
+        assertEquals(Arrays.asList("g6", "g4"), index.getClosure("g6"));
+        assertNull(loads.get("g6"));
+    }
+
+    @Test
+    public void testSharedGroups() {
+        List<String> shared = index.getSharedGroups(Arrays.asList("a", "b"));
+        assertSame(shared, index.getSharedGroups(Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("a", "b"), shared);
+    }
+
+    @Test
+    public void testMaxAge() {
+        List<String> g1 = index.getClosure("g1");
+        assertNull(index.getClosure("g5"));
+
+        // changed behind the index's back
+        addGroup("g5");
+        addGroup("g3", "g5");
+        time += 1000;
+        assertSame(g1, index.getClosure("g1"));
+        assertNull(index.getClosure("g5"));
+
+        time += 1;
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4", "g5"), index.getClosure("g1"));
+        assertEquals(Collections.singletonList("g5"), index.getClosure("g5"));
+        assertEquals(Integer.valueOf(2), loads.get("g3"));
+    }
+
+    @Test
+    public void testSharedGroupsBounded() {
+        List<String> ab = index.getSharedGroups(Arrays.asList("a", "b"));
+        index.getSharedGroups(Arrays.asList("c"));
+        assertEquals(2, index.sharedGroups.size());
+        index.getSharedGroups(Arrays.asList("d"));
+        assertEquals(1, index.sharedGroups.size());
+        List<String> ab2 = index.getSharedGroups(Arrays.asList("a", "b"));
+        assertEquals(ab, ab2);
+        assertSame(ab2, index.getSharedGroups(Arrays.asList("a", "b")));
+    }
+
+}